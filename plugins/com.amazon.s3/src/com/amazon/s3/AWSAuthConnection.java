@@ -14,6 +14,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -217,8 +218,10 @@ public class AWSAuthConnection {
         HttpURLConnection request =
             makeRequest("PUT", bucket, Utils.urlencode(key), null, headers, object);
 
+        byte[] data = object.data == null ? new byte[] {} : object.data;
         request.setDoOutput(true);
-        request.getOutputStream().write(object.data == null ? new byte[] {} : object.data);
+        request.setFixedLengthStreamingMode(data.length);
+        request.getOutputStream().write(data);
 
         return new Response(request);
     }
@@ -232,6 +235,105 @@ public class AWSAuthConnection {
     	return request;
     }
 
+    /**
+     * Starts a multipart upload.  The parts are then sent with uploadPart()
+     * and assembled into the object by completeMultipartUpload().
+     * @param bucket The name of the bucket to which the object will be added.
+     * @param key The name of the key to use.
+     * @param headers A Map of String to List of Strings representing the http
+     * headers to pass (can be null).
+     */
+    public InitiateMultipartUploadResponse initiateMultipartUpload(String bucket, String key, Map headers)
+        throws MalformedURLException, IOException
+    {
+        Map pathArgs = new HashMap();
+        pathArgs.put("uploads", null);
+        HttpURLConnection request = makeRequest("POST", bucket, Utils.urlencode(key), pathArgs, headers);
+        request.setDoOutput(true);
+        request.setFixedLengthStreamingMode(0);
+        request.getOutputStream().close();
+        return new InitiateMultipartUploadResponse(request);
+    }
+
+    /**
+     * Uploads one part of a multipart upload.  The body is streamed with a
+     * fixed length, so it is never buffered again by the connection.  The
+     * ETag header of the response identifies the part.
+     * @param bucket The name of the bucket to which the object will be added.
+     * @param key The name of the key to use.
+     * @param uploadId The id returned by initiateMultipartUpload().
+     * @param partNumber The number of the part, from 1 to 10000.
+     * @param data The buffer holding the part.
+     * @param length The number of bytes of the buffer in the part.
+     * @param headers A Map of String to List of Strings representing the http
+     * headers to pass (can be null).
+     */
+    public Response uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data,
+                               int length, Map headers)
+        throws MalformedURLException, IOException
+    {
+        Map pathArgs = new HashMap();
+        pathArgs.put("partNumber", Integer.toString(partNumber));
+        pathArgs.put("uploadId", uploadId);
+        HttpURLConnection request = makeRequest("PUT", bucket, Utils.urlencode(key), pathArgs, headers);
+        request.setDoOutput(true);
+        request.setFixedLengthStreamingMode(length);
+        OutputStream out = request.getOutputStream();
+        out.write(data, 0, length);
+        out.close();
+        return new Response(request);
+    }
+
+    /**
+     * Assembles the uploaded parts into the object.
+     * @param bucket The name of the bucket to which the object will be added.
+     * @param key The name of the key to use.
+     * @param uploadId The id returned by initiateMultipartUpload().
+     * @param partETags The ETags of the parts, in part number order.
+     * @param headers A Map of String to List of Strings representing the http
+     * headers to pass (can be null).
+     * @throws IOException If the upload could not be completed, including the
+     * errors S3 reports in the body of a successful response.
+     */
+    public Response completeMultipartUpload(String bucket, String key, String uploadId, List partETags,
+                                            Map headers)
+        throws MalformedURLException, IOException
+    {
+        StringBuffer body = new StringBuffer("<CompleteMultipartUpload>");
+        for (int i = 0; i < partETags.size(); ++i) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                .append(partETags.get(i)).append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+        byte[] data = body.toString().getBytes("UTF-8");
+
+        Map pathArgs = new HashMap();
+        pathArgs.put("uploadId", uploadId);
+        HttpURLConnection request = makeRequest("POST", bucket, Utils.urlencode(key), pathArgs, headers);
+        request.setDoOutput(true);
+        request.setFixedLengthStreamingMode(data.length);
+        OutputStream out = request.getOutputStream();
+        out.write(data);
+        out.close();
+        return verifyResult(new Response(request), "</CompleteMultipartUploadResult>");
+    }
+
+    /**
+     * Aborts a multipart upload and frees the parts uploaded so far.
+     * @param bucket The name of the bucket to which the object was being added.
+     * @param key The name of the key to use.
+     * @param uploadId The id returned by initiateMultipartUpload().
+     * @param headers A Map of String to List of Strings representing the http
+     * headers to pass (can be null).
+     */
+    public Response abortMultipartUpload(String bucket, String key, String uploadId, Map headers)
+        throws MalformedURLException, IOException
+    {
+        Map pathArgs = new HashMap();
+        pathArgs.put("uploadId", uploadId);
+        return new Response(makeRequest("DELETE", bucket, Utils.urlencode(key), pathArgs, headers));
+    }
+
     /**
      * Creates a copy of an existing S3 Object.  In this signature, we will copy the
      * existing metadata.  The default access control policy is private; if you want
@@ -285,12 +387,25 @@ public class AWSAuthConnection {
      * @throws IOException If anything goes wrong.
      */
     private Response verifyCopy( Response response ) throws IOException {
+        return verifyResult( response, "</CopyObjectResult>" );
+    }
+
+    /**
+     * Copy and multipart completion may return a successful response whose
+     * body still reports an error.  This method reads the body and throws an
+     * exception unless it holds the expected result.
+     * @param response Response object from the request.
+     * @param resultEnd The closing tag of the expected result element.
+     * @return The response with the input stream drained.
+     * @throws IOException If anything goes wrong.
+     */
+    private Response verifyResult( Response response, String resultEnd ) throws IOException {
         if (response.connection.getResponseCode() < 400) {
             byte[] body = GetResponse.slurpInputStream(response.connection.getInputStream());
             String message = new String( body );
             if ( message.indexOf( "<Error" ) != -1 ) {
                 throw new IOException( message.substring( message.indexOf( "<Error" ) ) );
-            } else if ( message.indexOf( "</CopyObjectResult>" ) != -1 ) {
+            } else if ( message.indexOf( resultEnd ) != -1 ) {
                 // It worked!
             } else {
                 throw new IOException( "Unexpected response: " + message );
@@ -318,6 +433,23 @@ public class AWSAuthConnection {
       	return makeRequest("GET", bucket, Utils.urlencode(key), null, headers);
     }
         
+    /**
+     * Reads a byte range of an object from S3.
+     * @param bucket The name of the bucket where the object lives.
+     * @param key The name of the key to use.
+     * @param first The offset of the first byte to read.
+     * @param last The offset of the last byte to read (inclusive).
+     * @param headers A Map of String to List of Strings representing the http
+     * headers to pass (can be null).
+     */
+    public HttpURLConnection getRange(String bucket, String key, long first, long last, Map headers)
+        throws MalformedURLException, IOException
+    {
+        HttpURLConnection connection = makeRequest("GET", bucket, Utils.urlencode(key), null, headers);
+        connection.setRequestProperty("Range", "bytes=" + first + "-" + last);
+        return connection;
+    }
+
     public HttpURLConnection head(String bucket, String key, Map headers)
       	throws MalformedURLException, IOException
     {
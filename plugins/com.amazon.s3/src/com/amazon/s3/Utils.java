@@ -131,6 +131,16 @@ public class Utils {
 	            buf.append("?logging");
                 } else if (pathArgs.containsKey("location")) {
                     buf.append("?location");
+                } else if (pathArgs.containsKey("uploads")) {
+                    buf.append("?uploads");
+                } else if (pathArgs.containsKey("uploadId")) {
+                    // sub-resources are signed in alphabetical order
+                    if (pathArgs.containsKey("partNumber")) {
+                        buf.append("?partNumber=").append(pathArgs.get("partNumber")).append("&uploadId=");
+                    } else {
+                        buf.append("?uploadId=");
+                    }
+                    buf.append(pathArgs.get("uploadId"));
                 }
         }
 
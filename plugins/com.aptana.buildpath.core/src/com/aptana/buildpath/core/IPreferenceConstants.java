@@ -0,0 +1,19 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.buildpath.core;
+
+public interface IPreferenceConstants
+{
+
+	/**
+	 * The number of threads used to build files. A value of 1 builds files serially. Defaults to the number of
+	 * available processors
+	 */
+	String BUILD_PARALLELISM = "build_parallelism"; //$NON-NLS-1$
+
+}
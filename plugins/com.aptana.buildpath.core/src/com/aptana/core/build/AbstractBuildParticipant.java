@@ -217,6 +217,15 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 		// no-op. Most impls won't do batch clean stuff
 	}
 
+	/**
+	 * By default participants are only called on the build thread. Override this for participants that can build
+	 * several files at once.
+	 */
+	public boolean isThreadSafe()
+	{
+		return false;
+	}
+
 	protected int getLineNumber(int start, String source)
 	{
 		if (start < 0 || start >= source.length())
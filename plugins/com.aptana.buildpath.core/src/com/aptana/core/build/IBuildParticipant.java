@@ -61,13 +61,24 @@ public interface IBuildParticipant
 
 	/**
 	 * Called on an individual file. For incremental builds we traverse the diff and call this for every updated/added
-	 * file. For full builds we traverse the project to collect the files and call this once per file.
+	 * file. For full builds we traverse the project to collect the files and call this once per file. Unless
+	 * {@link #isThreadSafe()} returns true, this is only called on the build thread, one file at a time.
 	 * 
 	 * @param context
 	 * @param monitor
 	 */
 	public void buildFile(BuildContext context, IProgressMonitor monitor);
 
+	/**
+	 * Can {@link #buildFile(BuildContext, IProgressMonitor)} be called for several files at once on different threads?
+	 * Participants that return true may be handed files by worker threads between
+	 * {@link #buildStarting(IProject, int, IProgressMonitor)} and {@link #buildEnding(IProgressMonitor)}, which are
+	 * still called on the build thread. Files with a participant that returns false are built on the build thread.
+	 * 
+	 * @return
+	 */
+	public boolean isThreadSafe();
+
 	/**
 	 * Called on an individual file. For incremental builds we traverse the diff and call this for every updated/added
 	 * file.
@@ -11,9 +11,17 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
@@ -28,10 +36,14 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
 import com.aptana.buildpath.core.BuildPathCorePlugin;
+import com.aptana.buildpath.core.IPreferenceConstants;
 import com.aptana.core.CorePlugin;
 import com.aptana.core.IDebugScopes;
 import com.aptana.core.IFilter;
@@ -46,6 +58,11 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 
 	public static final String ID = "com.aptana.ide.core.unifiedBuilder"; //$NON-NLS-1$
 
+	/**
+	 * Below this number of files, starting worker threads costs more than it saves
+	 */
+	private static final int PARALLEL_THRESHOLD = 16;
+
 	public UnifiedBuilder()
 	{
 	}
@@ -285,6 +302,20 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		return getDelta(getProjectHandle());
 	}
 
+	/**
+	 * Returns the number of threads used to build files, as set by the
+	 * {@link IPreferenceConstants#BUILD_PARALLELISM} preference
+	 * 
+	 * @return
+	 */
+	protected int getParallelism()
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		return Platform.getPreferencesService().getInt(BuildPathCorePlugin.PLUGIN_ID,
+				IPreferenceConstants.BUILD_PARALLELISM, processors, null);
+	}
+
 	private void buildFiles(List<IBuildParticipant> participants, Collection<IFile> files, IProgressMonitor monitor)
 			throws CoreException
 	{
@@ -293,59 +324,246 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			return;
 		}
 
-		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
-		for (IFile file : files)
+		SubMonitor sub = SubMonitor.convert(monitor, 16 * files.size());
+		Map<IFile, Map<String, Collection<IProblem>>> problems = new LinkedHashMap<IFile, Map<String, Collection<IProblem>>>(
+				files.size());
+
+		int parallelism = (files.size() >= PARALLEL_THRESHOLD) ? getParallelism() : 1;
+		try
 		{
-			BuildContext context = new BuildContext(file);
-			sub.worked(1);
+			if (parallelism > 1 && hasThreadSafeParticipant(participants))
+			{
+				buildFilesInParallel(participants, files, parallelism, problems, sub.newChild(15 * files.size()));
+			}
+			else
+			{
+				for (IFile file : files)
+				{
+					BuildContext context = new BuildContext(file);
+					sub.worked(1);
 
-			List<IBuildParticipant> filteredParticipants = getBuildParticipantManager().filterParticipants(
-					participants, context.getContentType());
-			sub.worked(2);
+					List<IBuildParticipant> filteredParticipants = getBuildParticipantManager().filterParticipants(
+							participants, context.getContentType());
+					sub.worked(2);
 
-			buildFile(context, filteredParticipants, sub.newChild(12));
+					buildFile(context, filteredParticipants, sub.newChild(12));
+					collectProblems(context, problems);
+				}
+			}
+		}
+		finally
+		{
+			// keep the problems of the files built before a cancellation
+			updateMarkers(problems, sub.isCanceled() ? new NullProgressMonitor() : sub.newChild(files.size()));
+			sub.done();
 		}
-		sub.done();
 	}
 
-	private void buildFile(BuildContext context, List<IBuildParticipant> participants, IProgressMonitor monitor)
+	private boolean hasThreadSafeParticipant(List<IBuildParticipant> participants)
+	{
+		for (IBuildParticipant participant : participants)
+		{
+			if (participant.isThreadSafe())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A file handed to the workers, along with the participants that still have to build it on the build thread
+	 */
+	private static class PendingFile
+	{
+		final BuildContext context;
+		// null if no participant of the file runs on the workers
+		final Future<?> result;
+		final List<IBuildParticipant> serialParticipants;
+
+		PendingFile(BuildContext context, Future<?> result, List<IBuildParticipant> serialParticipants)
+		{
+			this.context = context;
+			this.result = result;
+			this.serialParticipants = serialParticipants;
+		}
+	}
+
+	/**
+	 * Builds files on a bounded pool of worker threads. Idle workers take the next file from the shared queue, so a few
+	 * large files don't hold up the rest. The {@link IBuildParticipant#isThreadSafe() thread safe} participants of a
+	 * file run on a worker. Once they are done, the other participants of the file run on this thread, so those are
+	 * never called concurrently and the file's {@link BuildContext} is only used by one thread at a time. The file is
+	 * read and parsed once. Problems are collected on this thread in the order the files were given.
+	 * 
+	 * @param participants
+	 * @param files
+	 * @param parallelism
+	 * @param problems
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void buildFilesInParallel(List<IBuildParticipant> participants, Collection<IFile> files,
+			int parallelism, Map<IFile, Map<String, Collection<IProblem>>> problems, IProgressMonitor monitor)
 			throws CoreException
+	{
+		SubMonitor sub = SubMonitor.convert(monitor, files.size());
+		// SubMonitor isn't thread safe, so workers only share the cancellation state
+		final IProgressMonitor workerMonitor = new NullProgressMonitor();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, new BuilderThreadFactory());
+		// limits the number of built files whose problems haven't been collected yet
+		int window = parallelism * 4;
+		LinkedList<PendingFile> pending = new LinkedList<PendingFile>();
+
+		try
+		{
+			for (IFile file : files)
+			{
+				if (pending.size() >= window)
+				{
+					finishFile(pending.removeFirst(), workerMonitor, problems, sub);
+				}
+
+				final BuildContext context = new BuildContext(file);
+				// participants are looked up here, so the workers don't walk the extension registry and create
+				// extensions concurrently
+				List<IBuildParticipant> filteredParticipants = getBuildParticipantManager().filterParticipants(
+						participants, context.getContentType());
+				final List<IBuildParticipant> concurrentParticipants = new ArrayList<IBuildParticipant>();
+				List<IBuildParticipant> serialParticipants = new ArrayList<IBuildParticipant>();
+				for (IBuildParticipant participant : filteredParticipants)
+				{
+					if (participant.isThreadSafe())
+					{
+						concurrentParticipants.add(participant);
+					}
+					else
+					{
+						serialParticipants.add(participant);
+					}
+				}
+
+				Future<?> result = null;
+				if (!concurrentParticipants.isEmpty())
+				{
+					result = workers.submit(new Runnable()
+					{
+						public void run()
+						{
+							buildFile(context, concurrentParticipants, workerMonitor);
+						}
+					});
+				}
+				pending.add(new PendingFile(context, result, serialParticipants));
+			}
+
+			while (!pending.isEmpty())
+			{
+				finishFile(pending.removeFirst(), workerMonitor, problems, sub);
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+			sub.done();
+		}
+	}
+
+	/**
+	 * Wait for a worker to finish building a file, run the participants that aren't thread safe, then collect the
+	 * file's problems
+	 * 
+	 * @param file
+	 * @param workerMonitor
+	 * @param problems
+	 * @param sub
+	 * @throws CoreException
+	 */
+	private void finishFile(PendingFile file, IProgressMonitor workerMonitor,
+			Map<IFile, Map<String, Collection<IProblem>>> problems, SubMonitor sub) throws CoreException
+	{
+		if (sub.isCanceled())
+		{
+			workerMonitor.setCanceled(true);
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+
+		try
+		{
+			if (file.result != null)
+			{
+				file.result.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			workerMonitor.setCanceled(true);
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+		catch (ExecutionException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), e.getCause());
+		}
+
+		buildFile(file.context, file.serialParticipants, workerMonitor);
+		collectProblems(file.context, problems);
+		sub.worked(1);
+	}
+
+	private void collectProblems(BuildContext context, Map<IFile, Map<String, Collection<IProblem>>> problems)
+	{
+		Map<String, Collection<IProblem>> itemsByType = context.getProblems();
+		if (!CollectionsUtil.isEmpty(itemsByType))
+		{
+			problems.put(context.getFile(), itemsByType);
+		}
+	}
+
+	private void buildFile(BuildContext context, List<IBuildParticipant> participants, IProgressMonitor monitor)
 	{
 		if (CollectionsUtil.isEmpty(participants))
 		{
 			return;
 		}
 
-		SubMonitor sub = SubMonitor.convert(monitor, 2 * participants.size());
+		SubMonitor sub = SubMonitor.convert(monitor, participants.size());
 		for (IBuildParticipant participant : participants)
 		{
+			if (sub.isCanceled())
+			{
+				break;
+			}
 			participant.buildFile(context, sub.newChild(1));
 		}
-		updateMarkers(context, sub.newChild(participants.size()));
 		sub.done();
 	}
 
-	private void updateMarkers(BuildContext context, IProgressMonitor monitor)
+	private void updateMarkers(final Map<IFile, Map<String, Collection<IProblem>>> problems, IProgressMonitor monitor)
 	{
-		final IFile file = context.getFile();
-		final Map<String, Collection<IProblem>> itemsByType = context.getProblems();
-		if (CollectionsUtil.isEmpty(itemsByType))
+		if (CollectionsUtil.isEmpty(problems))
 		{
 			return;
 		}
-		// Performance fix: schedules the error handling as a single workspace update so that we don't trigger a
-		// bunch of resource updated events while problem markers are being added to the file.
+		// Performance fix: schedules the error handling of all files as a single workspace update so that we don't
+		// trigger a bunch of resource updated events while problem markers are being added to the files.
 		IWorkspaceRunnable runnable = new IWorkspaceRunnable()
 		{
 			public void run(IProgressMonitor monitor)
 			{
-				updateMarkers(file, itemsByType, monitor);
+				SubMonitor sub = SubMonitor.convert(monitor, problems.size());
+				for (Map.Entry<IFile, Map<String, Collection<IProblem>>> entry : problems.entrySet())
+				{
+					updateMarkers(entry.getKey(), entry.getValue(), sub.newChild(1));
+				}
+				sub.done();
 			}
 		};
 
 		try
 		{
-			ResourcesPlugin.getWorkspace().run(runnable, getMarkerRule(file), IWorkspace.AVOID_UPDATE, monitor);
+			ResourcesPlugin.getWorkspace().run(runnable, getMarkerRule(getProjectHandle()), IWorkspace.AVOID_UPDATE,
+					monitor);
 		}
 		catch (CoreException e)
 		{
@@ -469,4 +687,20 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			return true;
 		}
 	}
+
+	/**
+	 * Creates the low priority daemon threads used to build files in parallel
+	 */
+	private static class BuilderThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "Builder " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
 }
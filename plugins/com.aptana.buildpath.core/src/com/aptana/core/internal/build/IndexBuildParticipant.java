@@ -10,7 +10,10 @@ package com.aptana.core.internal.build;
 import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
@@ -33,6 +36,14 @@ public class IndexBuildParticipant extends RequiredBuildParticipant
 
 	private Index fIndex;
 
+	/**
+	 * The indexing participants of each content type seen by each thread during the current build, so the extension
+	 * registry is walked once per content type and thread rather than once per file. Each thread gets its own
+	 * instances, since indexing participants aren't expected to be thread safe.
+	 */
+	private final Map<Thread, Map<String, List<IFileStoreIndexingParticipant>>> fIndexers =
+			new ConcurrentHashMap<Thread, Map<String, List<IFileStoreIndexingParticipant>>>();
+
 	public void clean(IProject project, IProgressMonitor monitor)
 	{
 		URI uri = getURI(project);
@@ -48,6 +59,7 @@ public class IndexBuildParticipant extends RequiredBuildParticipant
 
 	public void buildStarting(IProject project, int kind, IProgressMonitor monitor)
 	{
+		fIndexers.clear();
 		fIndex = getIndex(project);
 	}
 
@@ -65,6 +77,17 @@ public class IndexBuildParticipant extends RequiredBuildParticipant
 			}
 			fIndex = null;
 		}
+		fIndexers.clear();
+	}
+
+	/**
+	 * Files can be built on several threads at once: the index is thread safe and each thread uses its own indexing
+	 * participants.
+	 */
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
 	}
 
 	public void buildFile(BuildContext context, IProgressMonitor monitor)
@@ -119,6 +142,44 @@ public class IndexBuildParticipant extends RequiredBuildParticipant
 	}
 
 	protected List<IFileStoreIndexingParticipant> getIndexParticipants(BuildContext context)
+	{
+		String contentType = null;
+		try
+		{
+			contentType = context.getContentType();
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), e);
+		}
+		if (contentType == null)
+		{
+			return createIndexParticipants(context);
+		}
+
+		Map<String, List<IFileStoreIndexingParticipant>> indexersByType = fIndexers.get(Thread.currentThread());
+		if (indexersByType == null)
+		{
+			indexersByType = new HashMap<String, List<IFileStoreIndexingParticipant>>();
+			fIndexers.put(Thread.currentThread(), indexersByType);
+		}
+
+		List<IFileStoreIndexingParticipant> indexers = indexersByType.get(contentType);
+		if (indexers == null)
+		{
+			indexers = createIndexParticipants(context);
+			indexersByType.put(contentType, indexers);
+		}
+		return indexers;
+	}
+
+	/**
+	 * The extension registry lookups aren't thread safe, so workers create their indexing participants one at a time
+	 * 
+	 * @param context
+	 * @return
+	 */
+	private synchronized List<IFileStoreIndexingParticipant> createIndexParticipants(BuildContext context)
 	{
 		return getIndexManager().getIndexParticipants(context.getName());
 	}
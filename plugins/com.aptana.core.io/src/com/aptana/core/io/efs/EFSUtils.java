@@ -302,7 +302,7 @@ public final class EFSUtils
 	 * @return
 	 * @throws CoreException
 	 */
-	private static boolean isFolder(IFileStore file, IProgressMonitor monitor) throws CoreException
+	/* package */static boolean isFolder(IFileStore file, IProgressMonitor monitor) throws CoreException
 	{
 		// if we are an IContainer, folder == true;
 		// if we are an IFile, folder == false
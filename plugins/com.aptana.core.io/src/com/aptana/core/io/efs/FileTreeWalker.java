@@ -0,0 +1,269 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.core.io.efs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+
+import com.aptana.ide.core.io.CoreIOPlugin;
+import com.aptana.ide.core.io.preferences.CloakingUtils;
+
+/**
+ * Lists all the files under a directory with several directory listings in progress at a time, which hides the round
+ * trip of each listing on remote file systems. Each file is passed to the visitor as soon as its directory has been
+ * listed, so the caller can process the files while the rest of the tree is being listed. The files are visited in no
+ * particular order.
+ */
+public final class FileTreeWalker
+{
+
+	/**
+	 * The default maximum number of directory listings in progress at a time
+	 */
+	public static final int DEFAULT_MAX_LISTINGS = 4;
+
+	/**
+	 * Receives the files of the tree.
+	 */
+	public interface IVisitor
+	{
+
+		/**
+		 * Visits a file of the tree. Called from the listing threads, possibly concurrently.
+		 * 
+		 * @param file
+		 */
+		public void visit(IFileStore file);
+	}
+
+	private final IFileStore root;
+	private final boolean includeCloakedFiles;
+	private final int maxListings;
+
+	private final AtomicInteger pendingListings = new AtomicInteger();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile boolean canceled;
+	private volatile CoreException error;
+	private ExecutorService executor;
+	private IVisitor visitor;
+	private IProgressMonitor listingMonitor;
+
+	/**
+	 * @param root
+	 *            the directory to walk
+	 * @param includeCloakedFiles
+	 *            Do we include cloaked files in the list?
+	 * @param maxListings
+	 *            the maximum number of directory listings in progress at a time
+	 */
+	public FileTreeWalker(IFileStore root, boolean includeCloakedFiles, int maxListings)
+	{
+		this.root = root;
+		this.includeCloakedFiles = includeCloakedFiles;
+		this.maxListings = Math.max(1, maxListings);
+	}
+
+	/**
+	 * Starts listing the tree in the background. The root itself is not visited.
+	 * 
+	 * @param visitor
+	 * @param monitor
+	 *            the monitor whose cancellation stops the walk
+	 * @throws CoreException
+	 */
+	public synchronized void start(IVisitor visitor, final IProgressMonitor monitor) throws CoreException
+	{
+		if (executor != null)
+		{
+			throw new IllegalStateException("The walk is already started"); //$NON-NLS-1$
+		}
+		this.visitor = visitor;
+		listingMonitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return canceled || (monitor != null && monitor.isCanceled());
+			}
+		};
+
+		Object resource = root.getAdapter(IResource.class);
+		if (resource instanceof IContainer)
+		{
+			((IResource) resource).refreshLocal(IResource.DEPTH_INFINITE, monitor);
+		}
+		executor = Executors.newFixedThreadPool(maxListings, new ListingThreadFactory());
+		pendingListings.set(1);
+		if (EFSUtils.isFolder(root, monitor))
+		{
+			submit(root);
+		}
+		else
+		{
+			listed();
+		}
+	}
+
+	/**
+	 * Returns whether all the files have been visited, or the walk has stopped.
+	 * 
+	 * @return true if the walk is over, false otherwise
+	 */
+	public boolean isDone()
+	{
+		return finished.getCount() == 0;
+	}
+
+	/**
+	 * Waits for the end of the walk.
+	 * 
+	 * @param monitor
+	 * @throws CoreException
+	 *             if a directory could not be listed
+	 * @throws OperationCanceledException
+	 *             if the walk has been canceled, or the monitor is canceled while waiting
+	 */
+	public void join(IProgressMonitor monitor) throws CoreException
+	{
+		try
+		{
+			while (!finished.await(100, TimeUnit.MILLISECONDS))
+			{
+				if (monitor != null && monitor.isCanceled())
+				{
+					cancel();
+					throw new OperationCanceledException();
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			cancel();
+			throw new OperationCanceledException();
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+		if (canceled)
+		{
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Stops the walk. The listings in progress are completed, but their files are no longer visited.
+	 */
+	public void cancel()
+	{
+		canceled = true;
+	}
+
+	private void submit(final IFileStore directory)
+	{
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				list(directory);
+			}
+		});
+	}
+
+	private void list(IFileStore directory)
+	{
+		try
+		{
+			if (canceled)
+			{
+				return;
+			}
+			IFileStore[] children = directory.childStores(EFS.NONE, listingMonitor);
+			for (IFileStore child : children)
+			{
+				if (canceled)
+				{
+					return;
+				}
+				if (includeCloakedFiles || !CloakingUtils.isFileCloaked(child))
+				{
+					visitor.visit(child);
+					if (EFSUtils.isFolder(child, listingMonitor))
+					{
+						pendingListings.incrementAndGet();
+						submit(child);
+					}
+				}
+			}
+		}
+		catch (CoreException e)
+		{
+			fail(e);
+		}
+		catch (OperationCanceledException e)
+		{
+			canceled = true;
+		}
+		catch (RuntimeException e)
+		{
+			fail(new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, e.getLocalizedMessage(), e)));
+		}
+		finally
+		{
+			listed();
+		}
+	}
+
+	private synchronized void fail(CoreException e)
+	{
+		if (error == null)
+		{
+			error = e;
+		}
+		canceled = true;
+	}
+
+	private void listed()
+	{
+		if (pendingListings.decrementAndGet() == 0)
+		{
+			executor.shutdown();
+			finished.countDown();
+		}
+	}
+
+	private static class ListingThreadFactory implements ThreadFactory
+	{
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "File Tree Listing " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -20,7 +20,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +44,7 @@ import com.aptana.core.util.ExpiringMap;
 import com.aptana.core.util.ProgressMonitorInterrupter;
 import com.aptana.core.util.ProgressMonitorInterrupter.InterruptDelegate;
 import com.aptana.core.util.StringUtil;
+import com.aptana.ide.core.io.ConnectionContext;
 import com.aptana.ide.core.io.CoreIOPlugin;
 import com.aptana.ide.core.io.InfiniteProgressMonitor;
 import com.aptana.ide.core.io.PermissionDeniedException;
@@ -55,6 +59,7 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	protected static final int CACHE_TTL = 60000; /* 1min */
 
 	private static final int RETRIES_AFTER_FAILURE = 2;
+	private static final long SESSION_WAIT_INTERVAL = 500;
 	protected static final char[] EMPTY_PASSWORD = StringUtil.EMPTY.toCharArray();
 	protected static final String[] EMPTY_STRING_ARRAY = new String[0];
 	protected static final byte[] EMPTY_BYTES = new byte[0];
@@ -67,13 +72,25 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 
 	private Map<IPath, ExtendedFileInfo> fileInfoCache;
 	private Map<IPath, ExtendedFileInfo[]> fileInfosCache;
-	
+
+	/* sessions pool; the manager itself is always the first session */
+	private BaseConnectionFileManager owner;
+	private final Object sessionsLock = new Object();
+	private final List<BaseConnectionFileManager> sessions = new ArrayList<BaseConnectionFileManager>();
+	private final LinkedList<BaseConnectionFileManager> idleSessions = new LinkedList<BaseConnectionFileManager>();
+	private int busySessions;
+	private int maxSessions = 1;
+
 	private final InterruptDelegate interruptDelegate = new InterruptDelegate() {
 		public void interrupt() {
 			interruptOperation();
 		}
 	};
 
+	protected BaseConnectionFileManager() {
+		idleSessions.add(this);
+	}
+
 	protected final void promptPassword(String title, String message) {
 		password = CoreIOPlugin.getAuthenticationManager().promptPassword(
 						authId, login, title, message);
@@ -92,22 +109,147 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	}
 
 	protected final void setCaching(boolean enabled) {
+		if (owner != null) {
+			owner.setCaching(enabled);
+			return;
+		}
 		if ((fileInfoCache != null) == enabled) {
 			return;
 		}
 		if (enabled) {
-			fileInfoCache = new ExpiringMap<IPath, ExtendedFileInfo>(CACHE_TTL);
-			fileInfosCache = new ExpiringMap<IPath, ExtendedFileInfo[]>(CACHE_TTL);
+			fileInfoCache = Collections.synchronizedMap(new ExpiringMap<IPath, ExtendedFileInfo>(CACHE_TTL));
+			fileInfosCache = Collections.synchronizedMap(new ExpiringMap<IPath, ExtendedFileInfo[]>(CACHE_TTL));
 		} else {
 			fileInfoCache = null;
 			fileInfosCache = null;
 		}
 	}
 
+	/**
+	 * Sets the maximum number of sessions the operations are dispatched over.
+	 * A limit greater than one only has effect when {@link #newSession()} creates additional sessions.
+	 * @param maxSessions
+	 */
+	public final void setMaxSessions(int maxSessions) {
+		synchronized (sessionsLock) {
+			this.maxSessions = Math.max(1, maxSessions);
+			sessionsLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Creates an additional session, an unconnected manager for the same site that operations are dispatched to while
+	 * this manager is busy. Sessions share the file info caches of this manager and are connected on first use.
+	 * @return the new session, or null if this manager only supports a single session
+	 */
+	protected BaseConnectionFileManager newSession() {
+		return null;
+	}
+
+	/**
+	 * Returns true if this manager is an additional session created by another manager
+	 * @return
+	 */
+	protected final boolean isPooledSession() {
+		return owner != null;
+	}
+
+	/**
+	 * Disconnects and discards the additional sessions; busy sessions are disconnected once their operation completes.
+	 * @param monitor
+	 */
+	protected final void closeSessions(IProgressMonitor monitor) {
+		List<BaseConnectionFileManager> idle = new ArrayList<BaseConnectionFileManager>();
+		synchronized (sessionsLock) {
+			for (BaseConnectionFileManager session : sessions) {
+				if (idleSessions.remove(session)) {
+					idle.add(session);
+				}
+			}
+			sessions.clear();
+		}
+		for (BaseConnectionFileManager session : idle) {
+			disconnectSession(session, monitor);
+		}
+	}
+
+	private BaseConnectionFileManager acquireSession(IProgressMonitor monitor) {
+		monitor = Policy.monitorFor(monitor);
+		synchronized (sessionsLock) {
+			while (true) {
+				if (busySessions < maxSessions) {
+					if (!idleSessions.isEmpty()) {
+						++busySessions;
+						return idleSessions.removeFirst();
+					}
+					BaseConnectionFileManager session = newSession();
+					if (session != null) {
+						session.owner = this;
+						ConnectionContext context = CoreIOPlugin.getConnectionContext(this);
+						if (context != null) {
+							CoreIOPlugin.setConnectionContext(session, context);
+						}
+						sessions.add(session);
+						++busySessions;
+						return session;
+					}
+				}
+				Policy.checkCanceled(monitor);
+				try {
+					sessionsLock.wait(SESSION_WAIT_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				}
+			}
+		}
+	}
+
+	private void releaseSession(BaseConnectionFileManager session) {
+		boolean discard = false;
+		synchronized (sessionsLock) {
+			--busySessions;
+			if (session != this && (!sessions.contains(session) || sessions.size() >= maxSessions)) {
+				// closed or over the limit after it was lowered
+				sessions.remove(session);
+				discard = true;
+			} else {
+				idleSessions.addFirst(session);
+			}
+			sessionsLock.notifyAll();
+		}
+		if (discard) {
+			disconnectSession(session, null);
+		}
+	}
+
+	private static void disconnectSession(BaseConnectionFileManager session, IProgressMonitor monitor) {
+		try {
+			synchronized (session) {
+				session.disconnect(Policy.subMonitorFor(monitor, 1));
+			}
+		} catch (CoreException e) {
+			IdeLog.logWarning(CoreIOPlugin.getDefault(), e.getMessage(), e);
+		} finally {
+			CoreIOPlugin.clearConnectionContext(session);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#fetchInfo(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				return session.doFetchInfo(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private IExtendedFileInfo doFetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details, path.toPortableString()), 2);
 		try {
@@ -128,7 +270,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#childNames(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized String[] childNames(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final String[] childNames(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				return session.doChildNames(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private String[] doChildNames(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()), 2);
 		try {
@@ -157,7 +310,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#childInfos(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				return session.doChildInfos(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private IExtendedFileInfo[] doChildInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_gethering_details, path.toPortableString()), 2);
 		options = (options & IExtendedFileStore.DETAILED);
@@ -192,7 +356,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openInputStream(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized InputStream openInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final InputStream openInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				return session.doOpenInputStream(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private InputStream doOpenInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
 		try {
@@ -229,7 +404,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openOutputStream(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				return session.doOpenOutputStream(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private OutputStream doOpenOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_opening_file, path.toPortableString()), 3);
 		try {
@@ -270,7 +456,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#delete(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void delete(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final void delete(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				session.doDelete(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private void doDelete(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor = new InfiniteProgressMonitor(monitor);
 		monitor.beginTask(Messages.BaseConnectionFileManager_deleting, 20);
@@ -306,7 +503,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#mkdir(org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void mkdir(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+	public final void mkdir(IPath path, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				session.doMkdir(path, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private void doMkdir(IPath path, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_creating_folder, path.toPortableString()), 3);
 		try {
@@ -358,7 +566,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#putInfo(org.eclipse.core.runtime.IPath, org.eclipse.core.filesystem.IFileInfo, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void putInfo(IPath path, IFileInfo info, int options, IProgressMonitor monitor) throws CoreException {
+	public final void putInfo(IPath path, IFileInfo info, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				session.doPutInfo(path, info, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private void doPutInfo(IPath path, IFileInfo info, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_putting_changes, path.toPortableString()), 5);
 		try {
@@ -410,7 +629,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	/* (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#move(org.eclipse.core.runtime.IPath, org.eclipse.core.runtime.IPath, int, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized void move(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor) throws CoreException {
+	public final void move(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor) throws CoreException {
+		BaseConnectionFileManager session = acquireSession(monitor);
+		try {
+			synchronized (session) {
+				session.doMove(sourcePath, destinationPath, options, monitor);
+			}
+		} finally {
+			releaseSession(session);
+		}
+	}
+
+	private void doMove(IPath sourcePath, IPath destinationPath, int options, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		monitor.beginTask(MessageFormat.format(Messages.BaseConnectionFileManager_moving, sourcePath.toPortableString()), 5);
 		try {
@@ -619,51 +849,68 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	}
 
 	private final ExtendedFileInfo getCachedFileInfo(IPath path) {
-		return (fileInfoCache != null) ? fileInfoCache.get(path) : null;
+		Map<IPath, ExtendedFileInfo> cache = getFileInfoCache();
+		return (cache != null) ? cache.get(path) : null;
 	}
 
 	private final ExtendedFileInfo[] getCachedFileInfos(IPath path) {
-		return (fileInfosCache !=  null) ? fileInfosCache.get(path) : null;
+		Map<IPath, ExtendedFileInfo[]> cache = getFileInfosCache();
+		return (cache !=  null) ? cache.get(path) : null;
 	}
 
 	private final ExtendedFileInfo cache(IPath path, ExtendedFileInfo fileInfo) {
-		if (fileInfoCache != null && fileInfo.exists()) {
-			fileInfoCache.put(path, fileInfo);
+		Map<IPath, ExtendedFileInfo> cache = getFileInfoCache();
+		if (cache != null && fileInfo.exists()) {
+			cache.put(path, fileInfo);
 		}
 		return fileInfo;
 	}
 
 	private final ExtendedFileInfo[] cache(IPath path, ExtendedFileInfo[] fileInfos) {
-		if (fileInfosCache != null) {
-			fileInfosCache.put(path, fileInfos);
+		Map<IPath, ExtendedFileInfo[]> cache = getFileInfosCache();
+		if (cache != null) {
+			cache.put(path, fileInfos);
 		}
 		return fileInfos;
 	}
 
+	/* sessions share the caches of their owner */
+	private Map<IPath, ExtendedFileInfo> getFileInfoCache() {
+		return (owner != null) ? owner.fileInfoCache : fileInfoCache;
+	}
+
+	private Map<IPath, ExtendedFileInfo[]> getFileInfosCache() {
+		return (owner != null) ? owner.fileInfosCache : fileInfosCache;
+	}
+
 	protected void clearCache(IPath path) {
-		int segments = path.segmentCount();
-		if (fileInfoCache !=  null) {
-			for (IPath p : new ArrayList<IPath>(fileInfoCache.keySet())) {
-				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
-					fileInfoCache.remove(p);
-				}
-			}
+		clearCache(getFileInfoCache(), path);
+		clearCache(getFileInfosCache(), path);
+	}
+
+	private static void clearCache(Map<IPath, ?> cache, IPath path) {
+		if (cache == null) {
+			return;
 		}
-		if (fileInfosCache != null) {
-			for (IPath p : new ArrayList<IPath>(fileInfosCache.keySet())) {
+		int segments = path.segmentCount();
+		synchronized (cache) {
+			for (Iterator<IPath> i = cache.keySet().iterator(); i.hasNext(); ) {
+				IPath p = i.next();
 				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
-					fileInfosCache.remove(p);
+					i.remove();
 				}
 			}
 		}
 	}
 
 	protected final void cleanup() {
-		if (fileInfoCache != null) {
-			fileInfoCache.clear();
+		Map<IPath, ExtendedFileInfo> cache = getFileInfoCache();
+		if (cache != null) {
+			cache.clear();
 		}
-		if (fileInfosCache != null) {
-			fileInfosCache.clear();
+		Map<IPath, ExtendedFileInfo[]> infosCache = getFileInfosCache();
+		if (infosCache != null) {
+			infosCache.clear();
 		}
 	}
 	
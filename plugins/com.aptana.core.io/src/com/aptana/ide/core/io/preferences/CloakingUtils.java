@@ -11,15 +11,18 @@ package com.aptana.ide.core.io.preferences;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.osgi.service.prefs.BackingStoreException;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ArrayUtil;
 import com.aptana.core.util.EclipseUtil;
+import com.aptana.core.util.PathMatcher;
 import com.aptana.core.util.StringUtil;
 import com.aptana.ide.core.io.CoreIOPlugin;
 
@@ -28,6 +31,9 @@ import com.aptana.ide.core.io.CoreIOPlugin;
  */
 public class CloakingUtils {
 
+    private static volatile PathMatcher cloakingMatcher;
+    private static IEclipsePreferences.IPreferenceChangeListener preferenceListener;
+
     /**
      * Adds a file type to be cloaked.
      * 
@@ -76,26 +82,108 @@ public class CloakingUtils {
      * @return true if the file should be cloaked, false otherwise
      */
     public static boolean isFileCloaked(IFileStore fileStore) {
-        String filepath = fileStore.toString();
-        String[] expressions = getCloakedExpressions();
-        for (String expression : expressions) {
-            if (filepath.matches(expression)) {
-                return true;
+        return getCloakingMatcher().matches(fileStore.toString());
+    }
+
+    /**
+     * Returns the compiled cloak expressions, which are compiled again once the preference changes.
+     * 
+     * @return the matcher of the cloaked paths
+     */
+    private static PathMatcher getCloakingMatcher() {
+        PathMatcher matcher = cloakingMatcher;
+        if (matcher == null) {
+            synchronized (CloakingUtils.class) {
+                if (cloakingMatcher == null) {
+                    attachPreferenceListener();
+                    cloakingMatcher = createCloakingMatcher(getCloakedFileTypes());
+                }
+                matcher = cloakingMatcher;
+            }
+        }
+        return matcher;
+    }
+
+    private static synchronized void resetCloakingMatcher() {
+        cloakingMatcher = null;
+    }
+
+    private static void attachPreferenceListener() {
+        if (preferenceListener != null) {
+            return;
+        }
+        try {
+            preferenceListener = new IEclipsePreferences.IPreferenceChangeListener() {
+
+                public void preferenceChange(PreferenceChangeEvent event) {
+                    if (IPreferenceConstants.GLOBAL_CLOAKING_EXTENSIONS.equals(event.getKey())) {
+                        resetCloakingMatcher();
+                    }
+                }
+            };
+            EclipseUtil.instanceScope().getNode(CoreIOPlugin.PLUGIN_ID)
+                    .addPreferenceChangeListener(preferenceListener);
+        } catch (Exception e) {
+            IdeLog.logError(CoreIOPlugin.getDefault(),
+                    "Failed to attach preference listener for cloaking", e); //$NON-NLS-1$
+            preferenceListener = null;
+        }
+    }
+
+    /**
+     * Compiles cloak expressions. A plain name, optionally preceded by '*', is looked up as a case-insensitive literal
+     * or suffix instead of being converted to a regular expression.
+     * 
+     * @param filetypes
+     *            the cloak expressions
+     * @return the matcher of the cloaked paths
+     */
+    private static PathMatcher createCloakingMatcher(String[] filetypes) {
+        PathMatcher matcher = new PathMatcher(true);
+        for (String filetype : filetypes) {
+            if (StringUtil.isEmpty(filetype)) {
+                continue;
+            }
+            boolean regex = filetype.length() > 1 && filetype.charAt(0) == '/'
+                    && filetype.charAt(filetype.length() - 1) == '/';
+            String expression = filetype.replace('\\', '/');
+            boolean leadingStar = expression.charAt(0) == '*';
+            String name = leadingStar ? expression.substring(1) : expression;
+            if (!regex && isPlainName(name)) {
+                if (leadingStar) {
+                    matcher.addSuffix(name);
+                } else {
+                    matcher.addLiteral(name);
+                }
+                continue;
+            }
+            try {
+                matcher.addRegex(convertCloakExpressionToRegex(filetype));
+            } catch (PatternSyntaxException e) {
+                IdeLog.logError(CoreIOPlugin.getDefault(), "Invalid cloak expression " + filetype, e); //$NON-NLS-1$
             }
         }
-        return false;
+        return matcher;
     }
 
     /**
-     * @return the array of filetypes being cloaked in regular expression
+     * Returns whether the regular expression converted from a name only matches the name itself: it has no regular
+     * expression character other than '.' characters followed by another character.
+     * 
+     * @param name
+     * @return
      */
-    private static String[] getCloakedExpressions() {
-        String[] filetypes = getCloakedFileTypes();
-        String[] expressions = new String[filetypes.length];
-        for (int i = 0; i < expressions.length; ++i) {
-            expressions[i] = convertCloakExpressionToRegex(filetypes[i]);
+    private static boolean isPlainName(String name) {
+        if (name.endsWith(".")) { //$NON-NLS-1$
+            return false;
+        }
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (c > 127 || "*?+|^$()[]{}".indexOf(c) != -1) { //$NON-NLS-1$
+                return false;
+            }
         }
-        return expressions;
+        return true;
     }
 
     private static String convertCloakExpressionToRegex(String expression) {
@@ -144,6 +232,7 @@ public class CloakingUtils {
         String value = StringUtil.join(";", filetypes); //$NON-NLS-1$
         IEclipsePreferences prefs = (EclipseUtil.instanceScope()).getNode(CoreIOPlugin.PLUGIN_ID);
         prefs.put(IPreferenceConstants.GLOBAL_CLOAKING_EXTENSIONS, value);
+        resetCloakingMatcher();
         try {
             prefs.flush();
         } catch (BackingStoreException e) {
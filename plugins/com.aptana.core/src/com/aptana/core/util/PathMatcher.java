@@ -0,0 +1,307 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * A set of path patterns compiled once and tested together. Exact paths, prefixes and suffixes are looked up in hash
+ * sets, one lookup per distinct prefix or suffix length, so the common "*.ext" and "name" patterns cost the same no
+ * matter how many of them there are. Only the patterns that need a regular expression are matched with one, and those
+ * are combined into a single alternation so a path is scanned once rather than once per pattern.
+ * <p>
+ * Patterns must all be added before the matcher is shared; matching is then safe from several threads at a time.
+ */
+public class PathMatcher
+{
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]"); //$NON-NLS-1$
+
+	private final boolean ignoreCase;
+	private final Set<String> literals = new HashSet<String>();
+	private final Map<Integer, Set<String>> prefixes = new TreeMap<Integer, Set<String>>();
+	private final Map<Integer, Set<String>> suffixes = new TreeMap<Integer, Set<String>>();
+	private final List<String> regexes = new ArrayList<String>();
+	private final List<Pattern> separatePatterns = new ArrayList<Pattern>();
+	private volatile Pattern combinedPattern;
+	private boolean empty = true;
+
+	/**
+	 * PathMatcher
+	 * 
+	 * @param ignoreCase
+	 *            whether literals, prefixes, suffixes and globs ignore the case of ASCII letters, as
+	 *            {@link Pattern#CASE_INSENSITIVE} does. Regular expressions keep their own flags.
+	 */
+	public PathMatcher(boolean ignoreCase)
+	{
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Matches paths equal to the literal.
+	 * 
+	 * @param literal
+	 * @return this matcher
+	 */
+	public synchronized PathMatcher addLiteral(String literal)
+	{
+		literals.add(fold(literal));
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Matches paths starting with the prefix.
+	 * 
+	 * @param prefix
+	 * @return this matcher
+	 */
+	public synchronized PathMatcher addPrefix(String prefix)
+	{
+		add(prefixes, fold(prefix));
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Matches paths ending with the suffix.
+	 * 
+	 * @param suffix
+	 * @return this matcher
+	 */
+	public synchronized PathMatcher addSuffix(String suffix)
+	{
+		add(suffixes, fold(suffix));
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Matches the paths matched by a glob, where '*' stands for any sequence of characters and '?' for any single
+	 * character. Globs with a single '*' at either end are looked up as prefixes or suffixes.
+	 * 
+	 * @param glob
+	 * @return this matcher
+	 */
+	public synchronized PathMatcher addGlob(String glob)
+	{
+		int star = glob.indexOf('*');
+		if (glob.indexOf('?') == -1 && (star == -1 || star == glob.lastIndexOf('*')))
+		{
+			if (star == -1)
+			{
+				return addLiteral(glob);
+			}
+			if (star == 0)
+			{
+				return addSuffix(glob.substring(1));
+			}
+			if (star == glob.length() - 1)
+			{
+				return addPrefix(glob.substring(0, star));
+			}
+		}
+
+		StringBuilder regex = new StringBuilder();
+		if (ignoreCase)
+		{
+			regex.append("(?i)"); //$NON-NLS-1$
+		}
+		int start = 0;
+		for (int i = 0; i < glob.length(); i++)
+		{
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?')
+			{
+				if (i > start)
+				{
+					regex.append(Pattern.quote(glob.substring(start, i)));
+				}
+				regex.append(c == '*' ? ".*" : "."); //$NON-NLS-1$ //$NON-NLS-2$
+				start = i + 1;
+			}
+		}
+		if (start < glob.length())
+		{
+			regex.append(Pattern.quote(glob.substring(start)));
+		}
+		return addRegex(regex.toString());
+	}
+
+	/**
+	 * Matches the paths entirely matched by a regular expression, as {@link String#matches(String)} does.
+	 * 
+	 * @param regex
+	 * @return this matcher
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if the expression is not valid
+	 */
+	public synchronized PathMatcher addRegex(String regex)
+	{
+		Pattern pattern = Pattern.compile(regex);
+		if (BACK_REFERENCE.matcher(regex).find())
+		{
+			// group numbers would shift once combined with the other expressions
+			separatePatterns.add(pattern);
+		}
+		else
+		{
+			regexes.add(regex);
+			combinedPattern = null;
+		}
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Returns whether no pattern was added, in which case no path matches.
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return empty;
+	}
+
+	/**
+	 * Returns whether the path matches any of the patterns.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public boolean matches(String path)
+	{
+		if (path == null)
+		{
+			return false;
+		}
+
+		String folded = fold(path);
+		if (literals.contains(folded) || matchesPrefix(folded) || matchesSuffix(folded))
+		{
+			return true;
+		}
+
+		Pattern pattern = getCombinedPattern();
+		if (pattern != null && pattern.matcher(path).matches())
+		{
+			return true;
+		}
+		for (Pattern separate : separatePatterns)
+		{
+			if (separate.matcher(path).matches())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesPrefix(String path)
+	{
+		int length = path.length();
+		for (Map.Entry<Integer, Set<String>> entry : prefixes.entrySet())
+		{
+			int prefixLength = entry.getKey();
+			if (prefixLength > length)
+			{
+				break;
+			}
+			if (entry.getValue().contains(path.substring(0, prefixLength)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesSuffix(String path)
+	{
+		int length = path.length();
+		for (Map.Entry<Integer, Set<String>> entry : suffixes.entrySet())
+		{
+			int suffixLength = entry.getKey();
+			if (suffixLength > length)
+			{
+				break;
+			}
+			if (entry.getValue().contains(path.substring(length - suffixLength)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Pattern getCombinedPattern()
+	{
+		Pattern pattern = combinedPattern;
+		if (pattern == null && !regexes.isEmpty())
+		{
+			synchronized (this)
+			{
+				if (combinedPattern == null)
+				{
+					StringBuilder combined = new StringBuilder();
+					for (String regex : regexes)
+					{
+						if (combined.length() > 0)
+						{
+							combined.append('|');
+						}
+						// inline flags such as (?i) only apply up to the end of their group
+						combined.append("(?:").append(regex).append(')'); //$NON-NLS-1$
+					}
+					combinedPattern = Pattern.compile(combined.toString());
+				}
+				pattern = combinedPattern;
+			}
+		}
+		return pattern;
+	}
+
+	private String fold(String value)
+	{
+		if (!ignoreCase)
+		{
+			return value;
+		}
+		char[] chars = null;
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c >= 'A' && c <= 'Z')
+			{
+				if (chars == null)
+				{
+					chars = value.toCharArray();
+				}
+				chars[i] = (char) (c + ('a' - 'A'));
+			}
+		}
+		return (chars == null) ? value : new String(chars);
+	}
+
+	private static void add(Map<Integer, Set<String>> buckets, String value)
+	{
+		Integer length = value.length();
+		Set<String> bucket = buckets.get(length);
+		if (bucket == null)
+		{
+			bucket = new HashSet<String>();
+			buckets.put(length, bucket);
+		}
+		bucket.add(value);
+	}
+}
@@ -248,6 +248,8 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 
 	private PeerCharacterCloser fPeerCharacterCloser;
 
+	private CharacterPairMatcher fPairMatcher;
+
 	private FoldingActionsGroup foldingActionsGroup;
 
 	private ControlListener fWordWrapControlListener;
@@ -491,7 +493,8 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 	{
 		super.configureSourceViewerDecorationSupport(support);
 
-		support.setCharacterPairMatcher(new CharacterPairMatcher(getPairMatchingCharacters()));
+		fPairMatcher = new CharacterPairMatcher(getPairMatchingCharacters());
+		support.setCharacterPairMatcher(fPairMatcher);
 		support.setMatchingCharacterPainterPreferenceKeys(IPreferenceConstants.ENABLE_CHARACTER_PAIR_COLORING,
 				IPreferenceConstants.CHARACTER_PAIR_COLOR);
 	}
@@ -573,7 +576,19 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 			}
 
 			fCommandElementsProvider = null;
-			fPeerCharacterCloser = null;
+
+			if (fPeerCharacterCloser != null)
+			{
+				fPeerCharacterCloser.uninstall();
+				fPeerCharacterCloser = null;
+			}
+
+			// the decoration support only clears the matcher, which would keep listening to the document
+			if (fPairMatcher != null)
+			{
+				fPairMatcher.dispose();
+				fPairMatcher = null;
+			}
 
 			IDragAndDropService dndService = (IDragAndDropService) getSite().getService(IDragAndDropService.class);
 			if (dndService != null)
@@ -7,8 +7,12 @@
  */
 package com.aptana.editor.common;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,6 +45,7 @@ import org.eclipse.ui.texteditor.IDocumentProvider;
 
 import com.aptana.core.util.StringUtil;
 import com.aptana.editor.common.preferences.IPreferenceConstants;
+import com.aptana.editor.common.text.OccurrenceIndex;
 
 /**
  * CommonOccurrenceUpdater
@@ -56,6 +61,10 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 			if (findOccurrencesJob != null) {
 				findOccurrencesJob.cancel();
 			}
+
+			synchronized (indexLock) {
+				documentVersion++;
+			}
 		}
 
 		/*
@@ -63,6 +72,18 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 		 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
 		 */
 		public void documentChanged(DocumentEvent event) {
+			synchronized (indexLock) {
+				documentVersion++;
+
+				if (occurrenceIndex != null && indexedDocument == event.getDocument()) {
+					String text = event.getText();
+					int insertedLength = (text != null) ? text.length() : 0;
+
+					// @formatter:off
+					occurrenceIndex.update(new DocumentCharSequence(event.getDocument()), event.getOffset(), event.getLength(), insertedLength);
+					// @formatter:on
+				}
+			}
 		}
 
 		/*
@@ -73,6 +94,8 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 			if (oldInput != null) {
 				oldInput.removeDocumentListener(this);
 			}
+
+			clearOccurrenceIndex();
 		}
 
 		/*
@@ -99,6 +122,9 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 			if (document != null) {
 				document.addDocumentListener(this);
 			}
+
+			// changes made while not listening are unknown
+			clearOccurrenceIndex();
 		}
 
 		/**
@@ -115,10 +141,65 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 			if (document != null) {
 				document.removeDocumentListener(this);
 			}
+
+			clearOccurrenceIndex();
 		}
 
 	}
 
+	/**
+	 * A view of a document as a character sequence, so words around a change can be read without copying the whole
+	 * document
+	 */
+	private static class DocumentCharSequence implements CharSequence {
+		private IDocument document;
+
+		public DocumentCharSequence(IDocument document) {
+			this.document = document;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.CharSequence#charAt(int)
+		 */
+		public char charAt(int index) {
+			try {
+				return document.getChar(index);
+			} catch (BadLocationException e) {
+				throw new IndexOutOfBoundsException(e.getMessage());
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.CharSequence#length()
+		 */
+		public int length() {
+			return document.getLength();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.CharSequence#subSequence(int, int)
+		 */
+		public CharSequence subSequence(int start, int end) {
+			try {
+				return document.get(start, end - start);
+			} catch (BadLocationException e) {
+				throw new IndexOutOfBoundsException(e.getMessage());
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return document.get();
+		}
+	}
+
 	private class FindOccurrencesJob extends Job {
 		private IDocument document;
 		private ITextSelection selection;
@@ -192,45 +273,78 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 		protected IStatus run(IProgressMonitor monitor) {
 			IStatus status = Status.OK_STATUS;
 
-			// start with an empty map in case we need to delete existing markers later
-			Map<Annotation, Position> annotationMap = new HashMap<Annotation, Position>();
+			// start with an empty set in case we need to delete existing markers later
+			Set<Position> positions = new HashSet<Position>();
 
 			if (editor.isMarkingOccurrences()) {
 				// find a "word" to search using the current selection
 				String word = getWord();
 
 				if (word != null && word.length() > 0) {
-					String source = document.get();
-					Pattern wordPattern = createWordPattern(word);
-					Matcher matcher = wordPattern.matcher(source);
+					int[] offsets = OccurrenceIndex.isWord(word) ? getOccurrenceOffsets(document, word) : null;
 
-					while (matcher.find()) {
-						if (monitor.isCanceled()) {
-							status = Status.CANCEL_STATUS;
-							break;
+					if (offsets != null) {
+						for (int offset : offsets) {
+							positions.add(new Position(offset, word.length()));
 						}
+					} else {
+						String source = document.get();
+						Pattern wordPattern = createWordPattern(word);
+						Matcher matcher = wordPattern.matcher(source);
 
-						int start = matcher.start();
-						int length = matcher.end() - start;
+						while (matcher.find()) {
+							if (monitor.isCanceled()) {
+								status = Status.CANCEL_STATUS;
+								break;
+							}
 
-						// @formatter:off
-						annotationMap.put(new Annotation(ANNOTION_ID, false, ANNOTION_DESCRIPTION), new Position(start, length));
-						// @formatter:on
+							int start = matcher.start();
+							int length = matcher.end() - start;
+
+							positions.add(new Position(start, length));
+						}
 					}
 				}
 			}
 
+			if (monitor.isCanceled()) {
+				status = Status.CANCEL_STATUS;
+			}
+
 			if (status == Status.OK_STATUS) {
 				// NOTE: We always update the annotation model even if we didn't find a word so we can clear the
 				// current occurrences
 				synchronized (getAnnotationModelLock(model)) {
-					if (model instanceof IAnnotationModelExtension) {
+					// keep the annotations that are already at an occurrence, so moving within a word changes nothing
+					List<Annotation> kept = new ArrayList<Annotation>();
+					List<Annotation> removed = new ArrayList<Annotation>();
+
+					if (annotations != null) {
+						for (Annotation annotation : annotations) {
+							Position position = model.getPosition(annotation);
+
+							if (position != null && positions.remove(position)) {
+								kept.add(annotation);
+							} else {
+								removed.add(annotation);
+							}
+						}
+					}
+
+					Map<Annotation, Position> annotationMap = new HashMap<Annotation, Position>();
+
+					for (Position position : positions) {
+						annotationMap.put(new Annotation(ANNOTION_ID, false, ANNOTION_DESCRIPTION), position);
+					}
+
+					if (model instanceof IAnnotationModelExtension && (!removed.isEmpty() || !annotationMap.isEmpty())) {
 						// @formatter:off
-						((IAnnotationModelExtension) model).replaceAnnotations(annotations, annotationMap);
+						((IAnnotationModelExtension) model).replaceAnnotations(removed.toArray(new Annotation[removed.size()]), annotationMap);
 						// @formatter:on
 					}
 
-					annotations = annotationMap.keySet().toArray(new Annotation[annotationMap.keySet().size()]);
+					kept.addAll(annotationMap.keySet());
+					annotations = kept.toArray(new Annotation[kept.size()]);
 				}
 			}
 
@@ -248,6 +362,15 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 	private FindOccurrencesJob findOccurrencesJob;
 	private CancelerJob cancelerJob;
 
+	/**
+	 * The words of the document, built on the first lookup and kept up to date as the document changes. The version
+	 * is odd while the document is being changed.
+	 */
+	private final Object indexLock = new Object();
+	private OccurrenceIndex occurrenceIndex;
+	private IDocument indexedDocument;
+	private int documentVersion;
+
 	/**
 	 * CommonOccurrencesUpdater
 	 * 
@@ -279,6 +402,54 @@ public class CommonOccurrencesUpdater implements IPropertyChangeListener {
 		return Pattern.compile(regexSource);
 	}
 
+	/**
+	 * clearOccurrenceIndex
+	 */
+	private void clearOccurrenceIndex() {
+		synchronized (indexLock) {
+			occurrenceIndex = null;
+			indexedDocument = null;
+		}
+	}
+
+	/**
+	 * Returns the sorted offsets of the word in the document, indexing the words of the document first if needed.
+	 * Returns null if the document changed while indexing
+	 * 
+	 * @param document
+	 * @param word
+	 * @return
+	 */
+	private int[] getOccurrenceOffsets(IDocument document, String word) {
+		int version;
+
+		synchronized (indexLock) {
+			if (occurrenceIndex != null && indexedDocument == document) {
+				return occurrenceIndex.getOffsets(word);
+			}
+
+			version = documentVersion;
+		}
+
+		if (version % 2 != 0) {
+			// the document is being changed
+			return null;
+		}
+
+		OccurrenceIndex index = new OccurrenceIndex(document.get());
+
+		synchronized (indexLock) {
+			if (version != documentVersion) {
+				return null;
+			}
+
+			occurrenceIndex = index;
+			indexedDocument = document;
+
+			return index.getOffsets(word);
+		}
+	}
+
 	/**
 	 * getAnnotationModel
 	 * 
@@ -27,7 +27,6 @@ import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.text.source.ICharacterPairMatcher;
 
-import com.aptana.core.util.ArrayUtil;
 import com.aptana.editor.common.CommonEditorPlugin;
 import com.aptana.editor.common.text.rules.CompositePartitionScanner;
 import com.aptana.scope.IScopeSelector;
@@ -50,6 +49,11 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 	private final CharPairs fPairs;
 	private final String fPartitioning;
 
+	/**
+	 * The pair characters of the last matched document, so matching doesn't read the document char by char.
+	 */
+	private PairIndex fIndex;
+
 	/**
 	 * Avoid looking up scopes and matching scopes all the time by caching if a given partition type is a comment.
 	 */
@@ -105,6 +109,11 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 	/* @see ICharacterPairMatcher#dispose() */
 	public void dispose()
 	{
+		if (fIndex != null)
+		{
+			fIndex.dispose();
+			fIndex = null;
+		}
 	}
 
 	/* @see ICharacterPairMatcher#clear() */
@@ -225,44 +234,9 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 	private int searchBackwards(IDocument doc, int searchStartPosition, char startChar, char endChar,
 			String partitionType) throws BadLocationException
 	{
-		int stack = 0;
-		ITypedRegion[] partitions = computePartitioning(doc, 0, searchStartPosition + 1);
-		// reverse the partitions
-		partitions = ArrayUtil.reverse(partitions);
-		for (ITypedRegion p : partitions)
-		{
-			// skip other partitions that don't match our source partition
-			if (skipPartition(p.getType(), partitionType))
-			{
-				continue;
-			}
-			int partitionOffset = p.getOffset();
-			int partitionEnd = partitionOffset + p.getLength() - 1;
-			int startOffset = Math.min(searchStartPosition, partitionEnd);
-			int length = startOffset - partitionOffset;
-			String contents = doc.get(partitionOffset, length + 1);
-			// Now search backwards through the partition for the end char
-			for (int i = length; i >= 0; i--)
-			{
-				char c = contents.charAt(i);
-				if (c == endChar) // found end char!
-				{
-					if (stack == 0)
-					{
-						return partitionOffset + i;
-					}
-					else
-					{
-						stack--;
-					}
-				}
-				else if (c == startChar)
-				{
-					stack++;
-				}
-			}
-		}
-		return -1;
+		// going backwards the end char opens the pair
+		return getIndex(doc).searchBackward(searchStartPosition, startChar, endChar,
+				new PartitionFilter(partitionType));
 	}
 
 	protected ITypedRegion[] computePartitioning(IDocument doc, int offset, int length) throws BadLocationException
@@ -273,68 +247,37 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 	private int searchForward(IDocument doc, int searchStartPosition, char startChar, char endChar,
 			String startPartition) throws BadLocationException
 	{
-		int stack = 0;
-		ITypedRegion[] partitions = computePartitioning(doc, searchStartPosition, doc.getLength() - searchStartPosition);
-		for (ITypedRegion p : partitions)
+		return getIndex(doc).searchForward(searchStartPosition, startChar, endChar,
+				new PartitionFilter(startPartition));
+	}
+
+	/**
+	 * Returns the index of the document's pair characters, replacing the index of a previously matched document.
+	 * 
+	 * @param doc
+	 * @return
+	 */
+	private PairIndex getIndex(IDocument doc)
+	{
+		if (fIndex == null || fIndex.getDocument() != doc)
 		{
-			// skip other partitions that don't match our source partition
-			if (skipPartition(p.getType(), startPartition))
-			{
-				continue;
-			}
-			// Now search through the partition for the end char
-			int partitionLength = p.getLength();
-			int partitionEnd = p.getOffset() + partitionLength;
-			int startOffset = Math.max(searchStartPosition, p.getOffset());
-			int length = partitionEnd - startOffset;
-			String partitionContents = doc.get(startOffset, length);
-			for (int i = 0; i < length; i++)
+			dispose();
+			fIndex = new PairIndex(doc, fPairs.fPairs, new PairIndex.IPartitionSource()
 			{
-				char c = partitionContents.charAt(i);
-				if (c == endChar)
+				public ITypedRegion[] computePartitioning(IDocument document, int offset, int length)
+						throws BadLocationException
 				{
-					if (stack == 0)
-					{
-						// it's a match
-						return i + startOffset;
-					}
-					else
-					{
-						// need to close nested pair
-						stack--;
-					}
+					return CharacterPairMatcher.this.computePartitioning(document, offset, length);
 				}
-				else if (c == startChar)
-				{
-					// open nested pair
-					stack++;
-				}
-			}
+			});
 		}
-		return -1;
+		return fIndex;
 	}
 
-	private boolean areSwitchPartitions(String partition1, String partition2)
+	private static boolean isSwitchPartition(String partition)
 	{
-		return (CompositePartitionScanner.START_SWITCH_TAG.equals(partition1) || CompositePartitionScanner.END_SWITCH_TAG
-				.equals(partition1))
-				&& (CompositePartitionScanner.START_SWITCH_TAG.equals(partition2) || CompositePartitionScanner.END_SWITCH_TAG
-						.equals(partition2));
-	}
-
-	private boolean skipPartition(String toCheck, String originalPartition)
-	{
-		if (toCheck == null)
-		{
-			return true;
-		}
-		// don't skip same partition
-		if (toCheck.equals(originalPartition))
-		{
-			return false;
-		}
-		// If they're both language switch partitions, don't skip.
-		return !areSwitchPartitions(toCheck, originalPartition);
+		return CompositePartitionScanner.START_SWITCH_TAG.equals(partition)
+				|| CompositePartitionScanner.END_SWITCH_TAG.equals(partition);
 	}
 
 	protected String getScopeAtOffset(IDocument doc, int charOffset) throws BadLocationException
@@ -362,14 +305,7 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 			}
 		}
 		// Now check leading source and see if we're an unclosed pair.
-		String previous = document.get(beginning, offset - beginning);
-		boolean open = false;
-		int index = -1;
-		while ((index = previous.indexOf(c, index + 1)) != -1)
-		{
-			open = !open;
-		}
-		return open;
+		return getIndex(document).count(c, beginning, offset) % 2 == 1;
 	}
 
 	protected boolean isComment(IDocument doc, ITypedRegion partition) throws BadLocationException
@@ -384,6 +320,55 @@ public class CharacterPairMatcher implements ICharacterPairMatcher
 		return isComment;
 	}
 
+	/**
+	 * Accepts the partitions a match may span from the given partition: the same partition type, or any language switch
+	 * partition for a language switch partition.
+	 */
+	private static class PartitionFilter implements PairIndex.ITypeFilter
+	{
+		private final String fType;
+		private final boolean fSwitch;
+
+		public PartitionFilter(String type)
+		{
+			fType = type;
+			fSwitch = isSwitchPartition(type);
+		}
+
+		public boolean accept(String type)
+		{
+			if (type == null)
+			{
+				return false;
+			}
+			// don't skip same partition
+			if (type.equals(fType))
+			{
+				return true;
+			}
+			// If they're both language switch partitions, don't skip.
+			return fSwitch && isSwitchPartition(type);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof PartitionFilter))
+			{
+				return false;
+			}
+			PartitionFilter other = (PartitionFilter) obj;
+			// all language switch partitions accept the same types
+			return fSwitch ? other.fSwitch : (!other.fSwitch && fType != null && fType.equals(other.fType));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (fSwitch || fType == null) ? 0 : fType.hashCode();
+		}
+	}
+
 	/**
 	 * Utility class that encapsulates access to matching character pairs.
 	 */
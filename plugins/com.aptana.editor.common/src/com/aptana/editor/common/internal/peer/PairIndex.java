@@ -0,0 +1,880 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.internal.peer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+
+/**
+ * An index of the pair characters of a document and the partition type each of them is in. The index listens to the
+ * document: a change only re-reads the inserted text, and a partitioning change only looks up the types of the
+ * characters in the changed region again. Characters are kept in blocks whose offsets move as a whole, and each block
+ * caches the balance of the pairs it holds, so pair searches and counts skip whole blocks instead of reading the
+ * document one character at a time. This class is not thread-safe.
+ */
+public class PairIndex implements IDocumentListener, IDocumentPartitioningListener,
+		IDocumentPartitioningListenerExtension
+{
+	/**
+	 * The largest number of characters in a block before it is split in two
+	 */
+	private static final int MAX_BLOCK_SIZE = 512;
+
+	/**
+	 * Computes the partitions that give the indexed characters their type
+	 */
+	public interface IPartitionSource
+	{
+		ITypedRegion[] computePartitioning(IDocument document, int offset, int length) throws BadLocationException;
+	}
+
+	/**
+	 * Decides which partition types take part in a search. Block summaries are cached per filter, so implementations
+	 * must implement equals and hashCode
+	 */
+	public interface ITypeFilter
+	{
+		boolean accept(String type);
+	}
+
+	/**
+	 * A filter that accepts every character, whatever its partition
+	 */
+	public static final ITypeFilter ALL_TYPES = new ITypeFilter()
+	{
+		public boolean accept(String type)
+		{
+			return true;
+		}
+	};
+
+	private static class Entry
+	{
+		// relative to the block offset
+		int offset;
+		final char character;
+		String type;
+
+		Entry(int offset, char character)
+		{
+			this.offset = offset;
+			this.character = character;
+		}
+	}
+
+	/**
+	 * A run of consecutive characters and the summaries of the searches that went through it
+	 */
+	private static class Block
+	{
+		int offset;
+		final List<Entry> entries;
+		Map<SummaryKey, Summary> summaries;
+
+		Block(int offset)
+		{
+			this.offset = offset;
+			this.entries = new ArrayList<Entry>();
+		}
+
+		int getOffset(int index)
+		{
+			return offset + entries.get(index).offset;
+		}
+
+		Summary getSummary(char open, char close, ITypeFilter filter)
+		{
+			SummaryKey key = new SummaryKey(open, close, filter);
+
+			if (summaries == null)
+			{
+				summaries = new HashMap<SummaryKey, Summary>();
+			}
+
+			Summary summary = summaries.get(key);
+
+			if (summary == null)
+			{
+				summary = new Summary();
+
+				for (Entry entry : entries)
+				{
+					summary.add(weight(entry, open, close, filter));
+				}
+
+				int suffix = 0;
+
+				for (int i = entries.size() - 1; i >= 0; i--)
+				{
+					suffix += weight(entries.get(i), open, close, filter);
+					summary.minSuffix = Math.min(summary.minSuffix, suffix);
+				}
+
+				summaries.put(key, summary);
+			}
+
+			return summary;
+		}
+
+		void changed()
+		{
+			summaries = null;
+		}
+	}
+
+	private static class SummaryKey
+	{
+		final char open;
+		final char close;
+		final ITypeFilter filter;
+
+		SummaryKey(char open, char close, ITypeFilter filter)
+		{
+			this.open = open;
+			this.close = close;
+			this.filter = filter;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof SummaryKey))
+			{
+				return false;
+			}
+
+			SummaryKey other = (SummaryKey) obj;
+
+			return open == other.open && close == other.close && filter.equals(other.filter);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (31 * open + close) * 31 + filter.hashCode();
+		}
+	}
+
+	/**
+	 * The balance of a run of characters, where an opening character counts as one and a closing character as minus
+	 * one
+	 */
+	static class Summary
+	{
+		int net;
+		int minPrefix;
+		int minSuffix;
+		int count;
+
+		void add(int weight)
+		{
+			if (weight != 0)
+			{
+				net += weight;
+				minPrefix = Math.min(minPrefix, net);
+				count++;
+			}
+		}
+
+		void add(Summary other)
+		{
+			minPrefix = Math.min(minPrefix, net + other.minPrefix);
+			net += other.net;
+			count += other.count;
+		}
+	}
+
+	private final IDocument document;
+	private final IPartitionSource source;
+	private final List<Block> blocks;
+	private String characters;
+	private int length;
+
+	// the region whose characters need their types looked up again, empty when dirtyEnd <= dirtyStart
+	private int dirtyStart;
+	private int dirtyEnd;
+
+	// a partitioning change reported while the document is being changed, applied after the change itself
+	private boolean changing;
+	private int pendingStart;
+	private int pendingEnd;
+
+	/**
+	 * PairIndex
+	 *
+	 * @param document
+	 *            the document to index. The index listens to it until it is disposed
+	 * @param characters
+	 *            the characters to index
+	 * @param source
+	 *            the source of the partition types
+	 */
+	public PairIndex(IDocument document, char[] characters, IPartitionSource source)
+	{
+		this.document = document;
+		this.source = source;
+		this.blocks = new ArrayList<Block>();
+		this.characters = new String(characters);
+		this.pendingEnd = -1;
+
+		rebuild();
+		document.addDocumentListener(this);
+		document.addDocumentPartitioningListener(this);
+	}
+
+	/**
+	 * Stop listening to the document
+	 */
+	public void dispose()
+	{
+		document.removeDocumentListener(this);
+		document.removeDocumentPartitioningListener(this);
+	}
+
+	/**
+	 * Returns the indexed document
+	 *
+	 * @return
+	 */
+	public IDocument getDocument()
+	{
+		return document;
+	}
+
+	/**
+	 * Make sure the given characters are indexed, reading the document again if they weren't
+	 *
+	 * @param chars
+	 */
+	public void include(char... chars)
+	{
+		boolean added = false;
+
+		for (char c : chars)
+		{
+			if (characters.indexOf(c) == -1)
+			{
+				characters += c;
+				added = true;
+			}
+		}
+
+		if (added)
+		{
+			rebuild();
+		}
+	}
+
+	/**
+	 * Returns the offset of the first closing character at or after the given offset that isn't balanced by an opening
+	 * character between the two, or -1. Only characters of accepted partition types are considered
+	 *
+	 * @param from
+	 * @param open
+	 * @param close
+	 * @param filter
+	 * @return
+	 * @throws BadLocationException
+	 */
+	public int searchForward(int from, char open, char close, ITypeFilter filter) throws BadLocationException
+	{
+		resolveTypes();
+
+		int depth = 0;
+
+		for (int b = findBlock(from); b < blocks.size(); b++)
+		{
+			Block block = blocks.get(b);
+			List<Entry> entries = block.entries;
+
+			if (entries.isEmpty())
+			{
+				continue;
+			}
+			if (block.getOffset(0) >= from)
+			{
+				Summary summary = block.getSummary(open, close, filter);
+
+				if (depth + summary.minPrefix >= 0)
+				{
+					depth += summary.net;
+					continue;
+				}
+			}
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				int offset = block.getOffset(i);
+
+				if (offset >= from)
+				{
+					depth += weight(entries.get(i), open, close, filter);
+
+					if (depth < 0)
+					{
+						return offset;
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the last closing character at or before the given offset that isn't balanced by an opening
+	 * character between the two, or -1. When searching backwards, the closing character is the start of the pair. Only
+	 * characters of accepted partition types are considered
+	 *
+	 * @param from
+	 * @param open
+	 * @param close
+	 * @param filter
+	 * @return
+	 * @throws BadLocationException
+	 */
+	public int searchBackward(int from, char open, char close, ITypeFilter filter) throws BadLocationException
+	{
+		resolveTypes();
+
+		if (from < 0)
+		{
+			return -1;
+		}
+
+		int depth = 0;
+
+		for (int b = findBlock(from); b >= 0; b--)
+		{
+			Block block = blocks.get(b);
+			List<Entry> entries = block.entries;
+
+			if (entries.isEmpty())
+			{
+				continue;
+			}
+			if (block.getOffset(entries.size() - 1) <= from)
+			{
+				Summary summary = block.getSummary(open, close, filter);
+
+				if (depth + summary.minSuffix >= 0)
+				{
+					depth += summary.net;
+					continue;
+				}
+			}
+
+			for (int i = entries.size() - 1; i >= 0; i--)
+			{
+				int offset = block.getOffset(i);
+
+				if (offset <= from)
+				{
+					depth += weight(entries.get(i), open, close, filter);
+
+					if (depth < 0)
+					{
+						return offset;
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the balance of the given pair over a range of the document. Only characters of accepted partition types
+	 * are considered
+	 *
+	 * @param start
+	 *            the start of the range
+	 * @param end
+	 *            the exclusive end of the range
+	 * @param open
+	 * @param close
+	 * @param filter
+	 * @return
+	 * @throws BadLocationException
+	 */
+	Summary summarize(int start, int end, char open, char close, ITypeFilter filter) throws BadLocationException
+	{
+		resolveTypes();
+
+		Summary result = new Summary();
+
+		for (int b = findBlock(start); b < blocks.size(); b++)
+		{
+			Block block = blocks.get(b);
+			List<Entry> entries = block.entries;
+
+			if (entries.isEmpty())
+			{
+				continue;
+			}
+			if (block.getOffset(0) >= end)
+			{
+				break;
+			}
+			if (block.getOffset(0) >= start && block.getOffset(entries.size() - 1) < end)
+			{
+				result.add(block.getSummary(open, close, filter));
+				continue;
+			}
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				int offset = block.getOffset(i);
+
+				if (offset >= start && offset < end)
+				{
+					result.add(weight(entries.get(i), open, close, filter));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of occurrences of the character in a range of the document, whatever their partition
+	 *
+	 * @param c
+	 * @param start
+	 * @param end
+	 *            the exclusive end of the range
+	 * @return
+	 * @throws BadLocationException
+	 */
+	public int count(char c, int start, int end) throws BadLocationException
+	{
+		return summarize(start, end, c, c, ALL_TYPES).count;
+	}
+
+	/**
+	 * Returns how a character counts towards the balance of a pair: one for an opening character and minus one for a
+	 * closing character. The closing character wins when both are the same
+	 *
+	 * @param entry
+	 * @param open
+	 * @param close
+	 * @param filter
+	 * @return
+	 */
+	private static int weight(Entry entry, char open, char close, ITypeFilter filter)
+	{
+		char c = entry.character;
+
+		if ((c != close && c != open) || !filter.accept(entry.type))
+		{
+			return 0;
+		}
+
+		return (c == close) ? -1 : 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public void documentAboutToBeChanged(DocumentEvent event)
+	{
+		changing = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public void documentChanged(DocumentEvent event)
+	{
+		changing = false;
+
+		if (length != event.getLength() + document.getLength() - length(event.getText()))
+		{
+			// we missed a change
+			rebuild();
+		}
+		else
+		{
+			String text = event.getText();
+			update(event.getOffset(), event.getLength(), (text == null) ? "" : text); //$NON-NLS-1$
+		}
+
+		if (pendingEnd >= 0)
+		{
+			markDirty(pendingStart, pendingEnd);
+			pendingEnd = -1;
+		}
+	}
+
+	private static int length(String text)
+	{
+		return (text == null) ? 0 : text.length();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListener#documentPartitioningChanged(org.eclipse.jface.text.IDocument
+	 * )
+	 */
+	public void documentPartitioningChanged(IDocument doc)
+	{
+		documentPartitioningChanged(doc, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListenerExtension#documentPartitioningChanged(org.eclipse.jface.text
+	 * .IDocument, org.eclipse.jface.text.IRegion)
+	 */
+	public void documentPartitioningChanged(IDocument doc, IRegion region)
+	{
+		int start = (region == null) ? 0 : region.getOffset();
+		int end = (region == null) ? Integer.MAX_VALUE : region.getOffset() + region.getLength();
+
+		if (changing)
+		{
+			// the region is in the coordinates of the changed document, which the index hasn't caught up with yet
+			pendingStart = (pendingEnd < 0) ? start : Math.min(pendingStart, start);
+			pendingEnd = Math.max(pendingEnd, end);
+		}
+		else
+		{
+			markDirty(start, end);
+		}
+	}
+
+	/**
+	 * Read all indexed characters of the document again
+	 */
+	private void rebuild()
+	{
+		blocks.clear();
+		blocks.add(new Block(0));
+		addEntries(document.get(), 0, 0, 0);
+		splitBlock(0);
+
+		length = document.getLength();
+		dirtyStart = 0;
+		dirtyEnd = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Update the index after a change of the document
+	 *
+	 * @param offset
+	 * @param removedLength
+	 * @param text
+	 *            the inserted text
+	 */
+	private void update(int offset, int removedLength, String text)
+	{
+		int changeEnd = offset + removedLength;
+		int delta = text.length() - removedLength;
+
+		// find the first character at or after the change
+		int blockIndex = findBlock(offset);
+		Block block = blocks.get(blockIndex);
+		int index = 0;
+
+		while (index < block.entries.size() && block.getOffset(index) < offset)
+		{
+			index++;
+		}
+
+		// drop the characters of the replaced text
+		int lastBlockIndex = blockIndex;
+		int lastIndex = index;
+
+		while (lastBlockIndex < blocks.size())
+		{
+			Block current = blocks.get(lastBlockIndex);
+			int end = lastIndex;
+
+			while (end < current.entries.size() && current.getOffset(end) < changeEnd)
+			{
+				end++;
+			}
+
+			if (end > lastIndex)
+			{
+				current.entries.subList(lastIndex, end).clear();
+				current.changed();
+			}
+			if (lastIndex < current.entries.size())
+			{
+				break;
+			}
+
+			lastBlockIndex++;
+			lastIndex = 0;
+		}
+
+		// move the characters that follow the change
+		if (delta != 0 && lastBlockIndex < blocks.size())
+		{
+			int nextBlockIndex = lastBlockIndex;
+
+			if (lastIndex > 0)
+			{
+				List<Entry> entries = blocks.get(lastBlockIndex).entries;
+
+				for (int i = lastIndex; i < entries.size(); i++)
+				{
+					entries.get(i).offset += delta;
+				}
+
+				nextBlockIndex++;
+			}
+
+			for (int i = nextBlockIndex; i < blocks.size(); i++)
+			{
+				blocks.get(i).offset += delta;
+			}
+		}
+
+		// read the inserted text
+		int added = addEntries(text, offset, blockIndex, index);
+
+		dirtyStart = adjust(dirtyStart, offset, changeEnd, delta);
+		dirtyEnd = (dirtyEnd == Integer.MAX_VALUE) ? dirtyEnd : adjust(dirtyEnd, offset, changeEnd, delta);
+
+		if (added > 0)
+		{
+			markDirty(offset, offset + text.length());
+		}
+
+		// drop emptied blocks after the changed one and keep the changed one a reasonable size
+		int emptied = Math.min(lastBlockIndex, blocks.size()) - blockIndex - 1;
+
+		if (emptied > 0)
+		{
+			blocks.subList(blockIndex + 1, blockIndex + 1 + emptied).clear();
+		}
+		if (block.entries.isEmpty() && blocks.size() > 1)
+		{
+			blocks.remove(blockIndex);
+		}
+		else
+		{
+			splitBlock(blockIndex);
+		}
+
+		length = document.getLength();
+	}
+
+	/**
+	 * Returns where an offset ends up after a change. Offsets inside the replaced text move to its start
+	 *
+	 * @param position
+	 * @param offset
+	 * @param changeEnd
+	 * @param delta
+	 * @return
+	 */
+	private static int adjust(int position, int offset, int changeEnd, int delta)
+	{
+		if (position < offset)
+		{
+			return position;
+		}
+		if (position >= changeEnd)
+		{
+			return position + delta;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Add a range to the region whose characters need their types looked up again
+	 *
+	 * @param start
+	 * @param end
+	 */
+	private void markDirty(int start, int end)
+	{
+		if (dirtyEnd <= dirtyStart)
+		{
+			dirtyStart = start;
+			dirtyEnd = end;
+		}
+		else
+		{
+			dirtyStart = Math.min(dirtyStart, start);
+			dirtyEnd = Math.max(dirtyEnd, end);
+		}
+	}
+
+	/**
+	 * Look up the partition types of the characters in the dirty region
+	 *
+	 * @throws BadLocationException
+	 */
+	private void resolveTypes() throws BadLocationException
+	{
+		int start = Math.max(0, dirtyStart);
+		int end = Math.min(length, dirtyEnd);
+
+		if (end <= start)
+		{
+			dirtyEnd = dirtyStart;
+			return;
+		}
+
+		ITypedRegion[] regions = source.computePartitioning(document, start, end - start);
+		int region = 0;
+
+		for (int b = findBlock(start); b < blocks.size(); b++)
+		{
+			Block block = blocks.get(b);
+			List<Entry> entries = block.entries;
+
+			if (!entries.isEmpty() && block.getOffset(0) >= end)
+			{
+				break;
+			}
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				int offset = block.getOffset(i);
+
+				if (offset < start || offset >= end)
+				{
+					continue;
+				}
+
+				while (region < regions.length && regions[region].getOffset() + regions[region].getLength() <= offset)
+				{
+					region++;
+				}
+
+				Entry entry = entries.get(i);
+
+				if (region < regions.length && regions[region].getOffset() <= offset)
+				{
+					entry.type = regions[region].getType();
+				}
+				else
+				{
+					entry.type = null;
+				}
+			}
+
+			block.changed();
+		}
+
+		dirtyEnd = dirtyStart;
+	}
+
+	/**
+	 * Returns the index of the first block with a character at or after the offset, or the last block
+	 *
+	 * @param offset
+	 * @return
+	 */
+	private int findBlock(int offset)
+	{
+		int low = 0;
+		int high = blocks.size() - 1;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			Block block = blocks.get(middle);
+
+			if (block.entries.isEmpty() || block.getOffset(block.entries.size() - 1) < offset)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Add the indexed characters of the text, which starts at the given offset of the document, to a block. The new
+	 * characters have no type until it is looked up
+	 *
+	 * @param text
+	 * @param offset
+	 * @param blockIndex
+	 * @param index
+	 * @return the number of characters added
+	 */
+	private int addEntries(String text, int offset, int blockIndex, int index)
+	{
+		Block block = blocks.get(blockIndex);
+		List<Entry> added = new ArrayList<Entry>();
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+
+			if (characters.indexOf(c) != -1)
+			{
+				added.add(new Entry(offset + i - block.offset, c));
+			}
+		}
+
+		if (!added.isEmpty())
+		{
+			block.entries.addAll(index, added);
+			block.changed();
+		}
+
+		return added.size();
+	}
+
+	/**
+	 * Split the block at the given index into blocks of at most half the maximum size, if it grew too large
+	 *
+	 * @param blockIndex
+	 */
+	private void splitBlock(int blockIndex)
+	{
+		Block block = blocks.get(blockIndex);
+		int size = block.entries.size();
+
+		if (size <= MAX_BLOCK_SIZE)
+		{
+			return;
+		}
+
+		int chunk = MAX_BLOCK_SIZE / 2;
+		List<Block> split = new ArrayList<Block>();
+
+		for (int start = 0; start < size; start += chunk)
+		{
+			Block part = new Block(block.offset);
+			part.entries.addAll(block.entries.subList(start, Math.min(size, start + chunk)));
+			split.add(part);
+		}
+
+		blocks.remove(blockIndex);
+		blocks.addAll(blockIndex, split);
+	}
+}
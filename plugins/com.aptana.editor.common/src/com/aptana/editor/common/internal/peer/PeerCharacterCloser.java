@@ -33,6 +33,7 @@ import org.eclipse.jface.text.link.LinkedModeUI;
 import org.eclipse.jface.text.link.LinkedPosition;
 import org.eclipse.jface.text.link.LinkedPositionGroup;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.custom.VerifyKeyListener;
 import org.eclipse.swt.events.VerifyEvent;
 import org.eclipse.swt.graphics.Point;
@@ -66,6 +67,11 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 	private boolean autoInsertEnabled = true;
 	private boolean autoWrapEnabled = true;
 
+	/**
+	 * The pair characters of the last checked document, so typing a pair character doesn't read the whole document.
+	 */
+	private PairIndex pairIndex;
+
 	public PeerCharacterCloser(ITextViewer textViewer)
 	{
 		this.textViewer = textViewer;
@@ -76,6 +82,26 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 		textViewer.getTextWidget().addVerifyKeyListener(this);
 	}
 
+	/**
+	 * Removes the listeners added to the text widget and to the last checked document.
+	 */
+	public void uninstall()
+	{
+		if (textViewer != null)
+		{
+			StyledText textWidget = textViewer.getTextWidget();
+			if (textWidget != null && !textWidget.isDisposed())
+			{
+				textWidget.removeVerifyKeyListener(this);
+			}
+		}
+		if (pairIndex != null)
+		{
+			pairIndex.dispose();
+			pairIndex = null;
+		}
+	}
+
 	/**
 	 * @see org.eclipse.swt.custom.VerifyKeyListener#verifyKey(org.eclipse.swt.events.VerifyEvent)
 	 */
@@ -265,84 +291,23 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 			int index = partition.indexOf('_', 2);
 			String prefix = partition.substring(0, index);
 
-			// Iterate through partitions sharing same prefix, which is a hacky way of doing "same language"
-			int stackLevel = 0;
-			ITypedRegion[] partitions = computePartitioning(document, 0, document.getLength());
-			for (ITypedRegion part : partitions)
+			// Only count the pairs of partitions sharing same prefix, which is a hacky way of doing "same language"
+			PairIndex.ITypeFilter filter = new LanguageFilter(prefix);
+			PairIndex pairs = getIndex(document, openingChar, closingCharacter);
+			if (openingChar == closingCharacter)
 			{
-				// HACK We skip comment or string partitions here. We rely on naming convention for partitions to do so!
-				if (part.getType().contains("_comment") || part.getType().contains("_string") //$NON-NLS-1$ //$NON-NLS-2$
-						|| !part.getType().startsWith(prefix))
-				{
-					continue;
-				}
-
-				int start = part.getOffset();
-				int end = start + part.getLength();
-				if (offset > start)
-				{
-					int beforeEnd = end;
-					// read up until offset
-					if (offset < end)
-					{
-						beforeEnd = offset;
-					}
-					String before = document.get(start, beforeEnd - start);
-					if (before.trim().length() != 0) // skip whitespace only partitions for perf reasons
-					{
-						for (int i = 0; i < before.length(); i++)
-						{
-
-							char c = before.charAt(i);
-							if (c == openingChar && openingChar == closingCharacter)
-							{
-								stackLevel++;
-								stackLevel = stackLevel % 2;
-							}
-							else if (c == openingChar)
-							{
-								stackLevel++;
-							}
-							else if (c == closingCharacter)
-							{
-								stackLevel--;
-							}
-						}
-					}
-				}
-				if (offset < end)
-				{
-					int startAfter = start;
-					if (offset > start)
-					{
-						startAfter = offset;
-					}
-					String after = document.get(startAfter, end - startAfter);
+				return pairs.summarize(0, document.getLength(), openingChar, closingCharacter, filter).count % 2 != 0;
+			}
 
-					// offsets to match for comment scope
-					// matching
-					for (int i = 0; i < after.length(); i++)
-					{
-						char c = after.charAt(i);
-						if (c == openingChar && openingChar == closingCharacter)
-						{
-							stackLevel++;
-							stackLevel = stackLevel % 2;
-						}
-						else if (c == openingChar)
-						{
-							stackLevel++;
-						}
-						else if (c == closingCharacter)
-						{
-							stackLevel--;
-							if (stackLevel < 0)
-								return true;
-						}
-					}
-				}
+			PairIndex.Summary before = pairs.summarize(0, offset, openingChar, closingCharacter, filter);
+			PairIndex.Summary after = pairs.summarize(offset, document.getLength(), openingChar, closingCharacter,
+					filter);
+			// a close char after the offset that has no open char before it
+			if (before.net + after.minPrefix < 0)
+			{
+				return true;
 			}
-			return stackLevel != 0;
+			return before.net + after.net != 0;
 		}
 		catch (BadLocationException e)
 		{
@@ -351,6 +316,38 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 		return false;
 	}
 
+	/**
+	 * Returns the index of the document's pair characters, replacing the index of a previously checked document.
+	 * 
+	 * @param document
+	 * @param chars
+	 *            the characters that need to be indexed
+	 * @return
+	 */
+	private PairIndex getIndex(IDocument document, char... chars)
+	{
+		if (pairIndex == null || pairIndex.getDocument() != document)
+		{
+			if (pairIndex != null)
+			{
+				pairIndex.dispose();
+			}
+			pairIndex = new PairIndex(document, chars, new PairIndex.IPartitionSource()
+			{
+				public ITypedRegion[] computePartitioning(IDocument doc, int offset, int length)
+						throws BadLocationException
+				{
+					return PeerCharacterCloser.this.computePartitioning(doc, offset, length);
+				}
+			});
+		}
+		else
+		{
+			pairIndex.include(chars);
+		}
+		return pairIndex;
+	}
+
 	protected ITypedRegion[] computePartitioning(IDocument document, int offset, int length)
 			throws BadLocationException
 	{
@@ -382,25 +379,9 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 				// ignore
 			}
 		}
-		// Now check leading source and see if we're an unclosed pair.
-		String previous = document.get(beginning, offset - beginning);
-		boolean open = false;
-		int index = -1;
-		while ((index = previous.indexOf(c, index + 1)) != -1)
-		{
-			// if (ignoreScope(document, beginning + index))
-			// continue;
-			open = !open;
-			if (open)
-			{
-				c = closingCharacter;
-			}
-			else
-			{
-				c = event.character;
-			}
-		}
-		return open;
+		// Now check leading source and see if we're an unclosed pair. The typed char closes itself, so every
+		// occurrence toggles between open and closed
+		return getIndex(document, c).count(c, beginning, offset) % 2 == 1;
 	}
 
 	protected ITypedRegion getPartition(IDocumentExtension3 ext, String defaultPartitioning, int offset, boolean b)
@@ -532,6 +513,38 @@ public class PeerCharacterCloser implements VerifyKeyListener, ILinkedModeListen
 		Position fSecondPosition;
 	}
 
+	/**
+	 * Accepts the code partitions of a language, identified by the prefix of their type.
+	 */
+	private static class LanguageFilter implements PairIndex.ITypeFilter
+	{
+		private final String prefix;
+
+		public LanguageFilter(String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		public boolean accept(String type)
+		{
+			// HACK We skip comment or string partitions here. We rely on naming convention for partitions to do so!
+			return type != null && !type.contains("_comment") && !type.contains("_string") //$NON-NLS-1$ //$NON-NLS-2$
+					&& type.startsWith(prefix);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof LanguageFilter && prefix.equals(((LanguageFilter) obj).prefix);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return prefix.hashCode();
+		}
+	}
+
 	/**
 	 * Position updater that takes any changes at the borders of a position to not belong to the position.
 	 */
@@ -0,0 +1,405 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the words of a document, where a word is a maximal run of unicode identifier characters. Looking up the
+ * occurrences of a word is a hash lookup, and a document change only re-reads the words around the changed text.
+ * Occurrences are kept in blocks whose offsets move as a whole, so the words after a change are shifted one block at a
+ * time rather than one by one. This class is not thread-safe.
+ */
+public class OccurrenceIndex
+{
+	/**
+	 * The largest number of occurrences in a block before it is split in two
+	 */
+	private static final int MAX_BLOCK_SIZE = 512;
+
+	/**
+	 * A run of consecutive occurrences. Occurrence starts are relative to the block offset
+	 */
+	private static class Block
+	{
+		int offset;
+		List<Occurrence> occurrences;
+
+		Block(int offset)
+		{
+			this.offset = offset;
+			this.occurrences = new ArrayList<Occurrence>();
+		}
+	}
+
+	/**
+	 * All occurrences of one word, in no particular order
+	 */
+	private static class Word
+	{
+		final String text;
+		final List<Occurrence> occurrences;
+
+		Word(String text)
+		{
+			this.text = text;
+			this.occurrences = new ArrayList<Occurrence>();
+		}
+	}
+
+	private static class Occurrence
+	{
+		final Word word;
+		Block block;
+		int start;
+		// position within the occurrences of the word, for constant time removal
+		int index;
+
+		Occurrence(Word word)
+		{
+			this.word = word;
+		}
+
+		int getStart()
+		{
+			return block.offset + start;
+		}
+
+		int getEnd()
+		{
+			return block.offset + start + word.text.length();
+		}
+	}
+
+	private final List<Block> blocks;
+	private final Map<String, Word> words;
+
+	/**
+	 * OccurrenceIndex
+	 *
+	 * @param text
+	 *            the text of the document
+	 */
+	public OccurrenceIndex(CharSequence text)
+	{
+		blocks = new ArrayList<Block>();
+		words = new HashMap<String, Word>();
+
+		Block block = new Block(0);
+		blocks.add(block);
+		addWords(text, 0, text.length(), block, 0);
+		splitBlock(0);
+	}
+
+	/**
+	 * Returns true if the text is a single word of this index
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static boolean isWord(String text)
+	{
+		if (text == null || text.length() == 0)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (!Character.isUnicodeIdentifierPart(text.charAt(i)))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the sorted offsets at which the word occurs. The text is only found where it is a whole word
+	 *
+	 * @param word
+	 * @return
+	 */
+	public int[] getOffsets(String word)
+	{
+		Word entry = words.get(word);
+
+		if (entry == null)
+		{
+			return new int[0];
+		}
+
+		int[] result = new int[entry.occurrences.size()];
+
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = entry.occurrences.get(i).getStart();
+		}
+
+		Arrays.sort(result);
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of distinct words in the index
+	 *
+	 * @return
+	 */
+	public int getWordCount()
+	{
+		return words.size();
+	}
+
+	/**
+	 * Update the index after a change of the document. The words touching the replaced text are dropped and the words
+	 * of the text between them are read again.
+	 *
+	 * @param text
+	 *            the text of the document after the change
+	 * @param offset
+	 *            the offset of the change
+	 * @param removedLength
+	 *            the length of the replaced text
+	 * @param insertedLength
+	 *            the length of the new text
+	 */
+	public void update(CharSequence text, int offset, int removedLength, int insertedLength)
+	{
+		int delta = insertedLength - removedLength;
+		int changeEnd = offset + removedLength;
+
+		// find the first occurrence that touches or follows the change
+		int blockIndex = findBlock(offset);
+		Block block = blocks.get(blockIndex);
+		int index = 0;
+
+		while (index < block.occurrences.size() && block.occurrences.get(index).getEnd() < offset)
+		{
+			index++;
+		}
+
+		// drop the occurrences that touch the change. The words they belonged to may have changed
+		int regionStart = offset;
+		int regionEnd = changeEnd;
+		int lastBlockIndex = blockIndex;
+		int lastIndex = index;
+
+		while (lastBlockIndex < blocks.size())
+		{
+			Block current = blocks.get(lastBlockIndex);
+			List<Occurrence> occurrences = current.occurrences;
+			int end = lastIndex;
+
+			while (end < occurrences.size() && occurrences.get(end).getStart() <= changeEnd)
+			{
+				Occurrence occurrence = occurrences.get(end);
+
+				regionStart = Math.min(regionStart, occurrence.getStart());
+				regionEnd = Math.max(regionEnd, occurrence.getEnd());
+				removeFromWord(occurrence);
+				end++;
+			}
+
+			occurrences.subList(lastIndex, end).clear();
+
+			if (lastIndex < occurrences.size())
+			{
+				break;
+			}
+
+			lastBlockIndex++;
+			lastIndex = 0;
+		}
+
+		// move the occurrences that follow the change
+		if (delta != 0)
+		{
+			int nextBlockIndex = lastBlockIndex;
+
+			if (lastBlockIndex == blockIndex)
+			{
+				List<Occurrence> occurrences = block.occurrences;
+
+				for (int i = index; i < occurrences.size(); i++)
+				{
+					occurrences.get(i).start += delta;
+				}
+
+				nextBlockIndex++;
+			}
+
+			for (int i = nextBlockIndex; i < blocks.size(); i++)
+			{
+				blocks.get(i).offset += delta;
+			}
+		}
+
+		// read the words of the changed region again
+		addWords(text, regionStart, regionEnd + delta, block, index);
+
+		// drop emptied blocks after the changed one and keep the changed one a reasonable size
+		int emptied = Math.min(lastBlockIndex, blocks.size()) - blockIndex - 1;
+
+		if (emptied > 0)
+		{
+			blocks.subList(blockIndex + 1, blockIndex + 1 + emptied).clear();
+		}
+		if (block.occurrences.isEmpty() && blocks.size() > 1)
+		{
+			blocks.remove(blockIndex);
+		}
+		else
+		{
+			splitBlock(blockIndex);
+		}
+	}
+
+	/**
+	 * Returns the index of the first block with an occurrence that ends at or after the offset, or the last block
+	 *
+	 * @param offset
+	 * @return
+	 */
+	private int findBlock(int offset)
+	{
+		int low = 0;
+		int high = blocks.size() - 1;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			List<Occurrence> occurrences = blocks.get(middle).occurrences;
+
+			if (occurrences.isEmpty() || occurrences.get(occurrences.size() - 1).getEnd() < offset)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Add the words found in the given range of the text to the block, starting at the given index
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param block
+	 * @param index
+	 */
+	private void addWords(CharSequence text, int start, int end, Block block, int index)
+	{
+		List<Occurrence> added = new ArrayList<Occurrence>();
+		int i = Math.max(0, start);
+		int length = Math.min(end, text.length());
+
+		while (i < length)
+		{
+			if (!Character.isUnicodeIdentifierPart(text.charAt(i)))
+			{
+				i++;
+				continue;
+			}
+
+			int wordStart = i;
+
+			while (i < length && Character.isUnicodeIdentifierPart(text.charAt(i)))
+			{
+				i++;
+			}
+
+			String string = text.subSequence(wordStart, i).toString();
+			Word word = words.get(string);
+
+			if (word == null)
+			{
+				word = new Word(string);
+				words.put(string, word);
+			}
+
+			Occurrence occurrence = new Occurrence(word);
+			occurrence.block = block;
+			occurrence.start = wordStart - block.offset;
+			occurrence.index = word.occurrences.size();
+			word.occurrences.add(occurrence);
+			added.add(occurrence);
+		}
+
+		if (!added.isEmpty())
+		{
+			block.occurrences.addAll(index, added);
+		}
+	}
+
+	/**
+	 * Remove an occurrence from the list of its word, dropping the word when it no longer occurs
+	 *
+	 * @param occurrence
+	 */
+	private void removeFromWord(Occurrence occurrence)
+	{
+		List<Occurrence> occurrences = occurrence.word.occurrences;
+		Occurrence last = occurrences.remove(occurrences.size() - 1);
+
+		if (last != occurrence)
+		{
+			last.index = occurrence.index;
+			occurrences.set(occurrence.index, last);
+		}
+		if (occurrences.isEmpty())
+		{
+			words.remove(occurrence.word.text);
+		}
+	}
+
+	/**
+	 * Split the block at the given index into blocks of at most half the maximum size, if it grew too large
+	 *
+	 * @param blockIndex
+	 */
+	private void splitBlock(int blockIndex)
+	{
+		Block block = blocks.get(blockIndex);
+		int size = block.occurrences.size();
+
+		if (size <= MAX_BLOCK_SIZE)
+		{
+			return;
+		}
+
+		int chunk = MAX_BLOCK_SIZE / 2;
+		List<Block> split = new ArrayList<Block>();
+
+		for (int start = 0; start < size; start += chunk)
+		{
+			Block part = new Block(block.offset);
+
+			for (Occurrence occurrence : block.occurrences.subList(start, Math.min(size, start + chunk)))
+			{
+				occurrence.block = part;
+				part.occurrences.add(occurrence);
+			}
+
+			split.add(part);
+		}
+
+		blocks.remove(blockIndex);
+		blocks.addAll(blockIndex, split);
+	}
+}
@@ -9,6 +9,7 @@ package com.aptana.editor.common.text.reconciler;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -18,116 +19,213 @@ import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.projection.ProjectionAnnotation;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+import org.jruby.RubyEncoding;
+import org.jruby.RubyNumeric;
 import org.jruby.RubyRegexp;
 import org.jruby.RubyString;
-import org.jruby.runtime.builtin.IRubyObject;
+import org.jruby.util.ByteList;
 
+import com.aptana.core.logging.IdeLog;
 import com.aptana.editor.common.AbstractThemeableEditor;
 import com.aptana.editor.common.CommonEditorPlugin;
 import com.aptana.editor.common.scripting.IDocumentScopeManager;
 import com.aptana.scripting.model.BundleManager;
 
+/**
+ * Computes folding regions from the folding start and stop regular expressions bundles register by scope. The fold
+ * markers of each line are remembered between reconciles. Only lines whose text changed are matched again, along with
+ * the lines after them whose scopes now resolve to different regular expressions, as when a comment is opened. Lines
+ * are matched with joni directly rather than through JRuby objects.
+ */
 // FIXME Move this to an internal package!
 public class RubyRegexpFolder implements IFoldingComputer
 {
+	/**
+	 * The number of regular expressions remembered before they are looked up and compiled again
+	 */
+	private static final int MAX_REGEXPS = 64;
+
+	/**
+	 * The regular expression options that mean the same to joni as to Ruby. The other bits of the options JRuby reports
+	 * flag the encoding, and joni would read them as search options
+	 */
+	private static final int REGEXP_OPTIONS = Option.IGNORECASE | Option.EXTEND | Option.MULTILINE;
+
+	/**
+	 * A bundle regular expression compiled for matching lines directly
+	 */
+	private static class FoldRegexp
+	{
+		private final RubyRegexp rubyRegexp;
+		private final Regex regex;
+
+		FoldRegexp(RubyRegexp rubyRegexp, Regex regex)
+		{
+			this.rubyRegexp = rubyRegexp;
+			this.regex = regex;
+		}
+
+		boolean matches(String line, byte[] bytes)
+		{
+			if (regex == null)
+			{
+				// the expression couldn't be compiled by us, so let JRuby match it
+				RubyString rLine = rubyRegexp.getRuntime().newString(line);
+				return !rubyRegexp.match_m(rubyRegexp.getRuntime().getCurrentContext(), rLine).isNil();
+			}
+			return regex.matcher(bytes, 0, bytes.length).search(0, bytes.length, Option.NONE) >= 0;
+		}
+	}
+
+	/**
+	 * The fold markers of a single line
+	 */
+	private static class LineInfo
+	{
+		final String text;
+		final FoldRegexp start;
+		final FoldRegexp end;
+		final boolean startMatches;
+		final int indent;
+		final int endIndent;
+		private byte[] bytes;
+		private Boolean endMatches;
+
+		LineInfo(String text, FoldRegexp start, FoldRegexp end)
+		{
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.indent = findIndent(text);
+			// Subtract one if we're handling /* */ folding!
+			this.endIndent = text.trim().startsWith("*") ? indent - 1 : indent; //$NON-NLS-1$
+			this.startMatches = isActive() && start.matches(text, getBytes());
+		}
+
+		/**
+		 * Lines without both a start and a stop expression take no part in folding
+		 */
+		boolean isActive()
+		{
+			return start != null && end != null;
+		}
+
+		/**
+		 * The stop expression is only matched when there is a region to close at this line's indent
+		 */
+		boolean endMatches()
+		{
+			if (endMatches == null)
+			{
+				endMatches = end.matches(text, getBytes());
+			}
+			return endMatches;
+		}
+
+		private byte[] getBytes()
+		{
+			if (bytes == null)
+			{
+				// JRuby matched lines as UTF-8 strings
+				bytes = RubyEncoding.encodeUTF8(text);
+			}
+			return bytes;
+		}
+	}
 
 	private IDocument fDocument;
 	private AbstractThemeableEditor fEditor;
 
+	private LineInfo[] fLines;
+	private final Map<RubyRegexp, FoldRegexp> fRegexps;
+	private final Map<String, FoldRegexp> fRegexpsBySource;
+
 	public RubyRegexpFolder(AbstractThemeableEditor editor, IDocument document)
 	{
 		this.fDocument = document;
 		this.fEditor = editor;
+		this.fRegexps = new IdentityHashMap<RubyRegexp, FoldRegexp>();
+		this.fRegexpsBySource = new HashMap<String, FoldRegexp>();
 	}
 
 	/* (non-Javadoc)
 	 * @see com.aptana.editor.common.text.reconciler.IFoldingComputer#emitFoldingRegions(org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public Map<ProjectionAnnotation, Position> emitFoldingRegions(boolean initialReconcile, IProgressMonitor monitor)
-			throws BadLocationException
+	public synchronized Map<ProjectionAnnotation, Position> emitFoldingRegions(boolean initialReconcile,
+			IProgressMonitor monitor) throws BadLocationException
 	{
 		int lineCount = fDocument.getNumberOfLines();
 		if (lineCount <= 1) // Quick hack fix for minified files. We need at least two lines to have folding!
 		{
 			return Collections.emptyMap();
 		}
-		Map<ProjectionAnnotation, Position> newPositions = new HashMap<ProjectionAnnotation, Position>(lineCount >> 2);
-		Map<Integer, Integer> starts = new HashMap<Integer, Integer>(3);
 		if (monitor != null)
 		{
 			monitor.beginTask(Messages.CommonReconcilingStrategy_FoldingTaskName, lineCount);
 		}
+
+		int[] offsets = new int[lineCount];
+		int[] lengths = new int[lineCount];
+		String[] texts = new String[lineCount];
+		for (int currentLine = 0; currentLine < lineCount; currentLine++)
+		{
+			IRegion lineRegion = fDocument.getLineInformation(currentLine);
+			offsets[currentLine] = lineRegion.getOffset();
+			lengths[currentLine] = lineRegion.getLength();
+			texts[currentLine] = fDocument.get(offsets[currentLine], lengths[currentLine]);
+		}
+
+		LineInfo[] lines = updateLines(initialReconcile ? null : fLines, texts, offsets, lengths, monitor);
+		if (lines == null)
+		{
+			// canceled. Keep the lines of the last complete pass
+			return Collections.emptyMap();
+		}
+		fLines = lines;
+
+		Map<ProjectionAnnotation, Position> newPositions = new HashMap<ProjectionAnnotation, Position>(lineCount >> 2);
+		// indent -> line of the open folding region at that indent
+		Map<Integer, Integer> starts = new HashMap<Integer, Integer>(3);
 		for (int currentLine = 0; currentLine < lineCount; currentLine++)
 		{
 			// Check for cancellation
 			if (monitor != null && monitor.isCanceled())
 				return newPositions;
 
-			IRegion lineRegion = fDocument.getLineInformation(currentLine);
-			int offset = lineRegion.getOffset();
-			String line = fDocument.get(offset, lineRegion.getLength());
-
-			// Use scope at beginning of line for start regexp
-			RubyRegexp startRegexp = getStartFoldRegexp(getScopeAtOffset(offset));
-			if (startRegexp == null)
+			LineInfo line = lines[currentLine];
+			if (!line.isActive())
 			{
-				if (monitor != null)
-					monitor.worked(1);
-				continue;
-			}
-			// Use scope at end of line for end regexp
-			RubyRegexp endRegexp = getEndFoldRegexp(getScopeAtOffset(offset + lineRegion.getLength()));
-			if (endRegexp == null)
-			{
-				if (monitor != null)
-					monitor.worked(1);
 				continue;
 			}
 			// Look for an open...
-			RubyString rLine = startRegexp.getRuntime().newString(line);
-			IRubyObject startMatcher = startRegexp.match_m(startRegexp.getRuntime().getCurrentContext(), rLine);
-			if (!startMatcher.isNil())
+			if (line.startMatches)
 			{
-				starts.put(findIndent(line), offset); // cheat and just give offset of line since line resolution is all
-														// that matters
+				starts.put(line.indent, currentLine); // line resolution is all that matters
 			}
-			// Don't look for an end if there's no open yet!
-			if (starts.size() > 0)
+			// Don't look for an end if there's no open yet! Then check to see if we have an open folding region at
+			// this indent level...
+			if (starts.size() > 0 && starts.containsKey(line.endIndent) && line.endMatches())
 			{
-				// check to see if we have an open folding region at this indent level...
-				int indent = findIndent(line);
-				// Subtract one if we're handling /* */ folding!
-				if (line.trim().startsWith("*")) //$NON-NLS-1$
+				int startLine = starts.remove(line.endIndent);
+				if (startLine != currentLine)
 				{
-					indent--;
-				}
-				if (starts.containsKey(indent))
-				{
-					IRubyObject endMatcher = endRegexp.match_m(endRegexp.getRuntime().getCurrentContext(), rLine);
-					if (!endMatcher.isNil())
+					int startingOffset = offsets[startLine];
+					int end = offsets[currentLine] + lengths[currentLine] + 1; // cheat and just use end of line
+					if (end > fDocument.getLength())
+					{
+						end = fDocument.getLength();
+					}
+					int posLength = end - startingOffset;
+					if (posLength > 0)
 					{
-						int startingOffset = starts.remove(indent);
-						int startLine = fDocument.getLineOfOffset(startingOffset);
-						if (startLine != currentLine)
-						{
-							int end = lineRegion.getOffset() + lineRegion.getLength() + 1; // cheat and just use end of
-																							// line
-							if (end > fDocument.getLength())
-							{
-								end = fDocument.getLength();
-							}
-							int posLength = end - startingOffset;
-							if (posLength > 0)
-							{
-								Position position = new Position(startingOffset, posLength);
-								newPositions.put(new ProjectionAnnotation(), position);
-							}
-						}
+						Position position = new Position(startingOffset, posLength);
+						newPositions.put(new ProjectionAnnotation(), position);
 					}
 				}
 			}
-			if (monitor != null)
-				monitor.worked(1);
 		}
 
 		if (monitor != null)
@@ -137,6 +235,153 @@ public class RubyRegexpFolder implements IFoldingComputer
 		return newPositions;
 	}
 
+	/**
+	 * Returns the fold markers of each line, reusing the markers of the previous pass where possible. Lines that
+	 * didn't change are found by comparing the leading and trailing lines with the previous pass. The changed lines in
+	 * between are matched again. An edit can change the scopes of the lines after it, so those are matched again too
+	 * until a line resolves to the same regular expressions as before. Returns null if canceled
+	 *
+	 * @param previous
+	 * @param texts
+	 * @param offsets
+	 * @param lengths
+	 * @param monitor
+	 * @return
+	 * @throws BadLocationException
+	 */
+	private LineInfo[] updateLines(LineInfo[] previous, String[] texts, int[] offsets, int[] lengths,
+			IProgressMonitor monitor) throws BadLocationException
+	{
+		int lineCount = texts.length;
+		int previousCount = (previous == null) ? 0 : previous.length;
+		int limit = Math.min(lineCount, previousCount);
+
+		int prefix = 0;
+		while (prefix < limit && previous[prefix].text.equals(texts[prefix]))
+		{
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < limit - prefix
+				&& previous[previousCount - 1 - suffix].text.equals(texts[lineCount - 1 - suffix]))
+		{
+			suffix++;
+		}
+
+		LineInfo[] lines = new LineInfo[lineCount];
+		if (prefix > 0)
+		{
+			System.arraycopy(previous, 0, lines, 0, prefix);
+		}
+		if (monitor != null)
+		{
+			monitor.worked(prefix);
+		}
+
+		int firstUnchanged = lineCount - suffix;
+		for (int currentLine = prefix; currentLine < lineCount; currentLine++)
+		{
+			// Check for cancellation
+			if (monitor != null && monitor.isCanceled())
+				return null;
+
+			int offset = offsets[currentLine];
+			// Use scope at beginning of line for start regexp
+			FoldRegexp start = getFoldRegexp(getStartFoldRegexp(getScopeAtOffset(offset)));
+			FoldRegexp end = null;
+			if (start != null)
+			{
+				// Use scope at end of line for end regexp
+				end = getFoldRegexp(getEndFoldRegexp(getScopeAtOffset(offset + lengths[currentLine])));
+			}
+
+			if (currentLine >= firstUnchanged)
+			{
+				int previousLine = currentLine - lineCount + previousCount;
+				LineInfo line = previous[previousLine];
+				if (line.start == start && line.end == end)
+				{
+					// the scopes are back in step with the previous pass, so the remaining lines are unchanged
+					System.arraycopy(previous, previousLine, lines, currentLine, lineCount - currentLine);
+					if (monitor != null)
+						monitor.worked(lineCount - currentLine);
+					break;
+				}
+			}
+			lines[currentLine] = new LineInfo(texts[currentLine], start, end);
+
+			if (monitor != null)
+				monitor.worked(1);
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Returns the compiled form of a bundle regular expression. Expressions with the same source and options share one
+	 * compiled form, so lines can tell whether their expressions changed by identity
+	 *
+	 * @param regexp
+	 * @return
+	 */
+	private FoldRegexp getFoldRegexp(RubyRegexp regexp)
+	{
+		if (regexp == null)
+		{
+			return null;
+		}
+
+		FoldRegexp result = fRegexps.get(regexp);
+		if (result == null)
+		{
+			if (fRegexps.size() >= MAX_REGEXPS)
+			{
+				fRegexps.clear();
+			}
+
+			ByteList source = ((RubyString) regexp.source()).getByteList();
+			int options = RubyNumeric.fix2int(regexp.options()) & REGEXP_OPTIONS;
+			String key = options + "/" + source.toString(); //$NON-NLS-1$
+
+			result = fRegexpsBySource.get(key);
+			if (result == null)
+			{
+				if (fRegexpsBySource.size() >= MAX_REGEXPS)
+				{
+					fRegexpsBySource.clear();
+				}
+				result = new FoldRegexp(regexp, compile(source, options, regexp));
+				fRegexpsBySource.put(key, result);
+			}
+			fRegexps.put(regexp, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Compile a bundle regular expression the way JRuby does. Returns null if it can't be compiled
+	 *
+	 * @param source
+	 * @param options
+	 * @param regexp
+	 * @return
+	 */
+	private Regex compile(ByteList source, int options, RubyRegexp regexp)
+	{
+		try
+		{
+			int begin = source.getBegin();
+			return new Regex(source.getUnsafeBytes(), begin, begin + source.getRealSize(), options,
+					regexp.getEncoding(), Syntax.DEFAULT);
+		}
+		catch (Exception e)
+		{
+			IdeLog.logError(CommonEditorPlugin.getDefault(), e);
+		}
+		return null;
+	}
+
 	protected String getScopeAtOffset(int offset) throws BadLocationException
 	{
 		if (fEditor != null)
@@ -155,7 +400,7 @@ public class RubyRegexpFolder implements IFoldingComputer
 		return CommonEditorPlugin.getDefault().getDocumentScopeManager();
 	}
 
-	private int findIndent(String text)
+	private static int findIndent(String text)
 	{
 		// TODO Handle tab characters and expanding them out to their tab width?
 		int indent = 0;
@@ -0,0 +1,417 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.js.parsing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.aptana.editor.js.parsing.ast.IJSNodeTypes;
+import com.aptana.editor.js.parsing.ast.JSFunctionNode;
+import com.aptana.editor.js.parsing.ast.JSParseRootNode;
+import com.aptana.editor.js.parsing.ast.JSStatementsNode;
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseNode;
+import com.aptana.parsing.util.ParseUtil;
+
+/**
+ * Updates the AST of a previous parse after a single edit. Only the body of the innermost function containing the edit
+ * is parsed again. The new body replaces the old one in the previous AST and the offsets of the nodes following it are
+ * adjusted. Edits that fall outside of a function body, change documentation comments, or leave the body with syntax
+ * errors can't be handled this way, and the source has to be parsed in full.
+ */
+class JSIncrementalParser
+{
+	/**
+	 * The body of the edited function is parsed as the body of this function declaration
+	 */
+	private static final String FUNCTION_PREFIX = "function _()"; //$NON-NLS-1$
+
+	/**
+	 * Orders comments the way the parser lists them: by type, then by offset
+	 */
+	private static final Comparator<IParseNode> COMMENT_ORDER = new Comparator<IParseNode>()
+	{
+		public int compare(IParseNode c1, IParseNode c2)
+		{
+			int result = c1.getNodeType() - c2.getNodeType();
+
+			if (result == 0)
+			{
+				result = c1.getStartingOffset() - c2.getStartingOffset();
+			}
+
+			return result;
+		}
+	};
+
+	private final JSParser parser;
+
+	/**
+	 * JSIncrementalParser
+	 * 
+	 * @param parser
+	 *            The parser used to parse the edited function body
+	 */
+	JSIncrementalParser(JSParser parser)
+	{
+		this.parser = parser;
+	}
+
+	/**
+	 * Returns true if both parse states collect and attach the same comments
+	 * 
+	 * @param previousState
+	 * @param parseState
+	 * @return
+	 */
+	private static boolean sameCommentOptions(IParseState previousState, IParseState parseState)
+	{
+		if (previousState instanceof JSParseState && parseState instanceof JSParseState)
+		{
+			JSParseState previous = (JSParseState) previousState;
+			JSParseState current = (JSParseState) parseState;
+
+			return previous.attachComments() == current.attachComments()
+					&& previous.collectComments() == current.collectComments();
+		}
+
+		return !(previousState instanceof JSParseState) && !(parseState instanceof JSParseState);
+	}
+
+	/**
+	 * Returns true if comments are attached to the nodes they document
+	 * 
+	 * @param parseState
+	 * @return
+	 */
+	private static boolean attachComments(IParseState parseState)
+	{
+		return !(parseState instanceof JSParseState) || ((JSParseState) parseState).attachComments();
+	}
+
+	/**
+	 * Returns true if any of the comments in the given range is a documentation comment
+	 * 
+	 * @param comments
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private static boolean hasDocumentation(IParseNode[] comments, int start, int end)
+	{
+		for (IParseNode comment : comments)
+		{
+			short type = comment.getNodeType();
+
+			if ((type == IJSNodeTypes.SDOC_COMMENT || type == IJSNodeTypes.VSDOC_COMMENT)
+					&& start <= comment.getStartingOffset() && comment.getStartingOffset() <= end)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Find the body of the innermost function that contains the removed range. The edit must be between the braces of
+	 * the body
+	 * 
+	 * @param root
+	 * @param start
+	 *            the absolute offset of the edit
+	 * @param end
+	 *            the absolute offset following the removed text
+	 * @return
+	 */
+	private static JSStatementsNode findFunctionBody(IParseRootNode root, int start, int end)
+	{
+		JSStatementsNode result = null;
+		IParseNode node = root;
+
+		while (node != null)
+		{
+			if (node instanceof JSFunctionNode)
+			{
+				IParseNode body = ((JSFunctionNode) node).getBody();
+
+				if (body instanceof JSStatementsNode && body.getStartingOffset() < start
+						&& end <= body.getEndingOffset())
+				{
+					result = (JSStatementsNode) body;
+				}
+			}
+
+			IParseNode next = null;
+
+			for (IParseNode child : node)
+			{
+				if (child.getStartingOffset() <= start && end <= child.getEndingOffset() + 1)
+				{
+					next = child;
+					break;
+				}
+			}
+
+			node = next;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parse the source of the given parse state by updating the AST of its previous parse state. Returns null if the
+	 * edit can't be handled incrementally, in which case the previous AST is left untouched
+	 * 
+	 * @param parseState
+	 * @return
+	 */
+	IParseRootNode reparse(ParseState parseState)
+	{
+		IParseState previousState = parseState.getPreviousState();
+
+		if (previousState == null || !(previousState.getParseResult() instanceof JSParseRootNode)
+				|| previousState.getStartingOffset() != parseState.getStartingOffset()
+				|| !sameCommentOptions(previousState, parseState))
+		{
+			return null;
+		}
+
+		JSParseRootNode root = (JSParseRootNode) previousState.getParseResult();
+		String source = parseState.getSource();
+		int startingOffset = parseState.getStartingOffset();
+		int editOffset = parseState.getEditOffset();
+		int removedLength = parseState.getEditRemovedLength();
+		int delta = parseState.getEditInsertedLength() - removedLength;
+		int previousLength = root.getEndingOffset() - root.getStartingOffset() + 1;
+
+		// make sure the edit describes the change from the previous source to the current one
+		if (source == null || editOffset < 0 || removedLength < 0 || editOffset + removedLength > previousLength
+				|| previousLength + delta != source.length())
+		{
+			return null;
+		}
+
+		JSStatementsNode body = findFunctionBody(root, startingOffset + editOffset, startingOffset + editOffset
+				+ removedLength);
+
+		if (body == null)
+		{
+			return null;
+		}
+
+		// the range of the body, relative to the start of the source
+		int bodyStart = body.getStartingOffset() - startingOffset;
+		int previousBodyEnd = body.getEndingOffset() - startingOffset;
+		int bodyEnd = previousBodyEnd + delta;
+
+		if (bodyEnd >= source.length() || source.charAt(bodyStart) != '{' || source.charAt(bodyEnd) != '}')
+		{
+			return null;
+		}
+
+		boolean attachComments = attachComments(parseState);
+
+		if (attachComments && hasDocumentation(root.getCommentNodes(), bodyStart, previousBodyEnd))
+		{
+			return null;
+		}
+
+		// parse the new body
+		String fragment = FUNCTION_PREFIX + source.substring(bodyStart, bodyEnd + 1);
+		ParseState fragmentState = createFragmentState(parseState);
+		IParseRootNode fragmentRoot;
+
+		fragmentState.setEditState(fragment, 0);
+
+		try
+		{
+			fragmentRoot = parser.parse(fragmentState);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+
+		if (!(fragmentRoot instanceof JSParseRootNode) || !fragmentState.getErrors().isEmpty()
+				|| fragmentRoot.getChildCount() != 1 || !(fragmentRoot.getFirstChild() instanceof JSFunctionNode))
+		{
+			return null;
+		}
+
+		IParseNode newBody = ((JSFunctionNode) fragmentRoot.getFirstChild()).getBody();
+		IParseNode[] newComments = ((JSParseRootNode) fragmentRoot).getCommentNodes();
+
+		// the body must have been parsed on its own, without swallowing or losing any of the fragment
+		if (!(newBody instanceof JSStatementsNode) || newBody.getStartingOffset() != FUNCTION_PREFIX.length()
+				|| newBody.getEndingOffset() != fragment.length() - 1)
+		{
+			return null;
+		}
+
+		if (attachComments && hasDocumentation(newComments, 0, fragment.length()))
+		{
+			return null;
+		}
+
+		// from here on the previous AST is modified
+		int fragmentOffset = bodyStart - FUNCTION_PREFIX.length();
+
+		spliceBody(body, newBody, delta, fragmentOffset + startingOffset);
+		spliceComments(root, newComments, bodyStart, previousBodyEnd, delta, fragmentOffset);
+		copyErrors(previousState, parseState, bodyStart, previousBodyEnd, delta);
+
+		root.clearGlobals();
+		parseState.setParseResult(root);
+
+		return root;
+	}
+
+	/**
+	 * Create a parse state for the function body that uses the same comment options as the given parse state
+	 * 
+	 * @param parseState
+	 * @return
+	 */
+	private ParseState createFragmentState(ParseState parseState)
+	{
+		if (parseState instanceof JSParseState)
+		{
+			JSParseState jsParseState = (JSParseState) parseState;
+			JSParseState result = new JSParseState();
+
+			result.setAttachComments(jsParseState.attachComments());
+			result.setCollectComments(jsParseState.collectComments());
+
+			return result;
+		}
+
+		return new ParseState();
+	}
+
+	/**
+	 * Replace the body of a function with a new one, and shift the nodes following it by the change in length
+	 * 
+	 * @param body
+	 * @param newBody
+	 * @param delta
+	 * @param newBodyOffset
+	 *            the offset to add to the new body and its descendants
+	 */
+	private void spliceBody(IParseNode body, IParseNode newBody, int delta, int newBodyOffset)
+	{
+		int bodyEnd = body.getEndingOffset();
+		IParseNode child = body;
+		IParseNode parent = body.getParent();
+
+		while (parent != null)
+		{
+			if (delta != 0)
+			{
+				for (IParseNode sibling : parent)
+				{
+					if (sibling != child && sibling.getStartingOffset() > bodyEnd)
+					{
+						ParseUtil.addOffset(sibling, delta);
+					}
+				}
+
+				((ParseNode) parent).setLocation(parent.getStartingOffset(), parent.getEndingOffset() + delta);
+			}
+
+			child = parent;
+			parent = parent.getParent();
+		}
+
+		ParseUtil.addOffset(newBody, newBodyOffset);
+
+		// JSFunctionNode keeps its body as its third child
+		((ParseNode) body.getParent()).replaceChild(2, newBody);
+	}
+
+	/**
+	 * Replace the comments of the old function body with the comments of the new one, and shift the comments following
+	 * the body by the change in length
+	 * 
+	 * @param root
+	 * @param newComments
+	 * @param bodyStart
+	 * @param previousBodyEnd
+	 * @param delta
+	 * @param fragmentOffset
+	 */
+	private void spliceComments(JSParseRootNode root, IParseNode[] newComments, int bodyStart, int previousBodyEnd,
+			int delta, int fragmentOffset)
+	{
+		IParseNode[] comments = root.getCommentNodes();
+		List<IParseNode> result = new ArrayList<IParseNode>(comments.length + newComments.length);
+
+		for (IParseNode comment : comments)
+		{
+			int offset = comment.getStartingOffset();
+
+			if (offset < bodyStart)
+			{
+				result.add(comment);
+			}
+			else if (offset > previousBodyEnd)
+			{
+				ParseUtil.addOffset(comment, delta, false);
+				result.add(comment);
+			}
+		}
+
+		for (IParseNode comment : newComments)
+		{
+			ParseUtil.addOffset(comment, fragmentOffset, false);
+			result.add(comment);
+		}
+
+		Collections.sort(result, COMMENT_ORDER);
+
+		root.setCommentNodes(result.toArray(new IParseNode[result.size()]));
+	}
+
+	/**
+	 * Copy the errors of the previous parse that are outside of the function body, shifting the ones following it by
+	 * the change in length
+	 * 
+	 * @param previousState
+	 * @param parseState
+	 * @param bodyStart
+	 * @param previousBodyEnd
+	 * @param delta
+	 */
+	private void copyErrors(IParseState previousState, IParseState parseState, int bodyStart, int previousBodyEnd,
+			int delta)
+	{
+		parseState.clearErrors();
+
+		for (IParseError error : previousState.getErrors())
+		{
+			int offset = error.getOffset();
+
+			if (offset < bodyStart)
+			{
+				parseState.addError(error);
+			}
+			else if (offset > previousBodyEnd)
+			{
+				parseState.addError(new ParseError(error.getLangauge(), offset + delta, error.getLength(), error
+						.getMessage(), error.getSeverity()));
+			}
+		}
+	}
+}
@@ -80,6 +80,7 @@ import com.aptana.editor.js.vsdoc.parsing.VSDocReader;
 import com.aptana.parsing.IParseState;
 import com.aptana.parsing.IParser;
 import com.aptana.parsing.IRecoveryStrategy;
+import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -396,6 +397,17 @@ public class JSParser extends Parser implements IParser
 	 */
 	public synchronized IParseRootNode parse(IParseState parseState) throws java.lang.Exception
 	{
+		// try to update the previous AST if only a part of it was edited
+		if (parseState instanceof ParseState && ((ParseState) parseState).getPreviousState() != null)
+		{
+			IParseRootNode result = new JSIncrementalParser(this).reparse((ParseState) parseState);
+
+			if (result != null)
+			{
+				return result;
+			}
+		}
+
 		fParseState = parseState;
 
 		// make sure we have some source
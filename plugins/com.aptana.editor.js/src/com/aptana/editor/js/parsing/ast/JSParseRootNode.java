@@ -56,6 +56,15 @@ public class JSParseRootNode extends ParseRootNode
 		walker.visit(this);
 	}
 
+	/**
+	 * Discard the global scope computed from this tree. Called when the tree is modified in place by an incremental
+	 * parse
+	 */
+	public void clearGlobals()
+	{
+		this._globals = null;
+	}
+
 	/**
 	 * getGlobals
 	 * 
@@ -21,6 +21,7 @@ import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeObject;
@@ -28,6 +29,7 @@ import org.mozilla.javascript.Parser;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.ScriptOrFnNode;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.optimizer.Codegen;
 
 import com.aptana.core.build.AbstractBuildParticipant;
@@ -45,6 +47,65 @@ public class JSLintValidator extends AbstractBuildParticipant
 	private static final String JSLINT_FILENAME = "fulljslint.js"; //$NON-NLS-1$
 	private static Script JS_LINT_SCRIPT;
 
+	/**
+	 * JSLint's own Object.create shares a constructor between calls, which isn't safe once several threads lint at the
+	 * same time. It only installs it when there is none yet, so we install this one first.
+	 */
+	private static final String OBJECT_CREATE = "Object.create = function (o) {" //$NON-NLS-1$
+			+ " function F() {} F.prototype = o; return new F(); };"; //$NON-NLS-1$
+
+	/**
+	 * The Rhino optimization level the JSLint script is compiled and run with
+	 */
+	private static final int OPTIMIZATION_LEVEL = 9;
+
+	/**
+	 * Creates the contexts JSLint runs in
+	 */
+	private static final ContextFactory CONTEXT_FACTORY = new ContextFactory()
+	{
+		@Override
+		protected Context makeContext()
+		{
+			Context context = super.makeContext();
+			context.setOptimizationLevel(OPTIMIZATION_LEVEL);
+			return context;
+		}
+	};
+
+	/**
+	 * The sealed scope holding the standard objects, with the functions JSLint adds to them already added. Shared by the
+	 * lint scopes of all threads
+	 */
+	private static ScriptableObject SHARED_SCOPE;
+
+	/**
+	 * JSLint keeps the state of a run in its closure, so each thread gets its own instance, in a scope of its own on
+	 * top of the shared one, and a context to run it in. Both are set up once per thread rather than once per file
+	 */
+	private static final ThreadLocal<LintScope> LINT_SCOPES = new ThreadLocal<LintScope>();
+
+	private static class LintScope
+	{
+		final Context context;
+		final Scriptable scope;
+
+		LintScope(Context context, Scriptable scope)
+		{
+			this.context = context;
+			this.scope = scope;
+		}
+	}
+
+	/**
+	 * Each thread lints in its own scope, so files can be linted on several builder threads at once
+	 */
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+
 	public void buildFile(BuildContext context, IProgressMonitor monitor)
 	{
 		if (context == null)
@@ -60,15 +121,7 @@ public class JSLintValidator extends AbstractBuildParticipant
 			URI uri = context.getURI();
 			String sourcePath = uri.toString();
 
-			Context cContext = Context.enter();
-			try
-			{
-				parseWithLint(cContext, source, sourcePath, problems);
-			}
-			finally
-			{
-				Context.exit();
-			}
+			problems = lint(source, sourcePath);
 		}
 		catch (Exception e)
 		{
@@ -88,16 +141,37 @@ public class JSLintValidator extends AbstractBuildParticipant
 		context.removeProblems(IJSConstants.JSLINT_PROBLEM_MARKER_TYPE);
 	}
 
-	private void parseWithLint(Context context, String source, String path, List<IProblem> items)
+	/**
+	 * Run JSLint over the source, in the lint scope of the current thread
+	 * 
+	 * @param source
+	 * @param path
+	 * @return the problems found
+	 */
+	List<IProblem> lint(String source, String path)
 	{
-		Scriptable scope = context.initStandardObjects();
-		Script script = getJSLintScript();
-		if (script == null)
+		List<IProblem> problems = new ArrayList<IProblem>();
+		LintScope lintScope = getLintScope();
+		if (lintScope == null)
 		{
-			return;
+			return problems;
 		}
-		script.exec(context, scope);
 
+		// reuses the context of an enclosing call if there is one
+		Context context = CONTEXT_FACTORY.enterContext(lintScope.context);
+		try
+		{
+			parseWithLint(context, lintScope.scope, source, path, problems);
+		}
+		finally
+		{
+			Context.exit();
+		}
+		return problems;
+	}
+
+	private void parseWithLint(Context context, Scriptable scope, String source, String path, List<IProblem> items)
+	{
 		IDocument doc = null;
 
 		Object functionObj = scope.get("JSLINT", scope); //$NON-NLS-1$
@@ -193,6 +267,89 @@ public class JSLintValidator extends AbstractBuildParticipant
 		return false;
 	}
 
+	/**
+	 * Returns the lint scope of the current thread, creating it on first use
+	 * 
+	 * @return
+	 */
+	private static LintScope getLintScope()
+	{
+		LintScope lintScope = LINT_SCOPES.get();
+		if (lintScope == null)
+		{
+			ScriptableObject sharedScope = getSharedScope();
+			Script script = getJSLintScript();
+			if (sharedScope == null || script == null)
+			{
+				return null;
+			}
+
+			Context context = CONTEXT_FACTORY.enterContext();
+			try
+			{
+				// new top level scope that finds the standard objects through its prototype. Variables defined by the
+				// script, JSLINT included, end up in this scope and not in the shared one
+				Scriptable scope = context.newObject(sharedScope);
+				scope.setPrototype(sharedScope);
+				scope.setParentScope(null);
+				script.exec(context, scope);
+
+				lintScope = new LintScope(context, scope);
+				LINT_SCOPES.set(lintScope);
+			}
+			finally
+			{
+				Context.exit();
+			}
+		}
+		return lintScope;
+	}
+
+	private static synchronized ScriptableObject getSharedScope()
+	{
+		if (SHARED_SCOPE == null)
+		{
+			Script script = getJSLintScript();
+			if (script == null)
+			{
+				return null;
+			}
+
+			Context context = CONTEXT_FACTORY.enterContext();
+			try
+			{
+				ScriptableObject scope = context.initStandardObjects();
+				context.evaluateString(scope, OBJECT_CREATE, "ObjectCreate", 1, null); //$NON-NLS-1$
+				// Let JSLint add its functions to the standard objects, then seal the objects it extended
+				script.exec(context, scope);
+				for (String name : new String[] { "Object", "Array", "String" }) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				{
+					Object constructor = scope.get(name, scope);
+					if (constructor instanceof ScriptableObject)
+					{
+						Object prototype = ((ScriptableObject) constructor).get("prototype", scope); //$NON-NLS-1$
+						if (prototype instanceof ScriptableObject)
+						{
+							((ScriptableObject) prototype).sealObject();
+						}
+						((ScriptableObject) constructor).sealObject();
+					}
+				}
+				scope.sealObject();
+				SHARED_SCOPE = scope;
+			}
+			catch (Exception e)
+			{
+				IdeLog.logError(JSPlugin.getDefault(), Messages.JSLintValidator_ERR_FailToGetJSLint, e);
+			}
+			finally
+			{
+				Context.exit();
+			}
+		}
+		return SHARED_SCOPE;
+	}
+
 	private static synchronized Script getJSLintScript()
 	{
 		if (JS_LINT_SCRIPT == null)
@@ -220,7 +377,7 @@ public class JSLintValidator extends AbstractBuildParticipant
 
 	private static Script getJSLintScript(String source)
 	{
-		Context context = Context.enter();
+		Context context = CONTEXT_FACTORY.enterContext();
 		try
 		{
 			CompilerEnvirons compilerEnv = new CompilerEnvirons();
@@ -27,7 +27,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -43,8 +45,10 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.PerformanceStats;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.util.ExpiringMap;
@@ -52,6 +56,8 @@ import com.aptana.filesystem.ftp.FTPPlugin;
 import com.aptana.filesystem.ftp.IFTPConnectionFileManager;
 import com.aptana.filesystem.ftp.IFTPConstants;
 import com.aptana.filesystem.ftp.Policy;
+import com.aptana.filesystem.ftp.preferences.FTPPreferenceInitializer;
+import com.aptana.filesystem.ftp.preferences.IFTPPreferenceConstants;
 import com.aptana.ide.core.io.ConnectionContext;
 import com.aptana.ide.core.io.CoreIOPlugin;
 import com.aptana.ide.core.io.PermissionDeniedException;
@@ -94,7 +100,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	private Boolean statSupported = null;
 	private Boolean listASupported = null;
 	private int utimeFormat = -1;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private Map<IPath, FTPFile> ftpFileCache = Collections.synchronizedMap(new ExpiringMap<IPath, FTPFile>(CACHE_TTL));
 	private long serverToLocalTimeZoneShift = Integer.MIN_VALUE;
 	protected boolean hasServerInfo;
 	protected PrintWriter messageLogWriter;
@@ -107,7 +113,10 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	public void init(String host, int port, IPath basePath, String login, char[] password, boolean passive, String transferType, String encoding, String timezone) {
 		Assert.isTrue(ftpClient == null, Messages.FTPConnectionFileManager_already_initialized);
 		try {
-			this.pool = new FTPClientPool(this);
+			if (pool == null) {
+				this.pool = new FTPClientPool(this);
+				setMaxSessions(getMaxSessionsPreference());
+			}
 			this.ftpClient = new ProFTPClient();
 			this.host = host;
 			this.port = port;
@@ -124,6 +133,49 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	public static int getMaxSessionsPreference() {
+		return Platform.getPreferencesService().getInt(FTPPlugin.PLUGIN_ID, IFTPPreferenceConstants.MAX_SESSIONS,
+				FTPPreferenceInitializer.DEFAULT_MAX_SESSIONS, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#newSession()
+	 */
+	@Override
+	protected BaseConnectionFileManager newSession() {
+		if (ftpClient == null) {
+			return null;
+		}
+		FTPConnectionFileManager session = new FTPConnectionFileManager();
+		session.pool = pool;
+		session.init(host, port, basePath, login, password, FTPConnectMode.PASV.equals(ftpClient.getConnectMode()),
+				transferType, ftpClient.getControlEncoding(), timezone);
+		return shareSessionState(session);
+	}
+
+	/**
+	 * Shares the listing cache and the server details already gathered with a new session
+	 * @param session
+	 * @return the session, or null if it failed to initialize
+	 */
+	protected final FTPConnectionFileManager shareSessionState(FTPConnectionFileManager session) {
+		if (session.ftpClient == null) {
+			return null;
+		}
+		session.ftpFileCache = ftpFileCache;
+		session.defaultOwner = defaultOwner;
+		session.defaultGroup = defaultGroup;
+		if (hasServerInfo) {
+			session.serverFeatures = serverFeatures;
+			session.serverToLocalTimeZoneShift = serverToLocalTimeZoneShift;
+			session.statSupported = statSupported;
+			session.listASupported = listASupported;
+			session.utimeFormat = utimeFormat;
+			session.hasServerInfo = true;
+		}
+		return session;
+	}
+
 	protected static void initFTPClient(FTPClient ftpClient, boolean passive, String encoding) throws IOException, FTPException {
 		ftpClient.setTimeout(TIMEOUT);
 		ftpClient.setControlEncoding(encoding);
@@ -458,6 +510,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#disconnect(org.eclipse.core.runtime.IProgressMonitor)
 	 */
 	public synchronized void disconnect(IProgressMonitor monitor) throws CoreException {
+		closeSessions(monitor);
 		if (!isConnected()) {
 			return;
 		}
@@ -472,7 +525,9 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 			}
 		} finally {
 			cwd = null;
-			pool.dispose();
+			if (!isPooledSession()) {
+				pool.dispose();
+			}
 			cleanup();
 			monitor.done();
 		}
@@ -543,9 +598,12 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private void clearCacheAbsolute(IPath path) {
 		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet())) {
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
-				ftpFileCache.remove(p);
+		synchronized (ftpFileCache) {
+			for (Iterator<IPath> i = ftpFileCache.keySet().iterator(); i.hasNext(); ) {
+				IPath p = i.next();
+				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
+					i.remove();
+				}
 			}
 		}
 	}
@@ -1023,14 +1081,14 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 				Date date = new Date(modificationTime-localTimezoneShift);
 				if (utimeFormat == -1) {
 					for (utimeFormat = 0; utimeFormat < UTIME_FORMATS.length; ++utimeFormat) {
-						String format = UTIME_FORMATS[utimeFormat].format(date);
+						String format = formatUTime(utimeFormat, date);
 						FTPReply reply = ftpClient.sendCommand("SITE "+MessageFormat.format(format, path.lastSegment())); //$NON-NLS-1$
 						if (!"500".equals(reply.getReplyCode()) && !"501".equals(reply.getReplyCode())) { //$NON-NLS-1$ //$NON-NLS-2$
 							break;
 						}
 					}
 				} else if (utimeFormat >= 0 && utimeFormat < UTIME_FORMATS.length) {
-					String format = UTIME_FORMATS[utimeFormat].format(date);
+					String format = formatUTime(utimeFormat, date);
 					ftpClient.site(MessageFormat.format(format, path.lastSegment()));
 				}
 			}
@@ -1045,6 +1103,12 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	private static String formatUTime(int format, Date date) {
+		synchronized (UTIME_FORMATS) {
+			return UTIME_FORMATS[format].format(date);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#changeFilePermissions(org.eclipse.core.runtime.IPath, long, org.eclipse.core.runtime.IProgressMonitor)
 	 */
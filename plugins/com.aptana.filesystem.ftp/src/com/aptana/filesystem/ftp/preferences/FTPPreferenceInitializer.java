@@ -16,10 +16,12 @@ import com.aptana.filesystem.ftp.FTPPlugin;
 public class FTPPreferenceInitializer extends AbstractPreferenceInitializer {
 
 	public static final int DEFAULT_KEEP_ALIVE_MINUTES = 7;
+	public static final int DEFAULT_MAX_SESSIONS = 3;
 
 	@Override
 	public void initializeDefaultPreferences() {
 		IEclipsePreferences prefs = (EclipseUtil.defaultScope()).getNode(FTPPlugin.PLUGIN_ID);
 		prefs.putInt(IFTPPreferenceConstants.KEEP_ALIVE_TIME, DEFAULT_KEEP_ALIVE_MINUTES);
+		prefs.putInt(IFTPPreferenceConstants.MAX_SESSIONS, DEFAULT_MAX_SESSIONS);
 	}
 }
@@ -9,4 +9,5 @@ package com.aptana.filesystem.ftp.preferences;
 
 public interface IFTPPreferenceConstants {
 	public static final String KEEP_ALIVE_TIME = "KeepAliveTime"; //$NON-NLS-1$
+	public static final String MAX_SESSIONS = "MaxSessions"; //$NON-NLS-1$
 }
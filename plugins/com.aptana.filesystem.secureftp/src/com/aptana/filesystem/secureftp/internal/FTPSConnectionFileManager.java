@@ -33,6 +33,7 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.PerformanceStats;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.filesystem.ftp.FTPPlugin;
 import com.aptana.filesystem.ftp.IFTPConstants;
@@ -76,7 +77,10 @@ public class FTPSConnectionFileManager extends FTPConnectionFileManager implemen
 	public void init(String host, int port, IPath basePath, String login, char[] password, boolean explicit, boolean passive, String transferType, String encoding, String timezone, boolean validateCertificate, boolean noSSLSessionResumption) {
 		Assert.isTrue(ftpClient == null, Messages.FTPSConnectionFileManager_ConnectionHasBeenInitiated);
 		try {
-			this.pool = new FTPClientPool(this);
+			if (pool == null) {
+				this.pool = new FTPClientPool(this);
+				setMaxSessions(getMaxSessionsPreference());
+			}
 			ftpClient = newClient();
 			this.host = host;
 			this.port = port;
@@ -95,6 +99,22 @@ public class FTPSConnectionFileManager extends FTPConnectionFileManager implemen
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see com.aptana.filesystem.ftp.internal.FTPConnectionFileManager#newSession()
+	 */
+	@Override
+	protected BaseConnectionFileManager newSession() {
+		if (ftpClient == null) {
+			return null;
+		}
+		FTPSConnectionFileManager session = new FTPSConnectionFileManager();
+		session.pool = pool;
+		session.init(host, port, basePath, login, password, !((SSLFTPClient) ftpClient).isImplicitFTPS(),
+				FTPConnectMode.PASV.equals(ftpClient.getConnectMode()), transferType, ftpClient.getControlEncoding(),
+				timezone, validateCertificate, noSSLSessionResumption);
+		return shareSessionState(session);
+	}
+
 	protected static void initFTPSClient(SSLFTPClient ftpsClient, boolean explicit, boolean passive, String encoding, boolean validateCertificate, boolean noSSLSessionResumption) throws IOException, FTPException {
 		initFTPClient(ftpsClient, passive, encoding);
 		ftpsClient.setImplicitFTPS(true);
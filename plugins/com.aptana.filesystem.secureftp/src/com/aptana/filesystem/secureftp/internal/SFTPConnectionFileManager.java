@@ -28,7 +28,9 @@ import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -43,11 +45,13 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.util.ExpiringMap;
 import com.aptana.filesystem.ftp.Policy;
 import com.aptana.filesystem.ftp.internal.BaseFTPConnectionFileManager;
+import com.aptana.filesystem.ftp.internal.FTPConnectionFileManager;
 import com.aptana.filesystem.secureftp.ISFTPConnectionFileManager;
 import com.aptana.filesystem.secureftp.ISFTPConstants;
 import com.aptana.ide.core.io.ConnectionContext;
@@ -76,8 +80,10 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 	private SSHFTPClient ftpClient;
 	private IPath keyFilePath;
 	private String transferType;
+	private String encoding;
+	private String compression;
 	private IPath cwd;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private Map<IPath, FTPFile> ftpFileCache = Collections.synchronizedMap(new ExpiringMap<IPath, FTPFile>(CACHE_TTL));
 
 	private Thread keepaliveThread;
 
@@ -100,13 +106,43 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 				this.authId = Policy.generateAuthId("SFTP", login, host, port); //$NON-NLS-1$
 			}
 			this.transferType = transferType;
+			this.encoding = encoding;
+			this.compression = compression;
 			initFTPClient(ftpClient, encoding, compression);
+			setMaxSessions(FTPConnectionFileManager.getMaxSessionsPreference());
 		} catch (Exception e) {
 			SecureFTPPlugin.log(new Status(IStatus.WARNING, SecureFTPPlugin.PLUGIN_ID, Messages.SFTPConnectionFileManager_InitializationFailed, e));
 			ftpClient = null;
 		}		
 	}
 
+	/* (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#newSession()
+	 */
+	@Override
+	protected BaseConnectionFileManager newSession() {
+		if (ftpClient == null) {
+			return null;
+		}
+		SFTPConnectionFileManager session = new SFTPConnectionFileManager();
+		// the password holds the passphrase of the key, if any, once this manager has connected
+		session.init(host, port, basePath, keyFilePath, login, password, transferType, encoding, compression);
+		return shareSessionState(session);
+	}
+
+	/**
+	 * Shares the listing cache with a new session
+	 * @param session
+	 * @return the session, or null if it failed to initialize
+	 */
+	protected final SFTPConnectionFileManager shareSessionState(SFTPConnectionFileManager session) {
+		if (session.ftpClient == null) {
+			return null;
+		}
+		session.ftpFileCache = ftpFileCache;
+		return session;
+	}
+
 	@SuppressWarnings("deprecation")
 	private static void initFTPClient(SSHFTPClient ftpClient, String encoding, String compression) throws IOException, FTPException {
 		ftpClient.setTimeout(TIMEOUT);
@@ -291,6 +327,7 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#disconnect(org.eclipse.core.runtime.IProgressMonitor)
 	 */
 	public void disconnect(IProgressMonitor monitor) throws CoreException {
+		closeSessions(monitor);
 		try {
 			checkConnected();
 		} catch (Exception ignore) {
@@ -392,9 +429,12 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 	
 	private void clearCacheAbsolute(IPath path) {
 		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet())) {
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
-				ftpFileCache.remove(p);
+		synchronized (ftpFileCache) {
+			for (Iterator<IPath> i = ftpFileCache.keySet().iterator(); i.hasNext(); ) {
+				IPath p = i.next();
+				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments) {
+					i.remove();
+				}
 			}
 		}
 	}
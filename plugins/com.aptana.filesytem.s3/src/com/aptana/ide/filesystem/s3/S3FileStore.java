@@ -42,6 +42,7 @@ import com.amazon.s3.ListAllMyBucketsResponse;
 import com.amazon.s3.ListBucketResponse;
 import com.amazon.s3.ListEntry;
 import com.amazon.s3.Response;
+import com.amazon.s3.Utils;
 import com.aptana.core.util.IOUtil;
 import com.aptana.ide.core.io.CoreIOPlugin;
 
@@ -53,6 +54,7 @@ class S3FileStore extends FileStore
 	private static final String CONTENT_LENGTH = "Content-Length"; //$NON-NLS-1$
 	private static final String SEPARATOR = "/"; //$NON-NLS-1$
 	private static final String FOLDER_SUFFIX = "_$folder$"; //$NON-NLS-1$
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
 	private URI uri;
 	private Path path;
@@ -305,8 +307,17 @@ class S3FileStore extends FileStore
 	{
 		try
 		{
-			HttpURLConnection connection = getAWSConnection().getRaw(getBucket(), getKey(), null);
+			// Ask for the first range only, the response tells whether the rest is worth downloading in parallel
+			AWSAuthConnection awsConnection = getAWSConnection();
+			HttpURLConnection connection = awsConnection.getRange(getBucket(), getKey(), 0,
+					S3RangedInputStream.DEFAULT_PART_SIZE - 1, null);
 			int responseCode = connection.getResponseCode();
+			if (responseCode == HTTP_RANGE_NOT_SATISFIABLE)
+			{
+				// empty objects have no range to read
+				connection = awsConnection.getRaw(getBucket(), getKey(), null);
+				responseCode = connection.getResponseCode();
+			}
 			// Throw a CoreException wrapping a FileNotFoundException when we're trying to read an S3Object that doesn't
 			// exist
 			if (responseCode == 404)
@@ -315,6 +326,10 @@ class S3FileStore extends FileStore
 				throw S3FileSystemPlugin.coreException(EFS.ERROR_NOT_EXISTS,
 						new FileNotFoundException(path.toPortableString()));
 			}
+			if (responseCode == HttpURLConnection.HTTP_PARTIAL)
+			{
+				return S3RangedInputStream.open(awsConnection, getBucket(), getKey(), connection);
+			}
 			if (responseCode < 400)
 			{
 				return connection.getInputStream();
@@ -334,6 +349,12 @@ class S3FileStore extends FileStore
 
 	AWSAuthConnection getAWSConnection()
 	{
+		if (uri.getPort() != -1)
+		{
+			// an explicit port designates an S3 compatible endpoint, such as a local stand-in
+			return new AWSAuthConnection(getAccessKey(), getSecretAccessKey(), uri.getPort() == Utils.SECURE_PORT,
+					uri.getHost(), uri.getPort(), CallingFormat.getPathCallingFormat());
+		}
 		boolean secure = true;
 		if (getBucket() != null && getBucket().indexOf(".") != -1) //$NON-NLS-1$
 		{
@@ -487,8 +508,7 @@ class S3FileStore extends FileStore
 				throw S3FileSystemPlugin.coreException(EFS.ERROR_WRITE,
 						new FileNotFoundException(path.toPortableString()));
 			}
-			HttpURLConnection connection = getAWSConnection().putRaw(getBucket(), getKey(), null);
-			return new HttpForcingOutputStream(connection.getOutputStream(), connection);
+			return new S3MultipartOutputStream(getAWSConnection(), getBucket(), getKey());
 		}
 		catch (MalformedURLException e)
 		{
@@ -553,7 +573,7 @@ class S3FileStore extends FileStore
 		return this;
 	}
 
-	private String errorMessage(int responseCode, HttpURLConnection connection) throws CoreException
+	static String errorMessage(int responseCode, HttpURLConnection connection)
 	{
 		String msg = ""; //$NON-NLS-1$
 		try
@@ -745,48 +765,4 @@ class S3FileStore extends FileStore
 		}
 		super.copyDirectory(sourceInfo, destination, options, monitor);
 	}
-
-	private static class HttpForcingOutputStream extends OutputStream
-	{
-
-		private OutputStream out;
-		private HttpURLConnection connection;
-
-		HttpForcingOutputStream(OutputStream out, HttpURLConnection connection)
-		{
-			this.out = out;
-			this.connection = connection;
-		}
-
-		@Override
-		public void write(int b) throws IOException
-		{
-			out.write(b);
-		}
-
-		@Override
-		public void flush() throws IOException
-		{
-			out.flush();
-		}
-
-		@Override
-		public void close() throws IOException
-		{
-			out.close();
-			connection.getResponseCode(); // force the connection to finish!
-		}
-
-		@Override
-		public void write(byte[] b, int off, int len) throws IOException
-		{
-			out.write(b, off, len);
-		}
-
-		@Override
-		public void write(byte[] b) throws IOException
-		{
-			out.write(b);
-		}
-	}
 }
@@ -0,0 +1,298 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.ide.filesystem.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.amazon.s3.AWSAuthConnection;
+import com.amazon.s3.InitiateMultipartUploadResponse;
+import com.amazon.s3.Response;
+
+/**
+ * Streams an object to S3. Objects fitting in one part are sent with a single fixed length PUT when the stream is
+ * closed. Larger ones are sent as a multipart upload, the parts being uploaded in parallel while the next ones are
+ * written. No more than {@link #UPLOAD_THREADS} + 1 part buffers are ever allocated, writers block until an upload
+ * frees one.
+ */
+class S3MultipartOutputStream extends OutputStream
+{
+
+	/**
+	 * The smallest part size S3 accepts for all but the last part
+	 */
+	static final int DEFAULT_PART_SIZE = 5 * 1024 * 1024;
+	private static final int UPLOAD_THREADS = 4;
+	private static final String ETAG = "ETag"; //$NON-NLS-1$
+
+	private final AWSAuthConnection connection;
+	private final String bucket;
+	private final String key;
+	private final int partSize;
+
+	private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<byte[]>();
+	private int allocatedBuffers;
+	private byte[] buffer;
+	private int count;
+
+	private ExecutorService executor;
+	private String uploadId;
+	private final List<Future<String>> parts = new ArrayList<Future<String>>();
+	private boolean closed;
+
+	S3MultipartOutputStream(AWSAuthConnection connection, String bucket, String key)
+	{
+		this(connection, bucket, key, DEFAULT_PART_SIZE);
+	}
+
+	S3MultipartOutputStream(AWSAuthConnection connection, String bucket, String key, int partSize)
+	{
+		this.connection = connection;
+		this.bucket = bucket;
+		this.key = key;
+		this.partSize = partSize;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureBuffer();
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			ensureBuffer();
+			int n = Math.min(len, partSize - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Makes room for at least one more byte. A full part is only sent once more data comes, so objects of exactly one
+	 * part still go through a single PUT.
+	 *
+	 * @throws IOException
+	 */
+	private void ensureBuffer() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+		if (buffer != null && count == partSize)
+		{
+			uploadPart();
+		}
+		if (buffer == null)
+		{
+			buffer = takeBuffer();
+			count = 0;
+		}
+	}
+
+	private byte[] takeBuffer() throws IOException
+	{
+		byte[] free = freeBuffers.poll();
+		if (free != null)
+		{
+			return free;
+		}
+		if (allocatedBuffers <= UPLOAD_THREADS)
+		{
+			++allocatedBuffers;
+			return new byte[partSize];
+		}
+		try
+		{
+			return freeBuffers.take();
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void uploadPart() throws IOException
+	{
+		checkFailedParts();
+		if (uploadId == null)
+		{
+			InitiateMultipartUploadResponse response = connection.initiateMultipartUpload(bucket, key, null);
+			checkResponse(response.connection);
+			uploadId = response.getUploadId();
+			if (uploadId == null)
+			{
+				throw new IOException("No multipart upload id returned"); //$NON-NLS-1$
+			}
+			executor = Executors.newFixedThreadPool(UPLOAD_THREADS, new S3TransferThreadFactory("S3 Upload")); //$NON-NLS-1$
+		}
+		final byte[] data = buffer;
+		final int length = count;
+		final int partNumber = parts.size() + 1;
+		buffer = null;
+		count = 0;
+		parts.add(executor.submit(new Callable<String>()
+		{
+			public String call() throws Exception
+			{
+				try
+				{
+					Response response = connection.uploadPart(bucket, key, uploadId, partNumber, data, length, null);
+					checkResponse(response.connection);
+					return response.connection.getHeaderField(ETAG);
+				}
+				finally
+				{
+					freeBuffers.offer(data);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Fails the stream early when a part upload already failed
+	 *
+	 * @throws IOException
+	 */
+	private void checkFailedParts() throws IOException
+	{
+		for (Future<String> part : parts)
+		{
+			if (part.isDone())
+			{
+				getETag(part);
+			}
+		}
+	}
+
+	private static String getETag(Future<String> part) throws IOException
+	{
+		try
+		{
+			return part.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			IOException exception = new IOException(cause.getMessage());
+			exception.initCause(cause);
+			throw exception;
+		}
+	}
+
+	private static void checkResponse(HttpURLConnection connection) throws IOException
+	{
+		int responseCode = connection.getResponseCode();
+		if (responseCode >= 400)
+		{
+			throw new IOException(S3FileStore.errorMessage(responseCode, connection));
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			if (uploadId == null)
+			{
+				HttpURLConnection request = connection.putRaw(bucket, key, null);
+				request.setFixedLengthStreamingMode(count);
+				OutputStream out = request.getOutputStream();
+				if (count > 0)
+				{
+					out.write(buffer, 0, count);
+				}
+				out.close();
+				checkResponse(request);
+				return;
+			}
+			if (count > 0)
+			{
+				uploadPart();
+			}
+			List<String> eTags = new ArrayList<String>(parts.size());
+			for (Future<String> part : parts)
+			{
+				eTags.add(getETag(part));
+			}
+			checkResponse(connection.completeMultipartUpload(bucket, key, uploadId, eTags, null).connection);
+		}
+		catch (IOException e)
+		{
+			abort();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			abort();
+			throw e;
+		}
+		finally
+		{
+			if (executor != null)
+			{
+				executor.shutdownNow();
+			}
+			buffer = null;
+			freeBuffers.clear();
+		}
+	}
+
+	private void abort()
+	{
+		if (uploadId == null)
+		{
+			return;
+		}
+		for (Future<String> part : parts)
+		{
+			part.cancel(true);
+		}
+		try
+		{
+			connection.abortMultipartUpload(bucket, key, uploadId, null).connection.getResponseCode();
+		}
+		catch (IOException e)
+		{
+			S3FileSystemPlugin.log(e);
+		}
+	}
+}
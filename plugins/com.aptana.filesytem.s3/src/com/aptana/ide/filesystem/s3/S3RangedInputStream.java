@@ -0,0 +1,245 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.ide.filesystem.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazon.s3.AWSAuthConnection;
+
+/**
+ * Reads a large S3 object as a sequence of byte ranges. The first range is streamed from the response that revealed
+ * the size of the object, while the following ones are downloaded in parallel. At most {@link #DOWNLOAD_THREADS}
+ * ranges are downloaded ahead of the reader, which bounds the memory used.
+ */
+class S3RangedInputStream extends InputStream
+{
+
+	/**
+	 * The size of the first range requested when opening an object
+	 */
+	static final int DEFAULT_PART_SIZE = 4 * 1024 * 1024;
+	private static final int DOWNLOAD_THREADS = 4;
+
+	private static final String CONTENT_RANGE = "Content-Range"; //$NON-NLS-1$
+	private static final String ETAG = "ETag"; //$NON-NLS-1$
+	private static final String IF_MATCH = "If-Match"; //$NON-NLS-1$
+	private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+)"); //$NON-NLS-1$
+
+	private final AWSAuthConnection connection;
+	private final String bucket;
+	private final String key;
+	private final long partSize;
+	private final long length;
+	private final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+
+	private final ExecutorService executor;
+	private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+	private long nextOffset;
+	private InputStream current;
+
+	/**
+	 * Returns a stream over the whole object, given the partial content response to a request of its first range
+	 *
+	 * @param connection
+	 * @param bucket
+	 * @param key
+	 * @param firstRange
+	 *            the response to the request of the first range
+	 * @return
+	 * @throws IOException
+	 */
+	static InputStream open(AWSAuthConnection connection, String bucket, String key, HttpURLConnection firstRange)
+			throws IOException
+	{
+		String contentRange = firstRange.getHeaderField(CONTENT_RANGE);
+		Matcher matcher = (contentRange != null) ? CONTENT_RANGE_PATTERN.matcher(contentRange) : null;
+		if (matcher == null || !matcher.matches() || Long.parseLong(matcher.group(1)) != 0)
+		{
+			return firstRange.getInputStream();
+		}
+		long partSize = Long.parseLong(matcher.group(2)) + 1;
+		long length = Long.parseLong(matcher.group(3));
+		if (length <= partSize)
+		{
+			return firstRange.getInputStream();
+		}
+		return new S3RangedInputStream(connection, bucket, key, firstRange, partSize, length);
+	}
+
+	private S3RangedInputStream(AWSAuthConnection connection, String bucket, String key,
+			HttpURLConnection firstRange, long partSize, long length) throws IOException
+	{
+		this.connection = connection;
+		this.bucket = bucket;
+		this.key = key;
+		this.partSize = partSize;
+		this.length = length;
+		String eTag = firstRange.getHeaderField(ETAG);
+		if (eTag != null)
+		{
+			// fail rather than mix ranges of different versions of the object
+			headers.put(IF_MATCH, Arrays.asList(eTag));
+		}
+		this.current = firstRange.getInputStream();
+		this.nextOffset = partSize;
+		this.executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, new S3TransferThreadFactory("S3 Download")); //$NON-NLS-1$
+		scheduleRanges();
+	}
+
+	private void scheduleRanges()
+	{
+		while (pending.size() < DOWNLOAD_THREADS && nextOffset < length)
+		{
+			final long first = nextOffset;
+			final long last = Math.min(first + partSize, length) - 1;
+			nextOffset = last + 1;
+			pending.add(executor.submit(new Callable<byte[]>()
+			{
+				public byte[] call() throws Exception
+				{
+					return readRange(first, last);
+				}
+			}));
+		}
+	}
+
+	private byte[] readRange(long first, long last) throws IOException
+	{
+		HttpURLConnection request = connection.getRange(bucket, key, first, last, headers);
+		int responseCode = request.getResponseCode();
+		if (responseCode != HttpURLConnection.HTTP_PARTIAL)
+		{
+			throw new IOException(S3FileStore.errorMessage(responseCode, request));
+		}
+		byte[] data = new byte[(int) (last - first + 1)];
+		InputStream in = request.getInputStream();
+		try
+		{
+			int offset = 0;
+			while (offset < data.length)
+			{
+				int n = in.read(data, offset, data.length - offset);
+				if (n == -1)
+				{
+					throw new IOException("Unexpected end of range"); //$NON-NLS-1$
+				}
+				offset += n;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return data;
+	}
+
+	/**
+	 * Moves to the next range, waiting for it to be downloaded
+	 *
+	 * @return false at the end of the object
+	 * @throws IOException
+	 */
+	private boolean nextRange() throws IOException
+	{
+		current.close();
+		if (pending.isEmpty())
+		{
+			current = new ByteArrayInputStream(new byte[0]);
+			return false;
+		}
+		Future<byte[]> range = pending.removeFirst();
+		try
+		{
+			current = new ByteArrayInputStream(range.get());
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			IOException exception = new IOException(cause.getMessage());
+			exception.initCause(cause);
+			throw exception;
+		}
+		scheduleRanges();
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b;
+		while ((b = current.read()) == -1)
+		{
+			if (!nextRange())
+			{
+				return -1;
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+		int n;
+		while ((n = current.read(b, off, len)) == -1)
+		{
+			if (!nextRange())
+			{
+				return -1;
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		return current.available();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for (Future<byte[]> range : pending)
+		{
+			range.cancel(true);
+		}
+		pending.clear();
+		executor.shutdownNow();
+		current.close();
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.ide.filesystem.s3;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads transferring the parts of S3 objects in parallel
+ */
+class S3TransferThreadFactory implements ThreadFactory
+{
+
+	private final String name;
+	private final AtomicInteger count = new AtomicInteger();
+
+	S3TransferThreadFactory(String name)
+	{
+		this.name = name;
+	}
+
+	public Thread newThread(Runnable runnable)
+	{
+		Thread thread = new Thread(runnable, name + ' ' + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,409 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.git.core.GitPlugin;
+import com.aptana.git.core.IDebugScopes;
+
+/**
+ * A long-lived "git cat-file --batch-check" or "git cat-file --batch" process for a repository. Object names are
+ * written to the process one per line and answered in order, so looking up objects doesn't cost a git process, and the
+ * repository opening that comes with it, each time. The process is started on first use and stopped once it has been
+ * idle for a while. A request that isn't answered in time kills the process. Requests that fail return null, and the
+ * caller is expected to fall back to running a separate git command.
+ */
+class GitBatchProcess
+{
+
+	/**
+	 * How long a request may wait for its answer before the process is killed.
+	 */
+	static final long REQUEST_TIMEOUT = 10000;
+
+	/**
+	 * How long the process is kept running without requests.
+	 */
+	static final long IDLE_TIMEOUT = 60000;
+
+	private static final String MISSING = " missing"; //$NON-NLS-1$
+	private static final String AMBIGUOUS = " ambiguous"; //$NON-NLS-1$
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+	private static ScheduledExecutorService fgTimer;
+
+	/**
+	 * An object found by the process.
+	 */
+	static class ObjectInfo
+	{
+		final String sha;
+		final String type;
+		final long size;
+		final byte[] contents;
+
+		private ObjectInfo(String sha, String type, long size, byte[] contents)
+		{
+			this.sha = sha;
+			this.type = type;
+			this.size = size;
+			this.contents = contents;
+		}
+	}
+
+	private final GitExecutable executable;
+	private final IPath workingDirectory;
+	private final boolean readContents;
+	private final long requestTimeout;
+	private final long idleTimeout;
+
+	private Process process;
+	private OutputStream input;
+	private InputStream output;
+	private ScheduledFuture<?> idleCheck;
+	private long lastUsed;
+	private int requests;
+	private boolean disposed;
+
+	/**
+	 * @param executable
+	 *            the git executable to run
+	 * @param workingDirectory
+	 *            the working directory of the repository
+	 * @param readContents
+	 *            whether to read the contents of the objects (--batch) or only their type and size (--batch-check)
+	 */
+	GitBatchProcess(GitExecutable executable, IPath workingDirectory, boolean readContents)
+	{
+		this(executable, workingDirectory, readContents, REQUEST_TIMEOUT, IDLE_TIMEOUT);
+	}
+
+	GitBatchProcess(GitExecutable executable, IPath workingDirectory, boolean readContents, long requestTimeout,
+			long idleTimeout)
+	{
+		this.executable = executable;
+		this.workingDirectory = workingDirectory;
+		this.readContents = readContents;
+		this.requestTimeout = requestTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Looks up a single object.
+	 * 
+	 * @param objectName
+	 *            anything git rev-parse accepts, such as a SHA, a ref or "HEAD:path/to/file"
+	 * @return a list holding the object, or null if it doesn't exist; null if the request failed
+	 */
+	List<ObjectInfo> lookup(String objectName)
+	{
+		return lookup(Collections.singletonList(objectName));
+	}
+
+	/**
+	 * Looks up several objects in a single round trip.
+	 * 
+	 * @param objectNames
+	 *            anything git rev-parse accepts, such as SHAs, refs or "HEAD:path/to/file"
+	 * @return the objects in the same order, with null for those that don't exist; null if the request failed
+	 */
+	synchronized List<ObjectInfo> lookup(List<String> objectNames)
+	{
+		if (disposed || objectNames.isEmpty())
+		{
+			return null;
+		}
+		StringBuilder request = new StringBuilder();
+		for (String objectName : objectNames)
+		{
+			// the protocol is line based, and git would trim surrounding white space
+			if (objectName.length() == 0 || objectName.indexOf('\n') != -1 || objectName.indexOf('\r') != -1
+					|| !objectName.trim().equals(objectName))
+			{
+				return null;
+			}
+			request.append(objectName).append('\n');
+		}
+
+		if (process == null && !start())
+		{
+			return null;
+		}
+		if (idleCheck != null)
+		{
+			idleCheck.cancel(false);
+			idleCheck = null;
+		}
+
+		final Process current = process;
+		ScheduledFuture<?> timeout = getTimer().schedule(new Runnable()
+		{
+			public void run()
+			{
+				// don't take the lock, the requesting thread holds it while it waits for the answer
+				current.destroy();
+			}
+		}, requestTimeout, TimeUnit.MILLISECONDS);
+		try
+		{
+			input.write(request.toString().getBytes(UTF_8));
+			input.flush();
+
+			List<ObjectInfo> objects = new ArrayList<ObjectInfo>(objectNames.size());
+			for (int i = 0; i < objectNames.size(); i++)
+			{
+				objects.add(readObject());
+			}
+			requests++;
+			return objects;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(GitPlugin.getDefault(),
+					MessageFormat.format("git cat-file request failed in {0}", workingDirectory), e, //$NON-NLS-1$
+					IDebugScopes.DEBUG);
+			stop();
+			return null;
+		}
+		finally
+		{
+			timeout.cancel(false);
+			lastUsed = System.currentTimeMillis();
+			scheduleIdleCheck();
+		}
+	}
+
+	/**
+	 * Stops the process. Later requests fail.
+	 */
+	synchronized void dispose()
+	{
+		disposed = true;
+		stop();
+	}
+
+	/**
+	 * Returns whether the process is running.
+	 * 
+	 * @return
+	 */
+	synchronized boolean isRunning()
+	{
+		return process != null;
+	}
+
+	private ObjectInfo readObject() throws IOException
+	{
+		String header = readLine();
+		if (header.endsWith(MISSING) || header.endsWith(AMBIGUOUS))
+		{
+			return null;
+		}
+
+		// <sha> SP <type> SP <size> LF
+		String[] parts = header.split(" "); //$NON-NLS-1$
+		if (parts.length != 3)
+		{
+			throw new IOException("Unexpected git cat-file output: " + header); //$NON-NLS-1$
+		}
+		long size;
+		try
+		{
+			size = Long.parseLong(parts[2]);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Unexpected git cat-file output: " + header); //$NON-NLS-1$
+		}
+
+		byte[] contents = null;
+		if (readContents)
+		{
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException("Object too large: " + header); //$NON-NLS-1$
+			}
+			contents = new byte[(int) size];
+			int offset = 0;
+			while (offset < contents.length)
+			{
+				int read = output.read(contents, offset, contents.length - offset);
+				if (read == -1)
+				{
+					throw new IOException("git cat-file ended before the end of " + parts[0]); //$NON-NLS-1$
+				}
+				offset += read;
+			}
+			// the contents are followed by a LF
+			if (output.read() != '\n')
+			{
+				throw new IOException("Unexpected git cat-file output after " + parts[0]); //$NON-NLS-1$
+			}
+		}
+		return new ObjectInfo(parts[0], parts[1], size, contents);
+	}
+
+	private String readLine() throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = output.read()) != '\n') // $codepro.audit.disable assignmentInCondition
+		{
+			if (b == -1)
+			{
+				throw new IOException("git cat-file ended unexpectedly"); //$NON-NLS-1$
+			}
+			line.write(b);
+		}
+		return line.toString(UTF_8);
+	}
+
+	private boolean start()
+	{
+		try
+		{
+			String mode = readContents ? "--batch" : "--batch-check"; //$NON-NLS-1$ //$NON-NLS-2$
+			process = executable.run(workingDirectory, "cat-file", mode); //$NON-NLS-1$
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+		}
+		if (process == null)
+		{
+			return false;
+		}
+		input = process.getOutputStream();
+		output = new BufferedInputStream(process.getInputStream());
+		requests = 0;
+		drainErrors(process.getErrorStream());
+		return true;
+	}
+
+	private synchronized void stop()
+	{
+		if (idleCheck != null)
+		{
+			idleCheck.cancel(false);
+			idleCheck = null;
+		}
+		if (process == null)
+		{
+			return;
+		}
+		try
+		{
+			// closing the input lets git exit on its own
+			input.close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		process.destroy();
+		IdeLog.logInfo(GitPlugin.getDefault(),
+				MessageFormat.format("Stopped git cat-file in {0} after {1} requests", workingDirectory, requests), //$NON-NLS-1$
+				IDebugScopes.DEBUG);
+		process = null;
+		input = null;
+		output = null;
+	}
+
+	private void scheduleIdleCheck()
+	{
+		if (process == null || disposed)
+		{
+			return;
+		}
+		idleCheck = getTimer().schedule(new Runnable()
+		{
+			public void run()
+			{
+				stopIfIdle();
+			}
+		}, idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void stopIfIdle()
+	{
+		if (System.currentTimeMillis() - lastUsed >= idleTimeout)
+		{
+			stop();
+		}
+	}
+
+	private static void drainErrors(final InputStream errors)
+	{
+		Thread thread = new Thread("git cat-file errors") //$NON-NLS-1$
+		{
+			@Override
+			public void run()
+			{
+				byte[] buffer = new byte[1024];
+				try
+				{
+					while (errors.read(buffer) != -1)
+					{
+						// discard
+					}
+				}
+				catch (IOException e) // $codepro.audit.disable emptyCatchClause
+				{
+					// the process is gone
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static synchronized ScheduledExecutorService getTimer()
+	{
+		if (fgTimer == null)
+		{
+			fgTimer = Executors.newSingleThreadScheduledExecutor(new TimerThreadFactory());
+		}
+		return fgTimer;
+	}
+
+	private static class TimerThreadFactory implements ThreadFactory
+	{
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "git cat-file timer " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
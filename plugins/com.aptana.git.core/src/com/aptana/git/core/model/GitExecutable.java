@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,6 +60,9 @@ public class GitExecutable
 	static GitExecutable fgExecutable;
 	private static boolean fgAddedPrefListener;
 
+	private static final AtomicInteger fgLaunchedProcesses = new AtomicInteger();
+	private static final AtomicInteger fgAvoidedProcesses = new AtomicInteger();
+
 	protected GitExecutable(IPath gitPath)
 	{
 		this.gitPath = gitPath;
@@ -277,12 +281,14 @@ public class GitExecutable
 	 */
 	public IStatus runInBackground(IPath workingDir, String... args)
 	{
+		fgLaunchedProcesses.incrementAndGet();
 		return ProcessUtil.runInBackground(gitPath.toOSString(), workingDir, args);
 	}
 
 	IStatus runInBackground(IPath workingDir, Map<String, String> env, String... args)
 	{
 		// FIXME Inline into GitRepository.execute?
+		fgLaunchedProcesses.incrementAndGet();
 		return ProcessUtil.runInBackground(gitPath.toOSString(), workingDir, env, args);
 	}
 
@@ -297,6 +303,7 @@ public class GitExecutable
 	IStatus runInBackground(String input, IPath workingDirectory, String... args)
 	{
 		// FIXME Inline into GitRepository.executeWithInput?
+		fgLaunchedProcesses.incrementAndGet();
 		return ProcessUtil.runInBackground(gitPath.toOSString(), workingDirectory, input, null, args);
 	}
 
@@ -312,9 +319,41 @@ public class GitExecutable
 	Process run(IPath directory, String... arguments) throws IOException, CoreException
 	{
 		// FIXME Inline into GitRevList.walkRevisionListWithSpecifier
+		fgLaunchedProcesses.incrementAndGet();
 		return ProcessUtil.run(gitPath.toOSString(), directory, arguments);
 	}
 
+	/**
+	 * Returns the number of git processes launched so far.
+	 * 
+	 * @return
+	 */
+	public static int getLaunchedProcessCount()
+	{
+		return fgLaunchedProcesses.get();
+	}
+
+	/**
+	 * Returns the number of git processes that did not have to be launched so far, because the work was done by a
+	 * running {@link GitBatchProcess} or merged into other work.
+	 * 
+	 * @return
+	 */
+	public static int getAvoidedProcessCount()
+	{
+		return fgAvoidedProcesses.get();
+	}
+
+	/**
+	 * Records git processes that did not have to be launched.
+	 * 
+	 * @param count
+	 */
+	static void processesAvoided(int count)
+	{
+		fgAvoidedProcesses.addAndGet(count);
+	}
+
 	/**
 	 * Sets up the environment map in a way that our special GIT_SSH/GIT_ASKPASS env variables are set so that the SSH
 	 * passphrase/HTTPS prompt stuff is hooked up. Use this for clones/pushes/pulls.
@@ -481,6 +520,7 @@ public class GitExecutable
 
 	protected Process run(Map<String, String> env, String... args) throws IOException, CoreException
 	{
+		fgLaunchedProcesses.incrementAndGet();
 		return ProcessUtil.run(path().toOSString(), null, env, args);
 	}
 
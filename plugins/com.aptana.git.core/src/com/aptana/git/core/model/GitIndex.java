@@ -7,8 +7,11 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -65,11 +68,43 @@ public class GitIndex
 	List<ChangedFile> changedFiles;
 	private Object changedFilesLock = new Object();
 
+	/**
+	 * How long file refresh requests are held back so that the ones coming rapid-fire run as a single refresh.
+	 */
+	private static final long PATH_REFRESH_DELAY = 100;
+
+	/**
+	 * Above this many pending paths, the refresh lists the whole index instead of the paths.
+	 */
+	private static final int MAX_REFRESH_PATHS = 500;
+
+	/**
+	 * The number of git processes a refresh runs.
+	 */
+	private static final int REFRESH_PROCESSES = 3;
+
+	private static final String TREE = "tree"; //$NON-NLS-1$
+	private static final String TREE_MODE = "040000"; //$NON-NLS-1$
+	private static final String NO_SHA = "0000000000000000000000000000000000000000"; //$NON-NLS-1$
+
 	private Job indexRefreshJob;
 	private boolean notify;
 
+	/**
+	 * The file refresh requests not yet picked up by {@link #pathRefreshJob}, guarded by the set of pending paths.
+	 */
+	private Job pathRefreshJob;
+	private Set<IPath> pendingRefreshPaths = new HashSet<IPath>();
+	private boolean pendingFullRefresh;
+	private boolean pathRefreshPending;
+
 	private Vector<ChangedFile> files;
 
+	/**
+	 * The last snapshot of .git/index, used to refresh files without running git.
+	 */
+	private GitIndexFile indexFile;
+
 	GitIndex(GitRepository repository, IPath workingDirectory)
 	{
 		super();
@@ -156,10 +191,24 @@ public class GitIndex
 					}
 				}));
 
+		// Files the index can tell about, such as tracked files that were just saved, don't need git
+		List<ChangedFile> indexFileChanges = null;
+		if (!CollectionsUtil.isEmpty(filePathStrings))
+		{
+			indexFileChanges = changedFilesFromIndexFile(filePathStrings);
+		}
+
 		Set<Job> jobs = new HashSet<Job>();
-		jobs.add(new UntrackedFilesRefreshJob(this, filePathStrings));
-		jobs.add(new UnstagedFilesRefreshJob(this, filePathStrings));
-		jobs.add(new StagedFilesRefreshJob(this, filePathStrings));
+		if (indexFileChanges == null)
+		{
+			jobs.add(new UntrackedFilesRefreshJob(this, filePathStrings));
+			jobs.add(new UnstagedFilesRefreshJob(this, filePathStrings));
+			jobs.add(new StagedFilesRefreshJob(this, filePathStrings));
+		}
+		else
+		{
+			GitExecutable.processesAvoided(REFRESH_PROCESSES);
+		}
 
 		// Last chance to cancel...
 		if (monitor != null && monitor.isCanceled())
@@ -169,6 +218,10 @@ public class GitIndex
 
 		// Now create a new temporary list so we can build it up...
 		this.files = new Vector<ChangedFile>();
+		if (indexFileChanges != null)
+		{
+			this.files.addAll(indexFileChanges);
+		}
 
 		// Schedule all the jobs
 		boolean setSystem = !EclipseUtil.showSystemJobs();
@@ -235,6 +288,213 @@ public class GitIndex
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Works out the changes of tracked files from the index file and the HEAD trees, as the refresh jobs would.
+	 * 
+	 * @param filePaths
+	 * @return the changed files, or null if git has to be run, for instance because one of the files is untracked,
+	 *         unmerged or was modified in the same second it was staged
+	 */
+	private List<ChangedFile> changedFilesFromIndexFile(Set<String> filePaths)
+	{
+		GitIndexFile snapshot = getIndexFile();
+		if (snapshot == null)
+		{
+			return null;
+		}
+
+		IPath workingDirectory = repository.workingDirectory();
+		List<GitIndexFile.Entry> entries = new ArrayList<GitIndexFile.Entry>(filePaths.size());
+		List<GitIndexFile.WorkingTreeState> states = new ArrayList<GitIndexFile.WorkingTreeState>(filePaths.size());
+		// the root tree comes first, it is missing until the first commit
+		List<String> treeNames = CollectionsUtil.newList(GitRepository.HEAD + ':');
+		Map<String, Integer> treeIndexes = new HashMap<String, Integer>();
+		treeIndexes.put(StringUtil.EMPTY, 0);
+		for (String path : filePaths)
+		{
+			GitIndexFile.Entry entry = snapshot.getEntry(path);
+			if (entry == null || entry.stage != 0 || entry.intentToAdd)
+			{
+				return null;
+			}
+			GitIndexFile.WorkingTreeState state = snapshot.getWorkingTreeState(entry, workingDirectory.append(path)
+					.toFile());
+			if (state == GitIndexFile.WorkingTreeState.UNKNOWN)
+			{
+				return null;
+			}
+			entries.add(entry);
+			states.add(state);
+
+			String parent = parentPath(path);
+			if (!treeIndexes.containsKey(parent))
+			{
+				treeIndexes.put(parent, treeNames.size());
+				treeNames.add(GitRepository.HEAD + ':' + parent);
+			}
+		}
+
+		List<GitBatchProcess.ObjectInfo> trees = repository.lookupObjects(true, treeNames);
+		if (trees == null || trees.get(0) == null)
+		{
+			return null;
+		}
+		List<Map<String, String[]>> treeEntries = new ArrayList<Map<String, String[]>>(trees.size());
+		for (GitBatchProcess.ObjectInfo tree : trees)
+		{
+			if (tree == null || !TREE.equals(tree.type))
+			{
+				// a new directory
+				treeEntries.add(Collections.<String, String[]> emptyMap());
+			}
+			else
+			{
+				Map<String, String[]> parsed = parseTree(tree.contents);
+				if (parsed == null)
+				{
+					return null;
+				}
+				treeEntries.add(parsed);
+			}
+		}
+
+		List<ChangedFile> changed = new ArrayList<ChangedFile>();
+		for (int i = 0; i < entries.size(); i++)
+		{
+			GitIndexFile.Entry entry = entries.get(i);
+			GitIndexFile.WorkingTreeState state = states.get(i);
+			String parent = parentPath(entry.path);
+			String name = (parent.length() == 0) ? entry.path : entry.path.substring(parent.length() + 1);
+			String[] head = treeEntries.get(treeIndexes.get(parent)).get(name);
+			if (head != null && head[0].equals(TREE_MODE))
+			{
+				// a directory in HEAD became a file
+				return null;
+			}
+
+			boolean staged = head == null || !head[0].equals(entry.getModeString()) || !head[1].equals(entry.sha);
+			boolean unstaged = state != GitIndexFile.WorkingTreeState.UNCHANGED;
+			if (!staged && !unstaged)
+			{
+				continue;
+			}
+
+			ChangedFile.Status status = ChangedFile.Status.MODIFIED;
+			if (state == GitIndexFile.WorkingTreeState.DELETED)
+			{
+				status = ChangedFile.Status.DELETED;
+			}
+			else if (head == null)
+			{
+				status = ChangedFile.Status.NEW;
+			}
+			ChangedFile file = new ChangedFile(entry.path, status);
+			file.hasStagedChanges = staged;
+			file.hasUnstagedChanges = unstaged;
+			if (!staged)
+			{
+				file.commitBlobMode = entry.getModeString();
+				file.commitBlobSHA = entry.sha;
+			}
+			else if (head == null)
+			{
+				file.commitBlobMode = GitIndexFile.formatMode(0);
+				file.commitBlobSHA = NO_SHA;
+			}
+			else
+			{
+				file.commitBlobMode = head[0];
+				file.commitBlobSHA = head[1];
+			}
+			changed.add(file);
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns the current snapshot of .git/index, reading it again if git wrote it since.
+	 * 
+	 * @return the snapshot, or null if the index can't be read without git
+	 */
+	private GitIndexFile getIndexFile()
+	{
+		File file = repository.gitFile(GitRepository.INDEX);
+		if (indexFile == null || indexFile.isStale(file))
+		{
+			indexFile = null;
+			if (file.isFile())
+			{
+				try
+				{
+					indexFile = GitIndexFile.read(file);
+				}
+				catch (IOException e)
+				{
+					IdeLog.logInfo(GitPlugin.getDefault(),
+							MessageFormat.format("Refreshing {0} with git: {1}", file, e.getMessage()), //$NON-NLS-1$
+							IDebugScopes.DEBUG);
+				}
+			}
+		}
+		return indexFile;
+	}
+
+	private static String parentPath(String path)
+	{
+		int slash = path.lastIndexOf('/');
+		return (slash == -1) ? StringUtil.EMPTY : path.substring(0, slash);
+	}
+
+	/**
+	 * Parses the contents of a tree object: for each entry, a mode, a space, a name, a NUL and a 20-byte SHA.
+	 * 
+	 * @param contents
+	 * @return the mode and SHA of the entries, by name, or null if the tree couldn't be parsed
+	 */
+	private static Map<String, String[]> parseTree(byte[] contents)
+	{
+		Map<String, String[]> entries = new HashMap<String, String[]>();
+		int position = 0;
+		try
+		{
+			while (position < contents.length)
+			{
+				int space = position;
+				while (contents[space] != ' ')
+				{
+					space++;
+				}
+				int nul = space + 1;
+				while (contents[nul] != 0)
+				{
+					nul++;
+				}
+				if (nul + 21 > contents.length)
+				{
+					return null;
+				}
+				int mode = Integer.parseInt(new String(contents, position, space - position, IOUtil.UTF_8), 8);
+				String name = new String(contents, space + 1, nul - space - 1, IOUtil.UTF_8);
+				entries.put(name,
+						new String[] { GitIndexFile.formatMode(mode), GitIndexFile.toHex(contents, nul + 1) });
+				position = nul + 21;
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			return null;
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			return null;
+		}
+		return entries;
+	}
+
 	private void postIndexChange(Collection<ChangedFile> preChangeFiles, Collection<ChangedFile> postChangeFiles)
 	{
 		if (this.notify)
@@ -524,7 +784,7 @@ public class GitIndex
 
 			if (file.status == ChangedFile.Status.NEW)
 			{
-				IStatus status = repository.execute(GitRepository.ReadWrite.READ, "show", indexPath); //$NON-NLS-1$
+				IStatus status = repository.readObject(indexPath);
 				return status.getMessage();
 			}
 
@@ -712,23 +972,70 @@ public class GitIndex
 		return filtered;
 	}
 
-	public void refreshAsync(final Collection<IPath> paths)
+	/**
+	 * Refreshes the given files, or the whole index if there are none, in the background. Requests made before a
+	 * pending refresh starts are merged into it, so a burst of resource changes costs a single refresh.
+	 * 
+	 * @param paths
+	 */
+	public void refreshAsync(Collection<IPath> paths)
 	{
-		Job job = new Job("Refreshing git index") //$NON-NLS-1$
+		synchronized (pendingRefreshPaths)
 		{
-			@Override
-			protected IStatus run(IProgressMonitor monitor)
+			if (pathRefreshPending)
+			{
+				GitExecutable.processesAvoided(REFRESH_PROCESSES);
+			}
+			if (CollectionsUtil.isEmpty(paths))
 			{
-				if (monitor != null && monitor.isCanceled())
+				pendingFullRefresh = true;
+			}
+			else if (!pendingFullRefresh)
+			{
+				pendingRefreshPaths.addAll(paths);
+				if (pendingRefreshPaths.size() > MAX_REFRESH_PATHS)
 				{
-					return Status.CANCEL_STATUS;
+					pendingFullRefresh = true;
 				}
-				refresh(true, paths, monitor);
-				return Status.OK_STATUS;
 			}
-		};
-		job.setSystem(!EclipseUtil.showSystemJobs());
-		job.schedule();
+			if (pendingFullRefresh)
+			{
+				pendingRefreshPaths.clear();
+			}
+			if (pathRefreshPending)
+			{
+				return;
+			}
+			pathRefreshPending = true;
+
+			if (pathRefreshJob == null)
+			{
+				pathRefreshJob = new Job("Refreshing git index") //$NON-NLS-1$
+				{
+					@Override
+					protected IStatus run(IProgressMonitor monitor)
+					{
+						Collection<IPath> refreshPaths;
+						synchronized (pendingRefreshPaths)
+						{
+							// requests made from now on need another refresh
+							refreshPaths = pendingFullRefresh ? null : new ArrayList<IPath>(pendingRefreshPaths);
+							pendingRefreshPaths.clear();
+							pendingFullRefresh = false;
+							pathRefreshPending = false;
+						}
+						if (monitor != null && monitor.isCanceled())
+						{
+							return Status.CANCEL_STATUS;
+						}
+						refresh(true, refreshPaths, monitor);
+						return Status.OK_STATUS;
+					}
+				};
+				pathRefreshJob.setSystem(!EclipseUtil.showSystemJobs());
+			}
+			pathRefreshJob.schedule(PATH_REFRESH_DELAY);
+		}
 	}
 
 	private abstract static class FilesRefreshJob extends Job
@@ -0,0 +1,478 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Platform;
+
+/**
+ * A snapshot of the index git keeps in .git/index, read without running git. It tells whether a tracked file changed
+ * since it was staged by comparing its size and modification time with the ones recorded in the index, the way
+ * "git diff-files" does. Versions 2 to 4 of the format are read. Split indexes, sparse indexes and indexes of
+ * repositories using another hash than SHA-1 are not, and reading them fails so the caller can run git instead.
+ */
+class GitIndexFile
+{
+
+	/**
+	 * Whether the working tree file of an entry changed since it was staged.
+	 */
+	enum WorkingTreeState
+	{
+		UNCHANGED, MODIFIED, DELETED,
+		/**
+		 * The size and modification time can't tell, the contents have to be compared.
+		 */
+		UNKNOWN
+	}
+
+	/**
+	 * An entry of the index.
+	 */
+	static class Entry
+	{
+		final String path;
+		final int mode;
+		final String sha;
+		final int stage;
+		final int mtime;
+		final int size;
+		final boolean assumeValid;
+		final boolean skipWorktree;
+		final boolean intentToAdd;
+
+		private Entry(String path, int mode, String sha, int stage, int mtime, int size, boolean assumeValid,
+				boolean skipWorktree, boolean intentToAdd)
+		{
+			this.path = path;
+			this.mode = mode;
+			this.sha = sha;
+			this.stage = stage;
+			this.mtime = mtime;
+			this.size = size;
+			this.assumeValid = assumeValid;
+			this.skipWorktree = skipWorktree;
+			this.intentToAdd = intentToAdd;
+		}
+
+		/**
+		 * Returns whether the entry is a regular file, executable or not, as opposed to a symbolic link or a
+		 * submodule.
+		 * 
+		 * @return
+		 */
+		boolean isRegularFile()
+		{
+			return (mode & TYPE_MASK) == TYPE_REGULAR;
+		}
+
+		/**
+		 * Returns the mode as git prints it, such as "100644".
+		 * 
+		 * @return
+		 */
+		String getModeString()
+		{
+			return formatMode(mode);
+		}
+	}
+
+	private static final int SIGNATURE = 0x44495243; // "DIRC"
+	private static final int SPLIT_INDEX = 0x6c696e6b; // "link"
+	private static final int SPARSE_DIRECTORIES = 0x73646972; // "sdir"
+	private static final int SHA_LENGTH = 20;
+	private static final int HEADER_LENGTH = 12;
+
+	/**
+	 * The stat data, SHA and flags before the path of an entry
+	 */
+	private static final int ENTRY_FIXED_LENGTH = 62;
+
+	private static final int FLAG_ASSUME_VALID = 0x8000;
+	private static final int FLAG_EXTENDED = 0x4000;
+	private static final int FLAG_STAGE_MASK = 0x3000;
+	private static final int FLAG_STAGE_SHIFT = 12;
+	private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+	private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+
+	private static final int TYPE_MASK = 0170000;
+	private static final int TYPE_REGULAR = 0100000;
+	private static final int TYPE_DIRECTORY = 0040000;
+
+	/**
+	 * Some file systems only keep modification times to the second or two. An index written within this interval
+	 * before it was read may be rewritten again without its modification time changing, so the snapshot is not reused.
+	 */
+	private static final long RACY_INTERVAL = 2000;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+	private final long length;
+	private final long lastModified;
+	private final long readTime;
+	private final Map<String, Entry> entries;
+
+	private GitIndexFile(long length, long lastModified, long readTime, Map<String, Entry> entries)
+	{
+		this.length = length;
+		this.lastModified = lastModified;
+		this.readTime = readTime;
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads an index file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read, is corrupt or uses a format that isn't supported
+	 */
+	static GitIndexFile read(File file) throws IOException
+	{
+		long readTime = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		FileInputStream stream = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = stream.getChannel();
+			long size = channel.size();
+			if (size < HEADER_LENGTH + SHA_LENGTH || size > Integer.MAX_VALUE)
+			{
+				throw new IOException(MessageFormat.format("Unexpected size of {0}: {1}", file, size)); //$NON-NLS-1$
+			}
+			ByteBuffer buffer;
+			if (Platform.OS_WIN32.equals(Platform.getOS()))
+			{
+				// Windows can't replace a mapped file, and the mapping is only released once garbage collected, which
+				// would keep git from writing the index
+				buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) != -1)
+				{
+					// keep reading
+				}
+				buffer.flip();
+			}
+			else
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			return new GitIndexFile(size, lastModified, readTime, parse(buffer));
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Returns whether the file was rewritten since this snapshot was read.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	boolean isStale(File file)
+	{
+		return file.length() != length || file.lastModified() != lastModified
+				|| lastModified + RACY_INTERVAL >= readTime;
+	}
+
+	/**
+	 * Returns the entry of a path, or null if the path isn't in the index. An unmerged path returns one of its
+	 * entries, with a stage other than 0.
+	 * 
+	 * @param path
+	 *            the path relative to the working directory, with '/' separators
+	 * @return
+	 */
+	Entry getEntry(String path)
+	{
+		return entries.get(path);
+	}
+
+	/**
+	 * Returns the number of paths in the index.
+	 * 
+	 * @return
+	 */
+	int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Compares the working tree file of an entry with the size and modification time recorded in the index. As git
+	 * does, a file is modified as soon as those differ, even if its contents are the same. Files modified in the same
+	 * second the index was written are {@link WorkingTreeState#UNKNOWN}, as are files that are no longer regular
+	 * files. Changes to the executable bit alone are not seen.
+	 * 
+	 * @param entry
+	 * @param file
+	 * @return
+	 */
+	WorkingTreeState getWorkingTreeState(Entry entry, File file)
+	{
+		if (entry.assumeValid || entry.skipWorktree)
+		{
+			// git doesn't look at these files either
+			return WorkingTreeState.UNCHANGED;
+		}
+		if (!entry.isRegularFile())
+		{
+			return WorkingTreeState.UNKNOWN;
+		}
+		if (!file.exists())
+		{
+			return WorkingTreeState.DELETED;
+		}
+		if (!file.isFile())
+		{
+			return WorkingTreeState.UNKNOWN;
+		}
+		// the index truncates sizes to 32 bits, and without nanosecond support git compares seconds
+		if ((int) file.length() != entry.size || (int) (file.lastModified() / 1000) != entry.mtime)
+		{
+			return WorkingTreeState.MODIFIED;
+		}
+		if (entry.mtime >= lastModified / 1000)
+		{
+			// racily clean, the file may have changed again after it was staged within the same second
+			return WorkingTreeState.UNKNOWN;
+		}
+		return WorkingTreeState.UNCHANGED;
+	}
+
+	/**
+	 * Returns a mode as git prints it, such as "100644".
+	 * 
+	 * @param mode
+	 * @return
+	 */
+	static String formatMode(int mode)
+	{
+		String octal = Integer.toOctalString(mode);
+		return "000000".substring(Math.min(octal.length(), 6)) + octal; //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns a SHA as git prints it.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @return
+	 */
+	static String toHex(byte[] bytes, int offset)
+	{
+		char[] chars = new char[SHA_LENGTH * 2];
+		for (int i = 0; i < SHA_LENGTH; i++)
+		{
+			int b = bytes[offset + i] & 0xff;
+			chars[i * 2] = HEX[b >> 4];
+			chars[i * 2 + 1] = HEX[b & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private static Map<String, Entry> parse(ByteBuffer buffer) throws IOException
+	{
+		verifyChecksum(buffer);
+
+		if (buffer.getInt(0) != SIGNATURE)
+		{
+			throw new IOException("Not a git index"); //$NON-NLS-1$
+		}
+		int version = buffer.getInt(4);
+		if (version < 2 || version > 4)
+		{
+			throw new IOException("Unsupported git index version " + version); //$NON-NLS-1$
+		}
+		int count = buffer.getInt(8);
+		int end = buffer.limit() - SHA_LENGTH;
+		if (count < 0 || count > (end - HEADER_LENGTH) / ENTRY_FIXED_LENGTH)
+		{
+			throw new IOException("Unexpected git index entry count " + count); //$NON-NLS-1$
+		}
+
+		Map<String, Entry> entries = new HashMap<String, Entry>(count * 4 / 3 + 1);
+		byte[] sha = new byte[SHA_LENGTH];
+		byte[] path = new byte[256];
+		int pathLength = 0;
+		int position = HEADER_LENGTH;
+		for (int i = 0; i < count; i++)
+		{
+			int start = position;
+			if (position + ENTRY_FIXED_LENGTH > end)
+			{
+				throw new IOException("Truncated git index"); //$NON-NLS-1$
+			}
+			// ctime, ctime nanoseconds, mtime, mtime nanoseconds, dev, ino, mode, uid, gid, size
+			int mtime = buffer.getInt(position + 8);
+			int mode = buffer.getInt(position + 24);
+			int size = buffer.getInt(position + 36);
+			buffer.position(position + 40);
+			buffer.get(sha);
+			int flags = buffer.getShort(position + 60) & 0xffff;
+			position += ENTRY_FIXED_LENGTH;
+
+			int extendedFlags = 0;
+			if ((flags & FLAG_EXTENDED) != 0)
+			{
+				if (version < 3)
+				{
+					throw new IOException("Extended flags in git index version " + version); //$NON-NLS-1$
+				}
+				extendedFlags = buffer.getShort(position) & 0xffff;
+				position += 2;
+			}
+			if ((mode & TYPE_MASK) == TYPE_DIRECTORY)
+			{
+				throw new IOException("Sparse git index"); //$NON-NLS-1$
+			}
+
+			if (version == 4)
+			{
+				// the path drops a number of bytes from the end of the previous one, then appends a suffix
+				int c = buffer.get(position++) & 0xff;
+				int strip = c & 0x7f;
+				while ((c & 0x80) != 0)
+				{
+					c = buffer.get(position++) & 0xff;
+					strip = ((strip + 1) << 7) | (c & 0x7f);
+				}
+				if (strip > pathLength)
+				{
+					throw new IOException("Corrupt git index path"); //$NON-NLS-1$
+				}
+				pathLength -= strip;
+			}
+			else
+			{
+				pathLength = 0;
+			}
+			while (true)
+			{
+				if (position >= end)
+				{
+					throw new IOException("Truncated git index"); //$NON-NLS-1$
+				}
+				byte b = buffer.get(position++);
+				if (b == 0)
+				{
+					break;
+				}
+				if (pathLength == path.length)
+				{
+					byte[] grown = new byte[path.length * 2];
+					System.arraycopy(path, 0, grown, 0, pathLength);
+					path = grown;
+				}
+				path[pathLength++] = b;
+			}
+			if (version != 4)
+			{
+				// entries are padded with NULs to a multiple of eight bytes
+				position = start + ((position - start + 7) & ~7);
+			}
+
+			String name = decode(path, pathLength);
+			Entry entry = new Entry(name, mode, toHex(sha, 0), (flags & FLAG_STAGE_MASK) >> FLAG_STAGE_SHIFT, mtime,
+					size, (flags & FLAG_ASSUME_VALID) != 0, (extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0,
+					(extendedFlags & EXTENDED_FLAG_INTENT_TO_ADD) != 0);
+			Entry existing = entries.put(name, entry);
+			if (existing != null && existing.stage != 0)
+			{
+				// keep the unmerged entries showing up as such
+				entries.put(name, existing);
+			}
+		}
+
+		// extensions: a signature, a length and the data
+		while (position + 8 <= end)
+		{
+			int signature = buffer.getInt(position);
+			if (signature == SPLIT_INDEX)
+			{
+				throw new IOException("Split git index"); //$NON-NLS-1$
+			}
+			if (signature == SPARSE_DIRECTORIES)
+			{
+				throw new IOException("Sparse git index"); //$NON-NLS-1$
+			}
+			int extensionLength = buffer.getInt(position + 4);
+			if (extensionLength < 0 || extensionLength > end - position - 8)
+			{
+				throw new IOException("Corrupt git index extension"); //$NON-NLS-1$
+			}
+			position += 8 + extensionLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * The index ends with the SHA-1 of its contents. Checking it detects files being written, and repositories using
+	 * another hash, whose entries would be read at the wrong offsets.
+	 * 
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private static void verifyChecksum(ByteBuffer buffer) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+		int end = buffer.limit() - SHA_LENGTH;
+		ByteBuffer contents = buffer.duplicate();
+		contents.position(0);
+		contents.limit(end);
+		digest.update(contents);
+		byte[] expected = new byte[SHA_LENGTH];
+		ByteBuffer checksum = buffer.duplicate();
+		checksum.position(end);
+		checksum.get(expected);
+		if (!MessageDigest.isEqual(expected, digest.digest()))
+		{
+			throw new IOException("Git index checksum mismatch"); //$NON-NLS-1$
+		}
+	}
+
+	private static String decode(byte[] bytes, int length) throws UnsupportedEncodingException
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (bytes[i] < 0)
+			{
+				return new String(bytes, 0, length, UTF_8);
+			}
+		}
+		// plain ASCII, the common case
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+		{
+			chars[i] = (char) bytes[i];
+		}
+		return new String(chars);
+	}
+}
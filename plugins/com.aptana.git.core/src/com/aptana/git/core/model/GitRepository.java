@@ -8,12 +8,14 @@
 package com.aptana.git.core.model;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.text.MessageFormat;
@@ -59,6 +61,8 @@ import org.eclipse.core.runtime.jobs.Job;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.ProcessStatus;
+import com.aptana.core.util.ResourceUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.filewatcher.FileWatcher;
 import com.aptana.git.core.GitPlugin;
@@ -157,7 +161,7 @@ public class GitRepository
 	 * The most important file in git. This holds the current file state. When this changes, the state of files in the
 	 * repo has changed.
 	 */
-	private static final String INDEX = "index"; //$NON-NLS-1$
+	static final String INDEX = "index"; //$NON-NLS-1$
 
 	/**
 	 * File created prior to merges (which happen as part of pull, which is just fetch + merge).
@@ -181,6 +185,11 @@ public class GitRepository
 
 	public static final String GIT_DIR = ".git"; //$NON-NLS-1$
 
+	/**
+	 * The type of the objects holding the contents of files.
+	 */
+	private static final String BLOB = "blob"; //$NON-NLS-1$
+
 	/**
 	 * Regexp used to grab list of remote names out of .git/config.
 	 */
@@ -208,6 +217,12 @@ public class GitRepository
 	private int remoteDirCreationWatchId = -1;
 	private Set<IGitRepositoryListener> listeners;
 
+	/**
+	 * Long-lived "git cat-file" processes that look objects up, and read their contents. Started on first use.
+	 */
+	private GitBatchProcess objectChecker;
+	private GitBatchProcess objectReader;
+
 	GitRepository(URI fileURL)
 	{
 		this.fileURL = fileURL;
@@ -846,24 +861,42 @@ public class GitRepository
 
 		// Now do a batch check against all the projects underneath our repo
 		Set<IProject> projectsNotExistingOnNewBranch = new HashSet<IProject>();
+		List<String> objectNames = new ArrayList<String>(beneathRepo.size());
 		StringBuilder input = new StringBuilder();
 		for (IProject project : beneathRepo)
 		{
-			input.append(branchName).append(':')
-					.append(relativePath(project).append(IProjectDescription.DESCRIPTION_FILE_NAME).toPortableString())
-					.append('\n');
+			String objectName = branchName + ':'
+					+ relativePath(project).append(IProjectDescription.DESCRIPTION_FILE_NAME).toPortableString();
+			objectNames.add(objectName);
+			input.append(objectName).append('\n');
 		}
 
-		if (!enterRead())
+		IStatus result = null;
+		List<GitBatchProcess.ObjectInfo> objects = lookupObjects(false, objectNames);
+		if (objects != null)
 		{
-			IdeLog.logError(GitPlugin.getDefault(), Messages.GitRepository_FailedAcquireReadLock);
-			return Collections.emptySet();
+			GitExecutable.processesAvoided(1);
+			for (int i = 0; i < objects.size(); i++)
+			{
+				if (objects.get(i) == null)
+				{
+					projectsNotExistingOnNewBranch.add(beneathRepo.get(i));
+				}
+			}
 		}
+		else
+		{
+			if (!enterRead())
+			{
+				IdeLog.logError(GitPlugin.getDefault(), Messages.GitRepository_FailedAcquireReadLock);
+				return Collections.emptySet();
+			}
 
-		IStatus result = GitExecutable.instance().runInBackground(input.toString(), workingDir,
-				"cat-file", "--batch-check"); //$NON-NLS-1$ //$NON-NLS-2$
-		exitRead();
-		if (result.isOK())
+			result = GitExecutable.instance().runInBackground(input.toString(), workingDir,
+					"cat-file", "--batch-check"); //$NON-NLS-1$ //$NON-NLS-2$
+			exitRead();
+		}
+		if (result != null && result.isOK())
 		{
 			String output = result.getMessage();
 			String[] lines = output.split("\r?\n|\r"); //$NON-NLS-1$ // $codepro.audit.disable platformSpecificLineSeparator
@@ -1610,6 +1643,19 @@ public class GitRepository
 				listeners = null;
 			}
 		}
+		synchronized (this)
+		{
+			if (objectChecker != null)
+			{
+				objectChecker.dispose();
+				objectChecker = null;
+			}
+			if (objectReader != null)
+			{
+				objectReader.dispose();
+				objectReader = null;
+			}
+		}
 		_headRef = null;
 		hasChanged = false;
 		index = null;
@@ -2171,7 +2217,121 @@ public class GitRepository
 	 */
 	public IStatus revParse(String ref)
 	{
-		return execute(GitRepository.ReadWrite.READ, "rev-parse", "--verify", ref); //$NON-NLS-1$ //$NON-NLS-2$
+		// Resolving the ref with the running cat-file process saves a git process per call
+		List<GitBatchProcess.ObjectInfo> objects = lookupObjects(false, Collections.singletonList(ref));
+		if (objects == null)
+		{
+			return execute(GitRepository.ReadWrite.READ, "rev-parse", "--verify", ref); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		GitExecutable.processesAvoided(1);
+		GitBatchProcess.ObjectInfo object = objects.get(0);
+		if (object == null)
+		{
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), MessageFormat.format(
+					Messages.GitRepository_InvalidRevision, ref));
+		}
+		return new ProcessStatus(0, object.sha + '\n', StringUtil.EMPTY);
+	}
+
+	/**
+	 * Returns the contents of an object, such as "HEAD:path/to/file" or ":0:path/to/file" for the staged version of a
+	 * file, as "git show <object>" would.
+	 * 
+	 * @param objectName
+	 * @return
+	 */
+	public IStatus readObject(String objectName)
+	{
+		List<GitBatchProcess.ObjectInfo> objects = lookupObjects(true, Collections.singletonList(objectName));
+		if (objects == null || objects.get(0) == null || !BLOB.equals(objects.get(0).type))
+		{
+			// Let git show report errors, and format commits and trees
+			return execute(GitRepository.ReadWrite.READ, "show", objectName); //$NON-NLS-1$
+		}
+
+		GitExecutable.processesAvoided(1);
+		return new ProcessStatus(0, toProcessOutput(objects.get(0).contents), StringUtil.EMPTY);
+	}
+
+	/**
+	 * Looks objects up with the long-lived cat-file processes of the repository.
+	 * 
+	 * @param readContents
+	 *            whether the contents of the objects are needed
+	 * @param objectNames
+	 * @return the objects, with null for those that don't exist, or null if they couldn't be looked up that way and a
+	 *         git process has to be run instead
+	 */
+	List<GitBatchProcess.ObjectInfo> lookupObjects(boolean readContents, List<String> objectNames)
+	{
+		GitBatchProcess batchProcess = getBatchProcess(readContents);
+		if (batchProcess == null || !enterRead())
+		{
+			return null;
+		}
+		try
+		{
+			return batchProcess.lookup(objectNames);
+		}
+		finally
+		{
+			exitRead();
+		}
+	}
+
+	private synchronized GitBatchProcess getBatchProcess(boolean readContents)
+	{
+		if (readContents ? objectReader == null : objectChecker == null)
+		{
+			GitExecutable executable = GitExecutable.instance();
+			IPath workingDirectory = workingDirectory();
+			if (executable == null || workingDirectory == null)
+			{
+				return null;
+			}
+			if (readContents)
+			{
+				objectReader = new GitBatchProcess(executable, workingDirectory, true);
+			}
+			else
+			{
+				objectChecker = new GitBatchProcess(executable, workingDirectory, false);
+			}
+		}
+		return readContents ? objectReader : objectChecker;
+	}
+
+	/**
+	 * Converts the contents of a file the way the output of a git process is read: as UTF-8, with the platform line
+	 * separator and without a trailing line separator.
+	 * 
+	 * @param contents
+	 * @return
+	 */
+	private static String toProcessOutput(byte[] contents)
+	{
+		String lineSeparator = ResourceUtil.getLineSeparatorValue(null);
+		StringBuilder output = new StringBuilder(contents.length);
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents),
+					IOUtil.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null) // $codepro.audit.disable assignmentInCondition
+			{
+				output.append(line).append(lineSeparator);
+			}
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+		}
+		if (output.length() > 0)
+		{
+			output.setLength(output.length() - lineSeparator.length());
+		}
+		return output.toString();
 	}
 
 	/**
@@ -25,6 +25,8 @@ public class Messages extends NLS // NO_UCD
 
 	public static String GitRepository_FailedReadLockForConfig;
 
+	public static String GitRepository_InvalidRevision;
+
 	public static String GitRepositoryManager_UnableToFindGitExecutableError; // NO_UCD
 
 	static
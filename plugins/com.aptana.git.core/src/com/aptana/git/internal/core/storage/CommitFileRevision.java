@@ -26,7 +26,6 @@ import org.eclipse.team.core.history.provider.FileRevision;
 import com.aptana.core.util.ArrayUtil;
 import com.aptana.git.core.model.GitCommit;
 import com.aptana.git.core.model.GitRef;
-import com.aptana.git.core.model.GitRepository;
 
 public class CommitFileRevision extends FileRevision
 {
@@ -73,8 +72,7 @@ public class CommitFileRevision extends FileRevision
 				{
 					return new ByteArrayInputStream(ArrayUtil.NO_BYTES); // $codepro.audit.disable closeWhereCreated
 				}
-				IStatus result = commit.repository().execute(GitRepository.ReadWrite.READ,
-						"show", commit.sha() + ":" + path); //$NON-NLS-1$ //$NON-NLS-2$
+				IStatus result = commit.repository().readObject(commit.sha() + ":" + path); //$NON-NLS-1$
 
 				// Encode using UTF-8, otherwise use default character set for platform
 				try
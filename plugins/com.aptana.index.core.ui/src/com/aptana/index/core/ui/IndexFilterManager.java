@@ -32,6 +32,7 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.aptana.core.io.efs.EFSUtils;
+import com.aptana.core.util.PathMatcher;
 import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.ui.preferences.IPreferenceConstants;
 
@@ -56,6 +57,7 @@ public class IndexFilterManager
 	}
 
 	private Set<IFileStore> _filteredItems;
+	private volatile PathMatcher _filteredItemMatcher;
 
 	/**
 	 * IndexFilterManager
@@ -98,6 +100,7 @@ public class IndexFilterManager
 
 				// add new item to our list
 				this._filteredItems.add(item);
+				this._filteredItemMatcher = null;
 			}
 		}
 	}
@@ -251,14 +254,34 @@ public class IndexFilterManager
 
 		if (item != null)
 		{
+			result = this.getFilteredItemMatcher().matches(item.toURI().toString());
+		}
+
+		return result;
+	}
+
+	/**
+	 * getFilteredItemMatcher
+	 * 
+	 * @return a matcher of the URIs of the filtered items and of their descendants
+	 */
+	private PathMatcher getFilteredItemMatcher()
+	{
+		PathMatcher result = this._filteredItemMatcher;
+
+		if (result == null)
+		{
+			result = new PathMatcher(false);
+
 			for (IFileStore candidate : this._filteredItems)
 			{
-				if (candidate.equals(item) || candidate.isParentOf(item))
-				{
-					result = true;
-					break;
-				}
+				String uri = candidate.toURI().toString();
+
+				result.addLiteral(uri);
+				result.addPrefix(uri.endsWith("/") ? uri : uri + "/"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+
+			this._filteredItemMatcher = result;
 		}
 
 		return result;
@@ -314,6 +337,7 @@ public class IndexFilterManager
 		if (item != null && this._filteredItems != null)
 		{
 			this._filteredItems.remove(item);
+			this._filteredItemMatcher = null;
 		}
 	}
 }
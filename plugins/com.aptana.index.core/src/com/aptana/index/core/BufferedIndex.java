@@ -0,0 +1,83 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the entries added by the indexing participants for a single file while the file is indexed on a worker
+ * thread. The entries are later copied into the real index in one step by
+ * {@link Index#replaceEntries(java.net.URI, Index)}. Queries are answered by the real index.
+ */
+class BufferedIndex extends Index
+{
+	private final Index target;
+
+	/**
+	 * BufferedIndex
+	 *
+	 * @param target
+	 */
+	BufferedIndex(Index target)
+	{
+		super(target.getContainerURI());
+		this.target = target;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.Index#getCategories()
+	 */
+	@Override
+	public List<String> getCategories()
+	{
+		return target.getCategories();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.Index#query(java.lang.String[], java.lang.String, int)
+	 */
+	@Override
+	public List<QueryResult> query(String[] categories, String key, int matchRule)
+	{
+		return target.query(categories, key, matchRule);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.Index#queryDocumentNames(java.lang.String)
+	 */
+	@Override
+	public Set<String> queryDocumentNames(String substring) throws IOException
+	{
+		return target.queryDocumentNames(substring);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.Index#save()
+	 */
+	@Override
+	public void save()
+	{
+		// the entries are saved with the real index
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.index.core.Index#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return target.toString();
+	}
+}
@@ -0,0 +1,19 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+public interface IPreferenceConstants
+{
+
+	/**
+	 * The number of threads used to read and index files. A value of 1 indexes files serially. Defaults to the number
+	 * of available processors
+	 */
+	String INDEX_PARALLELISM = "index_parallelism"; //$NON-NLS-1$
+
+}
@@ -292,9 +292,16 @@ public class Index
 	}
 
 	private MemoryIndex memoryIndex;
+	// the changes currently being written to disk by the merge job, null when no merge is running
+	private MemoryIndex mergingIndex;
 	private DiskIndex diskIndex;
 	private ReadWriteLock monitor;
+	// serializes rewrites of the index file. Always acquired before the monitor
+	private final Object mergeLock = new Object();
+	private IndexMergeJob mergeJob;
 	private URI containerURI;
+	// the state of the indexed files, loaded on first use
+	private IndexManifest manifest;
 
 	/**
 	 * Index
@@ -326,6 +333,18 @@ public class Index
 		}
 	}
 
+	/**
+	 * Creates an index that is only held in memory and has no index file. It is not locked, so it must be confined to a
+	 * single thread
+	 * 
+	 * @param containerURI
+	 */
+	Index(URI containerURI)
+	{
+		this.containerURI = containerURI;
+		this.memoryIndex = new MemoryIndex();
+	}
+
 	/**
 	 * addEntry
 	 * 
@@ -356,12 +375,29 @@ public class Index
 			logTrace(MessageFormat.format("Deleting index ''{0}''", this)); //$NON-NLS-1$
 		}
 
-		// TODO Enter write?
+		if (this.mergeJob != null)
+		{
+			this.mergeJob.cancel();
+		}
 
-		File indexFile = this.getIndexFile();
-		if (indexFile != null && indexFile.exists())
+		synchronized (this.mergeLock)
 		{
-			indexFile.delete();
+			// TODO Enter write?
+
+			File indexFile = this.getIndexFile();
+			if (indexFile != null)
+			{
+				if (indexFile.exists())
+				{
+					indexFile.delete();
+				}
+				IndexManifest.delete(indexFile);
+			}
+		}
+
+		synchronized (this)
+		{
+			this.manifest = null;
 		}
 	}
 
@@ -405,24 +441,6 @@ public class Index
 		}
 	}
 
-	/**
-	 * This method does not guarantee that it will acquire the write lock. A boolean is returned indicating success.
-	 * 
-	 * @return
-	 */
-	private boolean exitReadEnterWrite()
-	{
-		boolean result = false;
-
-		if (this.monitor != null)
-		{
-			monitor.readLock().unlock();
-			result = monitor.writeLock().tryLock();
-		}
-
-		return result;
-	}
-
 	private void exitWrite()
 	{
 		if (this.monitor != null)
@@ -431,18 +449,6 @@ public class Index
 		}
 	}
 
-	/**
-	 * This operation is _not_ atomic. This method will block until the read lock is acquired.
-	 */
-	private void exitWriteEnterRead()
-	{
-		if (this.monitor != null)
-		{
-			exitWrite();
-			enterRead();
-		}
-	}
-
 	/**
 	 * getCategories
 	 * 
@@ -455,6 +461,10 @@ public class Index
 		try
 		{
 			categories.addAll(this.memoryIndex.getCategories());
+			if (this.mergingIndex != null)
+			{
+				categories.addAll(this.mergingIndex.getCategories());
+			}
 			categories.addAll(this.diskIndex.getCategories());
 		}
 		finally
@@ -464,6 +474,16 @@ public class Index
 		return new ArrayList<String>(categories);
 	}
 
+	/**
+	 * getContainerURI
+	 * 
+	 * @return
+	 */
+	URI getContainerURI()
+	{
+		return containerURI;
+	}
+
 	/**
 	 * getIndexFile
 	 * 
@@ -474,6 +494,63 @@ public class Index
 		return this.diskIndex == null ? null : this.diskIndex.indexFile;
 	}
 
+	/**
+	 * Returns the manifest of the files in this index, loading it the first time. It is shared by everything that
+	 * writes to this index: removing or replacing the entries of a document forgets the document's recorded state, and
+	 * {@link #save()} writes the manifest after the index. Returns null for an index that has no index file
+	 * 
+	 * @return
+	 */
+	public synchronized IndexManifest getManifest()
+	{
+		if (this.manifest == null)
+		{
+			File indexFile = getIndexFile();
+			if (indexFile == null)
+			{
+				return null;
+			}
+
+			this.manifest = IndexManifest.load(indexFile);
+			if (this.manifest == null)
+			{
+				this.manifest = new IndexManifest(indexFile);
+			}
+		}
+
+		return this.manifest;
+	}
+
+	/**
+	 * Forget the recorded state of a document whose entries are removed or replaced
+	 * 
+	 * @param containerRelativeURI
+	 */
+	private void forgetIndexed(URI containerRelativeURI)
+	{
+		IndexManifest manifest = getManifest();
+		if (manifest != null)
+		{
+			manifest.forgetIndexed(containerRelativeURI);
+		}
+	}
+
+	/**
+	 * Returns the job that merges the pending changes of this index into the index file. The job also reports merge
+	 * time and size metrics
+	 * 
+	 * @return
+	 */
+	public synchronized IndexMergeJob getMergeJob()
+	{
+		if (this.mergeJob == null)
+		{
+			this.mergeJob = new IndexMergeJob(this);
+		}
+
+		return this.mergeJob;
+	}
+
 	/**
 	 * @deprecated
 	 * @return
@@ -494,6 +571,74 @@ public class Index
 		return memoryIndex.hasChanged();
 	}
 
+	/**
+	 * Write the pending changes to the index file on behalf of the merge job. The changes are frozen and replaced by
+	 * an empty memory index under the write lock, then written without holding any lock while queries are answered from
+	 * the current index file plus the frozen changes. Finally the new index file is swapped in under the write lock.
+	 * 
+	 * @param job
+	 * @throws IOException
+	 */
+	void mergeInBackground(IndexMergeJob job) throws IOException
+	{
+		synchronized (this.mergeLock)
+		{
+			MemoryIndex changes;
+			DiskIndex current;
+
+			this.enterWrite();
+			try
+			{
+				if (!this.memoryIndex.hasChanged())
+				{
+					return;
+				}
+
+				changes = this.memoryIndex;
+				current = this.diskIndex;
+				this.mergingIndex = changes;
+				this.memoryIndex = new MemoryIndex();
+			}
+			finally
+			{
+				this.exitWrite();
+			}
+
+			long start = System.currentTimeMillis();
+			DiskIndex merged = null;
+			boolean committed = false;
+
+			try
+			{
+				merged = current.prepareMerge(changes);
+			}
+			finally
+			{
+				this.enterWrite();
+				try
+				{
+					if (merged != null)
+					{
+						this.diskIndex = current.commitMerge(merged);
+						committed = true;
+					}
+				}
+				finally
+				{
+					if (!committed)
+					{
+						// keep the changes around for the next attempt
+						this.memoryIndex.addOlderChanges(changes);
+					}
+					this.mergingIndex = null;
+					this.exitWrite();
+				}
+			}
+
+			job.mergeCompleted(System.currentTimeMillis() - start, changes.numberOfChanges(), getIndexFile().length());
+		}
+	}
+
 	/**
 	 * query
 	 * 
@@ -509,34 +654,31 @@ public class Index
 
 		try
 		{
-			// NOTE: I'd like to lock later in the method, but it would contort
-			// the IReadWriteMonitor interface, so we lock here and stick with
-			// the call to exitReadEnterWrite below
 			this.enterRead();
 
-			if (this.memoryIndex.shouldMerge() && this.exitReadEnterWrite())
+			if (this.memoryIndex.shouldMerge())
 			{
-				// in write...
-				try
-				{
-					this.save(false);
-				}
-				finally
-				{
-					this.exitWriteEnterRead();
-				}
+				// Don't make the query wait for the merge, it is answered from the current state
+				this.getMergeJob().schedule();
 			}
-			// We're in read mode for monitor here now matter what...
+
 			int rule = matchRule & MATCH_RULE_INDEX_MASK;
 
-			if (this.memoryIndex.hasChanged())
+			if (this.mergingIndex != null)
+			{
+				// newer changes hide older ones: memory index, then the changes being merged, then the disk index
+				results = this.diskIndex.addQueryResults(categories, key, rule, this.mergingIndex, this.memoryIndex);
+				results = this.mergingIndex.addQueryResults(categories, key, rule, results, this.memoryIndex);
+				results = this.memoryIndex.addQueryResults(categories, key, rule, results);
+			}
+			else if (this.memoryIndex.hasChanged())
 			{
 				results = this.diskIndex.addQueryResults(categories, key, rule, this.memoryIndex);
 				results = this.memoryIndex.addQueryResults(categories, key, rule, results);
 			}
 			else
 			{
-				results = this.diskIndex.addQueryResults(categories, key, rule, null);
+				results = this.diskIndex.addQueryResults(categories, key, rule);
 			}
 		}
 		catch (IOException e)
@@ -567,14 +709,20 @@ public class Index
 		this.enterRead();
 		try
 		{
-			if (this.memoryIndex.hasChanged())
+			if (this.mergingIndex != null)
+			{
+				results = this.diskIndex.addDocumentNames(substring, this.mergingIndex, this.memoryIndex);
+				results.addAll(this.mergingIndex.addDocumentNames(substring, this.memoryIndex));
+				results.addAll(this.memoryIndex.addDocumentNames(substring));
+			}
+			else if (this.memoryIndex.hasChanged())
 			{
 				results = this.diskIndex.addDocumentNames(substring, this.memoryIndex);
 				results.addAll(this.memoryIndex.addDocumentNames(substring));
 			}
 			else
 			{
-				results = this.diskIndex.addDocumentNames(substring, null);
+				results = this.diskIndex.addDocumentNames(substring);
 			}
 		}
 		finally
@@ -608,7 +756,7 @@ public class Index
 		finally
 		{
 			this.exitRead();
-			this.enterWrite(); // we must wait for write! DO NOT CALL exitReadEnterWrite!
+			this.enterWrite(); // we must wait for write!
 		}
 		try
 		{
@@ -618,6 +766,7 @@ public class Index
 		{
 			this.exitWrite();
 		}
+		forgetIndexed(containerRelativeURI);
 	}
 
 	/**
@@ -627,72 +776,104 @@ public class Index
 	 */
 	public void removeCategories(String... categoryNames)
 	{
-		this.enterWrite();
-		try
+		synchronized (this.mergeLock)
 		{
-			this.memoryIndex.removeCategories(categoryNames);
-			this.diskIndex = this.diskIndex.removeCategories(categoryNames, this.memoryIndex);
+			this.enterWrite();
+			try
+			{
+				this.memoryIndex.removeCategories(categoryNames);
+				this.diskIndex = this.diskIndex.removeCategories(categoryNames, this.memoryIndex);
+				this.memoryIndex = new MemoryIndex();
+			}
+			catch (IOException e)
+			{
+				IdeLog.logError(IndexPlugin.getDefault(),
+						"An error occurred while removing categories from the index", e); //$NON-NLS-1$
+			}
+			finally
+			{
+				this.exitWrite();
+			}
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Replace the entries of a document with all of the entries collected in a memory-only index. The write lock is
+	 * only acquired once, so queries never see the document half indexed
+	 * 
+	 * @param containerRelativeURI
+	 * @param entries
+	 */
+	void replaceEntries(URI containerRelativeURI, Index entries)
+	{
+		this.enterWrite();
+		try
 		{
-			IdeLog.logError(IndexPlugin.getDefault(), "An error occurred while removing categories from the index", e); //$NON-NLS-1$
+			this.memoryIndex.remove(containerRelativeURI.toString());
+			this.memoryIndex.addEntries(entries.memoryIndex);
 		}
 		finally
 		{
 			this.exitWrite();
 		}
+		forgetIndexed(containerRelativeURI);
 	}
 
 	/**
-	 * save
+	 * Write the pending changes to the index file, then the manifest, so the manifest never claims files that aren't in
+	 * the index file
 	 * 
 	 * @throws IOException
 	 */
 	public void save() throws IOException
 	{
-		if (isTraceEnabled())
+		saveIndex();
+
+		IndexManifest manifest;
+		synchronized (this)
 		{
-			logTrace(MessageFormat.format("Saving index ''{0}''", this)); //$NON-NLS-1$
+			manifest = this.manifest;
+		}
+		if (manifest != null)
+		{
+			manifest.save();
 		}
-
-		this.save(true);
 	}
 
 	/**
-	 * save
+	 * saveIndex
 	 * 
-	 * @param lock
 	 * @throws IOException
 	 */
-	private void save(boolean lock) throws IOException
+	private void saveIndex() throws IOException
 	{
-		// NOTE: Unfortunately we need the ugly "lock" flag hack in order to
-		// prevent hanging when save is called from query
-		try
+		if (isTraceEnabled())
 		{
-			if (lock)
-			{
-				this.enterWrite();
-			}
+			logTrace(MessageFormat.format("Saving index ''{0}''", this)); //$NON-NLS-1$
+		}
 
-			// no need to do anything if the memory index hasn't changed
-			if (!hasChanged())
+		// Wait for a running background merge, then merge synchronously
+		synchronized (this.mergeLock)
+		{
+			this.enterWrite();
+			try
 			{
-				return;
-			}
+				// no need to do anything if the memory index hasn't changed
+				if (!hasChanged())
+				{
+					return;
+				}
 
-			int numberOfChanges = this.memoryIndex.numberOfChanges();
-			this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
-			this.memoryIndex = new MemoryIndex();
+				int numberOfChanges = this.memoryIndex.numberOfChanges();
+				this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
+				this.memoryIndex = new MemoryIndex();
 
-			if (numberOfChanges > 1000)
-			{
-				System.gc(); // reclaim space if the MemoryIndex was very BIG
+				if (numberOfChanges > 1000)
+				{
+					System.gc(); // reclaim space if the MemoryIndex was very BIG
+				}
 			}
-		}
-		finally
-		{
-			if (lock)
+			finally
 			{
 				this.exitWrite();
 			}
@@ -7,6 +7,7 @@
  */
 package com.aptana.index.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
@@ -82,31 +83,49 @@ public class IndexContainerJob extends IndexRequestJob
 			removeDeletedFiles(index, documents, files, sub.newChild(75));
 
 			// Ok, we removed files, and now if there's none left in project we can just end here.
+			IndexManifest manifest = index.getManifest();
 			if (CollectionsUtil.isEmpty(files))
 			{
+				manifest.clear();
 				return Status.OK_STATUS;
 			}
 
-			// Should check timestamp of index versus timestamps of files, only index files that are out of date
-			// (for Ruby)!
-			long timestamp = 0L;
-			if (!CollectionsUtil.isEmpty(documents))
+			if (sub.isCanceled())
 			{
-				// If there's nothing in the index, index everything; otherwise use last modified time of index to
-				// filter...
-				timestamp = index.getIndexFile().lastModified();
+				return Status.CANCEL_STATUS;
 			}
 
-			if (sub.isCanceled())
+			// Only index the files whose contents changed since they were last indexed. If there's nothing in the
+			// index, index everything.
+			if (!CollectionsUtil.isEmpty(documents) && manifest.size() > 0)
 			{
-				return Status.CANCEL_STATUS;
+				manifest.retainAll(files);
+				files = filterChangedFiles(manifest, files);
+			}
+			else
+			{
+				// No manifest yet, use last modified time of index to filter...
+				manifest.clear();
+				File indexFile = index.getIndexFile();
+				long timestamp = CollectionsUtil.isEmpty(documents) ? 0L : indexFile.lastModified();
+				files = recordFilesByTimestamp(manifest, timestamp, files);
 			}
-			files = filterFilesByTimestamp(timestamp, files);
 			sub.worked(50);
 
 			if (!CollectionsUtil.isEmpty(files))
 			{
-				indexFileStores(index, files, sub.newChild(750));
+				Set<IFileStore> failed = indexFileStores(index, files, sub.newChild(750));
+				for (IFileStore file : files)
+				{
+					if (failed.contains(file))
+					{
+						manifest.forget(file);
+					}
+					else
+					{
+						manifest.recordIndexed(file);
+					}
+				}
 			}
 		}
 		catch (CoreException e)
@@ -121,6 +140,7 @@ public class IndexContainerJob extends IndexRequestJob
 		{
 			try
 			{
+				// saves the manifest once the files it claims are in the index
 				index.save();
 			}
 			catch (IOException e)
@@ -233,6 +253,54 @@ public class IndexContainerJob extends IndexRequestJob
 		sub.done();
 	}
 
+	/**
+	 * Filters the set of {@link IFileStore}s to those whose contents changed since they were recorded in the manifest.
+	 * The changed files are recorded in the manifest once they are indexed.
+	 * 
+	 * @param manifest
+	 * @param files
+	 * @return
+	 */
+	protected Set<IFileStore> filterChangedFiles(IndexManifest manifest, Set<IFileStore> files)
+	{
+		Set<IFileStore> changed = new HashSet<IFileStore>();
+		for (IFileStore file : files)
+		{
+			if (manifest.isChanged(file, file.fetchInfo()))
+			{
+				changed.add(file);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Filters the files by timestamp when there is no manifest yet. The other files are recorded in a new manifest by
+	 * size and modification time, the files that will be indexed are hashed and recorded once they are indexed.
+	 * 
+	 * @param manifest
+	 * @param indexLastModified
+	 * @param files
+	 * @return
+	 */
+	private Set<IFileStore> recordFilesByTimestamp(IndexManifest manifest, long indexLastModified,
+			Set<IFileStore> files)
+	{
+		Set<IFileStore> filtered = filterFilesByTimestamp(indexLastModified, files);
+		for (IFileStore file : files)
+		{
+			if (filtered.contains(file))
+			{
+				manifest.isChanged(file, file.fetchInfo());
+			}
+			else
+			{
+				manifest.record(file, file.fetchInfo());
+			}
+		}
+		return filtered;
+	}
+
 	/**
 	 * Filters the set of {@link IFileStore}s to those whose lastMod is at or after the passed in mod timestamp.
 	 * 
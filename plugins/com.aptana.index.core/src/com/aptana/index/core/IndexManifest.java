@@ -0,0 +1,460 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+
+import com.aptana.core.logging.IdeLog;
+
+/**
+ * Remembers the size, modification time and content hash of every file of a container as it was when the container
+ * was last indexed. The manifest is kept next to the index file. A file whose size and modification time are unchanged
+ * is assumed to be unchanged; otherwise its contents are hashed, so touching a file or restoring an older version of it
+ * only reindexes it if its contents really differ. The manifest of an index is shared by everything that writes to the
+ * index, see {@link Index#getManifest()}.
+ */
+public class IndexManifest
+{
+	private static final String SIGNATURE = "INDEX MANIFEST VERSION 1"; //$NON-NLS-1$
+	private static final String EXTENSION = ".manifest"; //$NON-NLS-1$
+	private static final String HASH_ALGORITHM = "MD5"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Some file systems only keep modification times to the second or two. A file modified within this interval before
+	 * the manifest was saved may have changed again without its modification time changing, so it is hashed again
+	 */
+	private static final long RACY_INTERVAL = 2000;
+
+	/**
+	 * The recorded state of a single file
+	 */
+	private static class Entry
+	{
+		final long size;
+		final long lastModified;
+		// null if the contents were never hashed
+		final byte[] hash;
+
+		Entry(long size, long lastModified, byte[] hash)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+
+	private final File manifestFile;
+	private final Map<String, Entry> entries;
+	// the state of the changed files, recorded once they are indexed
+	private final Map<String, Entry> pending;
+	private long savedTimestamp;
+	private boolean dirty;
+
+	/**
+	 * Creates an empty manifest for the given index file
+	 * 
+	 * @param indexFile
+	 */
+	public IndexManifest(File indexFile)
+	{
+		this.manifestFile = getManifestFile(indexFile);
+		this.entries = new HashMap<String, Entry>();
+		this.pending = new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Delete the manifest of the given index file, if any
+	 * 
+	 * @param indexFile
+	 */
+	public static void delete(File indexFile)
+	{
+		File manifestFile = getManifestFile(indexFile);
+
+		if (manifestFile.exists())
+		{
+			manifestFile.delete();
+		}
+	}
+
+	/**
+	 * getManifestFile
+	 * 
+	 * @param indexFile
+	 * @return
+	 */
+	private static File getManifestFile(File indexFile)
+	{
+		return new File(indexFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Load the manifest of the given index file. Returns null if there is no manifest or it can't be read
+	 * 
+	 * @param indexFile
+	 * @return
+	 */
+	public static IndexManifest load(File indexFile)
+	{
+		IndexManifest manifest = new IndexManifest(indexFile);
+
+		if (!manifest.manifestFile.exists())
+		{
+			return null;
+		}
+
+		try
+		{
+			manifest.read();
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), "Unable to read index manifest " + manifest.manifestFile, e); //$NON-NLS-1$
+			return null;
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Compute the hash of the contents of a file. Returns null if the file can't be read
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private static byte[] computeHash(IFileStore file)
+	{
+		InputStream stream = null;
+
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+
+			stream = file.openInputStream(EFS.NONE, null);
+
+			while ((read = stream.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, read);
+			}
+
+			return digest.digest();
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), e);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), e);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), e);
+		}
+		finally
+		{
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns true if the contents of the file may have changed since it was recorded. Files that were never recorded
+	 * are always considered changed. The current state of a changed file is only recorded by
+	 * {@link #recordIndexed(IFileStore)}, so a file that fails to index is checked again next time.
+	 * 
+	 * @param file
+	 * @param info
+	 * @return
+	 */
+	public synchronized boolean isChanged(IFileStore file, IFileInfo info)
+	{
+		String key = file.toURI().toString();
+		Entry entry = entries.get(key);
+		long size = info.getLength();
+		long lastModified = info.getLastModified();
+
+		if (entry != null && entry.size == size && entry.lastModified == lastModified
+				&& lastModified + RACY_INTERVAL < savedTimestamp)
+		{
+			return false;
+		}
+
+		byte[] hash = computeHash(file);
+
+		if (entry == null || entry.hash == null || hash == null || !Arrays.equals(entry.hash, hash))
+		{
+			pending.put(key, new Entry(size, lastModified, hash));
+			return true;
+		}
+
+		// same contents as indexed
+		entries.put(key, new Entry(size, lastModified, hash));
+		dirty = true;
+
+		return false;
+	}
+
+	/**
+	 * Record the current size and modification time of a file that is known to be indexed, without hashing it
+	 * 
+	 * @param file
+	 * @param info
+	 */
+	public synchronized void record(IFileStore file, IFileInfo info)
+	{
+		String key = file.toURI().toString();
+
+		pending.remove(key);
+		entries.put(key, new Entry(info.getLength(), info.getLastModified(), null));
+		dirty = true;
+	}
+
+	/**
+	 * Record the state a changed file had when it was checked by {@link #isChanged(IFileStore, IFileInfo)}, once it
+	 * has been indexed successfully. Does nothing for files that weren't found to be changed.
+	 * 
+	 * @param file
+	 */
+	public synchronized void recordIndexed(IFileStore file)
+	{
+		Entry entry = pending.remove(file.toURI().toString());
+
+		if (entry != null)
+		{
+			entries.put(file.toURI().toString(), entry);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forget a file that failed to index, so it is considered changed next time
+	 * 
+	 * @param file
+	 */
+	public synchronized void forget(IFileStore file)
+	{
+		String key = file.toURI().toString();
+
+		pending.remove(key);
+
+		if (entries.remove(key) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forget the recorded state of a file whose entries were removed from or replaced in the index. Everything that
+	 * writes to the index does this through {@link Index}, so a file changed by the builder and then restored to the
+	 * recorded contents is still indexed again. The state of a file that is being checked and indexed by
+	 * {@link IndexContainerJob} is kept, and recorded once it is indexed.
+	 * 
+	 * @param uri
+	 */
+	public synchronized void forgetIndexed(URI uri)
+	{
+		if (entries.remove(uri.toString()) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forget every file, as when the index is emptied
+	 */
+	public synchronized void clear()
+	{
+		pending.clear();
+
+		if (!entries.isEmpty())
+		{
+			entries.clear();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * read
+	 * 
+	 * @throws IOException
+	 */
+	private void read() throws IOException
+	{
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile),
+				BUFFER_SIZE));
+
+		try
+		{
+			if (!SIGNATURE.equals(stream.readUTF()))
+			{
+				throw new IOException("Wrong manifest format " + manifestFile); //$NON-NLS-1$
+			}
+
+			savedTimestamp = stream.readLong();
+
+			int count = stream.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				String key = stream.readUTF();
+				long size = stream.readLong();
+				long lastModified = stream.readLong();
+				int hashLength = stream.readUnsignedByte();
+				byte[] hash = null;
+
+				if (hashLength > 0)
+				{
+					hash = new byte[hashLength];
+					stream.readFully(hash);
+				}
+
+				entries.put(key, new Entry(size, lastModified, hash));
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Forget the files that are no longer part of the container
+	 * 
+	 * @param files
+	 */
+	public synchronized void retainAll(Set<IFileStore> files)
+	{
+		Set<String> keys = new HashSet<String>(files.size());
+
+		for (IFileStore file : files)
+		{
+			keys.add(file.toURI().toString());
+		}
+
+		pending.keySet().retainAll(keys);
+
+		for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();)
+		{
+			if (!keys.contains(i.next()))
+			{
+				i.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Write the manifest next to the index file, if anything changed. The manifest must only be saved once the files
+	 * it records have been saved to the index
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException
+	{
+		if (!dirty)
+		{
+			return;
+		}
+
+		long timestamp = System.currentTimeMillis();
+		File tmpFile = new File(manifestFile.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+				BUFFER_SIZE));
+
+		try
+		{
+			stream.writeUTF(SIGNATURE);
+			stream.writeLong(timestamp);
+			stream.writeInt(entries.size());
+
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet())
+			{
+				Entry entry = mapEntry.getValue();
+
+				stream.writeUTF(mapEntry.getKey());
+				stream.writeLong(entry.size);
+				stream.writeLong(entry.lastModified);
+
+				if (entry.hash == null)
+				{
+					stream.writeByte(0);
+				}
+				else
+				{
+					stream.writeByte(entry.hash.length);
+					stream.write(entry.hash);
+				}
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+
+		if (manifestFile.exists() && !manifestFile.delete())
+		{
+			tmpFile.delete();
+			throw new IOException("Failed to delete index manifest " + manifestFile); //$NON-NLS-1$
+		}
+
+		if (!tmpFile.renameTo(manifestFile))
+		{
+			throw new IOException("Failed to rename index manifest " + manifestFile); //$NON-NLS-1$
+		}
+
+		savedTimestamp = timestamp;
+		dirty = false;
+	}
+
+	/**
+	 * Returns the number of files recorded in this manifest
+	 * 
+	 * @return
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+}
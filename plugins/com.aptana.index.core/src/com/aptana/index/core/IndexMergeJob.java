@@ -0,0 +1,176 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.aptana.core.logging.IdeLog;
+
+/**
+ * Merges the pending changes of an index into its index file in the background, so that queries never wait for the
+ * file to be rewritten. The job also records how long merges take and how much they write.
+ */
+public class IndexMergeJob extends Job
+{
+	private final Index index;
+
+	// guards the metrics below
+	private final Object metricsLock = new Object();
+	private int mergeCount;
+	private long totalMergeTime;
+	private long lastMergeTime;
+	private int lastMergeChanges;
+	private long lastIndexFileSize;
+
+	/**
+	 * IndexMergeJob
+	 * 
+	 * @param index
+	 */
+	IndexMergeJob(Index index)
+	{
+		super(MessageFormat.format(Messages.IndexMergeJob_Name, index.getContainerURI()));
+		this.index = index;
+		setSystem(true);
+		setPriority(Job.BUILD);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#belongsTo(java.lang.Object)
+	 */
+	@Override
+	public boolean belongsTo(Object family)
+	{
+		return family == this.index || (family != null && family.equals(this.index.getContainerURI()));
+	}
+
+	/**
+	 * Returns the number of changed documents written by the last merge
+	 * 
+	 * @return
+	 */
+	public int getLastMergeChanges()
+	{
+		synchronized (metricsLock)
+		{
+			return lastMergeChanges;
+		}
+	}
+
+	/**
+	 * Returns the duration of the last merge, in milliseconds
+	 * 
+	 * @return
+	 */
+	public long getLastMergeTime()
+	{
+		synchronized (metricsLock)
+		{
+			return lastMergeTime;
+		}
+	}
+
+	/**
+	 * Returns the size of the index file written by the last merge, in bytes
+	 * 
+	 * @return
+	 */
+	public long getLastIndexFileSize()
+	{
+		synchronized (metricsLock)
+		{
+			return lastIndexFileSize;
+		}
+	}
+
+	/**
+	 * Returns the number of merges completed by this job
+	 * 
+	 * @return
+	 */
+	public int getMergeCount()
+	{
+		synchronized (metricsLock)
+		{
+			return mergeCount;
+		}
+	}
+
+	/**
+	 * Returns the total time spent merging, in milliseconds
+	 * 
+	 * @return
+	 */
+	public long getTotalMergeTime()
+	{
+		synchronized (metricsLock)
+		{
+			return totalMergeTime;
+		}
+	}
+
+	/**
+	 * Record the metrics of a completed merge
+	 * 
+	 * @param duration
+	 * @param changes
+	 * @param indexFileSize
+	 */
+	void mergeCompleted(long duration, int changes, long indexFileSize)
+	{
+		synchronized (metricsLock)
+		{
+			mergeCount++;
+			totalMergeTime += duration;
+			lastMergeTime = duration;
+			lastMergeChanges = changes;
+			lastIndexFileSize = indexFileSize;
+		}
+
+		if (Index.isTraceEnabled())
+		{
+			// @formatter:off
+			Index.logTrace(MessageFormat.format(
+				"Merged {0} changed documents into ''{1}'' in {2}ms, index file is now {3} bytes", //$NON-NLS-1$
+				changes, index, duration, indexFileSize
+			));
+			// @formatter:on
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor)
+	{
+		if (monitor != null && monitor.isCanceled())
+		{
+			return Status.CANCEL_STATUS;
+		}
+
+		try
+		{
+			index.mergeInBackground(this);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), "An error occurred while merging the index", e); //$NON-NLS-1$
+		}
+
+		return Status.OK_STATUS;
+	}
+}
@@ -10,14 +10,26 @@ package com.aptana.index.core;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
@@ -37,6 +49,11 @@ abstract class IndexRequestJob extends Job
 	private static final String FILE_CONTRIBUTORS_ID = "fileContributors"; //$NON-NLS-1$
 	private static final String ELEMENT_CONTRIBUTOR = "contributor"; //$NON-NLS-1$
 
+	/**
+	 * Below this number of files, starting worker threads costs more than it saves
+	 */
+	private static final int PARALLEL_THRESHOLD = 16;
+
 	private URI containerURI;
 	private List<IIndexFilterParticipant> filterParticipants;
 	private List<IIndexFileContributor> fileContributors;
@@ -212,6 +229,20 @@ abstract class IndexRequestJob extends Job
 		return filterParticipants;
 	}
 
+	/**
+	 * Returns the number of threads used to index files, as set by the {@link IPreferenceConstants#INDEX_PARALLELISM}
+	 * preference
+	 * 
+	 * @return
+	 */
+	protected int getParallelism()
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		return Platform.getPreferencesService().getInt(IndexPlugin.PLUGIN_ID, IPreferenceConstants.INDEX_PARALLELISM,
+				processors, null);
+	}
+
 	/**
 	 * getIndex
 	 * 
@@ -234,20 +265,32 @@ abstract class IndexRequestJob extends Job
 	 * @param index
 	 * @param fileStores
 	 * @param monitor
+	 * @return the files that an indexing participant failed to index
 	 * @throws CoreException
 	 */
-	protected void indexFileStores(Index index, Set<IFileStore> fileStores, IProgressMonitor monitor)
+	protected Set<IFileStore> indexFileStores(Index index, Set<IFileStore> fileStores, IProgressMonitor monitor)
 			throws CoreException
 	{
+		Set<IFileStore> failed = new HashSet<IFileStore>();
 		if (index == null)
 		{
-			return;
+			return failed;
 		}
 
 		fileStores = filterFileStores(fileStores);
 		if (CollectionsUtil.isEmpty(fileStores))
 		{
-			return;
+			return failed;
+		}
+
+		if (fileStores.size() >= PARALLEL_THRESHOLD)
+		{
+			int parallelism = getParallelism();
+			if (parallelism > 1)
+			{
+				indexFileStoresInParallel(index, fileStores, parallelism, failed, monitor);
+				return failed;
+			}
 		}
 
 		int remaining = fileStores.size();
@@ -283,6 +326,7 @@ abstract class IndexRequestJob extends Job
 						catch (CoreException e)
 						{
 							IdeLog.logError(IndexPlugin.getDefault(), e);
+							failed.add(file);
 						}
 					}
 				}
@@ -295,6 +339,158 @@ abstract class IndexRequestJob extends Job
 		{
 			sub.done();
 		}
+		return failed;
+	}
+
+	/**
+	 * Reads and indexes files on a bounded pool of worker threads. Each worker collects the entries of one file in a
+	 * {@link BufferedIndex}, and this thread is the single writer that replaces each file's entries in the index. Files
+	 * are written in sorted order, so the index ends up with the same contents as when indexing serially.
+	 * 
+	 * @param index
+	 * @param fileStores
+	 * @param parallelism
+	 * @param failed
+	 *            collects the files that failed to index
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void indexFileStoresInParallel(final Index index, Set<IFileStore> fileStores, int parallelism,
+			Set<IFileStore> failed, IProgressMonitor monitor) throws CoreException
+	{
+		List<IFileStore> files = new ArrayList<IFileStore>(fileStores);
+		Collections.sort(files, new Comparator<IFileStore>()
+		{
+			public int compare(IFileStore o1, IFileStore o2)
+			{
+				return o1.toURI().compareTo(o2.toURI());
+			}
+		});
+
+		SubMonitor sub = SubMonitor.convert(monitor, files.size());
+		// SubMonitor isn't thread safe, so workers only share the cancellation state
+		final IProgressMonitor workerMonitor = new NullProgressMonitor();
+		// written by the workers
+		final Set<IFileStore> failedFiles = Collections.synchronizedSet(failed);
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, new IndexerThreadFactory());
+		// limits the number of files that are read but not written yet
+		int window = parallelism * 2;
+		LinkedList<IFileStore> pendingFiles = new LinkedList<IFileStore>();
+		LinkedList<Future<Index>> pendingEntries = new LinkedList<Future<Index>>();
+
+		try
+		{
+			for (final IFileStore file : files)
+			{
+				if (pendingFiles.size() >= window)
+				{
+					writeEntries(index, pendingFiles.removeFirst(), pendingEntries.removeFirst(), failedFiles,
+							workerMonitor, sub);
+				}
+
+				// participants are looked up here since the extension registry lookups aren't thread safe
+				final List<IFileStoreIndexingParticipant> indexers = getIndexParticipants(file);
+				pendingFiles.add(file);
+				pendingEntries.add(workers.submit(new Callable<Index>()
+				{
+					public Index call() throws Exception
+					{
+						return readEntries(index, file, indexers, failedFiles, workerMonitor);
+					}
+				}));
+			}
+
+			while (!pendingFiles.isEmpty())
+			{
+				writeEntries(index, pendingFiles.removeFirst(), pendingEntries.removeFirst(), failedFiles,
+						workerMonitor, sub);
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+			sub.done();
+		}
+	}
+
+	/**
+	 * Run the indexing participants for a file, collecting the entries in a buffer. Called on a worker thread
+	 * 
+	 * @param index
+	 * @param file
+	 * @param indexers
+	 * @param failed
+	 * @param monitor
+	 * @return
+	 */
+	private Index readEntries(Index index, IFileStore file, List<IFileStoreIndexingParticipant> indexers,
+			Set<IFileStore> failed, IProgressMonitor monitor)
+	{
+		Index entries = new BufferedIndex(index);
+
+		if (!CollectionsUtil.isEmpty(indexers))
+		{
+			BuildContext context = new FileStoreBuildContext(file);
+			for (IFileStoreIndexingParticipant indexer : indexers)
+			{
+				if (monitor.isCanceled())
+				{
+					break;
+				}
+				try
+				{
+					indexer.index(context, entries, monitor);
+				}
+				catch (CoreException e)
+				{
+					IdeLog.logError(IndexPlugin.getDefault(), e);
+					failed.add(file);
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Wait for a worker to finish reading a file, then replace the file's entries in the index
+	 * 
+	 * @param index
+	 * @param file
+	 * @param entries
+	 * @param failed
+	 * @param workerMonitor
+	 * @param sub
+	 * @throws CoreException
+	 */
+	private void writeEntries(Index index, IFileStore file, Future<Index> entries, Set<IFileStore> failed,
+			IProgressMonitor workerMonitor, SubMonitor sub) throws CoreException
+	{
+		if (sub.isCanceled())
+		{
+			workerMonitor.setCanceled(true);
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+
+		try
+		{
+			index.replaceEntries(file.toURI(), entries.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			workerMonitor.setCanceled(true);
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+		catch (ExecutionException e)
+		{
+			IdeLog.logError(IndexPlugin.getDefault(), e.getCause());
+			// don't leave stale entries behind
+			index.remove(file.toURI());
+			failed.add(file);
+		}
+
+		sub.worked(1);
 	}
 
 	protected List<IFileStoreIndexingParticipant> getIndexParticipants(IFileStore file)
@@ -302,4 +498,20 @@ abstract class IndexRequestJob extends Job
 		return getIndexManager().getIndexParticipants(file.getName());
 	}
 
+	/**
+	 * Creates the low priority daemon threads used to index files in parallel
+	 */
+	private static class IndexerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "Indexer " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+
 }
@@ -8,6 +8,7 @@ public class Messages extends NLS
 
 	public static String AbstractFileIndexingParticipant_Indexing_Message;
 	public static String IndexFilesOfProjectJob_Name;
+	public static String IndexMergeJob_Name;
 	public static String IndexPlugin_IndexingFile;
 	public static String IndexRequestJob_Name;
 	public static String RemoveIndexOfFilesOfProjectJob_Name;
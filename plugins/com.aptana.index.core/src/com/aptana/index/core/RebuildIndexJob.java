@@ -13,7 +13,8 @@ import java.util.Set;
 import org.eclipse.core.filesystem.IFileStore;
 
 /**
- * Special subclass of IndexContainerJob that ignores the index timestamp and forces all files to be re-indexed.
+ * Special subclass of IndexContainerJob that ignores the index timestamp and manifest and forces all files to be
+ * re-indexed.
  * 
  * @author cwilliams
  */
@@ -31,4 +32,12 @@ public class RebuildIndexJob extends IndexContainerJob
 		return files;
 	}
 
+	@Override
+	protected Set<IFileStore> filterChangedFiles(IndexManifest manifest, Set<IFileStore> files)
+	{
+		// record the current state of every file, but reindex them all anyway
+		super.filterChangedFiles(manifest, files);
+		return files;
+	}
+
 }
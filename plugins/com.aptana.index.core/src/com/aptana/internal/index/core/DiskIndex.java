@@ -7,16 +7,15 @@
  */
 package com.aptana.internal.index.core;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,49 +25,223 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.core.runtime.Platform;
 
 import com.aptana.index.core.Index;
 import com.aptana.index.core.QueryResult;
-import com.aptana.index.core.SearchPattern;
 
 /**
- * Yuck this needs to be a random access file that stores the index of documents, category names, and the relationship
- * between them. We need to be careful to allow for quick access into the categories when reading, and to keep filesize
- * down if possible.
- * 
+ * A random access file that stores the index of documents, category names, and the relationship between them. The
+ * file is memory-mapped when read, or read into the heap on Windows, so that a query only decodes the bytes it
+ * actually touches:
+ * <ul>
+ * <li>document names are front-coded in chunks of {@link #CHUNK_SIZE} names. Chunks are decoded on demand and
+ * cached.</li>
+ * <li>the words of a category are written in sorted order, in blocks of {@link #BLOCK_SIZE} words. The blocks are
+ * followed by a sparse directory holding the offset of each block, which is binary searched in place using the first
+ * word of each block.</li>
+ * <li>the document numbers of a word directly follow the word and are only decoded when the word matches.</li>
+ * </ul>
+ * Since the words are sorted, exact, prefix and anchored regular expression queries only visit the ranges of words
+ * starting with the prefixes computed by {@link QueryPrefixes}.
+ * All reads use absolute positions into the mapped buffer, so queries may run concurrently without synchronizing.
+ *
  * @author cwilliams
  */
 public class DiskIndex
 {
-	private static final String SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
+	private static final String SIGNATURE = "INDEX VERSION 0.2"; //$NON-NLS-1$
 	private static final int CHUNK_SIZE = 100;
+	private static final int BLOCK_SIZE = 32;
 	private static final int RE_INDEXED = -1;
 	private static final int DELETED = -2;
 	private static final boolean DEBUG = true;
 
+	/**
+	 * Receives each word of a category table visited during a scan
+	 */
+	private interface EntryVisitor
+	{
+		/**
+		 * Visit a single word and the location of its document numbers. Return false to stop the scan
+		 *
+		 * @param word
+		 * @param postingsOffset
+		 * @param postingsCount
+		 * @return
+		 * @throws IOException
+		 */
+		boolean visit(String word, int postingsOffset, int postingsCount) throws IOException;
+	}
+
+	/**
+	 * A cursor over the mapped index file. Each reader keeps its own position, so readers can be used concurrently on
+	 * the same buffer.
+	 */
+	private static class Reader
+	{
+		private final ByteBuffer buffer;
+		private int position;
+
+		Reader(ByteBuffer buffer, int position)
+		{
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		int readByte()
+		{
+			return buffer.get(position++) & 0xFF;
+		}
+
+		int readInt()
+		{
+			int value = buffer.getInt(position);
+
+			position += 4;
+
+			return value;
+		}
+
+		int readVarInt()
+		{
+			int value = 0;
+			int shift = 0;
+			int b;
+
+			do
+			{
+				b = readByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while ((b & 0x80) != 0);
+
+			return value;
+		}
+
+		String readString() throws UTFDataFormatException
+		{
+			int length = readByte() << 8;
+			length += readByte();
+
+			// fill the chars from bytes buffer
+			char[] word = new char[length];
+			int i = 0;
+
+			while (i < length)
+			{
+				int b = readByte();
+
+				switch (b & 0xF0)
+				{
+					case 0x00:
+					case 0x10:
+					case 0x20:
+					case 0x30:
+					case 0x40:
+					case 0x50:
+					case 0x60:
+					case 0x70:
+						word[i++] = (char) b;
+						break;
+
+					case 0xC0:
+					case 0xD0:
+						int next = readByte();
+
+						if ((next & 0xC0) != 0x80)
+						{
+							throw new UTFDataFormatException();
+						}
+
+						word[i++] = (char) (((b & 0x1F) << 6) | (next & 0x3F));
+						break;
+
+					case 0xE0:
+						int first = readByte();
+						int second = readByte();
+
+						if ((first & second & 0xC0) != 0x80)
+						{
+							throw new UTFDataFormatException();
+						}
+
+						word[i++] = (char) (((b & 0x0F) << 12) | ((first & 0x3F) << 6) | (second & 0x3F));
+						break;
+
+					default:
+						throw new UTFDataFormatException();
+				}
+			}
+
+			return new String(word);
+		}
+	}
+
+	/**
+	 * Collects the query results for the words visited in a single category table
+	 */
+	private class QueryCollector implements EntryVisitor
+	{
+		private final Map<String, QueryResult> results;
+		private final String key;
+		private final int matchRule;
+		private final String stopPrefix;
+		private final MemoryIndex[] memoryIndexes;
+
+		QueryCollector(Map<String, QueryResult> results, String key, int matchRule, String stopPrefix,
+				MemoryIndex[] memoryIndexes)
+		{
+			this.results = results;
+			this.key = key;
+			this.matchRule = matchRule;
+			this.stopPrefix = stopPrefix;
+			this.memoryIndexes = memoryIndexes;
+		}
+
+		public boolean visit(String word, int postingsOffset, int postingsCount) throws IOException
+		{
+			if (stopPrefix != null && !word.startsWith(stopPrefix))
+			{
+				// words are sorted, so nothing past this point can match
+				return false;
+			}
+
+			if (key == null || Index.isMatch(key, word, matchRule))
+			{
+				addQueryResult(results, word, postingsOffset, postingsCount, memoryIndexes);
+			}
+
+			return true;
+		}
+	}
+
 	public File indexFile;
+	private ByteBuffer buffer;
 	private int headerInfoOffset;
-	private int streamRead;
 	private int numberOfChunks;
 	private int sizeOfLastChunk;
 	private int documentReferenceSize;
 	private char separator = Index.DEFAULT_SEPARATOR;
 	private int[] chunkOffsets;
 	private int startOfCategoryTables;
+	// maps each category name to the offset of its block directory
 	private Map<String, Integer> categoryOffsets;
-	private Map<String, Integer> categoryEnds;
-	// Usually a map from string to map from string to list of integer. But may also be a single integer (to represent a
-	// pointer to long array)
-	// FIXME YUCK!! This "usually a list of integers, sometimes one integer that acts as a pointer" stuff is killing me!
-	private Map<String, Map<String, Object>> categoryTables;
+	// only populated while this index is being written by mergeWith
+	private Map<String, SortedMap<String, List<Integer>>> categoryTables;
 
 	private int streamEnd;
-	private String[][] cachedChunks;
+	private AtomicReferenceArray<String[]> cachedChunks;
 	private String[] categoriesToDiscard;
 
 	/**
 	 * DiskIndex
-	 * 
+	 *
 	 * @param fileName
 	 */
 	public DiskIndex(String fileName)
@@ -83,64 +256,28 @@ public class DiskIndex
 		this.documentReferenceSize = -1;
 		this.categoryTables = null;
 		this.categoryOffsets = null;
-		this.categoryEnds = null;
 		this.categoriesToDiscard = null;
 	}
 
 	/**
 	 * addDocumentNames
-	 * 
+	 *
 	 * @param substring
-	 * @param memoryIndex
+	 * @param memoryIndexes
 	 * @return
 	 * @throws IOException
 	 */
-	public Set<String> addDocumentNames(String substring, MemoryIndex memoryIndex) throws IOException
+	public Set<String> addDocumentNames(String substring, MemoryIndex... memoryIndexes) throws IOException
 	{
-		// must skip over documents which have been added/changed/deleted in the memory index
+		// must skip over documents which have been added/changed/deleted in the memory indexes
 		List<String> docNames = readAllDocumentNames();
 		Set<String> results = new HashSet<String>(docNames.size());
 
-		if (substring == null)
+		for (String docName : docNames)
 		{
-			if (memoryIndex == null)
+			if ((substring == null || docName.startsWith(substring, 0)) && !isChanged(docName, memoryIndexes))
 			{
-				return new HashSet<String>(docNames);
-			}
-
-			Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
-			for (String docName : docNames)
-			{
-				if (!docsToRefs.containsKey(docName))
-				{
-					results.add(docName);
-				}
-			}
-		}
-		else
-		{
-			if (memoryIndex == null)
-			{
-				for (String docName : docNames)
-				{
-					if (docName.startsWith(substring, 0))
-					{
-						results.add(docName);
-					}
-				}
-			}
-			else
-			{
-				Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
-				for (String docName : docNames)
-				{
-					if (docName.startsWith(substring, 0) && !docsToRefs.containsKey(docName))
-					{
-						results.add(docName);
-					}
-				}
+				results.add(docName);
 			}
 		}
 
@@ -149,226 +286,100 @@ public class DiskIndex
 
 	/**
 	 * addQueryResult
-	 * 
+	 *
 	 * @param results
 	 * @param word
-	 * @param wordsToDocNumbers
-	 * @param memoryIndex
-	 * @return
+	 * @param postingsOffset
+	 * @param postingsCount
+	 * @param memoryIndexes
 	 * @throws IOException
 	 */
-	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, String word, Map<String, Object> wordsToDocNumbers,
-		MemoryIndex memoryIndex) throws IOException
+	private void addQueryResult(Map<String, QueryResult> results, String word, int postingsOffset, int postingsCount,
+			MemoryIndex[] memoryIndexes) throws IOException
 	{
 		// must skip over documents which have been added/changed/deleted in the memory index
-		if (results == null)
-		{
-			results = new HashMap<String, QueryResult>(13);
-		}
-
 		QueryResult result = results.get(word);
 
-		if (memoryIndex == null)
+		if (result == null)
 		{
-			if (result == null)
-			{
-				result = new QueryResult(word, null);
-				results.put(word, result);
-			}
-
-			result.addDocumentTable(wordsToDocNumbers);
-
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
-			for (Integer docNumber : docNumbers)
-			{
-				result.addDocumentName(readDocumentName(docNumber));
-			}
+			result = new QueryResult(word);
 		}
-		else
-		{
-			Map<String, Map<String, Set<String>>> docsToRefs = memoryIndex.getDocumentsToReferences();
-
-			if (result == null)
-			{
-				result = new QueryResult(word, null);
-			}
-
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
-			for (Integer docNumber : docNumbers)
-			{
-				String docName = readDocumentName(docNumber);
 
-				if (!docsToRefs.containsKey(docName))
-				{
-					result.addDocumentName(docName);
-				}
-			}
+		for (int docNumber : readDocumentNumbers(postingsOffset, postingsCount))
+		{
+			String docName = readDocumentName(docNumber);
 
-			if (!result.isEmpty())
+			if (!isChanged(docName, memoryIndexes))
 			{
-				results.put(word, result);
+				result.addDocumentName(docName);
 			}
 		}
 
-		return results;
+		if (!result.isEmpty())
+		{
+			results.put(word, result);
+		}
 	}
 
 	/**
 	 * addQueryResults
-	 * 
+	 *
 	 * @param categories
 	 * @param key
 	 * @param matchRule
-	 * @param memoryIndex
+	 * @param memoryIndexes
+	 *            the memory indexes holding newer versions of documents, which must be skipped on disk
 	 * @return
 	 * @throws IOException
 	 */
-	public Map<String, QueryResult> addQueryResults(String[] categories, String key, int matchRule, MemoryIndex memoryIndex) throws IOException
+	public Map<String, QueryResult> addQueryResults(String[] categories, String key, int matchRule,
+			MemoryIndex... memoryIndexes) throws IOException
 	{
-		// assumes sender has called startQuery() & will call stopQuery() when finished
 		if (this.categoryOffsets == null)
 		{
 			return null; // file is empty
 		}
 
-		Map<String, QueryResult> results = null; // initialized if needed
+		Map<String, QueryResult> results = new HashMap<String, QueryResult>(13);
+		List<String> prefixes = QueryPrefixes.compute(key, matchRule);
 
-		if (key == null)
+		for (String category : categories)
 		{
-			for (int i = 0, l = categories.length; i < l; i++)
-			{
-				Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], true); // cache if key
-				// is null
-				// since its a definite
-				// match
-				if (wordsToDocNumbers != null)
-				{
-					if (results == null)
-					{
-						results = new HashMap<String, QueryResult>(wordsToDocNumbers.size());
-					}
+			Integer directory = this.categoryOffsets.get(category);
 
-					for (String word : wordsToDocNumbers.keySet())
-					{
-						if (word != null)
-						{
-							results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-						}
-					}
-				}
+			if (directory == null)
+			{
+				continue;
 			}
 
-			if (results != null && this.cachedChunks == null)
+			if (prefixes == null)
 			{
-				cacheDocumentNames();
+				scan(directory, null, new QueryCollector(results, key, matchRule, null, memoryIndexes));
 			}
-		}
-		else
-		{
-			switch (matchRule)
+			else
 			{
-				case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
-
-						if (wordsToDocNumbers != null && wordsToDocNumbers.containsKey(key))
-						{
-							results = addQueryResult(results, key, wordsToDocNumbers, memoryIndex);
-						}
-					}
-					break;
-
-				case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
-
-						if (wordsToDocNumbers != null)
-						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && word.startsWith(key))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
-						}
-					}
-					break;
-
-				default:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
-
-						if (wordsToDocNumbers != null)
-						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && Index.isMatch(key, word, matchRule))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
-						}
-					}
+				// the matching words form a contiguous range starting at each prefix
+				for (String prefix : prefixes)
+				{
+					scan(directory, prefix, new QueryCollector(results, key, matchRule, prefix, memoryIndexes));
+				}
 			}
 		}
 
-		return results;
-	}
-
-	/**
-	 * cacheDocumentNames
-	 * 
-	 * @throws IOException
-	 */
-	private void cacheDocumentNames() throws IOException
-	{
-		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
-		{
-			// if (this.numberOfChunks > 5)
-			// BUFFER_READ_SIZE <<= 1;
-			int offset = this.chunkOffsets[0];
-
-			skip(stream, offset);
-
-			for (int i = 0; i < this.numberOfChunks; i++)
-			{
-				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
-
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0, size);
-			}
-		}
-		catch (IOException e)
-		{
-			this.cachedChunks = null;
-			throw e;
-		}
-		finally
-		{
-			stream.close();
-		}
+		return results.isEmpty() ? null : results;
 	}
 
 	/**
 	 * computeDocumentNames
-	 * 
+	 *
 	 * @param onDiskNames
 	 * @param positions
 	 * @param indexedDocuments
 	 * @param memoryIndex
 	 * @return
 	 */
-	private List<String> computeDocumentNames(List<String> onDiskNames, int[] positions, Map<String, Integer> indexedDocuments, MemoryIndex memoryIndex)
+	private List<String> computeDocumentNames(List<String> onDiskNames, int[] positions,
+			Map<String, Integer> indexedDocuments, MemoryIndex memoryIndex)
 	{
 		int onDiskLength = onDiskNames.size();
 		Map<String, Map<String, Set<String>>> memIndexDocs = memoryIndex.getDocumentsToReferences();
@@ -415,9 +426,9 @@ public class DiskIndex
 
 		// find out if the memory index has any new or deleted documents, if not then the names & positions are the same
 		int numDeletedDocNames = 0;
-		int numReindexedDocNames = 0;
 
-		nextPath: for (Map.Entry<String, Map<String, Set<String>>> entry : memIndexDocs.entrySet())
+		// document names are sorted, so binary search for each changed document
+		for (Map.Entry<String, Map<String, Set<String>>> entry : memIndexDocs.entrySet())
 		{
 			String docName = entry.getKey();
 
@@ -426,30 +437,25 @@ public class DiskIndex
 				continue;
 			}
 
-			for (int j = 0; j < onDiskLength; j++)
+			int j = Collections.binarySearch(onDiskNames, docName);
+
+			if (j >= 0)
 			{
-				if (docName.equals(onDiskNames.get(j)))
+				if (entry.getValue() == null)
 				{
-					if (entry.getValue() == null)
-					{
-						positions[j] = DELETED;
-						numDeletedDocNames++;
-					}
-					else
-					{
-						positions[j] = RE_INDEXED;
-						numReindexedDocNames++;
-					}
-
-					continue nextPath;
+					positions[j] = DELETED;
+					numDeletedDocNames++;
+				}
+				else
+				{
+					positions[j] = RE_INDEXED;
 				}
 			}
-
-			if (entry.getValue() != null)
+			else if (entry.getValue() != null)
 			{
 				indexedDocuments.put(docName, null); // remember each new document, skip deleted documents which were
+				// never saved
 			}
-			// never saved
 		}
 
 		List<String> newDocNames = onDiskNames;
@@ -525,11 +531,10 @@ public class DiskIndex
 
 	/**
 	 * copyQueryResults
-	 * 
+	 *
 	 * @param categoryToWords
 	 * @param newPosition
 	 */
-	@SuppressWarnings("unchecked")
 	private void copyQueryResults(Map<String, Set<String>> categoryToWords, int newPosition)
 	{
 		for (Map.Entry<String, Set<String>> entry : categoryToWords.entrySet())
@@ -541,11 +546,11 @@ public class DiskIndex
 				continue;
 			}
 
-			Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+			SortedMap<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 			if (wordsToDocs == null)
 			{
-				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, Object>());
+				this.categoryTables.put(categoryName, wordsToDocs = new TreeMap<String, List<Integer>>());
 			}
 
 			for (String word : entry.getValue())
@@ -555,23 +560,67 @@ public class DiskIndex
 					continue;
 				}
 
-				Object positions = wordsToDocs.get(word);
+				List<Integer> positions = wordsToDocs.get(word);
 
 				if (positions == null)
 				{
 					wordsToDocs.put(word, positions = new ArrayList<Integer>());
 				}
 
-				((List<Integer>) positions).add(newPosition);
+				positions.add(newPosition);
 			}
 		}
 	}
 
-	
+	/**
+	 * Find the block of a category table that would contain the given word. This is the last block whose first word
+	 * is less than or equal to the word, or the first block if there is no such block
+	 *
+	 * @param directory
+	 * @param word
+	 * @return
+	 * @throws IOException
+	 */
+	private int findBlock(int directory, String word) throws IOException
+	{
+		int low = 0;
+		int high = this.buffer.getInt(directory + 4) - 1;
+		int result = 0;
+
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			String firstWord = new Reader(this.buffer, getBlockOffset(directory, mid)).readString();
+
+			if (firstWord.compareTo(word) <= 0)
+			{
+				result = mid;
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * getBlockOffset
+	 *
+	 * @param directory
+	 * @param block
+	 * @return
+	 */
+	private int getBlockOffset(int directory, int block)
+	{
+		return this.buffer.getInt(directory + 8 + (block << 2));
+	}
 
 	/**
 	 * getCategories
-	 * 
+	 *
 	 * @return
 	 */
 	public List<String> getCategories()
@@ -590,9 +639,34 @@ public class DiskIndex
 		return result;
 	}
 
+	/**
+	 * getChunk
+	 *
+	 * @param chunkNumber
+	 * @return
+	 * @throws IOException
+	 */
+	private String[] getChunk(int chunkNumber) throws IOException
+	{
+		String[] chunk = this.cachedChunks.get(chunkNumber);
+
+		if (chunk == null)
+		{
+			int size = (chunkNumber == this.numberOfChunks - 1) ? this.sizeOfLastChunk : CHUNK_SIZE;
+
+			chunk = new String[size];
+			readChunk(chunk, new Reader(this.buffer, this.chunkOffsets[chunkNumber]), size);
+
+			// concurrent readers may decode the same chunk, which is harmless since the result is identical
+			this.cachedChunks.set(chunkNumber, chunk);
+		}
+
+		return chunk;
+	}
+
 	/**
 	 * getDocuments
-	 * 
+	 *
 	 * @return
 	 */
 	public List<String> getDocuments()
@@ -612,7 +686,7 @@ public class DiskIndex
 
 	/**
 	 * initialize
-	 * 
+	 *
 	 * @throws IOException
 	 */
 	public void initialize(boolean reuseExistingFile) throws IOException
@@ -622,36 +696,34 @@ public class DiskIndex
 			if (reuseExistingFile)
 			{
 				// read it in!
-				InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+				map();
 
 				try
 				{
-					streamRead = 0;
-
-					String signature = readString(stream);
+					Reader reader = new Reader(this.buffer, 0);
+					String signature = reader.readString();
 
 					if (!signature.equals(SIGNATURE))
 					{
 						throw new IOException(Messages.DiskIndex_Wrong_Format);
 					}
 
-					this.headerInfoOffset = readStreamInt(stream);
+					this.headerInfoOffset = reader.readInt();
 
 					if (this.headerInfoOffset > 0)
 					{ // file is empty if its not set
-						skip(stream, this.headerInfoOffset - this.streamRead); // assume that the header info offset is
-						// over
-						// current buffer end
-						readHeaderInfo(stream);
+						readHeaderInfo(new Reader(this.buffer, this.headerInfoOffset));
 					}
 				}
-				finally
+				catch (IndexOutOfBoundsException e)
 				{
-					stream.close();
+					throw new IOException(MessageFormat.format("Corrupt index file {0}", this.indexFile)); //$NON-NLS-1$
 				}
 				return;
 			}
 
+			this.buffer = null;
+
 			if (!this.indexFile.delete())
 			{
 				if (DEBUG)
@@ -666,12 +738,12 @@ public class DiskIndex
 		// create a new empty one!
 		if (indexFile.createNewFile())
 		{
-			FileOutputStream stream = new FileOutputStream(this.indexFile, false);
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(this.indexFile, false));
 
 			try
 			{
 				writeString(stream, SIGNATURE);
-				stream.write(-1);
+				writeStreamInt(stream, -1);
 			}
 			finally
 			{
@@ -691,7 +763,7 @@ public class DiskIndex
 
 	/**
 	 * initializeFrom
-	 * 
+	 *
 	 * @param diskIndex
 	 * @param newIndexFile
 	 * @throws IOException
@@ -717,15 +789,75 @@ public class DiskIndex
 
 		int size = diskIndex.categoryOffsets == null ? 8 : diskIndex.categoryOffsets.size();
 		this.categoryOffsets = new HashMap<String, Integer>(size);
-		this.categoryEnds = new HashMap<String, Integer>(size);
-		this.categoryTables = new HashMap<String, Map<String, Object>>(size);
+		this.categoryTables = new HashMap<String, SortedMap<String, List<Integer>>>(size);
 		this.separator = diskIndex.separator;
 		this.categoriesToDiscard = diskIndex.categoriesToDiscard;
 	}
 
+	/**
+	 * Returns true if any of the memory indexes holds a newer version of the document, or has deleted it
+	 *
+	 * @param docName
+	 * @param memoryIndexes
+	 * @return
+	 */
+	private static boolean isChanged(String docName, MemoryIndex[] memoryIndexes)
+	{
+		if (memoryIndexes != null)
+		{
+			for (MemoryIndex memoryIndex : memoryIndexes)
+			{
+				if (memoryIndex != null && memoryIndex.hasChanges(docName))
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Map the index file into memory. The mapping remains valid after the channel is closed. On Windows the file is
+	 * read into the heap instead, since a mapped file can't be deleted or replaced until the mapping is garbage
+	 * collected, and the index file is replaced on every save.
+	 *
+	 * @throws IOException
+	 */
+	private void map() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(this.indexFile, "r"); //$NON-NLS-1$
+
+		try
+		{
+			FileChannel channel = file.getChannel();
+
+			if (Platform.OS_WIN32.equals(Platform.getOS()))
+			{
+				ByteBuffer heapBuffer = ByteBuffer.allocate((int) channel.size());
+
+				while (heapBuffer.hasRemaining() && channel.read(heapBuffer) != -1)
+				{
+					// keep reading
+				}
+
+				heapBuffer.flip();
+				this.buffer = heapBuffer;
+			}
+			else
+			{
+				this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
 	/**
 	 * mergeCategories
-	 * 
+	 *
 	 * @param onDisk
 	 * @param positions
 	 * @param stream
@@ -734,119 +866,197 @@ public class DiskIndex
 	private void mergeCategories(DiskIndex onDisk, int[] positions, OutputStream stream) throws IOException
 	{
 		// at this point, this.categoryTables contains the names -> wordsToDocs added in copyQueryResults()
-		Set<String> oldNames = onDisk.categoryOffsets.keySet();
-
-		for (String oldName : oldNames)
+		for (String oldName : onDisk.categoryOffsets.keySet())
 		{
-			if (oldName != null && !this.categoryTables.containsKey(oldName))
+			if (oldName == null)
 			{
-				this.categoryTables.put(oldName, null);
+				continue;
 			}
-		}
 
-		Set<String> categoryNames = this.categoryTables.keySet();
+			SortedMap<String, List<Integer>> wordsToDocs = this.categoryTables.get(oldName);
 
-		for (String categoryName : categoryNames)
-		{
-			if (categoryName != null)
+			if (wordsToDocs == null)
 			{
-				mergeCategory(categoryName, onDisk, positions, stream);
+				this.categoryTables.put(oldName, wordsToDocs = new TreeMap<String, List<Integer>>());
 			}
+
+			onDisk.readCategoryTable(oldName, positions, wordsToDocs);
 		}
 
-		this.categoryTables = null;
+		writeCategories(stream);
 	}
 
 	/**
-	 * mergeCategory
-	 * 
-	 * @param categoryName
-	 * @param onDisk
-	 * @param positions
-	 * @param stream
+	 * Write the result of merging the memory index into this index and swap it in. Assumes the write lock is held.
+	 *
+	 * @param memoryIndex
+	 * @return
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void mergeCategory(String categoryName, DiskIndex onDisk, int[] positions, OutputStream stream) throws IOException
+	public DiskIndex mergeWith(MemoryIndex memoryIndex) throws IOException
 	{
-		Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+		return commitMerge(prepareMerge(memoryIndex));
+	}
 
-		if (wordsToDocs == null)
+	/**
+	 * Replace this index file with the one written by {@link #prepareMerge(MemoryIndex)}. This is a quick rename, so it
+	 * can be done while briefly holding the write lock. The old file is kept as a backup until the new one is in place,
+	 * and restored if the new one can't be moved there. Returns the index to use from now on
+	 *
+	 * @param merged
+	 * @return
+	 * @throws IOException
+	 */
+	public DiskIndex commitMerge(DiskIndex merged) throws IOException
+	{
+		if (merged == this)
 		{
-			wordsToDocs = new HashMap<String, Object>(3);
+			return this;
 		}
 
-		Map<String, Object> oldWordsToDocs = onDisk.readCategoryTable(categoryName, true);
+		File backupFile = new File(this.indexFile.getPath() + ".bak"); //$NON-NLS-1$
+		boolean backedUp = false;
 
-		if (oldWordsToDocs != null)
+		try
 		{
-			nextWord: for (Map.Entry<String, Object> entry : oldWordsToDocs.entrySet())
+			this.buffer = null;
+
+			if (backupFile.exists() && !backupFile.delete())
 			{
-				String oldWord = entry.getKey();
+				throw new IOException("Failed to delete backup index file " + backupFile); //$NON-NLS-1$
+			}
 
-				if (oldWord == null)
+			if (this.indexFile.exists())
+			{
+				if (!renameFile(this.indexFile, backupFile))
 				{
-					continue;
+					throw new IOException("Failed to back up index file " + this.indexFile); //$NON-NLS-1$
 				}
+				backedUp = true;
+			}
 
-				List<Integer> oldDocNumbers = (List<Integer>) entry.getValue();
-				List<Integer> mappedNumbers = new ArrayList<Integer>(oldDocNumbers.size());
+			if (!renameFile(merged.indexFile, this.indexFile))
+			{
+				throw new IOException("Failed to rename index file " + merged.indexFile); //$NON-NLS-1$
+			}
+		}
+		catch (IOException e)
+		{
+			merged.discard();
+			restore(backedUp ? backupFile : null);
+			throw e;
+		}
 
-				for (Integer oldDocNumber : oldDocNumbers)
-				{
-					int pos = positions[oldDocNumber];
+		if (backedUp && !backupFile.delete())
+		{
+			if (DEBUG)
+			{
+				System.out.println("commitMerge - Failed to delete backup index " + backupFile); //$NON-NLS-1$
+			}
+		}
 
-					if (pos > RE_INDEXED) // forget any reference to a document which was deleted or re_indexed
-					{
-						mappedNumbers.add(pos);
-					}
-				}
+		merged.indexFile = this.indexFile;
+		merged.map();
 
-				if (mappedNumbers.isEmpty())
-				{
-					continue nextWord; // skip words which no longer have any references
-				}
+		return merged;
+	}
 
-				Object o = wordsToDocs.get(oldWord);
+	/**
+	 * Go back to answering queries from the index file after a failed commit, first moving the backup file back in
+	 * place if there is one. If the file can't be restored, this index is left empty, so the documents it held need to
+	 * be indexed again.
+	 *
+	 * @param backupFile
+	 */
+	private void restore(File backupFile)
+	{
+		if (backupFile != null && !this.indexFile.exists() && !renameFile(backupFile, this.indexFile))
+		{
+			if (DEBUG)
+			{
+				System.out.println("restore - Failed to restore index from " + backupFile); //$NON-NLS-1$
+			}
+		}
 
-				if (o == null)
-				{
-					wordsToDocs.put(oldWord, mappedNumbers);
-				}
-				else
-				{
-					List<Integer> list = null;
+		try
+		{
+			if (this.indexFile.exists())
+			{
+				map();
+				return;
+			}
+		}
+		catch (IOException e)
+		{
+			if (DEBUG)
+			{
+				System.out.println("restore - Failed to read index " + this.indexFile); //$NON-NLS-1$
+			}
+		}
 
-					if (o instanceof List<?>)
-					{
-						list = (List<Integer>) o;
-					}
-					else
-					{
-						list = new ArrayList<Integer>();
-						wordsToDocs.put(oldWord, list);
-					}
+		// forget the contents of the lost file
+		this.buffer = null;
+		this.headerInfoOffset = -1;
+		this.numberOfChunks = -1;
+		this.sizeOfLastChunk = -1;
+		this.chunkOffsets = null;
+		this.cachedChunks = null;
+		this.documentReferenceSize = -1;
+		this.categoryOffsets = null;
 
-					list.addAll(mappedNumbers);
-				}
+		try
+		{
+			initialize(false);
+			map();
+		}
+		catch (IOException e)
+		{
+			if (DEBUG)
+			{
+				System.out.println("restore - Failed to create empty index " + this.indexFile); //$NON-NLS-1$
 			}
-
-			onDisk.categoryTables.put(categoryName, null); // flush cached table
 		}
+	}
 
-		writeCategoryTable(categoryName, wordsToDocs, stream);
+	/**
+	 * Rename an index file. Tests override this to simulate a failing file system
+	 *
+	 * @param source
+	 * @param target
+	 * @return true if the file was renamed
+	 */
+	protected boolean renameFile(File source, File target)
+	{
+		return source.renameTo(target);
 	}
 
 	/**
-	 * mergeWith
-	 * 
+	 * Delete the temporary file of an index written by {@link #prepareMerge(MemoryIndex)} that won't be committed
+	 */
+	public void discard()
+	{
+		this.buffer = null;
+
+		if (this.indexFile.exists() && !this.indexFile.delete())
+		{
+			if (DEBUG)
+			{
+				System.out.println("discard - Failed to delete temp index " + this.indexFile); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Write the result of merging the memory index with this index to a temporary file. This only reads from this
+	 * index and the memory index, so queries against both may continue while the merge is written, provided the memory
+	 * index is no longer modified. Returns this index if there is nothing to merge.
+	 *
 	 * @param memoryIndex
 	 * @return
 	 * @throws IOException
 	 */
-	public DiskIndex mergeWith(MemoryIndex memoryIndex) throws IOException
+	public DiskIndex prepareMerge(MemoryIndex memoryIndex) throws IOException
 	{
-		// assume write lock is held
 		// compute & write out new docNames
 		List<String> names = readAllDocumentNames();
 		int previousLength = names.size();
@@ -857,6 +1067,8 @@ public class DiskIndex
 
 		names = computeDocumentNames(names, positions, indexedDocuments, memoryIndex);
 
+		DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+
 		if (names.isEmpty())
 		{
 			if (previousLength == 0)
@@ -865,16 +1077,11 @@ public class DiskIndex
 			}
 
 			// index is now empty since all the saved documents were removed
-			DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath());
 			newDiskIndex.initialize(false);
 
 			return newDiskIndex;
 		}
 
-		this.streamEnd = 0;
-
-		DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath() + ".tmp"); //$NON-NLS-1$
-
 		try
 		{
 			newDiskIndex.initializeFrom(this, newDiskIndex.indexFile);
@@ -893,15 +1100,14 @@ public class DiskIndex
 					{
 						if (entry.getKey() != null)
 						{
-							newDiskIndex.copyQueryResults(memoryIndex.getCategoriesForDocument(entry.getKey()), entry.getValue());
+							newDiskIndex.copyQueryResults(memoryIndex.getCategoriesForDocument(entry.getKey()),
+									entry.getValue());
 						}
 					}
 				}
 
 				indexedDocuments = null; // free up the space
 
-				// TODO Check list of categories we wanted removed and wipe them out of "categoryTables"?
-
 				// merge each category table with the new ones & write them out
 				if (previousLength == 0)
 				{
@@ -922,281 +1128,111 @@ public class DiskIndex
 			}
 
 			newDiskIndex.writeOffsetToHeader(offsetToHeader);
-
-			// rename file by deleting previous index file & renaming temp one
-			if (this.indexFile.exists() && !this.indexFile.delete())
-			{
-				throw new IOException("Failed to delete index file " + this.indexFile); //$NON-NLS-1$
-			}
-
-			if (!newDiskIndex.indexFile.renameTo(this.indexFile))
-			{
-				throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
-			}
 		}
 		catch (IOException e)
 		{
-			if (newDiskIndex.indexFile.exists() && !newDiskIndex.indexFile.delete())
-			{
-				if (DEBUG)
-				{
-					System.out.println("mergeWith - Failed to delete temp index " + newDiskIndex.indexFile); //$NON-NLS-1$
-				}
-			}
-
+			newDiskIndex.discard();
 			throw e;
 		}
 
-		newDiskIndex.indexFile = this.indexFile;
-
 		return newDiskIndex;
 	}
 
-	/**
-	 * read
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private int read(InputStream stream) throws IOException
-	{
-		int val = stream.read();
-
-		streamRead++;
-
-		return val;
-	}
-
 	/**
 	 * readAllDocumentNames
-	 * 
+	 *
 	 * @return
 	 * @throws IOException
 	 */
-	private synchronized List<String> readAllDocumentNames() throws IOException
+	private List<String> readAllDocumentNames() throws IOException
 	{
 		if (this.numberOfChunks <= 0)
 		{
 			return Collections.emptyList();
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		int lastIndex = this.numberOfChunks - 1;
+		String[] docNames = new String[lastIndex * CHUNK_SIZE + this.sizeOfLastChunk];
 
-		try
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			int offset = this.chunkOffsets[0];
-
-			skip(stream, offset);
-
-			int lastIndex = this.numberOfChunks - 1;
-
-			String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
+			String[] chunk = getChunk(i);
 
-			for (int i = 0; i < this.numberOfChunks; i++)
-			{
-				readChunk(docNames, stream, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
-			}
-
-			return Arrays.asList(docNames);
-		}
-		finally
-		{
-			stream.close();
+			System.arraycopy(chunk, 0, docNames, i * CHUNK_SIZE, chunk.length);
 		}
+
+		return Arrays.asList(docNames);
 	}
 
 	/**
-	 * readCategoryTable
-	 * 
+	 * Read every word of a category table, remapping its document numbers to their positions in the new index, and
+	 * add the result to the given table
+	 *
 	 * @param categoryName
-	 * @param readDocNumbers
-	 * @return
+	 * @param positions
+	 * @param wordsToDocs
 	 * @throws IOException
 	 */
-	private synchronized Map<String, Object> readCategoryTable(String categoryName, boolean readDocNumbers) throws IOException
+	private void readCategoryTable(String categoryName, final int[] positions,
+			final SortedMap<String, List<Integer>> wordsToDocs) throws IOException
 	{
-		// result will be null if categoryName is unknown
-		Integer offset = this.categoryOffsets.get(categoryName);
+		Integer directory = this.categoryOffsets.get(categoryName);
 
-		if (offset == null)
-		{
-			return null;
-		}
-
-		if (this.categoryTables == null)
-		{
-			this.categoryTables = new HashMap<String, Map<String, Object>>(3);
-		}
-		else
+		if (directory == null)
 		{
-			Map<String, Object> cachedTable = this.categoryTables.get(categoryName);
-
-			if (cachedTable != null)
-			{
-				if (readDocNumbers)
-				{ // must cache remaining document number arrays
-					Map<String, Object> copy = new HashMap<String, Object>(cachedTable);
-
-					for (Map.Entry<String, Object> entry : cachedTable.entrySet())
-					{
-						Object arrayOffset = entry.getValue();
-
-						if (arrayOffset instanceof Integer)
-						{
-							copy.put(entry.getKey(), readDocumentNumbers(arrayOffset));
-						}
-					}
-
-					cachedTable = copy;
-				}
-
-				return cachedTable;
-			}
+			return;
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-		Map<String, Object> categoryTable = null;
-		String[] matchingWords = null;
-		int count = 0;
-		int firstOffset = -1;
-
-		try
+		scan(directory, null, new EntryVisitor()
 		{
-			skip(stream, offset);
-
-			int size = readStreamInt(stream);
-
-			try
-			{
-				if (size < 0)
-				{ // DEBUG
-					System.err.println("-------------------- DEBUG --------------------"); //$NON-NLS-1$
-					System.err.println("file = " + this.indexFile); //$NON-NLS-1$
-					System.err.println("offset = " + offset); //$NON-NLS-1$
-					System.err.println("size = " + size); //$NON-NLS-1$
-					System.err.println("--------------------   END   --------------------"); //$NON-NLS-1$
-				}
-
-				categoryTable = new HashMap<String, Object>(size);
-			}
-			catch (OutOfMemoryError oom)
-			{
-				// DEBUG
-				oom.printStackTrace();
-				System.err.println("-------------------- DEBUG --------------------"); //$NON-NLS-1$
-				System.err.println("file = " + this.indexFile); //$NON-NLS-1$
-				System.err.println("offset = " + offset); //$NON-NLS-1$
-				System.err.println("size = " + size); //$NON-NLS-1$
-				System.err.println("--------------------   END   --------------------"); //$NON-NLS-1$
-				throw oom;
-			}
-
-			int largeArraySize = 256;
-
-			for (int i = 0; i < size; i++)
+			public boolean visit(String word, int postingsOffset, int postingsCount) throws IOException
 			{
-				String word = readString(stream);
-				int arrayOffset = readStreamInt(stream);
-
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
-				// to the table)
-				if (arrayOffset <= 0)
-				{
-					List<Integer> positions = new ArrayList<Integer>();
+				List<Integer> mappedNumbers = null;
 
-					positions.add(-arrayOffset);
-					categoryTable.put(word, positions); // store 1 element array by negating
-					// documentNumber
-				}
-				else if (arrayOffset < largeArraySize)
-				{
-					categoryTable.put(word, readStreamDocumentArray(stream, arrayOffset)); // read in-lined array
-					// providing size
-				}
-				else
+				for (int oldDocNumber : readDocumentNumbers(postingsOffset, postingsCount))
 				{
-					arrayOffset = readStreamInt(stream); // read actual offset
+					int pos = positions[oldDocNumber];
 
-					if (readDocNumbers)
+					if (pos > RE_INDEXED) // forget any reference to a document which was deleted or re_indexed
 					{
-						if (matchingWords == null)
+						if (mappedNumbers == null)
 						{
-							matchingWords = new String[size];
-						}
+							mappedNumbers = wordsToDocs.get(word);
 
-						if (count == 0)
-						{
-							firstOffset = arrayOffset;
+							if (mappedNumbers == null)
+							{
+								wordsToDocs.put(word, mappedNumbers = new ArrayList<Integer>(postingsCount));
+							}
 						}
 
-						matchingWords[count++] = word;
+						mappedNumbers.add(pos);
 					}
-
-					categoryTable.put(word, new Integer(arrayOffset)); // offset to array in the file
 				}
-			}
-
-			this.categoryTables.put(categoryName, categoryTable);
-		}
-		catch (IOException ioe)
-		{
-			throw ioe;
-		}
-		finally
-		{
-			stream.close();
-		}
-
-		if (matchingWords != null && count > 0)
-		{
-			stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-			try
-			{
-				skip(stream, firstOffset);
 
-				for (int i = 0; i < count; i++)
-				{ // each array follows the previous one
-					categoryTable.put(matchingWords[i], readStreamDocumentArray(stream, readStreamInt(stream)));
-				}
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				stream.close();
+				return true;
 			}
-		}
-
-		return categoryTable;
+		});
 	}
 
 	/**
 	 * readChunk
-	 * 
+	 *
 	 * @param docNames
-	 * @param stream
-	 * @param index
+	 * @param reader
 	 * @param size
 	 * @throws IOException
 	 */
-	private void readChunk(String[] docNames, InputStream stream, int index, int size) throws IOException
+	private void readChunk(String[] docNames, Reader reader, int size) throws IOException
 	{
-		String current = readString(stream);
+		String current = reader.readString();
 
-		docNames[index++] = current;
+		docNames[0] = current;
 
 		for (int i = 1; i < size; i++)
 		{
-			int start = read(stream) & 0xFF;
-			int end = read(stream) & 0xFF;
-			String next = readString(stream);
+			int start = reader.readByte();
+			int end = reader.readByte();
+			String next = reader.readString();
 
 			if (start > 0)
 			{
@@ -1218,286 +1254,103 @@ public class DiskIndex
 				next = next + current.substring(length - end, length);
 			}
 
-			docNames[index++] = next;
+			docNames[i] = next;
 			current = next;
 		}
 	}
 
 	/**
 	 * readDocumentName
-	 * 
+	 *
 	 * @param docNumber
 	 * @return
 	 * @throws IOException
 	 */
-	private synchronized String readDocumentName(int docNumber) throws IOException
+	private String readDocumentName(int docNumber) throws IOException
 	{
-		if (this.cachedChunks == null)
-		{
-			this.cachedChunks = new String[this.numberOfChunks][];
-		}
-
 		int chunkNumber = docNumber / CHUNK_SIZE;
-		String[] chunk = this.cachedChunks[chunkNumber];
-
-		if (chunk == null)
-		{
-			boolean isLastChunk = chunkNumber == this.numberOfChunks - 1;
-			int start = this.chunkOffsets[chunkNumber];
-			int numberOfBytes = (isLastChunk ? this.startOfCategoryTables : this.chunkOffsets[chunkNumber + 1]) - start;
-
-			if (numberOfBytes < 0)
-			{
-				throw new IllegalArgumentException();
-			}
-
-			InputStream file = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-			try
-			{
-				skip(file, start);
-
-				int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
-
-				chunk = new String[numberOfNames];
-				readChunk(chunk, file, 0, numberOfNames);
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				file.close();
-			}
-
-			this.cachedChunks[chunkNumber] = chunk;
-		}
 
-		return chunk[docNumber - (chunkNumber * CHUNK_SIZE)];
+		return getChunk(chunkNumber)[docNumber - (chunkNumber * CHUNK_SIZE)];
 	}
 
 	/**
 	 * readDocumentNumbers
-	 * 
-	 * @param arrayOffset
+	 *
+	 * @param postingsOffset
+	 * @param postingsCount
 	 * @return
-	 * @throws IOException
 	 */
-	private @SuppressWarnings("unchecked")
-	synchronized List<Integer> readDocumentNumbers(Object arrayOffset) throws IOException
+	private int[] readDocumentNumbers(int postingsOffset, int postingsCount)
 	{
-		// arrayOffset is either a cached array of docNumbers or an Integer offset in the file
-		if (arrayOffset instanceof List<?>)
-		{
-			return (List<Integer>) arrayOffset;
-		}
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		Reader reader = new Reader(this.buffer, postingsOffset);
+		int[] result = new int[postingsCount];
 
-		try
+		for (int i = 0; i < postingsCount; i++)
 		{
-			int offset = ((Integer) arrayOffset).intValue();
+			switch (this.documentReferenceSize)
+			{
+				case 1:
+					result[i] = reader.readByte();
+					break;
 
-			skip(stream, offset);
+				case 2:
+					result[i] = (reader.readByte() << 8) + reader.readByte();
+					break;
 
-			return readStreamDocumentArray(stream, readStreamInt(stream));
-		}
-		finally
-		{
-			stream.close();
+				default:
+					result[i] = reader.readInt();
+					break;
+			}
 		}
+
+		return result;
 	}
 
 	/**
 	 * readHeaderInfo
-	 * 
-	 * @param stream
+	 *
+	 * @param reader
 	 * @throws IOException
 	 */
-	private void readHeaderInfo(InputStream stream) throws IOException
+	private void readHeaderInfo(Reader reader) throws IOException
 	{
 		// must be same order as writeHeaderInfo()
-		this.numberOfChunks = readStreamInt(stream);
+		this.numberOfChunks = reader.readInt();
 		if (this.numberOfChunks < 0)
 		{
 			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} chunks", numberOfChunks)); //$NON-NLS-1$
 		}
-		this.sizeOfLastChunk = read(stream) & 0xFF;
-		this.documentReferenceSize = read(stream) & 0xFF;
-		this.separator = (char) (read(stream) & 0xFF);
+		this.sizeOfLastChunk = reader.readByte();
+		this.documentReferenceSize = reader.readByte();
+		this.separator = (char) reader.readByte();
 
 		this.chunkOffsets = new int[this.numberOfChunks];
 		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			this.chunkOffsets[i] = readStreamInt(stream);
-		}
-
-		this.startOfCategoryTables = readStreamInt(stream);
-
-		int size = readStreamInt(stream);
-		this.categoryOffsets = new HashMap<String, Integer>(size);
-		this.categoryEnds = new HashMap<String, Integer>(size);
-		String previousCategory = null;
-		int offset = -1;
-
-		for (int i = 0; i < size; i++)
-		{
-			String categoryName = readString(stream);
-
-			offset = readStreamInt(stream);
-			this.categoryOffsets.put(categoryName, offset); // cache offset to category table
-
-			if (previousCategory != null)
-			{
-				this.categoryEnds.put(previousCategory, offset); // cache end of the category table
-			}
-
-			previousCategory = categoryName;
-		}
-
-		if (previousCategory != null)
-		{
-			this.categoryEnds.put(previousCategory, this.headerInfoOffset); // cache end of the category table
-		}
-
-		this.categoryTables = new HashMap<String, Map<String, Object>>(3);
-	}
-
-	/**
-	 * readStreamDocumentArray
-	 * 
-	 * @param stream
-	 * @param arraySize
-	 * @return
-	 * @throws IOException
-	 */
-	private List<Integer> readStreamDocumentArray(InputStream stream, int arraySize) throws IOException
-	{
-		if (arraySize == 0)
-		{
-			return Collections.emptyList();
+			this.chunkOffsets[i] = reader.readInt();
 		}
+		this.cachedChunks = new AtomicReferenceArray<String[]>(this.numberOfChunks);
 
-		List<Integer> indexes = new ArrayList<Integer>();
+		this.startOfCategoryTables = reader.readInt();
 
-		for (int i = 0; i < arraySize; i++)
+		int size = reader.readInt();
+		if (size < 0)
 		{
-			int value = 0;
-
-			switch (this.documentReferenceSize)
-			{
-				case 1:
-					value = read(stream) & 0xFF;
-					break;
-
-				case 2:
-					value = (read(stream) & 0xFF) << 8;
-					value = value + (read(stream) & 0xFF);
-					break;
-
-				default:
-					value = readStreamInt(stream);
-					break;
-			}
-
-			indexes.add(value);
+			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} categories", size)); //$NON-NLS-1$
 		}
+		this.categoryOffsets = new HashMap<String, Integer>(size);
 
-		return indexes;
-	}
-
-	/**
-	 * readStreamInt
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private int readStreamInt(InputStream stream) throws IOException
-	{
-		int val = (read(stream) & 0xFF) << 24;
-
-		val += (read(stream) & 0xFF) << 16;
-		val += (read(stream) & 0xFF) << 8;
-
-		return val + (read(stream) & 0xFF);
-	}
-
-	/**
-	 * readString
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private String readString(InputStream stream) throws IOException
-	{
-		int length = (read(stream) & 0xFF) << 8;
-		length += read(stream) & 0xFF;
-
-		// fill the chars from bytes buffer
-		char[] word = new char[length];
-		int i = 0;
-
-		while (i < length)
+		for (int i = 0; i < size; i++)
 		{
-			byte b = (byte) read(stream);
-
-			switch (b & 0xF0)
-			{
-				case 0x00:
-				case 0x10:
-				case 0x20:
-				case 0x30:
-				case 0x40:
-				case 0x50:
-				case 0x60:
-				case 0x70:
-					word[i++] = (char) b;
-					break;
-
-				case 0xC0:
-				case 0xD0:
-					char next = (char) read(stream);
-
-					if ((next & 0xC0) != 0x80)
-					{
-						throw new UTFDataFormatException();
-					}
-
-					char ch = (char) ((b & 0x1F) << 6);
-
-					ch |= next & 0x3F;
-					word[i++] = ch;
-					break;
-
-				case 0xE0:
-					char first = (char) read(stream);
-					char second = (char) read(stream);
+			String categoryName = reader.readString();
 
-					if ((first & second & 0xC0) != 0x80)
-					{
-						throw new UTFDataFormatException();
-					}
-
-					ch = (char) ((b & 0x0F) << 12);
-					ch |= ((first & 0x3F) << 6);
-					ch |= second & 0x3F;
-					word[i++] = ch;
-					break;
-
-				default:
-					throw new UTFDataFormatException();
-			}
+			this.categoryOffsets.put(categoryName, reader.readInt()); // cache offset to category directory
 		}
-
-		return new String(word);
 	}
 
 	/**
 	 * removeCategories
-	 * 
+	 *
 	 * @param categoryNames
 	 * @param memoryIndex
 	 * @return
@@ -1505,19 +1358,19 @@ public class DiskIndex
 	 */
 	public DiskIndex removeCategories(String[] categoryNames, MemoryIndex memoryIndex) throws IOException
 	{
-		// FIXME We need to wipe out the category from the file somehow! The problem is that we can drop a document/file
-		// fairly easily by setting it's mapping to null in memory index and merging, but the way the thing is set up we
-		// don't really have an easy way of wiping a category out from memory and disk right now.
-
-		// int offset = this.categoryOffsets.get(categoryName);
-		// // "Wipe out" from the category offset to next category offset. However we need to handle the "long arrays"
-		// written just before offsets!
-		// RandomAccessFile file = new RandomAccessFile(this.indexFile, "rw");
-		// file.seek(offset);
-
+		// Categories are dropped while the tables are rewritten by the merge
 		this.categoriesToDiscard = categoryNames;
 
-		DiskIndex newIndex = mergeWith(memoryIndex);
+		DiskIndex newIndex;
+
+		try
+		{
+			newIndex = mergeWith(memoryIndex);
+		}
+		finally
+		{
+			this.categoriesToDiscard = null;
+		}
 
 		newIndex.categoriesToDiscard = null;
 
@@ -1525,53 +1378,58 @@ public class DiskIndex
 	}
 
 	/**
-	 * skip
-	 * 
-	 * @param stream
-	 * @param n
-	 * @return
+	 * Visit the words of a category table in sorted order, starting at the first word greater than or equal to
+	 * startWord. A null startWord visits the whole table
+	 *
+	 * @param directory
+	 * @param startWord
+	 * @param visitor
 	 * @throws IOException
 	 */
-	private long skip(InputStream stream, long n) throws IOException
+	private void scan(int directory, String startWord, EntryVisitor visitor) throws IOException
 	{
-		final long wantToSkip = n;
-		long actuallySkipped = 0;
+		int wordCount = this.buffer.getInt(directory);
+		int blockCount = this.buffer.getInt(directory + 4);
 
-		while (n > 0)
+		if (blockCount == 0)
 		{
-			long skipped = stream.skip(n);
+			return;
+		}
 
-			actuallySkipped += skipped;
-			n = n - skipped;
+		int block = (startWord == null) ? 0 : findBlock(directory, startWord);
+		Reader reader = new Reader(this.buffer, getBlockOffset(directory, block));
+		int referenceSize = this.documentReferenceSize;
 
-			if (actuallySkipped == wantToSkip)
-			{
-				return actuallySkipped;
-			}
+		// blocks are written back to back, so keep reading until the end of the table
+		for (int i = block * BLOCK_SIZE; i < wordCount; i++)
+		{
+			String word = reader.readString();
+			int postingsCount = reader.readVarInt();
+			int postingsOffset = reader.position;
 
-			int read = stream.read();
+			reader.position += postingsCount * referenceSize;
 
-			if (read == -1)
+			if (startWord != null && word.compareTo(startWord) < 0)
 			{
-				return actuallySkipped;
+				continue;
 			}
 
-			n--;
-			actuallySkipped++;
+			if (!visitor.visit(word, postingsOffset, postingsCount))
+			{
+				break;
+			}
 		}
-
-		return actuallySkipped;
 	}
 
 	/**
 	 * writeCategories
-	 * 
+	 *
 	 * @param stream
 	 * @throws IOException
 	 */
 	private void writeCategories(OutputStream stream) throws IOException
 	{
-		for (Map.Entry<String, Map<String, Object>> entry : categoryTables.entrySet())
+		for (Map.Entry<String, SortedMap<String, List<Integer>>> entry : categoryTables.entrySet())
 		{
 			String categoryName = entry.getKey();
 
@@ -1586,14 +1444,14 @@ public class DiskIndex
 
 	/**
 	 * writeCategoryTable
-	 * 
+	 *
 	 * @param categoryName
 	 * @param wordsToDocs
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void writeCategoryTable(String categoryName, Map<String, Object> wordsToDocs, OutputStream stream) throws IOException
+	private void writeCategoryTable(String categoryName, SortedMap<String, List<Integer>> wordsToDocs,
+			OutputStream stream) throws IOException
 	{
 		if (this.categoriesToDiscard != null)
 		{
@@ -1607,62 +1465,38 @@ public class DiskIndex
 		}
 
 		// the format of a category table is as follows:
-		// any document number arrays with >= 256 elements are written before the table (the offset to each array is
-		// remembered)
-		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
-		// an int <= 0 if the array size == 1
-		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the document array follows immediately
-		// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the
-		// table)
-
-		Map<String, Integer> longArrays = new HashMap<String, Integer>();
-		int largeArraySize = 256;
+		// the words are written in sorted order, each followed by the number of documents referencing it and the
+		// document numbers themselves. Every BLOCK_SIZE words start a new block
+		// then the directory is written: the number of words, the number of blocks and the offset of each block
+		int wordCount = wordsToDocs.size();
+		int[] blockOffsets = new int[(wordCount + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		int i = 0;
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (Map.Entry<String, List<Integer>> entry : wordsToDocs.entrySet())
 		{
-			List<Integer> docNumbers = (List<Integer>) entry.getValue();
-
-			if (docNumbers.size() >= largeArraySize)
+			if (i % BLOCK_SIZE == 0)
 			{
-				longArrays.put(entry.getKey(), new Integer(this.streamEnd));
-				writeDocumentNumbers(docNumbers, stream);
+				blockOffsets[i / BLOCK_SIZE] = this.streamEnd;
 			}
-		}
 
-		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
-		this.categoryTables.put(categoryName, null); // flush cached table
-		writeStreamInt(stream, wordsToDocs.size());
-
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
-		{
 			writeString(stream, entry.getKey());
+			writeDocumentNumbers(entry.getValue(), stream);
+			i++;
+		}
 
-			if (longArrays.containsKey(entry.getKey()))
-			{
-				writeStreamInt(stream, largeArraySize); // mark to identify that an offset follows
-				writeStreamInt(stream, longArrays.get(entry.getKey()).intValue()); // offset in the file of the array of
-				// document numbers
-			}
-			else
-			{
-				List<Integer> documentNumbers = (List<Integer>) entry.getValue();
+		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the directory
+		writeStreamInt(stream, wordCount);
+		writeStreamInt(stream, blockOffsets.length);
 
-				if (documentNumbers.size() == 1)
-				{
-					writeStreamInt(stream, -documentNumbers.get(0));
-				}
-				else
-				{
-					writeDocumentNumbers(documentNumbers, stream);
-				}
-			}
+		for (int blockOffset : blockOffsets)
+		{
+			writeStreamInt(stream, blockOffset);
 		}
 	}
 
 	/**
 	 * writeDocumentNames
-	 * 
+	 *
 	 * @param stream
 	 * @param sortedDocNames
 	 * @throws IOException
@@ -1687,6 +1521,7 @@ public class DiskIndex
 		// reference
 
 		this.chunkOffsets = new int[this.numberOfChunks];
+		this.cachedChunks = new AtomicReferenceArray<String[]>(this.numberOfChunks);
 		int lastIndex = this.numberOfChunks - 1;
 
 		for (int i = 0; i < this.numberOfChunks; i++)
@@ -1761,17 +1596,14 @@ public class DiskIndex
 
 	/**
 	 * writeDocumentNumbers
-	 * 
+	 *
 	 * @param documentNumbers
 	 * @param stream
 	 * @throws IOException
 	 */
 	private void writeDocumentNumbers(List<Integer> documentNumbers, OutputStream stream) throws IOException
 	{
-		// must store length as a positive int to detect in-lined array of 1 element
-		int length = documentNumbers.size();
-
-		writeStreamInt(stream, length);
+		writeVarInt(stream, documentNumbers.size());
 		Collections.sort(documentNumbers);
 
 		for (Integer docNumber : documentNumbers)
@@ -1796,13 +1628,11 @@ public class DiskIndex
 					break;
 			}
 		}
-
-		stream.flush();
 	}
 
 	/**
 	 * writeHeaderInfo
-	 * 
+	 *
 	 * @param stream
 	 * @throws IOException
 	 */
@@ -1824,7 +1654,7 @@ public class DiskIndex
 		writeStreamInt(stream, this.startOfCategoryTables);
 
 		// append the file with the category offsets... # of name -> offset pairs, followed by each name & an offset to
-		// its word->doc# table
+		// its directory
 		writeStreamInt(stream, this.categoryOffsets.size());
 
 		for (Map.Entry<String, Integer> entry : categoryOffsets.entrySet())
@@ -1838,7 +1668,7 @@ public class DiskIndex
 
 	/**
 	 * writeOffsetToHeader
-	 * 
+	 *
 	 * @param offsetToHeader
 	 * @throws IOException
 	 */
@@ -1863,7 +1693,7 @@ public class DiskIndex
 
 	/**
 	 * writeStreamInt
-	 * 
+	 *
 	 * @param stream
 	 * @param val
 	 * @throws IOException
@@ -1875,12 +1705,31 @@ public class DiskIndex
 		stream.write((byte) (val >> 8));
 		stream.write((byte) val);
 		this.streamEnd += 4;
-		stream.flush();
+	}
+
+	/**
+	 * writeVarInt
+	 *
+	 * @param stream
+	 * @param val
+	 * @throws IOException
+	 */
+	private void writeVarInt(OutputStream stream, int val) throws IOException
+	{
+		while ((val & ~0x7F) != 0)
+		{
+			stream.write((byte) ((val & 0x7F) | 0x80));
+			this.streamEnd++;
+			val >>>= 7;
+		}
+
+		stream.write((byte) val);
+		this.streamEnd++;
 	}
 
 	/**
 	 * writeString
-	 * 
+	 *
 	 * @param stream
 	 * @param signature
 	 * @throws IOException
@@ -1894,7 +1743,6 @@ public class DiskIndex
 		stream.write((byte) (length & 0xFF)); // this will allow to read it faster
 		this.streamEnd += 2;
 
-		// we're assuming that very few char[] are so large that we need to flush the buffer more than once, if at all
 		for (char ch : array)
 		{
 			if ((ch & 0x007F) == ch)
@@ -1937,7 +1785,5 @@ public class DiskIndex
 				streamEnd++;
 			}
 		}
-
-		stream.flush();
 	}
 }
@@ -14,50 +14,74 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import com.aptana.index.core.Index;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 
+/**
+ * Holds the entries added since the last merge with the disk index. Entries are kept in two maps: an inverted map of
+ * category -> sorted words -> documents used to answer queries, and a map of document -> category -> words used to
+ * remove a document and to merge with the disk index. A document mapped to null has been removed. Queries only visit
+ * the words of the requested categories, so they cost time proportional to the matches rather than to the number of
+ * pending documents.
+ */
 public class MemoryIndex
 {
 	private static final int MERGE_THRESHOLD = 100;
-	private HashMap<String, Map<String, Set<String>>> documentsToTable;
+	private Map<String, SortedMap<String, Set<String>>> categoriesToPostings;
+	private SortedMap<String, Map<String, Set<String>>> documentsToTable;
 
 	/**
 	 * MemoryIndex
 	 */
 	public MemoryIndex()
 	{
-		documentsToTable = new HashMap<String, Map<String, Set<String>>>();
+		categoriesToPostings = new HashMap<String, SortedMap<String, Set<String>>>();
+		documentsToTable = new TreeMap<String, Map<String, Set<String>>>();
 	}
 
 	/**
 	 * addDocumentNames
-	 * 
+	 *
 	 * @param substring
 	 * @return
 	 */
 	public Set<String> addDocumentNames(String substring)
+	{
+		return addDocumentNames(substring, null);
+	}
+
+	/**
+	 * Add the names of the documents in this index, skipping the documents that have been changed again in a newer
+	 * memory index
+	 *
+	 * @param substring
+	 * @param newer
+	 * @return
+	 */
+	public Set<String> addDocumentNames(String substring, MemoryIndex newer)
 	{
 		// assumed the disk index already skipped over documents which have been added/changed/deleted
 		Set<String> results = new HashSet<String>();
+		Map<String, Map<String, Set<String>>> candidates = (substring == null) ? documentsToTable : documentsToTable
+				.tailMap(substring);
 
-		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		for (Map.Entry<String, Map<String, Set<String>>> entry : candidates.entrySet())
 		{
-			if (substring == null)
-			{ // add all new/changed documents
-				if (entry.getValue() != null)
-				{
-					results.add(entry.getKey());
-				}
+			String documentName = entry.getKey();
+
+			if (substring != null && !documentName.startsWith(substring, 0))
+			{
+				// document names are sorted, so no other document can match
+				break;
 			}
-			else
+
+			if (entry.getValue() != null && (newer == null || !newer.hasChanges(documentName)))
 			{
-				if (entry.getValue() != null && (entry.getKey()).startsWith(substring, 0))
-				{
-					results.add(entry.getKey());
-				}
+				results.add(documentName);
 			}
 		}
 
@@ -66,7 +90,7 @@ public class MemoryIndex
 
 	/**
 	 * addEntry
-	 * 
+	 *
 	 * @param category
 	 * @param key
 	 * @param filePath
@@ -89,12 +113,93 @@ public class MemoryIndex
 			categoriesToWords.put(category, words);
 		}
 
-		words.add(key);
+		if (words.add(key))
+		{
+			SortedMap<String, Set<String>> wordsToDocuments = this.categoriesToPostings.get(category);
+
+			if (wordsToDocuments == null)
+			{
+				wordsToDocuments = new TreeMap<String, Set<String>>();
+				this.categoriesToPostings.put(category, wordsToDocuments);
+			}
+
+			Set<String> documents = wordsToDocuments.get(key);
+
+			if (documents == null)
+			{
+				documents = new HashSet<String>();
+				wordsToDocuments.put(key, documents);
+			}
+
+			documents.add(filePath);
+		}
+	}
+
+	/**
+	 * Add every entry of another memory index to this one
+	 *
+	 * @param other
+	 */
+	public void addEntries(MemoryIndex other)
+	{
+		for (Map.Entry<String, Map<String, Set<String>>> entry : other.documentsToTable.entrySet())
+		{
+			addTable(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Fold the changes of an older memory index back into this one, keeping the changes made here for documents that
+	 * were changed in both. Used to recover the pending changes of a merge that failed
+	 *
+	 * @param older
+	 */
+	public void addOlderChanges(MemoryIndex older)
+	{
+		for (Map.Entry<String, Map<String, Set<String>>> entry : older.documentsToTable.entrySet())
+		{
+			String documentName = entry.getKey();
+
+			if (!hasChanges(documentName))
+			{
+				addTable(documentName, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * addQueryResult
+	 *
+	 * @param results
+	 * @param word
+	 * @param documents
+	 * @param newer
+	 */
+	private void addQueryResult(Map<String, QueryResult> results, String word, Set<String> documents,
+			MemoryIndex newer)
+	{
+		QueryResult result = results.get(word);
+
+		for (String document : documents)
+		{
+			if (newer != null && newer.hasChanges(document))
+			{
+				continue;
+			}
+
+			if (result == null)
+			{
+				result = new QueryResult(word);
+				results.put(word, result);
+			}
+
+			result.addDocumentName(document);
+		}
 	}
 
 	/**
 	 * addQueryResults
-	 * 
+	 *
 	 * @param categories
 	 * @param key
 	 * @param matchRules
@@ -103,62 +208,79 @@ public class MemoryIndex
 	 */
 	public Map<String, QueryResult> addQueryResults(String[] categories, String key, int matchRules,
 			Map<String, QueryResult> results)
+	{
+		return addQueryResults(categories, key, matchRules, results, null);
+	}
+
+	/**
+	 * Add the query results of this index, skipping the documents that have been changed again in a newer memory
+	 * index
+	 *
+	 * @param categories
+	 * @param key
+	 * @param matchRules
+	 * @param results
+	 * @param newer
+	 * @return
+	 */
+	public Map<String, QueryResult> addQueryResults(String[] categories, String key, int matchRules,
+			Map<String, QueryResult> results, MemoryIndex newer)
 	{
 		if (results == null)
 		{
 			results = new HashMap<String, QueryResult>();
 		}
 
-		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		List<String> prefixes = QueryPrefixes.compute(key, matchRules);
+
+		for (String category : categories)
 		{
-			Map<String, Set<String>> categoriesToWords = entry.getValue();
+			SortedMap<String, Set<String>> wordsToDocuments = categoriesToPostings.get(category);
 
-			if (categoriesToWords == null)
+			if (wordsToDocuments == null)
 			{
 				continue;
 			}
 
-			for (String category : categories)
+			// When we're looking for exact matches, case sensitive, just ask the category if it contains key!
+			if (key != null && matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE))
 			{
-				Set<String> words = categoriesToWords.get(category);
-				if (words == null)
+				Set<String> documents = wordsToDocuments.get(key);
+
+				if (documents != null)
 				{
-					continue;
+					addQueryResult(results, key, documents, newer);
 				}
-
-				// When we're looking for exact matches, case sensitive, just ask wordset if it contains key!
-				if (matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE))
+			}
+			else if (prefixes != null)
+			{
+				// Only check the words in the sorted range of each prefix
+				for (String prefix : prefixes)
 				{
-					if (words.contains(key))
+					for (Map.Entry<String, Set<String>> entry : wordsToDocuments.tailMap(prefix).entrySet())
 					{
-						QueryResult result = results.get(key);
+						String word = entry.getKey();
 
-						if (result == null)
+						if (!word.startsWith(prefix))
 						{
-							result = new QueryResult(key);
+							break;
 						}
 
-						result.addDocumentName(entry.getKey());
-						results.put(key, result);
+						if (Index.isMatch(key, word, matchRules))
+						{
+							addQueryResult(results, word, entry.getValue(), newer);
+						}
 					}
 				}
-				else
+			}
+			else
+			{
+				// Otherwise we need to check each word individually
+				for (Map.Entry<String, Set<String>> entry : wordsToDocuments.entrySet())
 				{
-					// Otherwise we need to check each word individually
-					for (String word : words)
+					if (Index.isMatch(key, entry.getKey(), matchRules))
 					{
-						if (Index.isMatch(key, word, matchRules))
-						{
-							QueryResult result = results.get(word);
-
-							if (result == null)
-							{
-								result = new QueryResult(word);
-							}
-
-							result.addDocumentName(entry.getKey());
-							results.put(word, result);
-						}
+						addQueryResult(results, entry.getKey(), entry.getValue(), newer);
 					}
 				}
 			}
@@ -168,28 +290,42 @@ public class MemoryIndex
 	}
 
 	/**
-	 * getCategories
-	 * 
-	 * @return
+	 * Add all the entries of a document's table, or remove the document if the table is null
+	 *
+	 * @param documentName
+	 * @param table
 	 */
-	public List<String> getCategories()
+	private void addTable(String documentName, Map<String, Set<String>> table)
 	{
-		Set<String> categories = new HashSet<String>();
-
-		for (Map<String, Set<String>> value : documentsToTable.values())
+		if (table == null)
+		{
+			remove(documentName);
+		}
+		else
 		{
-			if (value != null)
+			for (Map.Entry<String, Set<String>> entry : table.entrySet())
 			{
-				categories.addAll(value.keySet());
+				for (String word : entry.getValue())
+				{
+					addEntry(entry.getKey(), word, documentName);
+				}
 			}
 		}
+	}
 
-		return new ArrayList<String>(categories);
+	/**
+	 * getCategories
+	 *
+	 * @return
+	 */
+	public List<String> getCategories()
+	{
+		return new ArrayList<String>(categoriesToPostings.keySet());
 	}
 
 	/**
 	 * getCategoriesForDocument
-	 * 
+	 *
 	 * @param docname
 	 * @return
 	 */
@@ -200,7 +336,7 @@ public class MemoryIndex
 
 	/**
 	 * getDocumentsToReferences
-	 * 
+	 *
 	 * @return
 	 */
 	Map<String, Map<String, Set<String>>> getDocumentsToReferences()
@@ -210,7 +346,7 @@ public class MemoryIndex
 
 	/**
 	 * hasChanged
-	 * 
+	 *
 	 * @return
 	 */
 	public boolean hasChanged()
@@ -218,9 +354,20 @@ public class MemoryIndex
 		return numberOfChanges() > 0;
 	}
 
+	/**
+	 * Returns true if this index has added, changed or removed the given document
+	 *
+	 * @param documentName
+	 * @return
+	 */
+	public boolean hasChanges(String documentName)
+	{
+		return documentsToTable.containsKey(documentName);
+	}
+
 	/**
 	 * hasDocument
-	 * 
+	 *
 	 * @param documentName
 	 * @return
 	 */
@@ -231,7 +378,7 @@ public class MemoryIndex
 
 	/**
 	 * numberOfChanges
-	 * 
+	 *
 	 * @return
 	 */
 	public int numberOfChanges()
@@ -241,21 +388,57 @@ public class MemoryIndex
 
 	/**
 	 * remove
-	 * 
+	 *
 	 * @param documentName
 	 */
 	public void remove(String documentName)
 	{
-		this.documentsToTable.put(documentName, null);
+		Map<String, Set<String>> table = this.documentsToTable.put(documentName, null);
+
+		if (table == null)
+		{
+			return;
+		}
+
+		// use the document's own table to find the postings we need to update
+		for (Map.Entry<String, Set<String>> entry : table.entrySet())
+		{
+			SortedMap<String, Set<String>> wordsToDocuments = categoriesToPostings.get(entry.getKey());
+
+			if (wordsToDocuments == null)
+			{
+				continue;
+			}
+
+			for (String word : entry.getValue())
+			{
+				Set<String> documents = wordsToDocuments.get(word);
+
+				if (documents != null && documents.remove(documentName) && documents.isEmpty())
+				{
+					wordsToDocuments.remove(word);
+				}
+			}
+
+			if (wordsToDocuments.isEmpty())
+			{
+				categoriesToPostings.remove(entry.getKey());
+			}
+		}
 	}
 
 	/**
 	 * removeCategories
-	 * 
+	 *
 	 * @param categoryNames
 	 */
 	public void removeCategories(String[] categoryNames)
 	{
+		for (String category : categoryNames)
+		{
+			categoriesToPostings.remove(category);
+		}
+
 		for (Map<String, Set<String>> categoriesToWords : documentsToTable.values())
 		{
 			if (categoriesToWords != null)
@@ -270,7 +453,7 @@ public class MemoryIndex
 
 	/**
 	 * shouldMerge
-	 * 
+	 *
 	 * @return
 	 */
 	public boolean shouldMerge()
@@ -0,0 +1,473 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.index.core.SearchPattern;
+
+/**
+ * Computes the literal prefixes that every word matching a query must start with. Since the words of a category are
+ * kept sorted, the words starting with a given prefix form a contiguous range, so a query with known prefixes only needs
+ * to visit those ranges instead of every word in the category. The matches are still verified with
+ * {@link com.aptana.index.core.Index#isMatch(String, String, int)}, so the prefixes only need to describe a superset
+ * of the real matches.
+ */
+public class QueryPrefixes
+{
+	/**
+	 * The maximum number of ranges we are willing to visit for a single query. Case-insensitive and alternation
+	 * prefixes are shortened until they fit.
+	 */
+	private static final int MAX_PREFIXES = 16;
+	private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}"; //$NON-NLS-1$
+
+	/**
+	 * For each ASCII letter, every character that Character.toLowerCase or Character.toUpperCase folds onto it. This
+	 * includes oddities like the Kelvin sign for 'k'
+	 */
+	private static final char[][] CASE_VARIANTS = new char[128][];
+
+	static
+	{
+		StringBuilder[] variants = new StringBuilder[128];
+
+		for (int c = 0; c <= Character.MAX_VALUE; c++)
+		{
+			char ch = (char) c;
+			char lower = Character.toLowerCase(ch);
+			char upper = Character.toUpperCase(ch);
+
+			if (lower < 128 && Character.isLetter(lower))
+			{
+				addVariant(variants, Character.toLowerCase(lower), ch);
+			}
+			else if (upper < 128 && Character.isLetter(upper))
+			{
+				addVariant(variants, Character.toLowerCase(upper), ch);
+			}
+		}
+
+		for (int i = 0; i < variants.length; i++)
+		{
+			if (variants[i] != null)
+			{
+				char[] chars = variants[i].toString().toCharArray();
+
+				CASE_VARIANTS[i] = chars;
+				CASE_VARIANTS[Character.toUpperCase((char) i)] = chars;
+			}
+		}
+	}
+
+	private QueryPrefixes()
+	{
+	}
+
+	/**
+	 * addVariant
+	 *
+	 * @param variants
+	 * @param letter
+	 * @param variant
+	 */
+	private static void addVariant(StringBuilder[] variants, char letter, char variant)
+	{
+		if (variants[letter] == null)
+		{
+			variants[letter] = new StringBuilder();
+		}
+
+		if (variants[letter].indexOf(String.valueOf(variant)) == -1)
+		{
+			variants[letter].append(variant);
+		}
+	}
+
+	/**
+	 * Returns the sorted list of prefixes every matching word starts with, none of which is a prefix of another. A null
+	 * value indicates that the query can't be narrowed down and every word needs to be tested
+	 *
+	 * @param key
+	 * @param matchRule
+	 * @return
+	 */
+	public static List<String> compute(String key, int matchRule)
+	{
+		if (key == null || key.length() == 0)
+		{
+			return null;
+		}
+
+		List<String> prefixes;
+		boolean caseSensitive = (matchRule & SearchPattern.CASE_SENSITIVE) != 0;
+
+		switch (matchRule & ~SearchPattern.CASE_SENSITIVE)
+		{
+			case SearchPattern.EXACT_MATCH:
+			case SearchPattern.PREFIX_MATCH:
+				prefixes = new ArrayList<String>(1);
+				prefixes.add(key);
+				break;
+
+			case SearchPattern.REGEX_MATCH:
+				prefixes = getRegexPrefixes(key);
+				break;
+
+			default:
+				// patterns can match at any word boundary, so there is no usable prefix
+				return null;
+		}
+
+		if (prefixes != null && !caseSensitive)
+		{
+			prefixes = getCaseVariants(prefixes);
+		}
+
+		return normalize(prefixes);
+	}
+
+	/**
+	 * Expand each prefix into all of its case variants. Prefixes are shortened at the first non-ASCII character and
+	 * whenever the number of variants would grow too large.
+	 *
+	 * @param prefixes
+	 * @return
+	 */
+	private static List<String> getCaseVariants(List<String> prefixes)
+	{
+		List<String> result = new ArrayList<String>();
+		int budget = MAX_PREFIXES / prefixes.size();
+
+		for (String prefix : prefixes)
+		{
+			List<String> variants = new ArrayList<String>();
+			variants.add(""); //$NON-NLS-1$
+
+			for (int i = 0; i < prefix.length(); i++)
+			{
+				char c = prefix.charAt(i);
+
+				if (c >= 128)
+				{
+					break;
+				}
+
+				char[] chars = CASE_VARIANTS[c];
+
+				if (chars == null)
+				{
+					chars = new char[] { c };
+				}
+
+				if (variants.size() * chars.length > budget)
+				{
+					break;
+				}
+
+				List<String> next = new ArrayList<String>(variants.size() * chars.length);
+
+				for (String variant : variants)
+				{
+					for (char ch : chars)
+					{
+						next.add(variant + ch);
+					}
+				}
+
+				variants = next;
+			}
+
+			result.addAll(variants);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Find the literal prefixes of an anchored regular expression such as <code>^(Array|Object)\.</code>. Returns null
+	 * if the expression is not anchored, contains a top-level alternation or uses inline flags.
+	 *
+	 * @param regex
+	 * @return
+	 */
+	private static List<String> getRegexPrefixes(String regex)
+	{
+		if (regex.charAt(0) != '^' || !isSafeForPrefix(regex))
+		{
+			return null;
+		}
+
+		List<String> prefixes = new ArrayList<String>();
+		prefixes.add(""); //$NON-NLS-1$
+
+		int i = 1;
+		int length = regex.length();
+
+		while (i < length)
+		{
+			List<String> atom = new ArrayList<String>(1);
+			int next = readAtom(regex, i, atom);
+
+			if (next == -1)
+			{
+				break;
+			}
+
+			char quantifier = (next < length) ? regex.charAt(next) : 0;
+
+			if (quantifier == '?' || quantifier == '*' || quantifier == '{')
+			{
+				// the atom is optional, so it can't be part of the prefix
+				break;
+			}
+
+			if (prefixes.size() * atom.size() > MAX_PREFIXES)
+			{
+				break;
+			}
+
+			List<String> combined = new ArrayList<String>(prefixes.size() * atom.size());
+
+			for (String prefix : prefixes)
+			{
+				for (String alternative : atom)
+				{
+					combined.add(prefix + alternative);
+				}
+			}
+
+			prefixes = combined;
+
+			if (quantifier == '+')
+			{
+				// the atom appears at least once, but nothing after it is at a fixed position
+				break;
+			}
+
+			i = next;
+		}
+
+		return prefixes;
+	}
+
+	/**
+	 * Make sure the expression has no top-level alternation, which would defeat the anchor, and no inline flags or
+	 * quoting, which would change how literals are interpreted
+	 *
+	 * @param regex
+	 * @return
+	 */
+	private static boolean isSafeForPrefix(String regex)
+	{
+		int depth = 0;
+		boolean inClass = false;
+
+		for (int i = 0; i < regex.length(); i++)
+		{
+			char c = regex.charAt(i);
+
+			switch (c)
+			{
+				case '\\':
+					if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q')
+					{
+						return false;
+					}
+					i++;
+					break;
+
+				case '[':
+					inClass = true;
+					break;
+
+				case ']':
+					inClass = false;
+					break;
+
+				case '(':
+					if (!inClass)
+					{
+						if (i + 1 < regex.length() && regex.charAt(i + 1) == '?'
+								&& (i + 2 >= regex.length() || regex.charAt(i + 2) != ':'))
+						{
+							return false;
+						}
+						depth++;
+					}
+					break;
+
+				case ')':
+					if (!inClass)
+					{
+						depth--;
+					}
+					break;
+
+				case '|':
+					if (!inClass && depth == 0)
+					{
+						return false;
+					}
+					break;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Normalize the list of prefixes: sort them and drop any prefix that is covered by a shorter one.
+	 *
+	 * @param prefixes
+	 * @return
+	 */
+	private static List<String> normalize(List<String> prefixes)
+	{
+		if (prefixes == null || prefixes.isEmpty())
+		{
+			return null;
+		}
+
+		Collections.sort(prefixes);
+
+		List<String> result = new ArrayList<String>(prefixes.size());
+		String last = null;
+
+		for (String prefix : prefixes)
+		{
+			if (prefix.length() == 0)
+			{
+				// an empty prefix covers every word
+				return null;
+			}
+
+			if (last == null || !prefix.startsWith(last))
+			{
+				result.add(prefix);
+				last = prefix;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Read a single literal atom of a regular expression starting at the given offset. An atom is either a literal
+	 * character, an escaped punctuation character or a group of literal alternatives. The literal values of the atom
+	 * are added to the list and the offset following the atom is returned, or -1 if the atom is not a literal.
+	 *
+	 * @param regex
+	 * @param offset
+	 * @param values
+	 * @return
+	 */
+	private static int readAtom(String regex, int offset, List<String> values)
+	{
+		char c = regex.charAt(offset);
+
+		if (c == '(')
+		{
+			int i = offset + 1;
+
+			if (regex.startsWith("?:", i)) //$NON-NLS-1$
+			{
+				i += 2;
+			}
+
+			StringBuilder alternative = new StringBuilder();
+
+			while (i < regex.length())
+			{
+				c = regex.charAt(i);
+
+				if (c == ')')
+				{
+					values.add(alternative.toString());
+					return i + 1;
+				}
+				else if (c == '|')
+				{
+					values.add(alternative.toString());
+					alternative.setLength(0);
+					i++;
+				}
+				else
+				{
+					List<String> literal = new ArrayList<String>(1);
+					int next = readLiteral(regex, i, literal);
+
+					if (next == -1 || next < regex.length() && isQuantifier(regex.charAt(next)))
+					{
+						return -1;
+					}
+
+					alternative.append(literal.get(0));
+					i = next;
+				}
+			}
+
+			return -1;
+		}
+
+		return readLiteral(regex, offset, values);
+	}
+
+	/**
+	 * isQuantifier
+	 *
+	 * @param c
+	 * @return
+	 */
+	private static boolean isQuantifier(char c)
+	{
+		return c == '?' || c == '*' || c == '+' || c == '{';
+	}
+
+	/**
+	 * Read a single literal character or escaped punctuation character
+	 *
+	 * @param regex
+	 * @param offset
+	 * @param values
+	 * @return
+	 */
+	private static int readLiteral(String regex, int offset, List<String> values)
+	{
+		char c = regex.charAt(offset);
+
+		if (c == '\\')
+		{
+			if (offset + 1 >= regex.length())
+			{
+				return -1;
+			}
+
+			char escaped = regex.charAt(offset + 1);
+
+			if (Character.isLetterOrDigit(escaped))
+			{
+				// character classes, boundaries and control characters
+				return -1;
+			}
+
+			values.add(String.valueOf(escaped));
+			return offset + 2;
+		}
+
+		if (REGEX_META_CHARS.indexOf(c) != -1)
+		{
+			return -1;
+		}
+
+		values.add(String.valueOf(c));
+		return offset + 1;
+	}
+}
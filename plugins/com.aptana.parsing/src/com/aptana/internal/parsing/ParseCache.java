@@ -0,0 +1,327 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import com.aptana.core.epl.util.LRUCache;
+import com.aptana.core.logging.IdeLog;
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.ParsingPlugin;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+
+/**
+ * A cache of parse results keyed by content type, starting offset and a digest of the parsed source. The space taken
+ * by a result is the number of nodes in its AST, so the cache holds on to many small ASTs or a few large ones. All
+ * methods are thread safe.
+ */
+public class ParseCache
+{
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	/**
+	 * A cached parse along with the number of nodes in its AST
+	 */
+	private static class Entry
+	{
+		final IParseState parseState;
+		final int footprint;
+
+		Entry(IParseState parseState)
+		{
+			this.parseState = parseState;
+			this.footprint = countNodes(parseState.getParseResult());
+		}
+	}
+
+	/**
+	 * An LRU cache that weighs entries by their footprint and counts the entries it drops to make room
+	 */
+	private class EntryCache extends LRUCache<String, Entry>
+	{
+		EntryCache(int size)
+		{
+			super(size);
+		}
+
+		@Override
+		protected int spaceFor(Entry value)
+		{
+			return value.footprint;
+		}
+
+		@Override
+		protected boolean makeSpace(int space)
+		{
+			int size = entryTable.size();
+			boolean result = super.makeSpace(space);
+
+			evictions += size - entryTable.size();
+
+			return result;
+		}
+	}
+
+	private final EntryCache cache;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * ParseCache
+	 *
+	 * @param size
+	 *            The total number of AST nodes the cache may hold
+	 */
+	public ParseCache(int size)
+	{
+		cache = new EntryCache(size);
+	}
+
+	/**
+	 * Count the nodes of an AST. A missing AST still takes one unit of space
+	 *
+	 * @param root
+	 * @return
+	 */
+	private static int countNodes(IParseRootNode root)
+	{
+		if (root == null)
+		{
+			return 1;
+		}
+
+		List<IParseNode> stack = new ArrayList<IParseNode>();
+		int count = 0;
+
+		stack.add(root);
+
+		while (!stack.isEmpty())
+		{
+			IParseNode node = stack.remove(stack.size() - 1);
+
+			count++;
+
+			for (IParseNode child : node.getChildren())
+			{
+				if (child != null)
+				{
+					stack.add(child);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the key a parse of the given source is cached under. Returns null if the source can't be digested, in
+	 * which case the parse should not be cached
+	 *
+	 * @param contentTypeId
+	 * @param parseState
+	 * @return
+	 */
+	public String getKey(String contentTypeId, IParseState parseState)
+	{
+		String source = parseState.getSource();
+
+		if (source == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(source.getBytes(ENCODING));
+			StringBuilder key = new StringBuilder(contentTypeId.length() + 16 + digest.length * 2);
+
+			key.append(contentTypeId).append(':').append(parseState.getStartingOffset()).append(':');
+
+			for (byte b : digest)
+			{
+				key.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+			}
+
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			IdeLog.logError(ParsingPlugin.getDefault(), e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			IdeLog.logError(ParsingPlugin.getDefault(), e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the cached parse for the given key if it can be reused for the given parse state, or null. Counts a hit
+	 * or a miss
+	 *
+	 * @param key
+	 * @param parseState
+	 * @return
+	 */
+	public synchronized IParseState get(String key, IParseState parseState)
+	{
+		Entry entry = (key == null) ? null : cache.get(key);
+
+		if (entry != null && !entry.parseState.requiresReparse(parseState))
+		{
+			hits++;
+			return entry.parseState;
+		}
+
+		misses++;
+
+		return null;
+	}
+
+	/**
+	 * Cache a completed parse under the given key
+	 *
+	 * @param key
+	 * @param parseState
+	 */
+	public void put(String key, IParseState parseState)
+	{
+		if (key == null)
+		{
+			return;
+		}
+
+		// count the nodes outside of the lock
+		Entry entry = new Entry(parseState);
+
+		synchronized (this)
+		{
+			cache.put(key, entry);
+		}
+	}
+
+	/**
+	 * Drop the cached parses that produced the given AST. Used when an AST is about to be modified by an incremental
+	 * parse, so it is no longer a valid result for the source it is cached under
+	 *
+	 * @param ast
+	 */
+	public synchronized void remove(IParseRootNode ast)
+	{
+		if (ast == null)
+		{
+			return;
+		}
+
+		List<String> keys = new ArrayList<String>();
+
+		for (Enumeration<String> e = cache.keys(); e.hasMoreElements();)
+		{
+			String key = e.nextElement();
+			Entry entry = cache.peek(key);
+
+			if (entry != null && entry.parseState.getParseResult() == ast)
+			{
+				keys.add(key);
+			}
+		}
+
+		for (String key : keys)
+		{
+			cache.removeKey(key);
+		}
+	}
+
+	/**
+	 * Drop all cached parses
+	 */
+	public synchronized void flush()
+	{
+		cache.flush();
+	}
+
+	/**
+	 * Returns the number of lookups that found a reusable parse
+	 *
+	 * @return
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a reusable parse
+	 *
+	 * @return
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of parses dropped to make room for newer ones
+	 *
+	 * @return
+	 */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of AST nodes currently held by the cache
+	 *
+	 * @return
+	 */
+	public synchronized int getCurrentSize()
+	{
+		return cache.getCurrentSpace();
+	}
+
+	/**
+	 * Returns the number of AST nodes the cache may hold
+	 *
+	 * @return
+	 */
+	public synchronized int getSize()
+	{
+		return cache.getSpaceLimit();
+	}
+
+	/**
+	 * Change the number of AST nodes the cache may hold, dropping the least recently used parses if needed
+	 *
+	 * @param size
+	 */
+	public synchronized void setSize(int size)
+	{
+		cache.setSpaceLimit(size);
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counters
+	 */
+	public synchronized void resetStatistics()
+	{
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+}
@@ -7,26 +7,113 @@
  */
 package com.aptana.internal.parsing;
 
+import java.lang.ref.WeakReference;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.eclipse.core.runtime.IConfigurationElement;
 
 import com.aptana.core.logging.IdeLog;
-import com.aptana.core.util.ReapingObjectPool;
 import com.aptana.parsing.IParser;
 import com.aptana.parsing.IParserPool;
 import com.aptana.parsing.ParsingPlugin;
 
-public class ParserPool extends ReapingObjectPool<IParser> implements IParserPool
+/**
+ * A pool of parsers for a single content type. Checking parsers out and in never blocks: a thread first reuses the
+ * parser it returned last, then any idle parser, and otherwise creates a new one. At most the maximum number of idle
+ * parsers are kept, counting the ones kept by threads for their next check out. Idle parsers that went unused for a
+ * whole trim interval are dropped, down to the minimum number, as are the parsers kept by threads that ended.
+ */
+public class ParserPool implements IParserPool
 {
+	/**
+	 * How often unused idle parsers are dropped, in milliseconds
+	 */
+	private static final long TRIM_INTERVAL = 300000;
+
+	/**
+	 * The idle parser a thread keeps for its next check out. The pool can take it back from any thread.
+	 */
+	private static class ThreadSlot extends AtomicReference<IParser>
+	{
+		private static final long serialVersionUID = 1L;
 
-	private IConfigurationElement parserExtension;
+		private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
 
-	public ParserPool(IConfigurationElement parserExtension)
+		private boolean isOwnerAlive()
+		{
+			Thread thread = owner.get();
+			return thread != null && thread.isAlive();
+		}
+	}
+
+	private final IConfigurationElement parserExtension;
+	private final int minSize;
+	private final int maxSize;
+
+	private final ConcurrentLinkedQueue<IParser> idle;
+	// the slots of the threads that checked parsers out of this pool
+	private final ConcurrentLinkedQueue<ThreadSlot> slots;
+	// the idle parsers, both in the queue and kept by threads
+	private final AtomicInteger idleCount;
+	// the lowest number of idle parsers since the last trim. That many parsers were never needed
+	private final AtomicInteger idleLowWater;
+	private final AtomicLong lastTrim;
+	private final ThreadLocal<ThreadSlot> threadSlot;
+	private volatile boolean disposed;
+
+	private final AtomicInteger checkedOut;
+	private final AtomicLong checkOuts;
+	private final AtomicLong creations;
+	private final AtomicLong totalWaitTime;
+	private final AtomicLong maxWaitTime;
+
+	/**
+	 * ParserPool
+	 *
+	 * @param parserExtension
+	 * @param minSize
+	 *            the number of idle parsers that are always kept
+	 * @param maxSize
+	 *            the largest number of idle parsers that are kept
+	 */
+	public ParserPool(IConfigurationElement parserExtension, int minSize, int maxSize)
 	{
 		this.parserExtension = parserExtension;
-		start();
+		this.maxSize = Math.max(1, maxSize);
+		this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+
+		idle = new ConcurrentLinkedQueue<IParser>();
+		slots = new ConcurrentLinkedQueue<ThreadSlot>();
+		idleCount = new AtomicInteger();
+		idleLowWater = new AtomicInteger();
+		lastTrim = new AtomicLong(System.currentTimeMillis());
+		threadSlot = new ThreadLocal<ThreadSlot>()
+		{
+			@Override
+			protected ThreadSlot initialValue()
+			{
+				ThreadSlot slot = new ThreadSlot();
+				slots.add(slot);
+				return slot;
+			}
+		};
+
+		checkedOut = new AtomicInteger();
+		checkOuts = new AtomicLong();
+		creations = new AtomicLong();
+		totalWaitTime = new AtomicLong();
+		maxWaitTime = new AtomicLong();
 	}
 
-	@Override
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#create()
+	 */
 	public IParser create()
 	{
 		try
@@ -40,16 +127,301 @@ public class ParserPool extends ReapingObjectPool<IParser> implements IParserPoo
 		return null;
 	}
 
-	@Override
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#validate(java.lang.Object)
+	 */
 	public boolean validate(IParser o)
 	{
-		// Always keep one available parser
-		return unlockedItems() == 1;
+		// parsers reset themselves on each parse
+		return true;
 	}
 
-	@Override
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#expire(java.lang.Object)
+	 */
 	public void expire(IParser o)
 	{
 		// no need to clean the parser up
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#checkOut()
+	 */
+	public IParser checkOut()
+	{
+		long start = System.nanoTime();
+		IParser parser = threadSlot.get().getAndSet(null);
+
+		if (parser != null)
+		{
+			updateLowWater(idleCount.decrementAndGet());
+		}
+		else
+		{
+			parser = idle.poll();
+
+			if (parser != null)
+			{
+				updateLowWater(idleCount.decrementAndGet());
+			}
+			else
+			{
+				updateLowWater(0);
+				parser = create();
+
+				if (parser != null)
+				{
+					creations.incrementAndGet();
+				}
+			}
+		}
+
+		if (parser != null)
+		{
+			checkedOut.incrementAndGet();
+			checkOuts.incrementAndGet();
+			recordWaitTime(System.nanoTime() - start);
+		}
+
+		return parser;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#checkIn(java.lang.Object)
+	 */
+	public void checkIn(IParser parser)
+	{
+		if (parser == null)
+		{
+			return;
+		}
+
+		checkedOut.decrementAndGet();
+
+		if (disposed)
+		{
+			expire(parser);
+			return;
+		}
+
+		if (idleCount.get() >= maxSize)
+		{
+			// make room taken by the parsers of ended threads
+			releaseEndedThreads();
+		}
+
+		if (idleCount.incrementAndGet() <= maxSize)
+		{
+			// keep it for the next check out on this thread
+			if (!threadSlot.get().compareAndSet(null, parser))
+			{
+				idle.offer(parser);
+			}
+		}
+		else
+		{
+			idleCount.decrementAndGet();
+			expire(parser);
+		}
+
+		trim();
+	}
+
+	/**
+	 * Drop the parsers kept by threads that ended
+	 */
+	private void releaseEndedThreads()
+	{
+		for (Iterator<ThreadSlot> i = slots.iterator(); i.hasNext();)
+		{
+			ThreadSlot slot = i.next();
+
+			if (!slot.isOwnerAlive())
+			{
+				i.remove();
+				release(slot);
+			}
+		}
+	}
+
+	/**
+	 * Take back and drop the parser kept in a thread slot, if any
+	 *
+	 * @param slot
+	 * @return true if the slot kept a parser
+	 */
+	private boolean release(ThreadSlot slot)
+	{
+		IParser parser = slot.getAndSet(null);
+
+		if (parser == null)
+		{
+			return false;
+		}
+
+		updateLowWater(idleCount.decrementAndGet());
+		expire(parser);
+		return true;
+	}
+
+	/**
+	 * Drop the idle parsers that were not needed since the last trim, keeping at least the minimum number
+	 */
+	private void trim()
+	{
+		long now = System.currentTimeMillis();
+		long last = lastTrim.get();
+
+		if (now - last < TRIM_INTERVAL || !lastTrim.compareAndSet(last, now))
+		{
+			return;
+		}
+
+		releaseEndedThreads();
+
+		int surplus = Math.min(idleLowWater.getAndSet(idleCount.get()), idleCount.get() - minSize);
+
+		while (surplus > 0)
+		{
+			IParser parser = idle.poll();
+
+			if (parser == null)
+			{
+				break;
+			}
+
+			updateLowWater(idleCount.decrementAndGet());
+			expire(parser);
+			surplus--;
+		}
+
+		// then the parsers kept by threads
+		for (Iterator<ThreadSlot> i = slots.iterator(); surplus > 0 && i.hasNext();)
+		{
+			if (release(i.next()))
+			{
+				surplus--;
+			}
+		}
+	}
+
+	/**
+	 * Lower the idle low water mark to the given count if needed
+	 *
+	 * @param count
+	 */
+	private void updateLowWater(int count)
+	{
+		int current;
+
+		while (count < (current = idleLowWater.get()))
+		{
+			if (idleLowWater.compareAndSet(current, count))
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Record the time spent obtaining a parser
+	 *
+	 * @param time
+	 */
+	private void recordWaitTime(long time)
+	{
+		totalWaitTime.addAndGet(time);
+
+		long current;
+
+		while (time > (current = maxWaitTime.get()))
+		{
+			if (maxWaitTime.compareAndSet(current, time))
+			{
+				break;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.util.IObjectPool#dispose()
+	 */
+	public void dispose()
+	{
+		disposed = true;
+
+		IParser parser;
+
+		while ((parser = idle.poll()) != null)
+		{
+			idleCount.decrementAndGet();
+			expire(parser);
+		}
+
+		for (ThreadSlot slot : slots)
+		{
+			release(slot);
+		}
+
+		slots.clear();
+		threadSlot.remove();
+
+		int count = checkedOut.get();
+
+		if (count > 0)
+		{
+			IdeLog.logWarning(ParsingPlugin.getDefault(),
+					MessageFormat.format("Disposed a parser pool that still has {0} parsers checked out", count)); //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParserPool#getCheckOutCount()
+	 */
+	public long getCheckOutCount()
+	{
+		return checkOuts.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParserPool#getCreationCount()
+	 */
+	public long getCreationCount()
+	{
+		return creations.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParserPool#getIdleCount()
+	 */
+	public int getIdleCount()
+	{
+		return idleCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParserPool#getTotalWaitTime()
+	 */
+	public long getTotalWaitTime()
+	{
+		return totalWaitTime.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParserPool#getMaxWaitTime()
+	 */
+	public long getMaxWaitTime()
+	{
+		return maxWaitTime.get();
+	}
 }
@@ -12,4 +12,39 @@ import com.aptana.core.util.IObjectPool;
 public interface IParserPool extends IObjectPool<IParser>
 {
 
+	/**
+	 * Returns the number of parsers checked out of this pool
+	 * 
+	 * @return
+	 */
+	public long getCheckOutCount();
+
+	/**
+	 * Returns the number of parsers this pool had to create because no idle parser was available
+	 * 
+	 * @return
+	 */
+	public long getCreationCount();
+
+	/**
+	 * Returns the number of idle parsers held by this pool
+	 * 
+	 * @return
+	 */
+	public int getIdleCount();
+
+	/**
+	 * Returns the total time spent obtaining parsers from this pool, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getTotalWaitTime();
+
+	/**
+	 * Returns the longest time spent obtaining a parser from this pool, in nanoseconds
+	 * 
+	 * @return
+	 */
+	public long getMaxWaitTime();
+
 }
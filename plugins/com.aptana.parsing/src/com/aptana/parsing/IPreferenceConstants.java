@@ -0,0 +1,29 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+public interface IPreferenceConstants
+{
+
+	/**
+	 * The total number of AST nodes kept in the parse cache. Parses of unchanged sources are answered from the cache
+	 */
+	String PARSE_CACHE_SIZE = "parse_cache_size"; //$NON-NLS-1$
+
+	/**
+	 * The number of idle parsers of each content type that are always kept
+	 */
+	String PARSER_POOL_MIN_SIZE = "parser_pool_min_size"; //$NON-NLS-1$
+
+	/**
+	 * The largest number of idle parsers of each content type that are kept. Defaults to the number of available
+	 * processors
+	 */
+	String PARSER_POOL_MAX_SIZE = "parser_pool_max_size"; //$NON-NLS-1$
+
+}
@@ -40,6 +40,15 @@ public class ParseState implements IParseState
 	 */
 	private int fSourceHash;
 
+	/**
+	 * The parse this edit was made against, if the source is known to differ from its source by a single edit. Parsers
+	 * that support it may update the previous parse result instead of parsing all of the source again
+	 */
+	private IParseState fPreviousState;
+	private int fEditOffset;
+	private int fEditRemovedLength;
+	private int fEditInsertedLength;
+
 	public ParseState()
 	{
 		fSource = StringUtil.EMPTY;
@@ -51,6 +60,47 @@ public class ParseState implements IParseState
 	{
 		fSource = null;
 		fSkippedRanges = null;
+		fPreviousState = null;
+	}
+
+	/**
+	 * Returns the parse the current source was edited from, or null if the source should be parsed from scratch
+	 * 
+	 * @return
+	 */
+	public IParseState getPreviousState()
+	{
+		return fPreviousState;
+	}
+
+	/**
+	 * Returns the offset of the edit, relative to the start of the source
+	 * 
+	 * @return
+	 */
+	public int getEditOffset()
+	{
+		return fEditOffset;
+	}
+
+	/**
+	 * Returns the number of characters of the previous source removed by the edit
+	 * 
+	 * @return
+	 */
+	public int getEditRemovedLength()
+	{
+		return fEditRemovedLength;
+	}
+
+	/**
+	 * Returns the number of characters inserted by the edit
+	 * 
+	 * @return
+	 */
+	public int getEditInsertedLength()
+	{
+		return fEditInsertedLength;
 	}
 
 	public IParseRootNode getParseResult()
@@ -89,6 +139,35 @@ public class ParseState implements IParseState
 		fSourceHash = fSource.hashCode(); // Store hashcode of source for use later for determining cache-busting
 		fStartingOffset = startingOffset;
 		fSkippedRanges = null;
+		fPreviousState = null;
+	}
+
+	/**
+	 * Set the source to parse along with the single edit that turned the source of a previous parse into it. Parsers
+	 * that support incremental parsing may re-parse only the part of the previous result around the edit. The previous
+	 * parse result then belongs to this parse state and may be modified, so it must no longer be used on its own
+	 * 
+	 * @param source
+	 *            the full source after the edit
+	 * @param startingOffset
+	 * @param previousState
+	 *            the parse state of the previous source
+	 * @param editOffset
+	 *            the offset of the edit, relative to the start of the source
+	 * @param removedLength
+	 *            the number of characters of the previous source the edit removed
+	 * @param insertedLength
+	 *            the number of characters the edit inserted
+	 */
+	public void setEditState(String source, int startingOffset, IParseState previousState, int editOffset,
+			int removedLength, int insertedLength)
+	{
+		setEditState(source, startingOffset);
+
+		fPreviousState = previousState;
+		fEditOffset = editOffset;
+		fEditRemovedLength = removedLength;
+		fEditInsertedLength = insertedLength;
 	}
 
 	public void setParseResult(IParseRootNode result)
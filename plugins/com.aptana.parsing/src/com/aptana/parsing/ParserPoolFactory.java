@@ -11,6 +11,8 @@ import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -18,11 +20,11 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.content.IContentType;
 import org.eclipse.core.runtime.content.IContentTypeManager;
 
-import com.aptana.core.epl.util.LRUCache;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IConfigurationElementProcessor;
+import com.aptana.internal.parsing.ParseCache;
 import com.aptana.internal.parsing.ParserPool;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -34,14 +36,29 @@ public class ParserPoolFactory
 	private static final String ELEMENT_PARSER = "parser"; //$NON-NLS-1$
 	private static final String ATTR_CONTENT_TYPE = "content-type"; //$NON-NLS-1$
 
+	/**
+	 * The default number of AST nodes held by the parse cache
+	 */
+	private static final int DEFAULT_PARSE_CACHE_SIZE = 50000;
+
+	/**
+	 * The default number of idle parsers of each content type that are always kept
+	 */
+	private static final int DEFAULT_POOL_MIN_SIZE = 1;
+
 	private static ParserPoolFactory INSTANCE;
 	/**
-	 * A parse cache. Keyed by combo of content type and source hash, holds IParseRootNode result. Retains most recently
-	 * used ASTs.
+	 * A parse cache. Keyed by combo of content type, starting offset and source digest, holds IParseRootNode result.
+	 * Retains most recently used ASTs, weighed by their number of nodes.
 	 */
-	private LRUCache<String, IParseState> fParseCache;
+	private volatile ParseCache fParseCache;
 	private Map<String, IConfigurationElement> parsers;
 	private Map<String, IParserPool> pools;
+	/**
+	 * The pools already looked up, keyed by the requested content type. Lets lookups skip the content type hierarchy
+	 * and the lock
+	 */
+	private final ConcurrentMap<String, IParserPool> poolLookup = new ConcurrentHashMap<String, IParserPool>();
 
 	/**
 	 * Singleton!
@@ -97,7 +114,45 @@ public class ParserPoolFactory
 	 */
 	private ParserPoolFactory()
 	{
-		fParseCache = new LRUCache<String, IParseState>(3);
+		fParseCache = new ParseCache(readParseCacheSize());
+	}
+
+	/**
+	 * Returns the preferred size of the parser pools, or the given default
+	 * 
+	 * @param key
+	 * @param defaultSize
+	 * @return
+	 */
+	private static int readPoolSize(String key, int defaultSize)
+	{
+		if (Platform.isRunning())
+		{
+			return Platform.getPreferencesService().getInt(ParsingPlugin.PLUGIN_ID, key, defaultSize, null);
+		}
+
+		return defaultSize;
+	}
+
+	/**
+	 * Returns the number of AST nodes the parse cache may hold, as set in the preferences
+	 * 
+	 * @return
+	 */
+	private static int readParseCacheSize()
+	{
+		if (Platform.isRunning())
+		{
+			int size = Platform.getPreferencesService().getInt(ParsingPlugin.PLUGIN_ID,
+					IPreferenceConstants.PARSE_CACHE_SIZE, DEFAULT_PARSE_CACHE_SIZE, null);
+
+			if (size > 0)
+			{
+				return size;
+			}
+		}
+
+		return DEFAULT_PARSE_CACHE_SIZE;
 	}
 
 	/**
@@ -105,6 +160,8 @@ public class ParserPoolFactory
 	 */
 	synchronized void dispose()
 	{
+		poolLookup.clear();
+
 		if (fParseCache != null)
 		{
 			fParseCache.flush();
@@ -130,6 +187,83 @@ public class ParserPoolFactory
 		}
 	}
 
+	/**
+	 * Returns the number of parses that were answered from the parse cache
+	 * 
+	 * @return
+	 */
+	public long getParseCacheHits()
+	{
+		ParseCache cache = fParseCache;
+
+		return (cache == null) ? 0 : cache.getHits();
+	}
+
+	/**
+	 * Returns the number of parses that could not be answered from the parse cache
+	 * 
+	 * @return
+	 */
+	public long getParseCacheMisses()
+	{
+		ParseCache cache = fParseCache;
+
+		return (cache == null) ? 0 : cache.getMisses();
+	}
+
+	/**
+	 * Returns the number of ASTs dropped from the parse cache to make room for newer ones
+	 * 
+	 * @return
+	 */
+	public long getParseCacheEvictions()
+	{
+		ParseCache cache = fParseCache;
+
+		return (cache == null) ? 0 : cache.getEvictions();
+	}
+
+	/**
+	 * Returns the number of AST nodes the parse cache may hold
+	 * 
+	 * @return
+	 */
+	public int getParseCacheSize()
+	{
+		ParseCache cache = fParseCache;
+
+		return (cache == null) ? 0 : cache.getSize();
+	}
+
+	/**
+	 * Change the number of AST nodes held by the parse cache
+	 * 
+	 * @param size
+	 */
+	public void setParseCacheSize(int size)
+	{
+		ParseCache cache = fParseCache;
+
+		if (cache != null)
+		{
+			cache.setSize(size);
+		}
+	}
+
+	/**
+	 * Drop all cached ASTs and reset the parse cache counters
+	 */
+	public void flushParseCache()
+	{
+		ParseCache cache = fParseCache;
+
+		if (cache != null)
+		{
+			cache.flush();
+			cache.resetStatistics();
+		}
+	}
+
 	/**
 	 * The main use of this class. Pass in a content type and get back an IParserPool to use to "borrow" a parser
 	 * instance. If the specified content type does not exist in the parser pool, then we work our way up the base
@@ -138,7 +272,35 @@ public class ParserPoolFactory
 	 * @param contentTypeId
 	 * @return
 	 */
-	public synchronized IParserPool getParserPool(String contentTypeId)
+	public IParserPool getParserPool(String contentTypeId)
+	{
+		if (contentTypeId == null)
+		{
+			return null;
+		}
+
+		IParserPool result = poolLookup.get(contentTypeId);
+
+		if (result == null)
+		{
+			result = findParserPool(contentTypeId);
+
+			if (result != null)
+			{
+				poolLookup.putIfAbsent(contentTypeId, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Find or create the parser pool for a content type or its closest base type
+	 * 
+	 * @param contentTypeId
+	 * @return
+	 */
+	private synchronized IParserPool findParserPool(String contentTypeId)
 	{
 		IContentTypeManager ctm = Platform.getContentTypeManager();
 		IContentType contentType = ctm.getContentType(contentTypeId);
@@ -168,7 +330,13 @@ public class ParserPoolFactory
 
 				if (parserExtension != null)
 				{
-					result = new ParserPool(parserExtension);
+					// @formatter:off
+					result = new ParserPool(
+						parserExtension,
+						readPoolSize(IPreferenceConstants.PARSER_POOL_MIN_SIZE, DEFAULT_POOL_MIN_SIZE),
+						readPoolSize(IPreferenceConstants.PARSER_POOL_MAX_SIZE, Runtime.getRuntime().availableProcessors())
+					);
+					// @formatter:on
 					pools.put(contentTypeId, result);
 				}
 				else
@@ -261,17 +429,30 @@ public class ParserPoolFactory
 				return null;
 			}
 
-			int sourceHash = parseState.getSource().hashCode();
-			String key = MessageFormat.format("{0}:{1}", contentTypeId, sourceHash); //$NON-NLS-1$
-			IParseState cached = fParseCache.get(key);
-			if (cached != null && !cached.requiresReparse(parseState))
+			ParseCache cache = fParseCache;
+			String key = (cache == null) ? null : cache.getKey(contentTypeId, parseState);
+			IParseState cached = (key == null) ? null : cache.get(key, parseState);
+			if (cached != null)
 			{
 				// copy over errors from old parse state to new one since we're not re-parsing
 				for (IParseError error : cached.getErrors())
 				{
 					parseState.addError(error);
 				}
-				return cached.getParseResult();
+				IParseRootNode ast = cached.getParseResult();
+				parseState.setParseResult(ast);
+				return ast;
+			}
+
+			if (cache != null && parseState instanceof ParseState)
+			{
+				// an incremental parse may modify the previous AST in place, so it can't be served from the cache anymore
+				IParseState previousState = ((ParseState) parseState).getPreviousState();
+
+				if (previousState != null)
+				{
+					cache.remove(previousState.getParseResult());
+				}
 			}
 
 			IParserPool pool = getParserPool(contentTypeId);
@@ -285,7 +466,10 @@ public class ParserPoolFactory
 					{
 						IParseRootNode ast = parser.parse(parseState);
 						parseState.setParseResult(ast);
-						fParseCache.put(key, parseState);
+						if (key != null)
+						{
+							cache.put(key, parseState);
+						}
 						return ast;
 					}
 					finally
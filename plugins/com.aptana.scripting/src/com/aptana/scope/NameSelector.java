@@ -57,6 +57,16 @@ public class NameSelector implements ISelectorNode
 		return result;
 	}
 
+	/**
+	 * getName
+	 * 
+	 * @return
+	 */
+	String getName()
+	{
+		return this._name;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Object#toString()
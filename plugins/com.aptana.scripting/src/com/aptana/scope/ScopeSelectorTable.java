@@ -0,0 +1,112 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fixed set of scope selectors and their values, with the best matching value of each scope remembered. The first
+ * lookup of a scope runs {@link ScopeSelector#bestMatch(java.util.Collection, String)}, later lookups of the same scope
+ * are a single hash probe. The table never changes once built, so a new table is built when the selectors change.
+ * 
+ * @param <T>
+ */
+public class ScopeSelectorTable<T>
+{
+	/**
+	 * The number of scopes remembered before the remembered matches are dropped
+	 */
+	private static final int MAX_SCOPES = 1000;
+
+	/**
+	 * Remembered for scopes that no selector matches, since the match map can't hold null values
+	 */
+	private static final Object NO_MATCH = new Object();
+
+	private final Map<IScopeSelector, T> values;
+	private final List<IScopeSelector> selectors;
+	private final Map<String, Object> matches;
+
+	/**
+	 * ScopeSelectorTable
+	 * 
+	 * @param values
+	 */
+	public ScopeSelectorTable(Map<? extends IScopeSelector, ? extends T> values)
+	{
+		this.values = new HashMap<IScopeSelector, T>(values);
+		this.selectors = new ArrayList<IScopeSelector>(this.values.keySet());
+		this.matches = new ConcurrentHashMap<String, Object>();
+	}
+
+	/**
+	 * Returns the value of the selector that best matches the given scope, or null if no selector matches
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(String scope)
+	{
+		if (scope == null || selectors.isEmpty())
+		{
+			return null;
+		}
+
+		Object result = matches.get(scope);
+
+		if (result == null)
+		{
+			result = findBestMatch(scope);
+
+			if (matches.size() >= MAX_SCOPES)
+			{
+				matches.clear();
+			}
+
+			matches.put(scope, result);
+		}
+
+		return (result == NO_MATCH) ? null : (T) result;
+	}
+
+	/**
+	 * Find the value of the best matching selector. Selectors keep the results of their last match for comparison, so
+	 * only one thread matches against the selectors of this table at a time
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	private synchronized Object findBestMatch(String scope)
+	{
+		IScopeSelector bestMatch = ScopeSelector.bestMatch(selectors, scope);
+
+		if (bestMatch == null)
+		{
+			return NO_MATCH;
+		}
+
+		T value = values.get(bestMatch);
+
+		return (value == null) ? NO_MATCH : value;
+	}
+
+	/**
+	 * Returns true if the table has no selectors
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty()
+	{
+		return selectors.isEmpty();
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of a fixed list of scope selectors by the dot-separated segments of the names they require. A selector can
+ * only match a scope if one of the scope's steps starts with one of its required names, so looking up the segments of
+ * each step of a scope finds every selector that may match it without testing the others. Selectors that don't require
+ * a name are candidates for every scope.
+ */
+public class ScopeSelectorTrie
+{
+	private static class Node
+	{
+		Map<String, Node> children;
+		List<Integer> selectors;
+
+		/**
+		 * Returns the child for the given segment, creating it if needed
+		 *
+		 * @param segment
+		 * @return
+		 */
+		Node getOrCreateChild(String segment)
+		{
+			if (children == null)
+			{
+				children = new HashMap<String, Node>();
+			}
+
+			Node child = children.get(segment);
+
+			if (child == null)
+			{
+				child = new Node();
+				children.put(segment, child);
+			}
+
+			return child;
+		}
+
+		/**
+		 * Returns the child for the given segment, or null
+		 *
+		 * @param segment
+		 * @return
+		 */
+		Node getChild(String segment)
+		{
+			return (children == null) ? null : children.get(segment);
+		}
+
+		/**
+		 * Add a selector index to this node
+		 *
+		 * @param index
+		 */
+		void addSelector(int index)
+		{
+			if (selectors == null)
+			{
+				selectors = new ArrayList<Integer>(1);
+			}
+
+			selectors.add(index);
+		}
+	}
+
+	private final List<IScopeSelector> selectors;
+	private final BitSet unanchored;
+	private final Node root;
+
+	/**
+	 * ScopeSelectorTrie
+	 *
+	 * @param selectors
+	 *            the selectors to index. Candidates are returned in this order
+	 */
+	public ScopeSelectorTrie(Collection<? extends IScopeSelector> selectors)
+	{
+		this.selectors = new ArrayList<IScopeSelector>(selectors);
+		this.unanchored = new BitSet();
+		this.root = new Node();
+
+		for (int i = 0; i < this.selectors.size(); i++)
+		{
+			IScopeSelector selector = this.selectors.get(i);
+
+			if (selector == null)
+			{
+				// never matches
+				continue;
+			}
+
+			List<String> names = null;
+
+			if (selector instanceof ScopeSelector)
+			{
+				names = getRequiredNames(((ScopeSelector) selector).getRoot());
+			}
+
+			if (names == null)
+			{
+				unanchored.set(i);
+			}
+			else
+			{
+				for (String name : names)
+				{
+					add(name, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns names of which a scope needs to match at least one for the node to match, or null if the node can't be
+	 * narrowed down that way
+	 *
+	 * @param node
+	 * @return
+	 */
+	private List<String> getRequiredNames(ISelectorNode node)
+	{
+		if (node instanceof NameSelector)
+		{
+			String name = ((NameSelector) node).getName();
+
+			// an empty name never matches, so it needs no entry at all
+			return (name == null || name.length() == 0) ? Collections.<String> emptyList() : Collections
+					.singletonList(name);
+		}
+		if (node instanceof OrSelector)
+		{
+			OrSelector or = (OrSelector) node;
+			List<String> left = getRequiredNames(or.getLeftChild());
+			List<String> right = getRequiredNames(or.getRightChild());
+
+			if (left == null || right == null)
+			{
+				return null;
+			}
+
+			List<String> result = new ArrayList<String>(left);
+			result.addAll(right);
+
+			return result;
+		}
+		if (node instanceof AndSelector)
+		{
+			AndSelector and = (AndSelector) node;
+
+			if (and.getLeftChild() == null || and.getRightChild() == null)
+			{
+				// never matches
+				return Collections.emptyList();
+			}
+
+			// both sides need to match, the right side is usually the more specific one
+			List<String> result = getRequiredNames(and.getRightChild());
+
+			return (result != null) ? result : getRequiredNames(and.getLeftChild());
+		}
+		if (node instanceof NegativeLookaheadSelector)
+		{
+			NegativeLookaheadSelector negative = (NegativeLookaheadSelector) node;
+
+			// a negative lookahead without both sides matches anything
+			if (negative.getLeftChild() == null || negative.getRightChild() == null)
+			{
+				return null;
+			}
+
+			return getRequiredNames(negative.getLeftChild());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Add the selector at the given index under the segments of the name
+	 *
+	 * @param name
+	 * @param index
+	 */
+	private void add(String name, int index)
+	{
+		Node node = root;
+		int start = 0;
+		int length = name.length();
+
+		while (true)
+		{
+			int end = name.indexOf('.', start);
+
+			if (end == -1)
+			{
+				end = length;
+			}
+
+			node = node.getOrCreateChild(name.substring(start, end));
+
+			if (end == length)
+			{
+				break;
+			}
+
+			start = end + 1;
+		}
+
+		node.addSelector(index);
+	}
+
+	/**
+	 * Returns the selectors that may match the given scope, in the order they were given to this index. Selectors that
+	 * aren't returned don't match the scope
+	 *
+	 * @param scope
+	 * @return
+	 */
+	public List<IScopeSelector> getCandidates(String scope)
+	{
+		if (scope == null || selectors.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		BitSet candidates = (BitSet) unanchored.clone();
+		int length = scope.length();
+		int stepStart = 0;
+
+		// steps are separated by whitespace like in MatchContext
+		while (stepStart <= length)
+		{
+			int stepEnd = stepStart;
+
+			while (stepEnd < length && !isWhitespace(scope.charAt(stepEnd)))
+			{
+				stepEnd++;
+			}
+
+			collect(scope, stepStart, stepEnd, candidates);
+
+			while (stepEnd < length && isWhitespace(scope.charAt(stepEnd)))
+			{
+				stepEnd++;
+			}
+
+			if (stepEnd == length)
+			{
+				break;
+			}
+
+			stepStart = stepEnd;
+		}
+
+		List<IScopeSelector> result = new ArrayList<IScopeSelector>(candidates.cardinality());
+
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+		{
+			result.add(selectors.get(i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Add the selectors of every name that the given step starts with
+	 *
+	 * @param scope
+	 * @param start
+	 * @param end
+	 * @param candidates
+	 */
+	private void collect(String scope, int start, int end, BitSet candidates)
+	{
+		Node node = root;
+		int segmentStart = start;
+
+		while (node != null)
+		{
+			int segmentEnd = segmentStart;
+
+			while (segmentEnd < end && scope.charAt(segmentEnd) != '.')
+			{
+				segmentEnd++;
+			}
+
+			node = node.getChild(scope.substring(segmentStart, segmentEnd));
+
+			if (node != null && node.selectors != null)
+			{
+				for (Integer index : node.selectors)
+				{
+					candidates.set(index);
+				}
+			}
+
+			if (segmentEnd == end)
+			{
+				break;
+			}
+
+			segmentStart = segmentEnd + 1;
+		}
+	}
+
+	/**
+	 * Matches the whitespace used to split scopes into steps
+	 *
+	 * @param c
+	 * @return
+	 */
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	/**
+	 * Returns the number of selectors in this index
+	 *
+	 * @return
+	 */
+	public int size()
+	{
+		return selectors.size();
+	}
+}
@@ -20,6 +20,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IProject;
@@ -46,6 +48,7 @@ import com.aptana.core.util.ResourceUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.scope.IScopeSelector;
 import com.aptana.scope.ScopeSelector;
+import com.aptana.scope.ScopeSelectorTable;
 import com.aptana.scripting.IDebugScopes;
 import com.aptana.scripting.IScriptingSystemProperties;
 import com.aptana.scripting.ScriptLogger;
@@ -471,6 +474,49 @@ public class BundleManager
 	private List<ElementVisibilityListener> _elementVisibilityListeners;
 	private List<LoadCycleListener> _loadCycleListeners;
 
+	/**
+	 * The kinds of regular expressions bundles register by scope selector
+	 */
+	private enum MarkerKind
+	{
+		DECREASE_INDENT
+		{
+			Map<ScopeSelector, RubyRegexp> getMarkers(BundleEntry entry)
+			{
+				return entry.getDecreaseIndentMarkers();
+			}
+		},
+		INCREASE_INDENT
+		{
+			Map<ScopeSelector, RubyRegexp> getMarkers(BundleEntry entry)
+			{
+				return entry.getIncreaseIndentMarkers();
+			}
+		},
+		FOLDING_START
+		{
+			Map<ScopeSelector, RubyRegexp> getMarkers(BundleEntry entry)
+			{
+				return entry.getFoldingStartMarkers();
+			}
+		},
+		FOLDING_STOP
+		{
+			Map<ScopeSelector, RubyRegexp> getMarkers(BundleEntry entry)
+			{
+				return entry.getFoldingStopMarkers();
+			}
+		};
+
+		abstract Map<ScopeSelector, RubyRegexp> getMarkers(BundleEntry entry);
+	}
+
+	/**
+	 * The markers of all bundles by kind, built on first use. The whole map is replaced when bundles are loaded or
+	 * unloaded, so a table built from bundles that changed in the meantime is never used
+	 */
+	private volatile ConcurrentMap<MarkerKind, ScopeSelectorTable<RubyRegexp>> _markerTables;
+
 	/**
 	 * Create a new instance of BundleManager and initialize its internal structure. Note that this constructor is
 	 * private so it can only be instantiated within a static method in this class
@@ -486,6 +532,8 @@ public class BundleManager
 		this._bundleVisibilityListeners = new ArrayList<BundleVisibilityListener>();
 		this._elementVisibilityListeners = new ArrayList<ElementVisibilityListener>();
 		this._loadCycleListeners = new ArrayList<LoadCycleListener>();
+
+		this._markerTables = new ConcurrentHashMap<MarkerKind, ScopeSelectorTable<RubyRegexp>>();
 	}
 
 	/**
@@ -538,6 +586,8 @@ public class BundleManager
 					entry.addBundle(bundle);
 				}
 			}
+
+			this.resetMarkerTables();
 		}
 	}
 
@@ -715,6 +765,9 @@ public class BundleManager
 	{
 		if (script != null)
 		{
+			// the script may have changed the markers of its bundle
+			this.resetMarkerTables();
+
 			for (LoadCycleListener listener : this.getLoadCycleListeners())
 			{
 				try
@@ -740,6 +793,9 @@ public class BundleManager
 	{
 		if (script != null)
 		{
+			// the script may have changed the markers of its bundle
+			this.resetMarkerTables();
+
 			for (LoadCycleListener listener : this.getLoadCycleListeners())
 			{
 				try
@@ -765,6 +821,9 @@ public class BundleManager
 	{
 		if (script != null)
 		{
+			// the script may have changed the markers of its bundle
+			this.resetMarkerTables();
+
 			for (LoadCycleListener listener : this.getLoadCycleListeners())
 			{
 				try
@@ -1379,22 +1438,7 @@ public class BundleManager
 	 */
 	public RubyRegexp getDecreaseIndentRegexp(String scope)
 	{
-		Map<IScopeSelector, RubyRegexp> map = new HashMap<IScopeSelector, RubyRegexp>();
-		for (String bundleName : this.getBundleNames())
-		{
-			BundleEntry bundleEntry = this.getBundleEntry(bundleName);
-			map.putAll(bundleEntry.getDecreaseIndentMarkers());
-		}
-		if (map.isEmpty())
-		{
-			return null;
-		}
-		IScopeSelector bestMatch = ScopeSelector.bestMatch(map.keySet(), scope);
-		if (bestMatch == null)
-		{
-			return null;
-		}
-		return map.get(bestMatch);
+		return this.getMarkerTable(MarkerKind.DECREASE_INDENT).get(scope);
 	}
 
 	/**
@@ -1462,22 +1506,7 @@ public class BundleManager
 	 */
 	public RubyRegexp getFoldingStartRegexp(String scope)
 	{
-		Map<IScopeSelector, RubyRegexp> map = new HashMap<IScopeSelector, RubyRegexp>();
-		for (String bundleName : this.getBundleNames())
-		{
-			BundleEntry bundleEntry = this.getBundleEntry(bundleName);
-			map.putAll(bundleEntry.getFoldingStartMarkers());
-		}
-		if (map.isEmpty())
-		{
-			return null;
-		}
-		IScopeSelector bestMatch = ScopeSelector.bestMatch(map.keySet(), scope);
-		if (bestMatch == null)
-		{
-			return null;
-		}
-		return map.get(bestMatch);
+		return this.getMarkerTable(MarkerKind.FOLDING_START).get(scope);
 	}
 
 	/**
@@ -1488,22 +1517,7 @@ public class BundleManager
 	 */
 	public RubyRegexp getFoldingStopRegexp(String scope)
 	{
-		Map<IScopeSelector, RubyRegexp> map = new HashMap<IScopeSelector, RubyRegexp>();
-		for (String bundleName : this.getBundleNames())
-		{
-			BundleEntry bundleEntry = this.getBundleEntry(bundleName);
-			map.putAll(bundleEntry.getFoldingStopMarkers());
-		}
-		if (map.isEmpty())
-		{
-			return null;
-		}
-		IScopeSelector bestMatch = ScopeSelector.bestMatch(map.keySet(), scope);
-		if (bestMatch == null)
-		{
-			return null;
-		}
-		return map.get(bestMatch);
+		return this.getMarkerTable(MarkerKind.FOLDING_STOP).get(scope);
 	}
 
 	/**
@@ -1514,22 +1528,45 @@ public class BundleManager
 	 */
 	public RubyRegexp getIncreaseIndentRegexp(String scope)
 	{
-		Map<IScopeSelector, RubyRegexp> map = new HashMap<IScopeSelector, RubyRegexp>();
-		for (String bundleName : this.getBundleNames())
-		{
-			BundleEntry bundleEntry = this.getBundleEntry(bundleName);
-			map.putAll(bundleEntry.getIncreaseIndentMarkers());
-		}
-		if (map.isEmpty())
-		{
-			return null;
-		}
-		IScopeSelector bestMatch = ScopeSelector.bestMatch(map.keySet(), scope);
-		if (bestMatch == null)
+		return this.getMarkerTable(MarkerKind.INCREASE_INDENT).get(scope);
+	}
+
+	/**
+	 * Returns the table of all markers of the given kind, building it from the active bundles if needed
+	 * 
+	 * @param kind
+	 * @return
+	 */
+	private ScopeSelectorTable<RubyRegexp> getMarkerTable(MarkerKind kind)
+	{
+		ConcurrentMap<MarkerKind, ScopeSelectorTable<RubyRegexp>> tables = this._markerTables;
+		ScopeSelectorTable<RubyRegexp> table = tables.get(kind);
+
+		if (table == null)
 		{
-			return null;
+			Map<IScopeSelector, RubyRegexp> map = new HashMap<IScopeSelector, RubyRegexp>();
+
+			for (String bundleName : this.getBundleNames())
+			{
+				BundleEntry bundleEntry = this.getBundleEntry(bundleName);
+
+				if (bundleEntry != null)
+				{
+					map.putAll(kind.getMarkers(bundleEntry));
+				}
+			}
+
+			table = new ScopeSelectorTable<RubyRegexp>(map);
+
+			ScopeSelectorTable<RubyRegexp> existing = tables.putIfAbsent(kind, table);
+
+			if (existing != null)
+			{
+				table = existing;
+			}
 		}
-		return map.get(bestMatch);
+
+		return table;
 	}
 
 	/**
@@ -2165,6 +2202,8 @@ public class BundleManager
 				}
 			}
 
+			this.resetMarkerTables();
+
 			AbstractElement.unregisterElement(bundle);
 		}
 	}
@@ -2211,6 +2250,14 @@ public class BundleManager
 		}
 	}
 
+	/**
+	 * Drop the marker tables so they are rebuilt from the current bundles on next use
+	 */
+	private void resetMarkerTables()
+	{
+		this._markerTables = new ConcurrentHashMap<MarkerKind, ScopeSelectorTable<RubyRegexp>>();
+	}
+
 	/**
 	 * Clear internal state in the bundle manager. This used for unit testing, so don't use this unless you know what
 	 * you're doing
@@ -2228,6 +2275,8 @@ public class BundleManager
 		{
 			this._entriesByName.clear();
 		}
+
+		this.resetMarkerTables();
 	}
 
 	/**
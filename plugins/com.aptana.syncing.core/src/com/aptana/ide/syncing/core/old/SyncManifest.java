@@ -0,0 +1,413 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.StringUtil;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Remembers the state of the files of a client and a server tree as it was when they were last found identical: the
+ * size and modification time of both files and, when computed, the checksum of their contents. A client file whose
+ * size and modification time are unchanged is assumed to still match its server file, which lets a synchronization
+ * look up only the files that changed on the client instead of listing the whole server. The manifest is only valid
+ * for the time tolerance it was recorded with; loading it with another tolerance starts an empty one.
+ */
+/* package */class SyncManifest
+{
+	/**
+	 * The checksum of files whose contents were never compared
+	 */
+	public static final long NO_CHECKSUM = -1;
+
+	private static final String SIGNATURE = "SYNC MANIFEST VERSION 1"; //$NON-NLS-1$
+	private static final String FOLDER = "manifests"; //$NON-NLS-1$
+	private static final String EXTENSION = ".manifest"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Some file systems only keep modification times to the second or two. A client file modified within this interval
+	 * before it was recorded may have changed again without its modification time changing, so it is not trusted
+	 */
+	private static final long RACY_INTERVAL = 2000;
+
+	/**
+	 * The recorded state of a single pair of files
+	 */
+	/* package */static class Entry
+	{
+		private final boolean directory;
+		private final long clientLength;
+		private final long clientModified;
+		private final long serverLength;
+		private final long serverModified;
+		private final long checksum;
+		private final long recorded;
+
+		private Entry(boolean directory, long clientLength, long clientModified, long serverLength,
+				long serverModified, long checksum, long recorded)
+		{
+			this.directory = directory;
+			this.clientLength = clientLength;
+			this.clientModified = clientModified;
+			this.serverLength = serverLength;
+			this.serverModified = serverModified;
+			this.checksum = checksum;
+			this.recorded = recorded;
+		}
+
+		/**
+		 * Returns true if the client file is the same as when it was recorded. The modification time of directories
+		 * changes with their contents, so only their type is compared.
+		 * 
+		 * @param info
+		 * @return
+		 */
+		public boolean isClientUnchanged(IFileInfo info)
+		{
+			if (!info.exists() || info.isDirectory() != directory)
+			{
+				return false;
+			}
+			return directory
+					|| (info.getLength() == clientLength && info.getLastModified() == clientModified && clientModified
+							+ RACY_INTERVAL < recorded);
+		}
+
+		/**
+		 * Returns true if the server file is the same as when it was recorded.
+		 * 
+		 * @param info
+		 * @return
+		 */
+		public boolean isServerUnchanged(IFileInfo info)
+		{
+			if (!info.exists() || info.isDirectory() != directory)
+			{
+				return false;
+			}
+			return directory || (info.getLength() == serverLength && info.getLastModified() == serverModified);
+		}
+
+		/**
+		 * Returns whether the contents of the files were compared.
+		 * 
+		 * @return
+		 */
+		public boolean hasChecksum()
+		{
+			return checksum != NO_CHECKSUM;
+		}
+
+		/**
+		 * Returns the checksum of the contents of both files.
+		 * 
+		 * @return
+		 */
+		public long getChecksum()
+		{
+			return checksum;
+		}
+	}
+
+	private final File manifestFile;
+	private final String key;
+	private final long timeTolerance;
+	private final Map<String, Entry> entries;
+	private Set<String> recordedPaths;
+	private boolean dirty;
+
+	/**
+	 * Creates an empty manifest
+	 * 
+	 * @param manifestFile
+	 *            the file the manifest is saved to
+	 * @param key
+	 *            identifies the client and server trees, to detect a manifest file reused for other trees
+	 * @param timeTolerance
+	 *            the time tolerance used to compare the files
+	 */
+	/* package */SyncManifest(File manifestFile, String key, long timeTolerance)
+	{
+		this.manifestFile = manifestFile;
+		this.key = key;
+		this.timeTolerance = timeTolerance;
+		this.entries = new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Loads the manifest of a client and a server tree from the state location of the plug-in. Returns an empty
+	 * manifest if none was saved, it can't be read or it was recorded with another time tolerance.
+	 * 
+	 * @param clientRoot
+	 * @param serverRoot
+	 * @param timeTolerance
+	 * @return
+	 */
+	public static SyncManifest load(IFileStore clientRoot, IFileStore serverRoot, long timeTolerance)
+	{
+		String key = clientRoot.toURI() + "\n" + serverRoot.toURI(); //$NON-NLS-1$
+		File folder = SyncingPlugin.getDefault().getStateLocation().append(FOLDER).toFile();
+		return load(new File(folder, StringUtil.md5(key) + EXTENSION), key, timeTolerance);
+	}
+
+	/**
+	 * Loads a manifest from a file. Returns an empty manifest if the file doesn't exist, can't be read or doesn't
+	 * match the key and time tolerance.
+	 * 
+	 * @param manifestFile
+	 * @param key
+	 * @param timeTolerance
+	 * @return
+	 */
+	/* package */static SyncManifest load(File manifestFile, String key, long timeTolerance)
+	{
+		SyncManifest manifest = new SyncManifest(manifestFile, key, timeTolerance);
+
+		if (manifestFile.exists())
+		{
+			try
+			{
+				manifest.read();
+			}
+			catch (IOException e)
+			{
+				IdeLog.logError(SyncingPlugin.getDefault(),
+						"Unable to read sync manifest " + manifestFile, e); //$NON-NLS-1$
+				manifest.entries.clear();
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Returns the recorded state of a path, or null if it is not recorded.
+	 * 
+	 * @param relativePath
+	 * @return
+	 */
+	public synchronized Entry get(String relativePath)
+	{
+		return entries.get(relativePath);
+	}
+
+	/**
+	 * Returns the recorded paths.
+	 * 
+	 * @return
+	 */
+	public synchronized List<String> getPaths()
+	{
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/**
+	 * Returns whether no path is recorded.
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Records the state of a pair of files that are identical.
+	 * 
+	 * @param relativePath
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @param checksum
+	 *            the checksum of the contents of the files, or {@link #NO_CHECKSUM}
+	 */
+	public synchronized void put(String relativePath, IFileInfo clientInfo, IFileInfo serverInfo, long checksum)
+	{
+		entries.put(relativePath, new Entry(clientInfo.isDirectory(), clientInfo.getLength(), clientInfo
+				.getLastModified(), serverInfo.getLength(), serverInfo.getLastModified(), checksum, System
+				.currentTimeMillis()));
+		if (recordedPaths != null)
+		{
+			recordedPaths.add(relativePath);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Forgets a path and, if it is a directory, its contents.
+	 * 
+	 * @param relativePath
+	 */
+	public synchronized void remove(String relativePath)
+	{
+		if (entries.remove(relativePath) != null)
+		{
+			dirty = true;
+		}
+		String prefix = relativePath + "/"; //$NON-NLS-1$
+		for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();)
+		{
+			if (i.next().startsWith(prefix))
+			{
+				i.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Starts tracking the paths that get recorded, for {@link #retainRecorded()}.
+	 */
+	public synchronized void startRecording()
+	{
+		recordedPaths = new HashSet<String>();
+	}
+
+	/**
+	 * Forgets the paths that were not recorded since {@link #startRecording()}, once both trees have been compared
+	 * completely.
+	 */
+	public synchronized void retainRecorded()
+	{
+		if (recordedPaths == null)
+		{
+			return;
+		}
+		if (entries.keySet().retainAll(recordedPaths))
+		{
+			dirty = true;
+		}
+		recordedPaths = null;
+	}
+
+	/**
+	 * read
+	 * 
+	 * @throws IOException
+	 */
+	private void read() throws IOException
+	{
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile),
+				BUFFER_SIZE));
+
+		try
+		{
+			if (!SIGNATURE.equals(stream.readUTF()))
+			{
+				throw new IOException("Wrong manifest format " + manifestFile); //$NON-NLS-1$
+			}
+			if (!key.equals(stream.readUTF()) || stream.readLong() != timeTolerance)
+			{
+				// recorded for other trees, or decided with another tolerance
+				return;
+			}
+
+			int count = stream.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				String relativePath = stream.readUTF();
+				boolean directory = stream.readBoolean();
+				long clientLength = stream.readLong();
+				long clientModified = stream.readLong();
+				long serverLength = stream.readLong();
+				long serverModified = stream.readLong();
+				long checksum = stream.readLong();
+				long recorded = stream.readLong();
+
+				entries.put(relativePath, new Entry(directory, clientLength, clientModified, serverLength,
+						serverModified, checksum, recorded));
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Writes the manifest, if anything changed.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException
+	{
+		if (!dirty)
+		{
+			return;
+		}
+
+		File folder = manifestFile.getParentFile();
+		if (folder != null && !folder.exists() && !folder.mkdirs())
+		{
+			throw new IOException("Failed to create folder " + folder); //$NON-NLS-1$
+		}
+
+		File tmpFile = new File(manifestFile.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+				BUFFER_SIZE));
+
+		try
+		{
+			stream.writeUTF(SIGNATURE);
+			stream.writeUTF(key);
+			stream.writeLong(timeTolerance);
+			stream.writeInt(entries.size());
+
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet())
+			{
+				Entry entry = mapEntry.getValue();
+
+				stream.writeUTF(mapEntry.getKey());
+				stream.writeBoolean(entry.directory);
+				stream.writeLong(entry.clientLength);
+				stream.writeLong(entry.clientModified);
+				stream.writeLong(entry.serverLength);
+				stream.writeLong(entry.serverModified);
+				stream.writeLong(entry.checksum);
+				stream.writeLong(entry.recorded);
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+
+		if (manifestFile.exists() && !manifestFile.delete())
+		{
+			tmpFile.delete();
+			throw new IOException("Failed to delete sync manifest " + manifestFile); //$NON-NLS-1$
+		}
+
+		if (!tmpFile.renameTo(manifestFile))
+		{
+			throw new IOException("Failed to rename sync manifest " + manifestFile); //$NON-NLS-1$
+		}
+
+		dirty = false;
+	}
+}
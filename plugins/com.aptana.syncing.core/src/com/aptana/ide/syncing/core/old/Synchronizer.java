@@ -13,11 +13,17 @@ import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
 import org.eclipse.core.filesystem.EFS;
@@ -27,11 +33,14 @@ import org.eclipse.core.internal.filesystem.Policy;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 
 import com.aptana.core.io.efs.EFSUtils;
+import com.aptana.core.io.efs.FileTreeWalker;
 import com.aptana.core.io.efs.SyncUtils;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.logging.IdeLog;
@@ -52,27 +61,56 @@ public class Synchronizer implements ILoggable
 			"SYNC_IN_PROGRESS"); //$NON-NLS-1$
 
 	private static final int DEFAULT_TIME_TOLERANCE = 1000;
+	private static final long LISTING_POLL_INTERVAL = 100;
+
+	/**
+	 * The number of unchanged files looked up on the server to check that it still matches the sync manifest
+	 */
+	private static final int SPOT_CHECK_SIZE = 16;
+
+	/**
+	 * Beyond this number of new, changed or deleted client files, listing the whole server is cheaper than looking
+	 * them up one at a time
+	 */
+	private static final int MAX_INCREMENTAL_LOOKUPS = 256;
+
+	/**
+	 * The default number of items transferred concurrently
+	 */
+	public static final int DEFAULT_TRANSFER_LANES = 3;
 
 	private boolean _useCRC;
 	private boolean _includeCloakedFiles = false;
 	private long _timeTolerance;
-
-	private int _clientDirectoryCreatedCount;
-	private int _clientDirectoryDeletedCount;
-	private int _clientFileDeletedCount;
-	private int _clientFileTransferedCount;
-	private int _serverDirectoryCreatedCount;
-	private int _serverDirectoryDeletedCount;
-	private int _serverFileDeletedCount;
-	private int _serverFileTransferedCount;
+	private int _transferLanes = DEFAULT_TRANSFER_LANES;
+	private boolean _useManifest;
+	private boolean _consistencyCheck;
+	private SyncManifest _manifest;
+
+	private final AtomicInteger _clientDirectoryCreatedCount = new AtomicInteger();
+	private final AtomicInteger _clientDirectoryDeletedCount = new AtomicInteger();
+	private final AtomicInteger _clientFileDeletedCount = new AtomicInteger();
+	private final AtomicInteger _clientFileTransferedCount = new AtomicInteger();
+	private final AtomicInteger _serverDirectoryCreatedCount = new AtomicInteger();
+	private final AtomicInteger _serverDirectoryDeletedCount = new AtomicInteger();
+	private final AtomicInteger _serverFileDeletedCount = new AtomicInteger();
+	private final AtomicInteger _serverFileTransferedCount = new AtomicInteger();
 
 	private IConnectionPoint _clientFileManager;
 	private IConnectionPoint _serverFileManager;
 	private IFileStore _clientFileRoot;
 	private IFileStore _serverFileRoot;
 	private ISyncEventHandler _eventHandler;
+	private final Object _eventLock = new Object();
 	private ILogger logger;
 
+	/**
+	 * The sync log entry of the item transferred by the current thread, written in one piece once the item is done so
+	 * the entries of the items transferred concurrently don't interleave
+	 */
+	private final ThreadLocal<StringBuilder> _itemLog = new ThreadLocal<StringBuilder>();
+	private final Object _logLock = new Object();
+
 	private List<IFileStore> _newFilesDownloaded;
 	private List<IFileStore> _newFilesUploaded;
 
@@ -122,8 +160,8 @@ public class Synchronizer implements ILoggable
 		this._useCRC = calculateCrc;
 		this._includeCloakedFiles = includeCloakedFiles;
 		this._timeTolerance = timeTolerance;
-		_newFilesDownloaded = new ArrayList<IFileStore>();
-		_newFilesUploaded = new ArrayList<IFileStore>();
+		_newFilesDownloaded = Collections.synchronizedList(new ArrayList<IFileStore>());
+		_newFilesUploaded = Collections.synchronizedList(new ArrayList<IFileStore>());
 	}
 
 	/**
@@ -136,7 +174,10 @@ public class Synchronizer implements ILoggable
 	{
 		if (this.logger != null)
 		{
-			this.logger.logInfo(message, null);
+			synchronized (_logLock)
+			{
+				this.logger.logInfo(message, null);
+			}
 		}
 	}
 
@@ -192,7 +233,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getClientDirectoryCreatedCount()
 	{
-		return this._clientDirectoryCreatedCount;
+		return this._clientDirectoryCreatedCount.get();
 	}
 
 	/**
@@ -202,7 +243,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getClientDirectoryDeletedCount()
 	{
-		return this._clientDirectoryDeletedCount;
+		return this._clientDirectoryDeletedCount.get();
 	}
 
 	/**
@@ -212,7 +253,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getClientFileDeletedCount()
 	{
-		return this._clientFileDeletedCount;
+		return this._clientFileDeletedCount.get();
 	}
 
 	/**
@@ -222,7 +263,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getClientFileTransferedCount()
 	{
-		return this._clientFileTransferedCount;
+		return this._clientFileTransferedCount.get();
 	}
 
 	/**
@@ -253,7 +294,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getServerDirectoryCreatedCount()
 	{
-		return this._serverDirectoryCreatedCount;
+		return this._serverDirectoryCreatedCount.get();
 	}
 
 	/**
@@ -263,7 +304,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getServerDirectoryDeletedCount()
 	{
-		return this._serverDirectoryDeletedCount;
+		return this._serverDirectoryDeletedCount.get();
 	}
 
 	/**
@@ -273,7 +314,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getServerFileDeletedCount()
 	{
-		return this._serverFileDeletedCount;
+		return this._serverFileDeletedCount.get();
 	}
 
 	/**
@@ -283,29 +324,244 @@ public class Synchronizer implements ILoggable
 	 */
 	public int getServerFileTransferedCount()
 	{
-		return this._serverFileTransferedCount;
+		return this._serverFileTransferedCount.get();
 	}
 
 	public IFileStore[] getNewFilesDownloaded()
 	{
-		return _newFilesDownloaded.toArray(new IFileStore[_newFilesDownloaded.size()]);
+		synchronized (_newFilesDownloaded)
+		{
+			return _newFilesDownloaded.toArray(new IFileStore[_newFilesDownloaded.size()]);
+		}
 	}
 
 	public IFileStore[] getNewFilesUploaded()
 	{
-		return _newFilesUploaded.toArray(new IFileStore[_newFilesUploaded.size()]);
+		synchronized (_newFilesUploaded)
+		{
+			return _newFilesUploaded.toArray(new IFileStore[_newFilesUploaded.size()]);
+		}
+	}
+
+	/**
+	 * Returns the number of items transferred concurrently.
+	 * 
+	 * @return the number of transfer lanes
+	 */
+	public int getTransferLanes()
+	{
+		return this._transferLanes;
+	}
+
+	/**
+	 * Sets the number of items transferred concurrently. Items are still started in the order of the list, and an item
+	 * is not started while an item on its parent or one of its children is in progress, so directories are created
+	 * before their contents and deleted after them.
+	 * 
+	 * @param lanes
+	 *            the number of transfer lanes; 1 transfers the items one at a time
+	 */
+	public void setTransferLanes(int lanes)
+	{
+		this._transferLanes = Math.max(1, lanes);
+	}
+
+	/**
+	 * Returns whether the state of the files is recorded in a manifest at the end of each synchronization.
+	 * 
+	 * @return true if a sync manifest is used
+	 */
+	public boolean getUseManifest()
+	{
+		return this._useManifest;
+	}
+
+	/**
+	 * Sets whether the state of the files is recorded in a manifest, kept for each pair of client and server roots,
+	 * when they are found identical or transferred. Later comparisons of the same roots then only look up the client
+	 * files that changed since on the server, along with a sample of the unchanged ones, instead of listing the whole
+	 * server, and don't read files again to compare their CRC when neither side changed.
+	 * 
+	 * @param useManifest
+	 */
+	public void setUseManifest(boolean useManifest)
+	{
+		this._useManifest = useManifest;
+		if (!useManifest)
+		{
+			_manifest = null;
+		}
+	}
+
+	/**
+	 * Returns whether the next comparison ignores the sync manifest.
+	 * 
+	 * @return true if the next comparison is a consistency check
+	 */
+	public boolean getConsistencyCheck()
+	{
+		return this._consistencyCheck;
+	}
+
+	/**
+	 * Sets whether comparisons ignore the sync manifest: both trees are listed completely and all the files compared,
+	 * and the manifest is recorded again from what is found. This notices the changes made to the server by others
+	 * since the last synchronization, which a comparison based on the manifest may miss.
+	 * 
+	 * @param consistencyCheck
+	 */
+	public void setConsistencyCheck(boolean consistencyCheck)
+	{
+		this._consistencyCheck = consistencyCheck;
 	}
 
 	public void setClientFileRoot(IFileStore client)
 	{
+		if (client == null || !client.equals(_clientFileRoot))
+		{
+			_manifest = null;
+		}
 		_clientFileRoot = client;
 	}
 
 	public void setServerFileRoot(IFileStore server)
 	{
+		if (server == null || !server.equals(_serverFileRoot))
+		{
+			_manifest = null;
+		}
 		_serverFileRoot = server;
 	}
 
+	/**
+	 * Returns the manifest of the current roots, loading it if needed, or null if none is used.
+	 * 
+	 * @return SyncManifest
+	 */
+	private synchronized SyncManifest getManifest()
+	{
+		if (_manifest == null && _useManifest && _clientFileRoot != null && _serverFileRoot != null)
+		{
+			_manifest = SyncManifest.load(_clientFileRoot, _serverFileRoot, _timeTolerance);
+		}
+		return _manifest;
+	}
+
+	/**
+	 * Returns the recorded state of a path that comparisons can rely on, or null.
+	 * 
+	 * @param relativePath
+	 * @return SyncManifest.Entry
+	 */
+	private SyncManifest.Entry getManifestEntry(String relativePath)
+	{
+		SyncManifest manifest = getManifest();
+		return (manifest == null || _consistencyCheck) ? null : manifest.get(relativePath);
+	}
+
+	/**
+	 * Records a pair of files found identical.
+	 */
+	private void recordMatch(String relativePath, IFileInfo clientFileInfo, IFileInfo serverFileInfo, long checksum)
+	{
+		SyncManifest manifest = getManifest();
+		if (manifest != null)
+		{
+			manifest.put(relativePath, clientFileInfo, serverFileInfo, checksum);
+		}
+	}
+
+	/**
+	 * Records the state of a pair of files after one of them was transferred, or forgets it if they no longer match.
+	 */
+	private void recordTransfer(String relativePath, IFileStore clientFile, IFileStore serverFile)
+	{
+		SyncManifest manifest = getManifest();
+		if (manifest == null)
+		{
+			return;
+		}
+		try
+		{
+			IFileInfo clientFileInfo = clientFile.fetchInfo();
+			IFileInfo serverFileInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, null);
+			if (clientFileInfo.exists() && serverFileInfo.exists()
+					&& clientFileInfo.isDirectory() == serverFileInfo.isDirectory())
+			{
+				long checksum = SyncManifest.NO_CHECKSUM;
+				if (_useCRC && !clientFileInfo.isDirectory())
+				{
+					// both files now have the contents of the client one, which is cheap to read
+					Long crc = getCRC(relativePath, clientFile.openInputStream(EFS.NONE, null));
+					if (crc != null)
+					{
+						checksum = crc.longValue();
+					}
+				}
+				manifest.put(relativePath, clientFileInfo, serverFileInfo, checksum);
+				return;
+			}
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logWarning(SyncingPlugin.getDefault(), e.getLocalizedMessage(), e);
+		}
+		manifest.remove(relativePath);
+	}
+
+	/**
+	 * Forgets a path which was deleted or no longer matches.
+	 */
+	private void forgetPath(String relativePath)
+	{
+		SyncManifest manifest = getManifest();
+		if (manifest != null)
+		{
+			manifest.remove(relativePath);
+		}
+	}
+
+	/**
+	 * Forgets the items that are not identical. Items found on one side only are not forgotten unless all the files of
+	 * both trees were compared, since the other side may just not have been listed.
+	 */
+	private void forgetMismatches(Map<String, VirtualFileSyncPair> fileList, boolean complete)
+	{
+		SyncManifest manifest = getManifest();
+		if (manifest == null)
+		{
+			return;
+		}
+		for (VirtualFileSyncPair item : fileList.values())
+		{
+			if (item.getSyncState() != SyncState.ItemsMatch
+					&& (complete || (item.getSourceFile() != null && item.getDestinationFile() != null)))
+			{
+				manifest.remove(item.getRelativePath());
+			}
+		}
+	}
+
+	/**
+	 * Saves the manifest, if any.
+	 */
+	private void saveManifest()
+	{
+		SyncManifest manifest = _manifest;
+		if (manifest == null)
+		{
+			return;
+		}
+		try
+		{
+			manifest.save();
+		}
+		catch (IOException e)
+		{
+			IdeLog.logError(SyncingPlugin.getDefault(), e);
+		}
+	}
+
 	/**
 	 * Gets the list of items to sync.
 	 * 
@@ -360,29 +616,32 @@ public class Synchronizer implements ILoggable
 			}
 			else
 			{
-				// get the complete file listings for the client and server
-				log(FileUtil.NEW_LINE);
-				log(MessageFormat.format(Messages.Synchronizer_Gathering_Source, new Object[] { client.toString() }));
-
-				long start = System.currentTimeMillis();
-				clientFiles = EFSUtils.getFiles(client, true, _includeCloakedFiles, monitor);
-				log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
-
-				start = System.currentTimeMillis();
-				log(FileUtil.NEW_LINE);
-				log(MessageFormat.format(Messages.Synchronizer_Gathering_Destination,
-						new Object[] { server.toString() }));
-				serverFiles = EFSUtils.getFiles(server, true, _includeCloakedFiles, monitor);
-				log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
-
-				log(FileUtil.NEW_LINE);
-				log(Messages.Synchronizer_Listing_Complete);
+				VirtualFileSyncPair[] items = null;
+				SyncManifest manifest = getManifest();
+				if (manifest != null && !manifest.isEmpty() && !_consistencyCheck)
+				{
+					items = compareWithManifest(client, server, manifest, monitor);
+				}
+				if (items == null)
+				{
+					if (!syncContinue(monitor))
+					{
+						return null;
+					}
+					items = listSyncItems(client, server, monitor);
+				}
+				if (items == null || !syncContinue(monitor))
+				{
+					return null;
+				}
+				return items;
 			}
 		}
 		finally
 		{
 			// we just throw exceptions back up the tree
 			removeClientEventHandler(client, server);
+			saveManifest();
 		}
 
 		if (!syncContinue(monitor))
@@ -393,6 +652,260 @@ public class Synchronizer implements ILoggable
 		return createSyncItems(clientFiles, serverFiles, monitor);
 	}
 
+	/**
+	 * Lists the client and server trees at the same time, and compares the files while they are being listed.
+	 * 
+	 * @param client
+	 * @param server
+	 * @param monitor
+	 * @return VirtualFileSyncPair[]
+	 * @throws CoreException
+	 */
+	private VirtualFileSyncPair[] listSyncItems(IFileStore client, IFileStore server, IProgressMonitor monitor)
+			throws CoreException
+	{
+		// get the complete file listings for the client and server
+		log(FileUtil.NEW_LINE);
+		log(MessageFormat.format(Messages.Synchronizer_Gathering_Source, new Object[] { client.toString() }));
+		log(MessageFormat.format(Messages.Synchronizer_Gathering_Destination, new Object[] { server.toString() }));
+		long start = System.currentTimeMillis();
+
+		BlockingQueue<ListedFile> listedFiles = new LinkedBlockingQueue<ListedFile>();
+		FileTreeWalker clientWalker = new FileTreeWalker(client, _includeCloakedFiles,
+				FileTreeWalker.DEFAULT_MAX_LISTINGS);
+		FileTreeWalker serverWalker = new FileTreeWalker(server, _includeCloakedFiles,
+				FileTreeWalker.DEFAULT_MAX_LISTINGS);
+		Map<String, VirtualFileSyncPair> fileList = new HashMap<String, VirtualFileSyncPair>();
+		// server files listed before the client file of the same path, compared once the client tree is complete
+		List<IFileStore> unmatchedServerFiles = new ArrayList<IFileStore>();
+
+		// reset statistics and clear lists
+		this.reset();
+
+		monitor = Policy.monitorFor(monitor);
+		Policy.checkCanceled(monitor);
+
+		// the manifest is recorded again from the files found identical
+		SyncManifest manifest = getManifest();
+		if (manifest != null)
+		{
+			manifest.startRecording();
+		}
+
+		try
+		{
+			clientWalker.start(new ListingVisitor(listedFiles, true), monitor);
+			serverWalker.start(new ListingVisitor(listedFiles, false), monitor);
+			while (true)
+			{
+				boolean listed = clientWalker.isDone() && serverWalker.isDone();
+				ListedFile file = listed ? listedFiles.poll() : listedFiles.poll(LISTING_POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (!syncContinue(monitor))
+				{
+					return null;
+				}
+				Policy.checkCanceled(monitor);
+				if (file == null)
+				{
+					if (listed)
+					{
+						break;
+					}
+					// reports a failed listing without waiting for the other tree
+					if (clientWalker.isDone())
+					{
+						clientWalker.join(monitor);
+					}
+					if (serverWalker.isDone())
+					{
+						serverWalker.join(monitor);
+					}
+					continue;
+				}
+
+				monitor.worked(1);
+				if (file.client)
+				{
+					addClientFile(fileList, file.store);
+				}
+				else
+				{
+					String relativePath = getCanonicalPath(_serverFileRoot, file.store);
+					if (fileList.containsKey(relativePath))
+					{
+						addServerFile(fileList, file.store, relativePath, monitor);
+					}
+					else
+					{
+						unmatchedServerFiles.add(file.store);
+					}
+				}
+			}
+			clientWalker.join(monitor);
+			serverWalker.join(monitor);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		finally
+		{
+			clientWalker.cancel();
+			serverWalker.cancel();
+		}
+		log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
+
+		log(FileUtil.NEW_LINE);
+		log(Messages.Synchronizer_Listing_Complete);
+
+		log(FileUtil.NEW_LINE + Messages.Synchronizer_Generating_Comparison);
+		for (IFileStore serverFile : unmatchedServerFiles)
+		{
+			if (!syncContinue(monitor))
+			{
+				return null;
+			}
+			Policy.checkCanceled(monitor);
+			addServerFile(fileList, serverFile, getCanonicalPath(_serverFileRoot, serverFile), monitor);
+		}
+		if (manifest != null)
+		{
+			manifest.retainRecorded();
+		}
+		return sortSyncItems(fileList);
+	}
+
+	/**
+	 * Compares the client tree with the state recorded in the sync manifest instead of listing the server. The client
+	 * files that are unchanged since they were recorded are assumed to still match their server file; only the new,
+	 * changed and deleted client files are looked up on the server, along with a sample of the unchanged ones to check
+	 * that the server was not modified since. Files added to the server by others are not noticed until the next
+	 * consistency check.
+	 * 
+	 * @param client
+	 * @param server
+	 * @param manifest
+	 * @param monitor
+	 * @return VirtualFileSyncPair[], or null if the server has to be listed
+	 * @throws CoreException
+	 */
+	private VirtualFileSyncPair[] compareWithManifest(IFileStore client, IFileStore server, SyncManifest manifest,
+			IProgressMonitor monitor) throws CoreException
+	{
+		log(FileUtil.NEW_LINE);
+		log(MessageFormat.format(Messages.Synchronizer_Gathering_Source, new Object[] { client.toString() }));
+		long start = System.currentTimeMillis();
+
+		Map<String, VirtualFileSyncPair> fileList = new HashMap<String, VirtualFileSyncPair>();
+		List<String> unchangedPaths = new ArrayList<String>();
+		List<String> changedPaths = new ArrayList<String>();
+
+		// reset statistics and clear lists
+		this.reset();
+
+		monitor = Policy.monitorFor(monitor);
+		Policy.checkCanceled(monitor);
+
+		IFileStore[] clientFiles = EFSUtils.getFiles(client, true, _includeCloakedFiles, monitor);
+		for (IFileStore clientFile : clientFiles)
+		{
+			if (!syncContinue(monitor))
+			{
+				return null;
+			}
+			Policy.checkCanceled(monitor);
+			monitor.worked(1);
+
+			String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
+			addClientFile(fileList, clientFile);
+			VirtualFileSyncPair item = fileList.get(relativePath);
+			if (item == null)
+			{
+				continue;
+			}
+			SyncManifest.Entry entry = manifest.get(relativePath);
+			if (entry != null && entry.isClientUnchanged(item.getSourceFileInfo(monitor)))
+			{
+				unchangedPaths.add(relativePath);
+			}
+			else
+			{
+				changedPaths.add(relativePath);
+			}
+		}
+		// the recorded files no longer on the client
+		for (String relativePath : manifest.getPaths())
+		{
+			if (!fileList.containsKey(relativePath))
+			{
+				changedPaths.add(relativePath);
+			}
+		}
+		log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
+		if (changedPaths.size() > MAX_INCREMENTAL_LOOKUPS)
+		{
+			return null;
+		}
+
+		log(FileUtil.NEW_LINE + Messages.Synchronizer_Generating_Comparison);
+		List<String> spotCheckPaths = new ArrayList<String>(unchangedPaths);
+		Collections.shuffle(spotCheckPaths);
+		for (String relativePath : spotCheckPaths.subList(0, Math.min(SPOT_CHECK_SIZE, spotCheckPaths.size())))
+		{
+			if (!syncContinue(monitor))
+			{
+				return null;
+			}
+			Policy.checkCanceled(monitor);
+			IFileInfo serverFileInfo = server.getFileStore(new Path(relativePath)).fetchInfo(
+					IExtendedFileStore.DETAILED, monitor);
+			if (!manifest.get(relativePath).isServerUnchanged(serverFileInfo))
+			{
+				// modified on the server since the last synchronization
+				return null;
+			}
+		}
+
+		for (String relativePath : unchangedPaths)
+		{
+			VirtualFileSyncPair item = fileList.get(relativePath);
+			if (item.getSourceFileInfo(monitor).isDirectory())
+			{
+				fileList.remove(relativePath);
+			}
+			else
+			{
+				item.setDestinationFile(server.getFileStore(new Path(relativePath)));
+				item.setSyncState(SyncState.ItemsMatch);
+			}
+		}
+		for (String relativePath : changedPaths)
+		{
+			if (!syncContinue(monitor))
+			{
+				return null;
+			}
+			Policy.checkCanceled(monitor);
+			monitor.worked(1);
+
+			IFileStore serverFile = server.getFileStore(new Path(relativePath));
+			IFileInfo serverFileInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, monitor);
+			if (serverFileInfo.exists())
+			{
+				addServerFile(fileList, serverFile, serverFileInfo, relativePath, monitor);
+			}
+			else if (!fileList.containsKey(relativePath))
+			{
+				// deleted on both sides
+				forgetPath(relativePath);
+			}
+		}
+		forgetMismatches(fileList, true);
+		return sortSyncItems(fileList);
+	}
+
 	/**
 	 * @param clientFiles
 	 * @param serverFiles
@@ -427,13 +940,7 @@ public class Synchronizer implements ILoggable
 
 			monitor.worked(1);
 
-			IFileStore clientFile = clientFiles[i];
-			if (clientFile.fetchInfo().getAttribute(EFS.ATTRIBUTE_SYMLINK))
-				continue;
-
-			String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
-			VirtualFileSyncPair item = new VirtualFileSyncPair(clientFile, null, relativePath, SyncState.ClientItemOnly);
-			fileList.put(item.getRelativePath(), item);
+			addClientFile(fileList, clientFiles[i]);
 		}
 
 		// remove matching server files with the same modification date/time
@@ -447,93 +954,143 @@ public class Synchronizer implements ILoggable
 			monitor.worked(1);
 
 			IFileStore serverFile = serverFiles[i];
-			IFileInfo serverFileInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, null);
-			String relativePath = getCanonicalPath(_serverFileRoot, serverFile);
+			addServerFile(fileList, serverFile, getCanonicalPath(_serverFileRoot, serverFile), monitor);
+		}
 
-			logDebug(FileUtil.NEW_LINE);
-			logDebug(MessageFormat.format(Messages.Synchronizer_Comparing_Files, new Object[] { relativePath }));
+		forgetMismatches(fileList, false);
+		saveManifest();
+		return sortSyncItems(fileList);
+	}
 
-			if (!fileList.containsKey(relativePath)) // Server only
-			{
-				if (serverFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
-					continue;
+	/**
+	 * Adds a client file to the list of items.
+	 * 
+	 * @param fileList
+	 * @param clientFile
+	 */
+	private void addClientFile(Map<String, VirtualFileSyncPair> fileList, IFileStore clientFile)
+	{
+		if (clientFile.fetchInfo().getAttribute(EFS.ATTRIBUTE_SYMLINK))
+			return;
 
-				VirtualFileSyncPair item = new VirtualFileSyncPair(null, serverFile, relativePath,
-						SyncState.ServerItemOnly);
-				fileList.put(relativePath, item);
-				logDebug(Messages.Synchronizer_Item_Not_On_Destination);
-				continue;
-			}
+		String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
+		VirtualFileSyncPair item = new VirtualFileSyncPair(clientFile, null, relativePath, SyncState.ClientItemOnly);
+		fileList.put(item.getRelativePath(), item);
+	}
 
-			// Client and server
-			// get client sync item already in our file list
-			VirtualFileSyncPair item = fileList.get(relativePath);
+	/**
+	 * Compares a server file with the client file of the same path already in the list of items, or adds it as a
+	 * server only item.
+	 * 
+	 * @param fileList
+	 * @param serverFile
+	 * @param relativePath
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void addServerFile(Map<String, VirtualFileSyncPair> fileList, IFileStore serverFile, String relativePath,
+			IProgressMonitor monitor) throws CoreException
+	{
+		addServerFile(fileList, serverFile, serverFile.fetchInfo(IExtendedFileStore.DETAILED, null), relativePath,
+				monitor);
+	}
 
-			// associate this server file with that sync item
-			item.setDestinationFile(serverFile);
+	/**
+	 * Compares a server file whose info is already known.
+	 * 
+	 * @see #addServerFile(Map, IFileStore, String, IProgressMonitor)
+	 */
+	private void addServerFile(Map<String, VirtualFileSyncPair> fileList, IFileStore serverFile,
+			IFileInfo serverFileInfo, String relativePath, IProgressMonitor monitor) throws CoreException
+	{
+		logDebug(FileUtil.NEW_LINE);
+		logDebug(MessageFormat.format(Messages.Synchronizer_Comparing_Files, new Object[] { relativePath }));
 
-			IFileInfo clientFileInfo = item.getSourceFileInfo(monitor);
-			if (clientFileInfo == null && item.getSyncState() == SyncState.ServerItemOnly)
-			{
-				// This is an item we've seen already. Continue on.
-				continue;
-			}
+		if (!fileList.containsKey(relativePath)) // Server only
+		{
+			if (serverFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
+				return;
+
+			VirtualFileSyncPair item = new VirtualFileSyncPair(null, serverFile, relativePath,
+					SyncState.ServerItemOnly);
+			fileList.put(relativePath, item);
+			logDebug(Messages.Synchronizer_Item_Not_On_Destination);
+			return;
+		}
 
-			if (clientFileInfo.isDirectory() != serverFileInfo.isDirectory())
-			{
-				// this only occurs if one file is a directory and the other
-				// is not a directory
-				item.setSyncState(SyncState.IncompatibleFileTypes);
-				logDebug(Messages.Synchronizer_Incompatible_Types);
-				continue;
-			}
+		// Client and server
+		// get client sync item already in our file list
+		VirtualFileSyncPair item = fileList.get(relativePath);
 
-			if (serverFileInfo.isDirectory())
-			{
-				fileList.remove(relativePath);
-				logDebug(Messages.Synchronizer_Directory);
-				continue;
-			}
+		// associate this server file with that sync item
+		item.setDestinationFile(serverFile);
+
+		IFileInfo clientFileInfo = item.getSourceFileInfo(monitor);
+		if (clientFileInfo == null && item.getSyncState() == SyncState.ServerItemOnly)
+		{
+			// This is an item we've seen already. Continue on.
+			return;
+		}
 
-			// calculate modification time difference, taking server
-			// offset into account
-			long serverFileTime = serverFileInfo.getLastModified();
-			long clientFileTime = clientFileInfo.getLastModified();
-			long timeDiff = serverFileTime - clientFileTime;
+		if (clientFileInfo.isDirectory() != serverFileInfo.isDirectory())
+		{
+			// this only occurs if one file is a directory and the other
+			// is not a directory
+			item.setSyncState(SyncState.IncompatibleFileTypes);
+			logDebug(Messages.Synchronizer_Incompatible_Types);
+			return;
+		}
 
-			logDebug(MessageFormat.format(Messages.Synchronizer_Times_Modified, new long[] { clientFileTime,
-					serverFileTime }));
+		if (serverFileInfo.isDirectory())
+		{
+			fileList.remove(relativePath);
+			recordMatch(relativePath, clientFileInfo, serverFileInfo, SyncManifest.NO_CHECKSUM);
+			logDebug(Messages.Synchronizer_Directory);
+			return;
+		}
 
-			// check modification date
-			if (-this._timeTolerance <= timeDiff && timeDiff <= this._timeTolerance)
+		// calculate modification time difference, taking server
+		// offset into account
+		long serverFileTime = serverFileInfo.getLastModified();
+		long clientFileTime = clientFileInfo.getLastModified();
+		long timeDiff = serverFileTime - clientFileTime;
+
+		logDebug(MessageFormat.format(Messages.Synchronizer_Times_Modified, new long[] { clientFileTime,
+				serverFileTime }));
+
+		// check modification date
+		if (-this._timeTolerance <= timeDiff && timeDiff <= this._timeTolerance)
+		{
+			if (this._useCRC && !serverFileInfo.isDirectory())
 			{
-				if (this._useCRC && !serverFileInfo.isDirectory())
-				{
-					item.setSyncState(this.compareCRC(item));
-				}
-				else
-				{
-					item.setSyncState(SyncState.ItemsMatch);
-					logDebug(Messages.Synchronizer_Items_Identical);
-				}
+				item.setSyncState(this.compareCRC(item, clientFileInfo, serverFileInfo));
 			}
 			else
 			{
-				if (timeDiff < 0)
-				{
-					item.setSyncState(SyncState.ClientItemIsNewer);
-					logDebug(MessageFormat.format(Messages.Synchronizer_Source_Newer,
-							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
-				}
-				else
-				{
-					item.setSyncState(SyncState.ServerItemIsNewer);
-					logDebug(MessageFormat.format(Messages.Synchronizer_Destination_Newer,
-							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
-				}
+				item.setSyncState(SyncState.ItemsMatch);
+				recordMatch(relativePath, clientFileInfo, serverFileInfo, SyncManifest.NO_CHECKSUM);
+				logDebug(Messages.Synchronizer_Items_Identical);
+			}
+		}
+		else
+		{
+			if (timeDiff < 0)
+			{
+				item.setSyncState(SyncState.ClientItemIsNewer);
+				logDebug(MessageFormat.format(Messages.Synchronizer_Source_Newer,
+						new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
+			}
+			else
+			{
+				item.setSyncState(SyncState.ServerItemIsNewer);
+				logDebug(MessageFormat.format(Messages.Synchronizer_Destination_Newer,
+						new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
 			}
 		}
+	}
 
+	private static VirtualFileSyncPair[] sortSyncItems(Map<String, VirtualFileSyncPair> fileList)
+	{
 		// sort items
 		Set<String> keySet = fileList.keySet();
 		String[] keys = keySet.toArray(new String[keySet.size()]);
@@ -590,6 +1147,11 @@ public class Synchronizer implements ILoggable
 	 */
 	public void setTimeTolerance(int timeTolerance)
 	{
+		if (timeTolerance != this._timeTolerance)
+		{
+			// the manifest is only valid for the tolerance it was recorded with
+			_manifest = null;
+		}
 		this._timeTolerance = timeTolerance;
 	}
 
@@ -618,43 +1180,78 @@ public class Synchronizer implements ILoggable
 	 * compareCRC
 	 * 
 	 * @param item
+	 * @param clientFileInfo
+	 * @param serverFileInfo
 	 * @return SyncState
 	 * @throws CoreException
 	 */
-	private int compareCRC(VirtualFileSyncPair item) throws CoreException
+	private int compareCRC(VirtualFileSyncPair item, IFileInfo clientFileInfo, IFileInfo serverFileInfo)
+			throws CoreException
 	{
-		InputStream clientStream = item.getSourceInputStream();
-		InputStream serverStream = item.getDestinationInputStream();
+		String relativePath = item.getRelativePath();
+		SyncManifest.Entry entry = getManifestEntry(relativePath);
+		boolean serverUnchanged = entry != null && entry.hasChecksum() && entry.isServerUnchanged(serverFileInfo);
+		if (serverUnchanged && entry.isClientUnchanged(clientFileInfo))
+		{
+			// neither file changed since their contents were found identical
+			recordMatch(relativePath, clientFileInfo, serverFileInfo, entry.getChecksum());
+			return SyncState.ItemsMatch;
+		}
+
+		// get individual CRC's; the server file is not read again when its CRC is known
+		Long clientCRC = getCRC(relativePath, item.getSourceInputStream());
+		Long serverCRC = serverUnchanged ? Long.valueOf(entry.getChecksum()) : getCRC(relativePath,
+				item.getDestinationInputStream());
 		int result;
 
-		if (clientStream != null && serverStream != null)
+		if (clientCRC != null && serverCRC != null)
+		{
+			result = clientCRC.equals(serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+		}
+		else
+		{
+			// NOTE: clientCRC can only equal serverCRC if both streams are null,
+			// so we assume the files match in that case
+			result = (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+		}
+
+		if (result == SyncState.ItemsMatch)
 		{
-			// get individual CRC's
-			long clientCRC = getCRC(clientStream);
-			long serverCRC = getCRC(serverStream);
+			recordMatch(relativePath, clientFileInfo, serverFileInfo, (clientCRC == null) ? SyncManifest.NO_CHECKSUM
+					: clientCRC.longValue());
+		}
+		return result;
+	}
 
-			// close streams
+	/**
+	 * Computes the CRC of a stream and closes it.
+	 * 
+	 * @param relativePath
+	 * @param stream
+	 * @return the CRC, or null if the stream is null
+	 */
+	private Long getCRC(String relativePath, InputStream stream)
+	{
+		if (stream == null)
+		{
+			return null;
+		}
+		try
+		{
+			return Long.valueOf(getCRC(stream));
+		}
+		finally
+		{
 			try
 			{
-				clientStream.close();
-				serverStream.close();
+				stream.close();
 			}
 			catch (IOException e)
 			{
 				IdeLog.logError(SyncingPlugin.getDefault(),
-						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, item.getRelativePath()), e);
+						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, relativePath), e);
 			}
-
-			result = (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
-		}
-		else
-		{
-			// NOTE: clientStream can only equal serverStream if both are null,
-			// so we assume the files match in that case
-			result = (clientStream == serverStream) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
 		}
-
-		return result;
 	}
 
 	/**
@@ -735,7 +1332,7 @@ public class Synchronizer implements ILoggable
 	 * @throws ConnectionException
 	 * @throws VirtualFileManagerException
 	 */
-	public boolean downloadAndDelete(VirtualFileSyncPair[] fileList, boolean delete, IProgressMonitor monitor)
+	public boolean downloadAndDelete(VirtualFileSyncPair[] fileList, final boolean delete, IProgressMonitor monitor)
 	{
 		FileWatcher.avoidNotify();
 		try
@@ -744,8 +1341,8 @@ public class Synchronizer implements ILoggable
 
 			logBeginDownloading();
 
-			boolean result = true;
-			int totalItems = fileList.length;
+			final AtomicBoolean result = new AtomicBoolean(true);
+			final int totalItems = fileList.length;
 			// IConnectionPoint client = getClientFileManager();
 
 			this.reset();
@@ -754,157 +1351,178 @@ public class Synchronizer implements ILoggable
 					fileList.length);
 			Policy.checkCanceled(subMonitor);
 
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			for (VirtualFileSyncPair item : fileList)
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
-
 				setSyncItemDirection(item, false, true);
+			}
 
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
-
-				try
+			TransferScheduler.ITransfer transfer = new ItemTransfer()
+			{
+				protected boolean transferItem(VirtualFileSyncPair item, int index, IProgressMonitor childMonitor)
 				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo();
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo();
-
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						delete = false;
-						break;
-					}
-
-					Policy.checkCanceled(childMonitor);
+					return downloadItem(item, index, totalItems, delete, result, childMonitor);
+				}
+			};
+			if (!new TransferScheduler(_transferLanes).run(fileList, transfer, subMonitor))
+			{
+				result.set(false);
+			}
 
-					switch (item.getSyncState())
-					{
-						case SyncState.ClientItemOnly:
-							// only exists on client; checks if it needs to be deleted
-							if (delete)
-							{
-								// Need to query first because deletion makes isDirectory always return false
-								boolean wasDirectory = clientFileInfo.isDirectory();
-								clientFile.delete(EFS.NONE, null);
-								if (wasDirectory)
-								{
-									this._clientDirectoryDeletedCount++;
-								}
-								else
-								{
-									this._clientFileDeletedCount++;
-								}
-							}
-							syncDone(item, childMonitor);
-							break;
+			return result.get();
+		}
+		finally
+		{
+			saveManifest();
+			FileWatcher.resumeNotify();
+		}
+	}
 
-						case SyncState.ServerItemOnly:
-							final IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
-									item.getDestinationFile(), _clientFileRoot);
+	/**
+	 * Downloads a single item, returning whether the remaining items should be processed.
+	 */
+	private boolean downloadItem(VirtualFileSyncPair item, int index, int totalItems, boolean delete,
+			AtomicBoolean result, IProgressMonitor childMonitor)
+	{
+		final IFileStore clientFile = item.getSourceFile();
+		final IFileStore serverFile = item.getDestinationFile();
 
-							if (serverFileInfo.isDirectory())
-							{
-								logCreatedDirectory(targetClientFile);
+		try
+		{
+			final IFileInfo clientFileInfo = item.getSourceFileInfo();
+			final IFileInfo serverFileInfo = item.getDestinationFileInfo();
 
-								if (!targetClientFile.fetchInfo().exists())
-								{
-									targetClientFile.mkdir(EFS.NONE, null);
-									this._clientDirectoryCreatedCount++;
-									_newFilesDownloaded.add(targetClientFile);
-								}
+			// fire event
+			if (!syncEvent(item, index, totalItems, childMonitor))
+			{
+				return false;
+			}
 
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
-							{
-								logDownloading(serverFile);
-								try
-								{
-									SyncUtils
-											.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									_newFilesDownloaded.add(targetClientFile);
+			Policy.checkCanceled(childMonitor);
 
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-							}
-							break;
+			switch (item.getSyncState())
+			{
+				case SyncState.ClientItemOnly:
+					// only exists on client; checks if it needs to be deleted
+					if (delete)
+					{
+						// Need to query first because deletion makes isDirectory always return false
+						boolean wasDirectory = clientFileInfo.isDirectory();
+						clientFile.delete(EFS.NONE, null);
+						if (wasDirectory)
+						{
+							_clientDirectoryDeletedCount.incrementAndGet();
+						}
+						else
+						{
+							_clientFileDeletedCount.incrementAndGet();
+						}
+						forgetPath(item.getRelativePath());
+					}
+					syncDone(item, childMonitor);
+					break;
 
-						case SyncState.ServerItemIsNewer:
-						case SyncState.CRCMismatch:
-							// exists on both sides, but the server item is newer
-							logDownloading(serverFile);
-							if (serverFileInfo.isDirectory())
-							{
-								try
-								{
-									EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-								}
+				case SyncState.ServerItemOnly:
+					final IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
+							item.getDestinationFile(), _clientFileRoot);
 
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
+					if (serverFileInfo.isDirectory())
+					{
+						logCreatedDirectory(targetClientFile);
+
+						if (!targetClientFile.fetchInfo().exists())
+						{
+							targetClientFile.mkdir(EFS.NONE, null);
+							_clientDirectoryCreatedCount.incrementAndGet();
+							_newFilesDownloaded.add(targetClientFile);
+						}
+
+						logSuccess();
+						recordTransfer(item.getRelativePath(), targetClientFile, serverFile);
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						logDownloading(serverFile);
+						try
+						{
+							SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE, childMonitor);
+							_serverFileTransferedCount.incrementAndGet();
+							_newFilesDownloaded.add(targetClientFile);
+
+							logSuccess();
+							recordTransfer(item.getRelativePath(), targetClientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+							if (!syncError(item, e, childMonitor))
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+								result.set(false);
+								return false;
 							}
-							break;
-
-						default:
-							syncDone(item, childMonitor);
-							break;
+						}
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
+					break;
 
-					if (!syncError(item, ex, childMonitor))
+				case SyncState.ServerItemIsNewer:
+				case SyncState.CRCMismatch:
+					// exists on both sides, but the server item is newer
+					logDownloading(serverFile);
+					if (serverFileInfo.isDirectory())
 					{
-						break FILE_LOOP;
+						try
+						{
+							EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+						}
+
+						logSuccess();
+						recordTransfer(item.getRelativePath(), clientFile, serverFile);
+						syncDone(item, childMonitor);
 					}
-				}
-			}
+					else
+					{
+						try
+						{
+							SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
+							_serverFileTransferedCount.incrementAndGet();
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+							if (!syncError(item, e, childMonitor))
+							{
+								result.set(false);
+								return false;
+							}
+						}
+					}
+					break;
 
-			return result;
+				default:
+					syncDone(item, childMonitor);
+					break;
+			}
 		}
-		finally
+		catch (Exception ex)
 		{
-			FileWatcher.resumeNotify();
+			IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+			result.set(false);
+
+			if (!syncError(item, ex, childMonitor))
+			{
+				return false;
+			}
 		}
+
+		return true;
 	}
 
 	/**
@@ -955,8 +1573,8 @@ public class Synchronizer implements ILoggable
 	 * @param delete
 	 * @return success
 	 */
-	public boolean fullSyncAndDelete(VirtualFileSyncPair[] fileList, boolean deleteLocal, boolean deleteRemote,
-			IProgressMonitor monitor)
+	public boolean fullSyncAndDelete(VirtualFileSyncPair[] fileList, final boolean deleteLocal,
+			final boolean deleteRemote, IProgressMonitor monitor)
 	{
 		FileWatcher.avoidNotify();
 		try
@@ -964,8 +1582,8 @@ public class Synchronizer implements ILoggable
 			logBeginFullSyncing();
 
 			// assume we'll be successful
-			boolean result = true;
-			int totalItems = fileList.length;
+			final AtomicBoolean result = new AtomicBoolean(true);
+			final int totalItems = fileList.length;
 
 			// reset stats
 			this.reset();
@@ -973,273 +1591,301 @@ public class Synchronizer implements ILoggable
 			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Synchronizing, fileList.length);
 			Policy.checkCanceled(subMonitor);
 
+			for (VirtualFileSyncPair item : fileList)
+			{
+				setSyncItemDirection(item, false, true);
+			}
+
 			// process all items in our list
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			TransferScheduler.ITransfer transfer = new ItemTransfer()
+			{
+				protected boolean transferItem(VirtualFileSyncPair item, int index, IProgressMonitor childMonitor)
+				{
+					return fullSyncItem(item, index, totalItems, deleteLocal, deleteRemote, result, childMonitor);
+				}
+			};
+			if (!new TransferScheduler(_transferLanes).run(fileList, transfer, subMonitor))
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
+				result.set(false);
+			}
 
-				setSyncItemDirection(item, false, true);
+			return result.get();
+		}
+		finally
+		{
+			saveManifest();
+			FileWatcher.resumeNotify();
+		}
+	}
 
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
+	/**
+	 * Synchronizes a single item both ways, returning whether the remaining items should be processed.
+	 */
+	private boolean fullSyncItem(VirtualFileSyncPair item, int index, int totalItems, boolean deleteLocal,
+			boolean deleteRemote, AtomicBoolean result, IProgressMonitor childMonitor)
+	{
+		final IFileStore clientFile = item.getSourceFile();
+		final IFileStore serverFile = item.getDestinationFile();
 
-				try
-				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
+		try
+		{
+			final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
+			final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
 
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						result = false;
-						break FILE_LOOP;
-					}
+			// fire event
+			if (!syncEvent(item, index, totalItems, childMonitor))
+			{
+				result.set(false);
+				return false;
+			}
 
-					Policy.checkCanceled(childMonitor);
+			Policy.checkCanceled(childMonitor);
 
-					switch (item.getSyncState())
+			switch (item.getSyncState())
+			{
+				case SyncState.ClientItemIsNewer:
+					// item exists on both ends, but the client one is newer
+					logUploading(serverFile);
+					if (clientFileInfo.isDirectory())
 					{
-						case SyncState.ClientItemIsNewer:
-							// item exists on both ends, but the client one is newer
-							logUploading(serverFile);
-							if (clientFileInfo.isDirectory())
+						EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
+						logSuccess();
+						recordTransfer(item.getRelativePath(), clientFile, serverFile);
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						try
+						{
+							SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
+							_clientFileTransferedCount.incrementAndGet();
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+
+							if (!syncError(item, e, childMonitor))
 							{
-								EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
-								logSuccess();
-								syncDone(item, childMonitor);
+								result.set(false);
+								return false;
 							}
-							else
-							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+						}
 
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+					}
+					break;
 
+				case SyncState.ClientItemOnly:
+					// only exists on client
+					if (deleteLocal)
+					{
+						// need to query first because deletion causes isDirectory to always return false
+						boolean wasDirectory = clientFileInfo.isDirectory();
+						// deletes the item
+						clientFile.delete(EFS.NONE, null);
+						if (wasDirectory)
+						{
+							_clientDirectoryDeletedCount.incrementAndGet();
+						}
+						else
+						{
+							_clientFileDeletedCount.incrementAndGet();
+						}
+						forgetPath(item.getRelativePath());
+						logSuccess();
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						// creates the item on server
+						final IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
+								item.getSourceFile(), _serverFileRoot);
+
+						if (clientFileInfo.isDirectory())
+						{
+							logCreatedDirectory(targetServerFile);
+
+							if (!targetServerFile.fetchInfo().exists())
+							{
+								targetServerFile.mkdir(EFS.NONE, null);
+								_serverDirectoryCreatedCount.incrementAndGet();
+								_newFilesUploaded.add(targetServerFile);
 							}
-							break;
 
-						case SyncState.ClientItemOnly:
-							// only exists on client
-							if (deleteLocal)
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, targetServerFile);
+							syncDone(item, childMonitor);
+						}
+						else
+						{
+							// targetServerFile = server.createVirtualFile(serverPath);
+							logUploading(clientFile);
+							try
 							{
-								// need to query first because deletion causes isDirectory to always return false
-								boolean wasDirectory = clientFileInfo.isDirectory();
-								// deletes the item
-								clientFile.delete(EFS.NONE, null);
-								if (wasDirectory)
-								{
-									this._clientDirectoryDeletedCount++;
-								}
-								else
-								{
-									this._clientFileDeletedCount++;
-								}
+								SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE,
+										childMonitor);
+								_clientFileTransferedCount.incrementAndGet();
+								_newFilesUploaded.add(targetServerFile);
 								logSuccess();
+								recordTransfer(item.getRelativePath(), clientFile, targetServerFile);
 								syncDone(item, childMonitor);
 							}
-							else
+							catch (CoreException e)
 							{
-								// creates the item on server
-								final IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
-										item.getSourceFile(), _serverFileRoot);
+								logError(e);
 
-								if (clientFileInfo.isDirectory())
-								{
-									logCreatedDirectory(targetServerFile);
-
-									if (!targetServerFile.fetchInfo().exists())
-									{
-										targetServerFile.mkdir(EFS.NONE, null);
-										this._serverDirectoryCreatedCount++;
-										_newFilesUploaded.add(targetServerFile);
-									}
-
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								else
+								if (!syncError(item, e, childMonitor))
 								{
-									// targetServerFile = server.createVirtualFile(serverPath);
-									logUploading(clientFile);
-									try
-									{
-										SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._clientFileTransferedCount++;
-										_newFilesUploaded.add(targetServerFile);
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									result.set(false);
+									return false;
 								}
 							}
-							break;
+						}
+					}
+					break;
 
-						case SyncState.ServerItemIsNewer:
-							// item exists on both ends, but the server one is newer
-							logDownloading(clientFile);
-							if (serverFileInfo.isDirectory())
-							{
-								// just needs to set the modification time for directory
-								EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
+				case SyncState.ServerItemIsNewer:
+					// item exists on both ends, but the server one is newer
+					logDownloading(clientFile);
+					if (serverFileInfo.isDirectory())
+					{
+						// just needs to set the modification time for directory
+						EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
 
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
+						logSuccess();
+						recordTransfer(item.getRelativePath(), clientFile, serverFile);
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						try
+						{
+							SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
+							_serverFileTransferedCount.incrementAndGet();
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+
+							if (!syncError(item, e, childMonitor))
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+								result.set(false);
+								return false;
+							}
+						}
 
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+					}
+					break;
 
+				case SyncState.ServerItemOnly:
+					// only exists on client
+					if (deleteRemote)
+					{
+						// need to query first because deletion causes isDirectory to always return false
+						boolean wasDirectory = serverFileInfo.isDirectory();
+						// deletes the item
+						serverFile.delete(EFS.NONE, null); // server.deleteFile(serverFile);
+						if (wasDirectory)
+						{
+							_serverDirectoryDeletedCount.incrementAndGet();
+						}
+						else
+						{
+							_serverFileDeletedCount.incrementAndGet();
+						}
+						forgetPath(item.getRelativePath());
+						logSuccess();
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						// creates the item on client
+						final IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
+								item.getDestinationFile(), _clientFileRoot);
+
+						if (serverFileInfo.isDirectory())
+						{
+							logCreatedDirectory(targetClientFile);
+
+							if (!targetClientFile.fetchInfo().exists())
+							{
+								targetClientFile.mkdir(EFS.NONE, null); // =
+								// client.createVirtualDirectory(clientPath);
+								// client.createLocalDirectory(targetClientFile);
+								_clientDirectoryCreatedCount.incrementAndGet();
+								_newFilesDownloaded.add(targetClientFile);
 							}
-							break;
 
-						case SyncState.ServerItemOnly:
-							// only exists on client
-							if (deleteRemote)
+							logSuccess();
+							recordTransfer(item.getRelativePath(), targetClientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						else
+						{
+							// targetClientFile = client.createVirtualFile(clientPath);
+							logDownloading(targetClientFile);
+
+							try
 							{
-								// need to query first because deletion causes isDirectory to always return false
-								boolean wasDirectory = serverFileInfo.isDirectory();
-								// deletes the item
-								serverFile.delete(EFS.NONE, null); // server.deleteFile(serverFile);
-								if (wasDirectory)
-								{
-									this._serverDirectoryDeletedCount++;
-								}
-								else
-								{
-									this._serverFileDeletedCount++;
-								}
+								SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE,
+										childMonitor);
+								_serverFileTransferedCount.incrementAndGet();
+								_newFilesDownloaded.add(targetClientFile);
 								logSuccess();
+								recordTransfer(item.getRelativePath(), targetClientFile, serverFile);
 								syncDone(item, childMonitor);
 							}
-							else
+							catch (CoreException e)
 							{
-								// creates the item on client
-								final IFileStore targetClientFile = EFSUtils.createFile(_serverFileRoot,
-										item.getDestinationFile(), _clientFileRoot);
+								logError(e);
 
-								if (serverFileInfo.isDirectory())
+								if (!syncError(item, e, childMonitor))
 								{
-									logCreatedDirectory(targetClientFile);
-
-									if (!targetClientFile.fetchInfo().exists())
-									{
-										targetClientFile.mkdir(EFS.NONE, null); // =
-										// client.createVirtualDirectory(clientPath);
-										// client.createLocalDirectory(targetClientFile);
-										this._clientDirectoryCreatedCount++;
-										_newFilesDownloaded.add(targetClientFile);
-									}
-
-									logSuccess();
-									syncDone(item, childMonitor);
+									result.set(false);
+									return false;
 								}
-								else
-								{
-									// targetClientFile = client.createVirtualFile(clientPath);
-									logDownloading(targetClientFile);
-
-									try
-									{
-										SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._serverFileTransferedCount++;
-										_newFilesDownloaded.add(targetClientFile);
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
-								}
-							}
-							break;
-
-						case SyncState.CRCMismatch:
-							result = false;
-							IdeLog.logError(
-									SyncingPlugin.getDefault(),
-									StringUtil.format(Messages.Synchronizer_FullSyncCRCMismatches,
-											item.getRelativePath()), (Throwable) null);
-							if (!syncError(item, null, childMonitor))
-							{
-								break FILE_LOOP;
 							}
-							break;
-
-						case SyncState.Ignore:
-							// ignore this file
-							break;
-
-						default:
-							break;
+						}
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
-
-					if (!syncError(item, ex, childMonitor))
+					break;
+
+				case SyncState.CRCMismatch:
+					result.set(false);
+					IdeLog.logError(
+							SyncingPlugin.getDefault(),
+							StringUtil.format(Messages.Synchronizer_FullSyncCRCMismatches,
+									item.getRelativePath()), (Throwable) null);
+					if (!syncError(item, null, childMonitor))
 					{
-						break FILE_LOOP;
+						return false;
 					}
-				}
-			}
+					break;
+
+				case SyncState.Ignore:
+					// ignore this file
+					break;
 
-			return result;
+				default:
+					break;
+			}
 		}
-		finally
+		catch (Exception ex)
 		{
-			FileWatcher.resumeNotify();
+			IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+			result.set(false);
+
+			if (!syncError(item, ex, childMonitor))
+			{
+				return false;
+			}
 		}
+
+		return true;
 	}
 
 	/**
@@ -1247,15 +1893,15 @@ public class Synchronizer implements ILoggable
 	 */
 	private void reset()
 	{
-		this._clientDirectoryCreatedCount = 0;
-		this._clientDirectoryDeletedCount = 0;
-		this._clientFileDeletedCount = 0;
-		this._clientFileTransferedCount = 0;
+		this._clientDirectoryCreatedCount.set(0);
+		this._clientDirectoryDeletedCount.set(0);
+		this._clientFileDeletedCount.set(0);
+		this._clientFileTransferedCount.set(0);
 
-		this._serverDirectoryCreatedCount = 0;
-		this._serverDirectoryDeletedCount = 0;
-		this._serverFileDeletedCount = 0;
-		this._serverFileTransferedCount = 0;
+		this._serverDirectoryCreatedCount.set(0);
+		this._serverDirectoryDeletedCount.set(0);
+		this._serverFileDeletedCount.set(0);
+		this._serverFileTransferedCount.set(0);
 
 		this._newFilesDownloaded.clear();
 		this._newFilesUploaded.clear();
@@ -1297,7 +1943,7 @@ public class Synchronizer implements ILoggable
 	 * @throws ConnectionException
 	 * @throws VirtualFileManagerException
 	 */
-	public boolean uploadAndDelete(VirtualFileSyncPair[] fileList, boolean delete, IProgressMonitor monitor)
+	public boolean uploadAndDelete(VirtualFileSyncPair[] fileList, final boolean delete, IProgressMonitor monitor)
 	{
 		FileWatcher.avoidNotify();
 		try
@@ -1306,178 +1952,200 @@ public class Synchronizer implements ILoggable
 			logBeginUploading();
 
 			// IConnectionPoint server = getServerFileManager();
-			boolean result = true;
-			int totalItems = fileList.length;
+			final AtomicBoolean result = new AtomicBoolean(true);
+			final int totalItems = fileList.length;
 
 			this.reset();
 
 			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Uploading_Files, fileList.length);
 			Policy.checkCanceled(subMonitor);
 
-			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
+			for (VirtualFileSyncPair item : fileList)
 			{
-				final VirtualFileSyncPair item = fileList[i];
-				final IFileStore clientFile = item.getSourceFile();
-				final IFileStore serverFile = item.getDestinationFile();
-
 				setSyncItemDirection(item, false, true);
+			}
 
-				SubMonitor childMonitor = subMonitor.newChild(1);
-				childMonitor.setTaskName(getSyncStatus(item));
-
-				try
+			TransferScheduler.ITransfer transfer = new ItemTransfer()
+			{
+				protected boolean transferItem(VirtualFileSyncPair item, int index, IProgressMonitor childMonitor)
 				{
-					final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
-					final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
-
-					// fire event
-					if (!syncEvent(item, i, totalItems, childMonitor))
-					{
-						result = false;
-						break;
-					}
-
-					Policy.checkCanceled(childMonitor);
-
-					switch (item.getSyncState())
-					{
-						case SyncState.ClientItemOnly:
-							// only exists on client; creates the item on server
-							final IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
-									item.getSourceFile(), _serverFileRoot);
+					return uploadItem(item, index, totalItems, delete, result, childMonitor);
+				}
+			};
+			if (!new TransferScheduler(_transferLanes).run(fileList, transfer, subMonitor))
+			{
+				result.set(false);
+			}
 
-							if (clientFileInfo.isDirectory())
-							{
-								// targetServerFile.mkdir(EFS.NONE, null); // =
-								// server.createVirtualDirectory(serverPath);
+			return result.get();
+		}
+		finally
+		{
+			saveManifest();
+			FileWatcher.resumeNotify();
+		}
+	}
 
-								if (!targetServerFile.fetchInfo().exists())
-								{
-									targetServerFile.mkdir(EFS.NONE, null); // server.createLocalDirectory(targetServerFile);
-									this._serverDirectoryCreatedCount++;
-									_newFilesUploaded.add(targetServerFile);
-								}
+	/**
+	 * Uploads a single item, returning whether the remaining items should be processed.
+	 */
+	private boolean uploadItem(VirtualFileSyncPair item, int index, int totalItems, boolean delete,
+			AtomicBoolean result, IProgressMonitor childMonitor)
+	{
+		final IFileStore clientFile = item.getSourceFile();
+		final IFileStore serverFile = item.getDestinationFile();
 
-								syncDone(item, childMonitor);
-							}
-							else
-							{
-								logUploading(clientFile);
+		try
+		{
+			final IFileInfo clientFileInfo = item.getSourceFileInfo(childMonitor);
+			final IFileInfo serverFileInfo = item.getDestinationFileInfo(childMonitor);
 
-								try
-								{
-									SyncUtils
-											.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									_newFilesUploaded.add(targetServerFile);
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+			// fire event
+			if (!syncEvent(item, index, totalItems, childMonitor))
+			{
+				result.set(false);
+				return false;
+			}
 
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+			Policy.checkCanceled(childMonitor);
 
-							}
-							break;
+			switch (item.getSyncState())
+			{
+				case SyncState.ClientItemOnly:
+					// only exists on client; creates the item on server
+					final IFileStore targetServerFile = EFSUtils.createFile(_clientFileRoot,
+							item.getSourceFile(), _serverFileRoot);
 
-						case SyncState.ServerItemOnly:
-							// only exists on server; checks if it needs to be deleted
-							if (delete)
-							{
-								// Need to query if directory first because deletion makes isDirectory always return
-								// false.
-								boolean wasDirectory = serverFileInfo.isDirectory();
-								serverFile.delete(EFS.NONE, childMonitor);
-								if (wasDirectory)
-								{
-									this._serverDirectoryDeletedCount++;
-								}
-								else
-								{
-									this._serverFileDeletedCount++;
-								}
-							}
+					if (clientFileInfo.isDirectory())
+					{
+						// targetServerFile.mkdir(EFS.NONE, null); // =
+						// server.createVirtualDirectory(serverPath);
+
+						if (!targetServerFile.fetchInfo().exists())
+						{
+							targetServerFile.mkdir(EFS.NONE, null); // server.createLocalDirectory(targetServerFile);
+							_serverDirectoryCreatedCount.incrementAndGet();
+							_newFilesUploaded.add(targetServerFile);
+						}
+
+						recordTransfer(item.getRelativePath(), clientFile, targetServerFile);
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						logUploading(clientFile);
+
+						try
+						{
+							SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE, childMonitor);
+							_clientFileTransferedCount.incrementAndGet();
+							_newFilesUploaded.add(targetServerFile);
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, targetServerFile);
 							syncDone(item, childMonitor);
-							break;
+						}
+						catch (CoreException e)
+						{
+							logError(e);
 
-						case SyncState.ClientItemIsNewer:
-						case SyncState.CRCMismatch:
-							// exists on both sides, but the client item is newer
-							logUploading(clientFile);
-							if (clientFileInfo.isDirectory())
+							if (!syncError(item, e, childMonitor))
 							{
-								// just needs to set the modification time for directory
-								try
-								{
-									EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+								result.set(false);
+								return false;
+							}
+						}
 
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+					}
+					break;
 
-								logSuccess();
-								syncDone(item, childMonitor);
-							}
-							else
+				case SyncState.ServerItemOnly:
+					// only exists on server; checks if it needs to be deleted
+					if (delete)
+					{
+						// Need to query if directory first because deletion makes isDirectory always return
+						// false.
+						boolean wasDirectory = serverFileInfo.isDirectory();
+						serverFile.delete(EFS.NONE, childMonitor);
+						if (wasDirectory)
+						{
+							_serverDirectoryDeletedCount.incrementAndGet();
+						}
+						else
+						{
+							_serverFileDeletedCount.incrementAndGet();
+						}
+						forgetPath(item.getRelativePath());
+					}
+					syncDone(item, childMonitor);
+					break;
+
+				case SyncState.ClientItemIsNewer:
+				case SyncState.CRCMismatch:
+					// exists on both sides, but the client item is newer
+					logUploading(clientFile);
+					if (clientFileInfo.isDirectory())
+					{
+						// just needs to set the modification time for directory
+						try
+						{
+							EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
+
+							if (!syncError(item, e, childMonitor))
 							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
+								result.set(false);
+								return false;
+							}
+						}
 
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+						logSuccess();
+						recordTransfer(item.getRelativePath(), clientFile, serverFile);
+						syncDone(item, childMonitor);
+					}
+					else
+					{
+						try
+						{
+							SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
+							_clientFileTransferedCount.incrementAndGet();
+							logSuccess();
+							recordTransfer(item.getRelativePath(), clientFile, serverFile);
+							syncDone(item, childMonitor);
+						}
+						catch (CoreException e)
+						{
+							logError(e);
 
+							if (!syncError(item, e, childMonitor))
+							{
+								result.set(false);
+								return false;
 							}
-							break;
+						}
 
-						default:
-							syncDone(item, childMonitor);
-							break;
 					}
-				}
-				catch (Exception ex)
-				{
-					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
-					result = false;
+					break;
 
-					if (!syncError(item, ex, childMonitor))
-					{
-						break FILE_LOOP;
-					}
-				}
+				default:
+					syncDone(item, childMonitor);
+					break;
 			}
-
-			return result;
 		}
-		finally
+		catch (Exception ex)
 		{
-			FileWatcher.resumeNotify();
+			IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, ex);
+			result.set(false);
+
+			if (!syncError(item, ex, childMonitor))
+			{
+				return false;
+			}
 		}
+
+		return true;
 	}
 
 	private static void setSyncItemDirection(VirtualFileSyncPair item, boolean upload, boolean full)
@@ -1557,7 +2225,7 @@ public class Synchronizer implements ILoggable
 	 */
 	public void resetTimeTolerance()
 	{
-		this._timeTolerance = DEFAULT_TIME_TOLERANCE;
+		setTimeTolerance(DEFAULT_TIME_TOLERANCE);
 	}
 
 	/**
@@ -1608,13 +2276,14 @@ public class Synchronizer implements ILoggable
 
 	private void logCreatedDirectory(IFileStore file)
 	{
-		log(FileUtil.NEW_LINE
+		beginItemLog(FileUtil.NEW_LINE
 				+ StringUtil.format(Messages.Synchronizer_CreatedDirectory, EFSUtils.getAbsolutePath(file)));
 	}
 
 	private void logDownloading(IFileStore file)
 	{
-		log(FileUtil.NEW_LINE + StringUtil.format(Messages.Synchronizer_Downloading, EFSUtils.getAbsolutePath(file)));
+		beginItemLog(FileUtil.NEW_LINE
+				+ StringUtil.format(Messages.Synchronizer_Downloading, EFSUtils.getAbsolutePath(file)));
 	}
 
 	private void logDebug(String message)
@@ -1629,31 +2298,72 @@ public class Synchronizer implements ILoggable
 		{
 			if (e.getCause() != null)
 			{
-				log(MessageFormat.format(Messages.Synchronizer_Error_Extended, new Object[] { e.getLocalizedMessage(),
-						e.getCause().getLocalizedMessage() }));
+				endItemLog(MessageFormat.format(Messages.Synchronizer_Error_Extended,
+						new Object[] { e.getLocalizedMessage(), e.getCause().getLocalizedMessage() }));
 			}
 			else
 			{
-				log(MessageFormat.format(Messages.Synchronizer_Error, e.getLocalizedMessage()));
+				endItemLog(MessageFormat.format(Messages.Synchronizer_Error, e.getLocalizedMessage()));
 			}
 		}
 	}
 
 	private void logSuccess()
 	{
-		log(Messages.Synchronizer_Success);
+		endItemLog(Messages.Synchronizer_Success);
+	}
+
+	/**
+	 * Starts the log entry of the item transferred by the current thread.
+	 */
+	private void beginItemLog(String message)
+	{
+		flushItemLog();
+		_itemLog.set(new StringBuilder(message));
+	}
+
+	/**
+	 * Completes the log entry of the item transferred by the current thread with its result, and writes it.
+	 */
+	private void endItemLog(String message)
+	{
+		StringBuilder entry = _itemLog.get();
+		if (entry == null)
+		{
+			log(message);
+			return;
+		}
+		entry.append(message);
+		flushItemLog();
+	}
+
+	/**
+	 * Writes the log entry of the item transferred by the current thread, if any.
+	 */
+	private void flushItemLog()
+	{
+		StringBuilder entry = _itemLog.get();
+		if (entry != null)
+		{
+			_itemLog.remove();
+			log(entry.toString());
+		}
 	}
 
 	private void logUploading(IFileStore file)
 	{
-		log(FileUtil.NEW_LINE + StringUtil.format(Messages.Synchronizer_Uploading, EFSUtils.getAbsolutePath(file)));
+		beginItemLog(FileUtil.NEW_LINE
+				+ StringUtil.format(Messages.Synchronizer_Uploading, EFSUtils.getAbsolutePath(file)));
 	}
 
 	private void syncDone(VirtualFileSyncPair item, IProgressMonitor monitor)
 	{
 		if (this._eventHandler != null)
 		{
-			this._eventHandler.syncDone(item, monitor);
+			synchronized (_eventLock)
+			{
+				this._eventHandler.syncDone(item, monitor);
+			}
 		}
 
 		if (monitor != null)
@@ -1664,17 +2374,38 @@ public class Synchronizer implements ILoggable
 
 	private boolean syncError(VirtualFileSyncPair item, Exception e, IProgressMonitor monitor)
 	{
-		return this._eventHandler == null || this._eventHandler.syncErrorEvent(item, e, monitor);
+		if (this._eventHandler == null)
+		{
+			return true;
+		}
+		synchronized (_eventLock)
+		{
+			return this._eventHandler.syncErrorEvent(item, e, monitor);
+		}
 	}
 
 	private boolean syncEvent(VirtualFileSyncPair item, int index, int totalItems, IProgressMonitor monitor)
 	{
-		return this._eventHandler == null || this._eventHandler.syncEvent(item, index, totalItems, monitor);
+		if (this._eventHandler == null)
+		{
+			return true;
+		}
+		synchronized (_eventLock)
+		{
+			return this._eventHandler.syncEvent(item, index, totalItems, monitor);
+		}
 	}
 
 	private boolean syncContinue(IProgressMonitor monitor)
 	{
-		return this._eventHandler == null || this._eventHandler.syncContinue(monitor);
+		if (this._eventHandler == null)
+		{
+			return true;
+		}
+		synchronized (_eventLock)
+		{
+			return this._eventHandler.syncContinue(monitor);
+		}
 	}
 
 	private static String getTimestamp()
@@ -1698,4 +2429,72 @@ public class Synchronizer implements ILoggable
 		}
 	}
 
+	/**
+	 * A transfer of items reporting the task name from the direction of the item.
+	 */
+	private abstract class ItemTransfer implements TransferScheduler.ITransfer
+	{
+
+		public String getTaskName(VirtualFileSyncPair item)
+		{
+			return getSyncStatus(item);
+		}
+
+		public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+		{
+			try
+			{
+				return transferItem(item, index, monitor);
+			}
+			finally
+			{
+				// an item which failed unexpectedly has no result logged
+				flushItemLog();
+			}
+		}
+
+		/**
+		 * Transfers the item.
+		 * 
+		 * @see TransferScheduler.ITransfer#transfer(VirtualFileSyncPair, int, IProgressMonitor)
+		 */
+		protected abstract boolean transferItem(VirtualFileSyncPair item, int index, IProgressMonitor monitor);
+	}
+
+	/**
+	 * A file listed from the client or the server tree.
+	 */
+	private static class ListedFile
+	{
+
+		private final IFileStore store;
+		private final boolean client;
+
+		private ListedFile(IFileStore store, boolean client)
+		{
+			this.store = store;
+			this.client = client;
+		}
+	}
+
+	/**
+	 * Queues the files of a tree for the comparison as they are listed.
+	 */
+	private static class ListingVisitor implements FileTreeWalker.IVisitor
+	{
+
+		private final BlockingQueue<ListedFile> listedFiles;
+		private final boolean client;
+
+		private ListingVisitor(BlockingQueue<ListedFile> listedFiles, boolean client)
+		{
+			this.listedFiles = listedFiles;
+			this.client = client;
+		}
+
+		public void visit(IFileStore file)
+		{
+			listedFiles.add(new ListedFile(file, client));
+		}
+	}
 }
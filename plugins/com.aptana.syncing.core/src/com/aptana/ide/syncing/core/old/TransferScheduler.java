@@ -0,0 +1,329 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Runs the transfer of a list of sync pairs over a number of concurrent lanes. Items are started in the order of the
+ * list, and an item is held back while an item on the same path, one of its parents or one of its children is in
+ * progress, so the relative order of related items is the one of the list: directories are created before their
+ * children, and children deleted before their directories when the list is sorted that way.
+ */
+/* package */class TransferScheduler
+{
+
+	/**
+	 * The transfer of a single item.
+	 */
+	/* package */interface ITransfer
+	{
+
+		/**
+		 * Returns the task name shown while the item is transferred.
+		 * 
+		 * @param item
+		 * @return the task name
+		 */
+		public String getTaskName(VirtualFileSyncPair item);
+
+		/**
+		 * Transfers the item.
+		 * 
+		 * @param item
+		 *            the item to transfer
+		 * @param index
+		 *            the index of the item in the list
+		 * @param monitor
+		 *            the monitor of the item
+		 * @return true if the remaining items should be transferred, false to stop
+		 */
+		public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor);
+	}
+
+	private final int lanes;
+
+	/**
+	 * @param lanes
+	 *            the maximum number of items transferred concurrently
+	 */
+	/* package */TransferScheduler(int lanes)
+	{
+		this.lanes = Math.max(1, lanes);
+	}
+
+	/**
+	 * Transfers the items, one unit of work per item.
+	 * 
+	 * @param items
+	 * @param transfer
+	 * @param monitor
+	 *            the monitor, already converted to the number of items
+	 * @return false if a transfer failed unexpectedly, true otherwise
+	 */
+	public boolean run(VirtualFileSyncPair[] items, ITransfer transfer, SubMonitor monitor)
+	{
+		if (lanes == 1 || items.length < 2)
+		{
+			for (int i = 0; i < items.length; ++i)
+			{
+				SubMonitor childMonitor = monitor.newChild(1);
+				childMonitor.setTaskName(transfer.getTaskName(items[i]));
+				if (!transfer.transfer(items[i], i, childMonitor))
+				{
+					break;
+				}
+			}
+			return true;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(lanes, items.length),
+				new TransferThreadFactory());
+		try
+		{
+			return run(items, transfer, monitor, new ExecutorCompletionService<Boolean>(executor));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private boolean run(VirtualFileSyncPair[] items, final ITransfer transfer, SubMonitor monitor,
+			CompletionService<Boolean> completionService)
+	{
+		// the lanes report to the monitor through a LaneMonitor each, which locks the monitor; so does this thread
+		Map<Future<Boolean>, String> inProgress = new HashMap<Future<Boolean>, String>();
+		Map<Future<Boolean>, LaneMonitor> laneMonitors = new HashMap<Future<Boolean>, LaneMonitor>();
+		boolean result = true;
+		boolean proceed = true;
+		int next = 0;
+		try
+		{
+			while (true)
+			{
+				while (proceed && next < items.length && inProgress.size() < lanes && !monitor.isCanceled())
+				{
+					final VirtualFileSyncPair item = items[next];
+					String path = getPath(item);
+					if (dependsOnAny(path, inProgress.values()))
+					{
+						break;
+					}
+					final int index = next++;
+					synchronized (monitor)
+					{
+						monitor.setTaskName(transfer.getTaskName(item));
+					}
+					final LaneMonitor laneMonitor = new LaneMonitor(monitor);
+					Future<Boolean> future = completionService.submit(new Callable<Boolean>()
+					{
+						public Boolean call() throws Exception
+						{
+							return transfer.transfer(item, index, laneMonitor);
+						}
+					});
+					inProgress.put(future, path);
+					laneMonitors.put(future, laneMonitor);
+				}
+				if (inProgress.isEmpty())
+				{
+					break;
+				}
+
+				Future<Boolean> done = completionService.take();
+				inProgress.remove(done);
+				laneMonitors.remove(done).finish();
+				try
+				{
+					if (!done.get())
+					{
+						proceed = false;
+					}
+				}
+				catch (ExecutionException e)
+				{
+					// fail the way a single lane does; the remaining lanes are stopped by the caller
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+					{
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error)
+					{
+						throw (Error) cause;
+					}
+					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, cause);
+					result = false;
+					proceed = false;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			monitor.setCanceled(true);
+			result = false;
+		}
+		return result;
+	}
+
+	private static String getPath(VirtualFileSyncPair item)
+	{
+		String path = item.getRelativePath();
+		if (path == null)
+		{
+			return ""; //$NON-NLS-1$
+		}
+		path = path.replace('\\', '/');
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/')
+		{
+			++start;
+		}
+		while (end > start && path.charAt(end - 1) == '/')
+		{
+			--end;
+		}
+		return path.substring(start, end);
+	}
+
+	private static boolean dependsOnAny(String path, Iterable<String> paths)
+	{
+		for (String other : paths)
+		{
+			if (isSameOrAncestor(path, other) || isSameOrAncestor(other, path))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSameOrAncestor(String ancestor, String path)
+	{
+		if (ancestor.length() == 0)
+		{
+			return true;
+		}
+		return path.startsWith(ancestor)
+				&& (path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/');
+	}
+
+	/**
+	 * The monitor of an item transferred on a lane. It shares the cancellation of the main monitor and forwards the
+	 * subtasks and the progress of the item, scaled to the one unit of work of the item, to the main monitor while
+	 * holding its lock, since the lanes report concurrently.
+	 */
+	private static class LaneMonitor extends NullProgressMonitor
+	{
+
+		private final IProgressMonitor monitor;
+		private double totalWork;
+		private double reported;
+
+		private LaneMonitor(IProgressMonitor monitor)
+		{
+			this.monitor = monitor;
+		}
+
+		@Override
+		public void beginTask(String name, int totalWork)
+		{
+			this.totalWork = totalWork;
+		}
+
+		@Override
+		public void subTask(String name)
+		{
+			synchronized (monitor)
+			{
+				monitor.subTask(name);
+			}
+		}
+
+		@Override
+		public void worked(int work)
+		{
+			internalWorked(work);
+		}
+
+		@Override
+		public void internalWorked(double work)
+		{
+			if (totalWork > 0 && work > 0)
+			{
+				report(Math.min(work / totalWork, 1 - reported));
+			}
+		}
+
+		/**
+		 * Reports the rest of the unit of work of the item once it is transferred.
+		 */
+		private void finish()
+		{
+			report(1 - reported);
+		}
+
+		private void report(double work)
+		{
+			if (work <= 0)
+			{
+				return;
+			}
+			reported += work;
+			synchronized (monitor)
+			{
+				monitor.internalWorked(work);
+			}
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return monitor.isCanceled();
+		}
+
+		@Override
+		public void setCanceled(boolean cancelled)
+		{
+			monitor.setCanceled(cancelled);
+		}
+	}
+
+	private static class TransferThreadFactory implements ThreadFactory
+	{
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "Sync Transfer " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
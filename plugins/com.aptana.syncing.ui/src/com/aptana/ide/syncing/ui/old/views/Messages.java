@@ -50,6 +50,8 @@ public class Messages extends NLS
 	public static String SmartSyncDialog_ColumnResources;
 	public static String SmartSyncDialog_ColumnSkip;
 	public static String SmartSyncDialog_Comparing;
+	public static String SmartSyncDialog_ConsistencyCheck;
+	public static String SmartSyncDialog_ConsistencyCheckTooltip;
 	public static String SmartSyncDialog_Delete;
 	public static String SmartSyncDialog_DeleteExtra;
 	public static String SmartSyncDialog_DeleteExtraTooltip;
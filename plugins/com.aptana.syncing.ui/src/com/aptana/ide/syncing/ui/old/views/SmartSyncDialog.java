@@ -157,6 +157,8 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 	private Button deleteLocalFiles;
 	private Button useCrc;
 	private Button syncInBackground;
+	private Button consistencyCheck;
+	private boolean comparedWithManifest;
 	private PermissionsGroup filePermission;
 	private PermissionsGroup dirPermission;
 
@@ -232,6 +234,7 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		this.end2 = end2;
 		this.compareInBackground = getCoreUIPreferenceStore().getBoolean(COMPARE_IN_BACKGROUND);
 		this.syncer = new Synchronizer(getCoreUIPreferenceStore().getBoolean(USE_CRC), 1000);
+		this.syncer.setUseManifest(true);
 		if (source != null)
 		{
 			this.syncer.setClientFileManager(sourceManager);
@@ -823,6 +826,11 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		syncInBackground.setSelection(getCoreUIPreferenceStore().getBoolean(COMPARE_IN_BACKGROUND));
 		syncInBackground.addSelectionListener(this);
 
+		consistencyCheck = new Button(advancedOptions, SWT.CHECK);
+		consistencyCheck.setText(Messages.SmartSyncDialog_ConsistencyCheck);
+		consistencyCheck.setToolTipText(Messages.SmartSyncDialog_ConsistencyCheckTooltip);
+		consistencyCheck.addSelectionListener(this);
+
 		Group group = new Group(advancedOptions, SWT.NONE);
 		group.setText(Messages.SmartSyncDialog_Permissions);
 		layout = new GridLayout(2, true);
@@ -1182,6 +1190,12 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 			loadingComp.getParent().layout(true, true);
 		}
 
+		// The manifest only tells which client files changed since the last sync; files added or edited on the server by
+		// others are only found by comparing the whole server, which downloads need
+		comparedWithManifest = isUpload(directionBar.getSelection())
+				&& (consistencyCheck == null || !consistencyCheck.getSelection());
+		syncer.setConsistencyCheck(!comparedWithManifest);
+
 		final boolean forceUp = compareInBackground ? false
 				: (directionBar.getSelection() == DirectionToolBar.FORCE_UPLOAD);
 		final boolean forceDown = compareInBackground ? false
@@ -1542,6 +1556,13 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		{
 			getCoreUIPreferenceStore().setValue(COMPARE_IN_BACKGROUND, syncInBackground.getSelection());
 		}
+		else if (source == consistencyCheck)
+		{
+			if (consistencyCheck.getSelection() && comparedWithManifest)
+			{
+				load(false);
+			}
+		}
 		else if (source == retryLink)
 		{
 			load(true);
@@ -1612,7 +1633,7 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		updateSyncArrows(directionBar.getSelection());
 		syncViewer.setSyncDirection(directionBar.getSelection());
 		saveDirectionPref(direction);
-		if (reload)
+		if (reload || (comparedWithManifest && !isUpload(direction)))
 		{
 			load(false);
 		}
@@ -1976,6 +1997,11 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		return OptionsToolBar.FLAT_VIEW;
 	}
 
+	private static boolean isUpload(int direction)
+	{
+		return direction == DirectionToolBar.UPLOAD || direction == DirectionToolBar.FORCE_UPLOAD;
+	}
+
 	private static int getDirectionPref()
 	{
 		String directionPref = getSyncingPreferenceStore().getString(
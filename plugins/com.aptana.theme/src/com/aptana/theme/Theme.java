@@ -19,12 +19,20 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.InvalidPropertiesFormatException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.jface.text.TextAttribute;
@@ -39,6 +47,7 @@ import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.scope.IScopeSelector;
 import com.aptana.scope.ScopeSelector;
+import com.aptana.scope.ScopeSelectorTrie;
 import com.aptana.theme.internal.OrderedProperties;
 import com.aptana.theme.internal.ThemeManager;
 
@@ -71,6 +80,11 @@ public class Theme
 	private static final String LINE_HIGHLIGHT_PROP_KEY = "lineHighlight"; //$NON-NLS-1$
 	private static final String CARET_PROP_KEY = "caret"; //$NON-NLS-1$
 
+	/**
+	 * The number of scopes whose TextAttribute is remembered. A quarter of them is dropped when the cache is full
+	 */
+	private static final int MAX_CACHE_SIZE = 2000;
+
 	private List<ThemeRule> coloringRules;
 	private ColorManager colorManager;
 	private RGB defaultFG;
@@ -88,15 +102,45 @@ public class Theme
 	private IScopeSelector lastSelectorMatch;
 
 	/**
-	 * A cache to memoize the ultimate TextAttribute generated for a given fully qualified scope.
+	 * Guards matching scopes against the rules. Selectors keep the state of their last match and lastSelectorMatch is
+	 * shared, so only one thread matches at a time. Changes to the rules hold it too.
+	 */
+	private final Object matchLock = new Object();
+
+	/**
+	 * The selectors of the rules indexed for matching, and the rule that wins for each selector. Built on first use
+	 * after the rules change.
+	 */
+	private ScopeSelectorTrie selectorTrie;
+	private Map<IScopeSelector, ThemeRule> rulesBySelector;
+
+	/**
+	 * A cache to memoize the ultimate TextAttribute generated for a given fully qualified scope. Keys are interned.
 	 */
-	private Map<String, TextAttribute> cache;
+	private final Map<String, TextAttribute> cache;
+
+	/**
+	 * Attributes of scopes matched ahead of time in the background, waiting to be turned into TextAttributes on first
+	 * use. Creating colors needs the display thread, matching does not.
+	 */
+	private final Map<String, DelayedTextAttribute> resolved;
+
+	/**
+	 * Bumped whenever the caches are wiped, so results matched against the old rules are not cached afterwards
+	 */
+	private volatile int cacheGeneration;
+
+	private final AtomicLong cacheHits;
+	private final AtomicLong cacheMisses;
 
 	public Theme(ColorManager colormanager, Properties props)
 	{
 		this.colorManager = colormanager;
 		coloringRules = new ArrayList<ThemeRule>();
-		cache = new HashMap<String, TextAttribute>();
+		cache = new ConcurrentHashMap<String, TextAttribute>();
+		resolved = new ConcurrentHashMap<String, DelayedTextAttribute>();
+		cacheHits = new AtomicLong();
+		cacheMisses = new AtomicLong();
 		parseProps(props);
 		storeDefaults();
 	}
@@ -278,24 +322,171 @@ public class Theme
 
 	public TextAttribute getTextAttribute(String scope)
 	{
-		if (cache.containsKey(scope))
+		if (scope == null)
+		{
+			scope = StringUtil.EMPTY;
+		}
+		TextAttribute ta = cache.get(scope);
+		if (ta != null)
 		{
-			return cache.get(scope);
+			cacheHits.incrementAndGet();
+			return ta;
 		}
-		lastSelectorMatch = null;
-		TextAttribute ta = toTextAttribute(getDelayedTextAttribute(scope), true);
+		cacheMisses.incrementAndGet();
+		int generation = cacheGeneration;
+		DelayedTextAttribute attr = resolved.remove(scope);
+		if (attr == null)
+		{
+			attr = resolve(scope);
+		}
+		ta = toTextAttribute(attr, true);
+		if (cache.size() >= MAX_CACHE_SIZE)
+		{
+			trimCache();
+		}
+		scope = scope.intern();
 		cache.put(scope, ta);
+		if (generation != cacheGeneration)
+		{
+			// the rules changed while matching
+			cache.remove(scope);
+		}
 		return ta;
 	}
 
-	ThemeRule winningRule(String scope)
+	/**
+	 * Matches the scope against the rules
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	private DelayedTextAttribute resolve(String scope)
 	{
-		IScopeSelector match = findMatch(scope);
-		if (match == null)
+		synchronized (matchLock)
+		{
+			lastSelectorMatch = null;
+			return getDelayedTextAttribute(scope);
+		}
+	}
+
+	/**
+	 * Drops a quarter of the cached scopes. Which ones doesn't matter much, the scopes in use are cached again on the
+	 * next paint.
+	 */
+	private void trimCache()
+	{
+		int toRemove = cache.size() - (MAX_CACHE_SIZE * 3 / 4);
+		Iterator<String> iterator = cache.keySet().iterator();
+		while (toRemove-- > 0 && iterator.hasNext())
+		{
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Matches the given scopes against the rules in a background job, so painting them later needs no matching. Used
+	 * when this theme becomes the current one, with the scopes that were painted using the previous theme.
+	 * 
+	 * @param scopes
+	 * @return the scheduled job, or null if there is nothing to match
+	 */
+	public Job rebuildCache(Collection<String> scopes)
+	{
+		if (scopes == null || scopes.isEmpty())
 		{
 			return null;
 		}
-		return getRuleForSelector(match);
+		final List<String> toResolve = new ArrayList<String>(scopes);
+		Job job = new Job("Matching theme rules") //$NON-NLS-1$
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				for (String scope : toResolve)
+				{
+					if (monitor.isCanceled())
+					{
+						return Status.CANCEL_STATUS;
+					}
+					if (scope == null || cache.containsKey(scope) || resolved.containsKey(scope))
+					{
+						continue;
+					}
+					if (resolved.size() >= MAX_CACHE_SIZE)
+					{
+						break;
+					}
+					int generation = cacheGeneration;
+					String key = scope.intern();
+					resolved.put(key, resolve(key));
+					if (generation != cacheGeneration)
+					{
+						resolved.remove(key);
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.DECORATE);
+		job.schedule();
+		return job;
+	}
+
+	/**
+	 * Returns the scopes whose TextAttribute is currently cached
+	 * 
+	 * @return
+	 */
+	public Set<String> getCachedScopes()
+	{
+		return new HashSet<String>(cache.keySet());
+	}
+
+	/**
+	 * Returns the number of TextAttribute lookups answered from the cache
+	 * 
+	 * @return
+	 */
+	public long getCacheHitCount()
+	{
+		return cacheHits.get();
+	}
+
+	/**
+	 * Returns the number of TextAttribute lookups that were not cached
+	 * 
+	 * @return
+	 */
+	public long getCacheMissCount()
+	{
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Returns the fraction of TextAttribute lookups answered from the cache, or 0 if there were none
+	 * 
+	 * @return
+	 */
+	public double getCacheHitRate()
+	{
+		long hits = cacheHits.get();
+		long total = hits + cacheMisses.get();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	ThemeRule winningRule(String scope)
+	{
+		synchronized (matchLock)
+		{
+			IScopeSelector match = findMatch(scope);
+			if (match == null)
+			{
+				return null;
+			}
+			return getRulesBySelector().get(match);
+		}
 	}
 
 	private DelayedTextAttribute getDelayedTextAttribute(String scope)
@@ -311,7 +502,7 @@ public class Theme
 				return getParent(scope);
 			}
 			lastSelectorMatch = match;
-			ThemeRule rule = getRuleForSelector(match);
+			ThemeRule rule = getRulesBySelector().get(match);
 			DelayedTextAttribute attr = rule.getTextAttribute();
 
 			// if our coloring has no background, we should use parent's. If it has some opacity (alpha != 255), we
@@ -460,16 +651,49 @@ public class Theme
 
 	private IScopeSelector findMatch(String scope)
 	{
-		Collection<IScopeSelector> selectors = new ArrayList<IScopeSelector>();
-		for (ThemeRule rule : coloringRules)
+		return ScopeSelector.bestMatch(getSelectorTrie().getCandidates(scope), scope);
+	}
+
+	/**
+	 * Returns the selectors of the rules indexed by the names they require, indexing them first if the rules changed.
+	 * Callers hold the match lock.
+	 * 
+	 * @return
+	 */
+	private ScopeSelectorTrie getSelectorTrie()
+	{
+		if (selectorTrie == null)
 		{
-			if (rule.isSeparator())
+			List<IScopeSelector> selectors = new ArrayList<IScopeSelector>();
+			Map<IScopeSelector, ThemeRule> rules = new HashMap<IScopeSelector, ThemeRule>();
+			for (ThemeRule rule : coloringRules)
 			{
-				continue;
+				if (rule.isSeparator())
+				{
+					continue;
+				}
+				selectors.add(rule.getScopeSelector());
+				if (rule.getScopeSelector() != null)
+				{
+					// See APSTUD-2790. In Textmate the last matching rule wins
+					rules.put(rule.getScopeSelector(), rule);
+				}
 			}
-			selectors.add(rule.getScopeSelector());
+			selectorTrie = new ScopeSelectorTrie(selectors);
+			rulesBySelector = rules;
 		}
-		return ScopeSelector.bestMatch(selectors, scope);
+		return selectorTrie;
+	}
+
+	/**
+	 * Returns the rule that wins for each selector. Callers hold the match lock.
+	 * 
+	 * @return
+	 */
+	private Map<IScopeSelector, ThemeRule> getRulesBySelector()
+	{
+		getSelectorTrie();
+		return rulesBySelector;
 	}
 
 	private DelayedTextAttribute merge(DelayedTextAttribute childAttr, DelayedTextAttribute parentAttr)
@@ -831,9 +1055,12 @@ public class Theme
 				}
 			}
 		}
-		coloringRules.clear();
-		wipeCache();
-		parseProps(props);
+		synchronized (matchLock)
+		{
+			coloringRules.clear();
+			parseProps(props);
+			wipeCache();
+		}
 		deleteCustomVersion();
 	}
 
@@ -871,8 +1098,12 @@ public class Theme
 		{
 			endIndex--;
 		}
-		ThemeRule selected = coloringRules.remove(startIndex);
-		coloringRules.add(endIndex, selected);
+		synchronized (matchLock)
+		{
+			ThemeRule selected = coloringRules.remove(startIndex);
+			coloringRules.add(endIndex, selected);
+			wipeCache();
+		}
 		save();
 	}
 
@@ -883,23 +1114,29 @@ public class Theme
 
 	public void addNewRule(int index, String ruleName, ScopeSelector selector, DelayedTextAttribute attr)
 	{
-		coloringRules.add(index, new ThemeRule(ruleName, selector, attr));
-		wipeCache();
+		synchronized (matchLock)
+		{
+			coloringRules.add(index, new ThemeRule(ruleName, selector, attr));
+			wipeCache();
+		}
 		save();
 	}
 
 	public void updateRule(int index, ThemeRule newRule)
 	{
-		coloringRules.remove(index);
-		if (index >= coloringRules.size())
-		{
-			coloringRules.add(newRule);
-		}
-		else
+		synchronized (matchLock)
 		{
-			coloringRules.add(index, newRule);
+			coloringRules.remove(index);
+			if (index >= coloringRules.size())
+			{
+				coloringRules.add(newRule);
+			}
+			else
+			{
+				coloringRules.add(index, newRule);
+			}
+			wipeCache();
 		}
-		wipeCache();
 		save();
 	}
 
@@ -919,8 +1156,11 @@ public class Theme
 		{
 			return;
 		}
-		wipeCache();
-		defaultFG = newColor;
+		synchronized (matchLock)
+		{
+			defaultFG = newColor;
+			wipeCache();
+		}
 		save();
 	}
 
@@ -930,13 +1170,23 @@ public class Theme
 		{
 			return;
 		}
-		wipeCache();
-		defaultBG = newColor;
+		synchronized (matchLock)
+		{
+			defaultBG = newColor;
+			wipeCache();
+		}
 		save();
 	}
 
+	/**
+	 * Forgets everything derived from the rules and default colors. Callers hold the match lock.
+	 */
 	private void wipeCache()
 	{
+		cacheGeneration++;
+		selectorTrie = null;
+		rulesBySelector = null;
+		resolved.clear();
 		cache.clear();
 	}
 
@@ -1131,8 +1381,11 @@ public class Theme
 
 	public void remove(ThemeRule entry)
 	{
-		coloringRules.remove(entry);
-		wipeCache();
+		synchronized (matchLock)
+		{
+			coloringRules.remove(entry);
+			wipeCache();
+		}
 		save();
 	}
 
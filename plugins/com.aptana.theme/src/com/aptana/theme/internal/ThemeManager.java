@@ -194,8 +194,16 @@ public class ThemeManager implements IThemeManager
 
 	public void setCurrentTheme(Theme theme)
 	{
+		Theme previous = fCurrentTheme;
 		fCurrentTheme = theme;
 
+		// Match the scopes painted with the previous theme against the new one in the background, rather than one by
+		// one while repainting
+		if (previous != null && previous != theme)
+		{
+			theme.rebuildCache(previous.getCachedScopes());
+		}
+
 		// Set the find in file search color
 		IEclipsePreferences prefs = EclipseUtil.instanceScope().getNode("org.eclipse.search"); //$NON-NLS-1$
 		prefs.put("org.eclipse.search.potentialMatch.fgColor", toString(theme.getSearchResultColor())); //$NON-NLS-1$
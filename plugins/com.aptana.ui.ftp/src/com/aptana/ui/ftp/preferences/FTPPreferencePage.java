@@ -42,6 +42,7 @@ public class FTPPreferencePage extends PreferencePage implements IWorkbenchPrefe
 	private PermissionsGroup fFilePermissions;
 	private PermissionsGroup fDirectoryPermissions;
 	private Text fKeepAliveText;
+	private Text fMaxSessionsText;
 
 	/**
 	 * Constructor.
@@ -60,6 +61,7 @@ public class FTPPreferencePage extends PreferencePage implements IWorkbenchPrefe
 
 		IEclipsePreferences prefs = EclipseUtil.instanceScope().getNode(FTPPlugin.PLUGIN_ID);
 		prefs.putInt(IFTPPreferenceConstants.KEEP_ALIVE_TIME, Integer.parseInt(fKeepAliveText.getText()));
+		prefs.putInt(IFTPPreferenceConstants.MAX_SESSIONS, Integer.parseInt(fMaxSessionsText.getText()));
 		try {
 			prefs.flush();
 		}
@@ -103,6 +105,21 @@ public class FTPPreferencePage extends PreferencePage implements IWorkbenchPrefe
 			}
 		});
 
+		label = new Label(keepAlive, SWT.NONE);
+		label.setText(Messages.FTPPreferencePage_LBL_MaxSessions);
+		fMaxSessionsText = new Text(keepAlive, SWT.BORDER);
+		int maxSessions = Platform.getPreferencesService().getInt(FTPPlugin.PLUGIN_ID,
+				IFTPPreferenceConstants.MAX_SESSIONS, FTPPreferenceInitializer.DEFAULT_MAX_SESSIONS, null);
+		fMaxSessionsText.setText(String.valueOf(maxSessions));
+		fMaxSessionsText.setLayoutData(GridDataFactory.swtDefaults().align(SWT.FILL, SWT.CENTER).grab(true, false)
+				.create());
+		fMaxSessionsText.addModifyListener(new ModifyListener() {
+
+			public void modifyText(ModifyEvent e) {
+				validate();
+			}
+		});
+
 		return main;
 	}
 
@@ -111,29 +128,33 @@ public class FTPPreferencePage extends PreferencePage implements IWorkbenchPrefe
 		fFilePermissions.setPermissions(PreferenceInitializer.DEFAULT_FILE_PERMISSIONS);
 		fDirectoryPermissions.setPermissions(PreferenceInitializer.DEFAULT_DIRECTORY_PERMISSIONS);
 		fKeepAliveText.setText(String.valueOf(FTPPreferenceInitializer.DEFAULT_KEEP_ALIVE_MINUTES));
+		fMaxSessionsText.setText(String.valueOf(FTPPreferenceInitializer.DEFAULT_MAX_SESSIONS));
 
 		super.performDefaults();
 	}
 
 	private void validate() {
 		String error = null;
-		String keepAliveMins = fKeepAliveText.getText();
-		if (StringUtil.isEmpty(keepAliveMins)) {
+		// makes sure the keep-alive time and the number of connections are positive integers
+		if (!isPositiveInteger(fKeepAliveText.getText())) {
 			error = Messages.FTPPreferencePage_ERR_Invalid_KeepAlive_Time;
 		}
-		else {
-			// makes sure the keep-alive time is a positive integer
-			try {
-				int mins = Integer.parseInt(keepAliveMins);
-				if (mins <= 0) {
-					throw new NumberFormatException("negative"); //$NON-NLS-1$
-				}
-			}
-			catch (NumberFormatException e) {
-				error = Messages.FTPPreferencePage_ERR_Invalid_KeepAlive_Time;
-			}
+		else if (fMaxSessionsText != null && !isPositiveInteger(fMaxSessionsText.getText())) {
+			error = Messages.FTPPreferencePage_ERR_Invalid_MaxSessions;
 		}
 		setErrorMessage(error);
 		setValid(error == null);
 	}
+
+	private static boolean isPositiveInteger(String text) {
+		if (StringUtil.isEmpty(text)) {
+			return false;
+		}
+		try {
+			return Integer.parseInt(text) > 0;
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+	}
 }
@@ -19,8 +19,10 @@ public final class Messages extends NLS
 
 	public static String FTPPreferencePage_DirectoryGroupTitle;
 	public static String FTPPreferencePage_ERR_Invalid_KeepAlive_Time;
+	public static String FTPPreferencePage_ERR_Invalid_MaxSessions;
 	public static String FTPPreferencePage_FileGroupTitle;
 	public static String FTPPreferencePage_LBL_KeepAlive;
+	public static String FTPPreferencePage_LBL_MaxSessions;
 	public static String FTPPreferencePage_Notes;
 
 	static
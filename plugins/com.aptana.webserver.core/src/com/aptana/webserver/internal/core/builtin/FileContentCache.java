@@ -0,0 +1,230 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * An in-memory cache of the contents of the files served by the local web server. Entries are keyed by file store and
+ * are only used while the modification stamp and length of the file are the ones they were read with. The least
+ * recently served files are dropped once the cache grows over its size limit.
+ */
+/* package */class FileContentCache
+{
+
+	/**
+	 * Files larger than this are served from disk and never cached
+	 */
+	/* package */static final int MAX_ENTRY_SIZE = 1024 * 1024;
+	private static final long MAX_SIZE = 32 * 1024 * 1024;
+	/**
+	 * Smaller files are not worth compressing
+	 */
+	private static final int MIN_COMPRESS_SIZE = 256;
+
+	private static final String GZIP_ETAG_SUFFIX = "-gzip"; //$NON-NLS-1$
+
+	/* package */static class Entry
+	{
+		final byte[] content;
+		final byte[] gzippedContent;
+		final String contentType;
+		final long lastModified;
+		final long length;
+		final String eTag;
+
+		private Entry(IFileInfo fileInfo, byte[] content, byte[] gzippedContent, String contentType)
+		{
+			this.content = content;
+			this.gzippedContent = gzippedContent;
+			this.contentType = contentType;
+			this.lastModified = fileInfo.getLastModified();
+			this.length = fileInfo.getLength();
+			this.eTag = getETag(fileInfo);
+		}
+
+		private boolean isCurrent(IFileInfo fileInfo)
+		{
+			return lastModified == fileInfo.getLastModified() && length == fileInfo.getLength();
+		}
+
+		private long getSize()
+		{
+			return content.length + ((gzippedContent != null) ? gzippedContent.length : 0);
+		}
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * Returns the cached contents of the file, or null if they aren't cached or the file changed since
+	 *
+	 * @param fileStore
+	 * @param fileInfo
+	 * @return
+	 */
+	public synchronized Entry get(IFileStore fileStore, IFileInfo fileInfo)
+	{
+		String key = fileStore.toURI().toString();
+		Entry entry = entries.get(key);
+		if (entry != null && !entry.isCurrent(fileInfo))
+		{
+			entries.remove(key);
+			size -= entry.getSize();
+			entry = null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads the contents of the file and caches them
+	 *
+	 * @param fileStore
+	 * @param fileInfo
+	 *            the info of the file, fetched before reading it
+	 * @param contentType
+	 * @return the new entry
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	public Entry load(IFileStore fileStore, IFileInfo fileInfo, String contentType) throws CoreException,
+			IOException
+	{
+		byte[] content = read(fileStore, fileInfo);
+		byte[] gzippedContent = null;
+		if (content.length >= MIN_COMPRESS_SIZE && isCompressible(contentType))
+		{
+			gzippedContent = gzip(content);
+			if (gzippedContent.length >= content.length)
+			{
+				gzippedContent = null;
+			}
+		}
+		Entry entry = new Entry(fileInfo, content, gzippedContent, contentType);
+		if (content.length != fileInfo.getLength())
+		{
+			// the file changed while it was read, serve it this once
+			return entry;
+		}
+
+		synchronized (this)
+		{
+			Entry previous = entries.put(fileStore.toURI().toString(), entry);
+			if (previous != null)
+			{
+				size -= previous.getSize();
+			}
+			size += entry.getSize();
+			for (Iterator<Entry> i = entries.values().iterator(); size > MAX_SIZE && i.hasNext();)
+			{
+				Entry eldest = i.next();
+				if (eldest != entry)
+				{
+					i.remove();
+					size -= eldest.getSize();
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns true if a file of the given length can be cached
+	 *
+	 * @param length
+	 * @return
+	 */
+	public static boolean isCacheable(long length)
+	{
+		return length >= 0 && length <= MAX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Returns the entity tag of the current version of a file
+	 *
+	 * @param fileInfo
+	 * @return
+	 */
+	public static String getETag(IFileInfo fileInfo)
+	{
+		return '"' + Long.toHexString(fileInfo.getLastModified()) + '-' + Long.toHexString(fileInfo.getLength()) + '"';
+	}
+
+	/**
+	 * Returns the entity tag of the gzipped contents of the current version of a file. The gzipped and the identity
+	 * contents are different representations, so they don't share a strong entity tag.
+	 *
+	 * @param fileInfo
+	 * @return
+	 */
+	public static String getGzipETag(IFileInfo fileInfo)
+	{
+		String eTag = getETag(fileInfo);
+		return eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX + '"';
+	}
+
+	/**
+	 * Returns true for the text types that are worth compressing
+	 *
+	 * @param contentType
+	 * @return
+	 */
+	public static boolean isCompressible(String contentType)
+	{
+		if (contentType == null)
+		{
+			return false;
+		}
+		return contentType.startsWith("text/") || contentType.endsWith("javascript") //$NON-NLS-1$ //$NON-NLS-2$
+				|| contentType.endsWith("json") || contentType.endsWith("xml") //$NON-NLS-1$ //$NON-NLS-2$
+				|| contentType.endsWith("+xml"); //$NON-NLS-1$
+	}
+
+	private static byte[] read(IFileStore fileStore, IFileInfo fileInfo) throws CoreException, IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(0, fileInfo.getLength()));
+		InputStream in = fileStore.openInputStream(EFS.NONE, new NullProgressMonitor());
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) // $codepro.audit.disable assignmentInCondition
+			{
+				out.write(buffer, 0, n);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content);
+		gzip.close();
+		return out.toByteArray();
+	}
+}
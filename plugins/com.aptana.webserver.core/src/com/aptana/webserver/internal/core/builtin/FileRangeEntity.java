@@ -0,0 +1,194 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.ContentEncoderChannel;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ProducingNHttpEntity;
+
+/**
+ * A non-blocking entity sending a byte range of a file, used for the partial content responses of files too large to
+ * be cached.
+ */
+/* package */class FileRangeEntity extends AbstractHttpEntity implements ProducingNHttpEntity
+{
+
+	private final File file;
+	private final long offset;
+	private final long length;
+	private final boolean deleteOnFinish;
+
+	private FileChannel fileChannel;
+	private long position;
+
+	/**
+	 * @param file
+	 * @param offset
+	 *            the offset of the first byte sent
+	 * @param length
+	 *            the number of bytes sent
+	 * @param contentType
+	 * @param deleteOnFinish
+	 *            whether the file is a temporary one, deleted once sent
+	 */
+	/* package */FileRangeEntity(File file, long offset, long length, String contentType, boolean deleteOnFinish)
+	{
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+		this.deleteOnFinish = deleteOnFinish;
+		setContentType(contentType);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.entity.ProducingNHttpEntity#produceContent(org.apache.http.nio.ContentEncoder,
+	 * org.apache.http.nio.IOControl)
+	 */
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException
+	{
+		if (fileChannel == null)
+		{
+			fileChannel = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+			position = offset;
+		}
+		long remaining = offset + length - position;
+		long transferred;
+		if (encoder instanceof FileContentEncoder)
+		{
+			transferred = ((FileContentEncoder) encoder).transfer(fileChannel, position, remaining);
+		}
+		else
+		{
+			transferred = fileChannel.transferTo(position, remaining, new ContentEncoderChannel(encoder));
+		}
+		if (transferred > 0)
+		{
+			position += transferred;
+		}
+		if (position >= offset + length)
+		{
+			encoder.complete();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.entity.ProducingNHttpEntity#finish()
+	 */
+	public void finish()
+	{
+		try
+		{
+			if (fileChannel != null)
+			{
+				fileChannel.close();
+			}
+		}
+		catch (IOException ignore)
+		{
+			// ignore
+		}
+		fileChannel = null;
+		if (deleteOnFinish && !file.delete())
+		{
+			file.deleteOnExit();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContentLength()
+	 */
+	public long getContentLength()
+	{
+		return length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isRepeatable()
+	 */
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isStreaming()
+	 */
+	public boolean isStreaming()
+	{
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContent()
+	 */
+	public InputStream getContent() throws IOException
+	{
+		throw new UnsupportedOperationException("Does not support blocking methods"); //$NON-NLS-1$
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream outstream) throws IOException
+	{
+		if (outstream == null)
+		{
+			throw new IllegalArgumentException("Output stream may not be null"); //$NON-NLS-1$
+		}
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			long skipped = 0;
+			while (skipped < offset)
+			{
+				long n = in.skip(offset - skipped);
+				if (n <= 0)
+				{
+					return;
+				}
+				skipped += n;
+			}
+			byte[] buffer = new byte[8192];
+			long remaining = length;
+			while (remaining > 0)
+			{
+				int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (n == -1)
+				{
+					break;
+				}
+				outstream.write(buffer, 0, n);
+				remaining -= n;
+			}
+			outstream.flush();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
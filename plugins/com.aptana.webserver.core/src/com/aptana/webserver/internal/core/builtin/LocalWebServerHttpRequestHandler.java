@@ -14,16 +14,23 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.apache.http.nio.entity.NFileEntity;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.protocol.HTTP;
@@ -53,9 +60,27 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 
 	private final static String HTML_TEXT_TYPE = "text/html"; //$NON-NLS-1$
 
+	private static final String HEADER_ETAG = "ETag"; //$NON-NLS-1$
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified"; //$NON-NLS-1$
+	private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges"; //$NON-NLS-1$
+	private static final String HEADER_CONTENT_RANGE = "Content-Range"; //$NON-NLS-1$
+	private static final String HEADER_VARY = "Vary"; //$NON-NLS-1$
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match"; //$NON-NLS-1$
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since"; //$NON-NLS-1$
+	private static final String HEADER_IF_RANGE = "If-Range"; //$NON-NLS-1$
+	private static final String HEADER_RANGE = "Range"; //$NON-NLS-1$
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding"; //$NON-NLS-1$
+
+	private static final String BYTES_UNIT = "bytes"; //$NON-NLS-1$
+	private static final String GZIP_ENCODING = "gzip"; //$NON-NLS-1$
+	private static final String WEAK_ETAG_PREFIX = "W/"; //$NON-NLS-1$
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz"; //$NON-NLS-1$
+	private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
 	private final static Pattern PATTERN_INDEX = Pattern.compile("(index|default)\\.x?html?"); //$NON-NLS-1$
 
 	private IURIMapper uriMapper;
+	private final FileContentCache contentCache = new FileContentCache();
 
 	/**
 	 * @param documentRoot
@@ -103,30 +128,7 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 				}
 				else
 				{
-					response.setStatusCode(HttpStatus.SC_OK);
-					if (METHOD_GET.equals(method))
-					{
-						File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
-						final File temporaryFile = (file == null) ? fileStore.toLocalFile(EFS.CACHE,
-								new NullProgressMonitor()) : null;
-						response.setEntity(new NFileEntity((file != null) ? file : temporaryFile, getMimeType(fileStore
-								.getName()))
-						{
-							@Override
-							public void finish()
-							{
-								super.finish();
-								if (temporaryFile != null && !temporaryFile.delete())
-								{
-									temporaryFile.deleteOnExit();
-								}
-							}
-						});
-					}
-					else
-					{
-						response.setEntity(null);
-					}
+					serveFile(request, response, fileStore, fileInfo, METHOD_HEAD.equals(method));
 				}
 			}
 			else if (METHOD_POST.equals(method))
@@ -149,6 +151,279 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 		}
 	}
 
+	private void serveFile(HttpRequest request, HttpResponse response, IFileStore fileStore, IFileInfo fileInfo,
+			boolean head) throws CoreException, IOException
+	{
+		String mimeType = getMimeType(fileStore.getName());
+		String eTag = FileContentCache.getETag(fileInfo);
+		String gzipETag = FileContentCache.getGzipETag(fileInfo);
+		String lastModified = formatDate(fileInfo.getLastModified());
+		response.setHeader(HEADER_ETAG, eTag);
+		response.setHeader(HEADER_LAST_MODIFIED, lastModified);
+		response.setHeader(HEADER_ACCEPT_RANGES, BYTES_UNIT);
+		if (FileContentCache.isCompressible(mimeType))
+		{
+			response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		}
+		// both representations of the current version are fresh, so either tag validates the cached copy
+		String notModifiedETag = getNotModifiedETag(request, eTag, gzipETag, fileInfo.getLastModified());
+		if (notModifiedETag != null)
+		{
+			response.setHeader(HEADER_ETAG, notModifiedETag);
+			response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+			response.setEntity(null);
+			return;
+		}
+
+		long length = fileInfo.getLength();
+		long[] range = getRange(request, eTag, lastModified, length);
+		if (range == UNSATISFIABLE_RANGE)
+		{
+			response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader(HEADER_CONTENT_RANGE, BYTES_UNIT + " */" + length); //$NON-NLS-1$
+			response.setEntity(null);
+			return;
+		}
+		if (range != null)
+		{
+			response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setHeader(HEADER_CONTENT_RANGE, MessageFormat.format("{0} {1}-{2}/{3}", BYTES_UNIT, //$NON-NLS-1$
+					Long.toString(range[0]), Long.toString(range[1]), Long.toString(length)));
+		}
+		else
+		{
+			response.setStatusCode(HttpStatus.SC_OK);
+		}
+
+		// a HEAD request only needs the contents to tell which representation a GET would send
+		boolean mayGzip = range == null && FileContentCache.isCompressible(mimeType) && acceptsGzip(request);
+		FileContentCache.Entry entry = null;
+		if (FileContentCache.isCacheable(length) && (!head || mayGzip))
+		{
+			entry = contentCache.get(fileStore, fileInfo);
+			if (entry == null)
+			{
+				entry = contentCache.load(fileStore, fileInfo, mimeType);
+			}
+		}
+		boolean gzipped = mayGzip && entry != null && entry.gzippedContent != null;
+		if (gzipped)
+		{
+			response.setHeader(HEADER_ETAG, gzipETag);
+		}
+		if (head)
+		{
+			response.setEntity(null);
+			return;
+		}
+
+		if (entry != null)
+		{
+			byte[] content = entry.content;
+			if (range != null)
+			{
+				int start = (int) Math.min(range[0], content.length);
+				int end = (int) Math.min(range[1] + 1, content.length);
+				content = new byte[end - start];
+				System.arraycopy(entry.content, start, content, 0, content.length);
+			}
+			else if (gzipped)
+			{
+				content = entry.gzippedContent;
+			}
+			NByteArrayEntity entity = new NByteArrayEntity(content);
+			entity.setContentType(mimeType);
+			if (gzipped)
+			{
+				entity.setContentEncoding(GZIP_ENCODING);
+			}
+			response.setEntity(entity);
+			return;
+		}
+
+		File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
+		final File temporaryFile = (file == null) ? fileStore.toLocalFile(EFS.CACHE, new NullProgressMonitor()) : null;
+		if (range != null)
+		{
+			response.setEntity(new FileRangeEntity((file != null) ? file : temporaryFile, range[0], range[1]
+					- range[0] + 1, mimeType, temporaryFile != null));
+			return;
+		}
+		response.setEntity(new NFileEntity((file != null) ? file : temporaryFile, mimeType)
+		{
+			@Override
+			public void finish()
+			{
+				super.finish();
+				if (temporaryFile != null && !temporaryFile.delete())
+				{
+					temporaryFile.deleteOnExit();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks the conditional GET headers against the current version of the file
+	 *
+	 * @param request
+	 * @param eTag
+	 * @param gzipETag
+	 * @param lastModified
+	 * @return the entity tag to send with the not modified response, or null if the file was modified
+	 */
+	private static String getNotModifiedETag(HttpRequest request, String eTag, String gzipETag, long lastModified)
+	{
+		Header ifNoneMatch = request.getFirstHeader(HEADER_IF_NONE_MATCH);
+		if (ifNoneMatch != null)
+		{
+			for (String tag : ifNoneMatch.getValue().split(",")) //$NON-NLS-1$
+			{
+				tag = tag.trim();
+				if (tag.startsWith(WEAK_ETAG_PREFIX))
+				{
+					tag = tag.substring(WEAK_ETAG_PREFIX.length());
+				}
+				if (gzipETag.equals(tag))
+				{
+					return gzipETag;
+				}
+				if ("*".equals(tag) || eTag.equals(tag)) //$NON-NLS-1$
+				{
+					return eTag;
+				}
+			}
+			return null;
+		}
+		Header ifModifiedSince = request.getFirstHeader(HEADER_IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null)
+		{
+			long since = parseDate(ifModifiedSince.getValue());
+			// HTTP dates are only precise to the second
+			if (since >= 0 && lastModified / 1000 <= since / 1000)
+			{
+				return eTag;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the inclusive byte range requested by a single range in the Range header, null to send the whole file, or
+	 * {@link #UNSATISFIABLE_RANGE}
+	 *
+	 * @param request
+	 * @param eTag
+	 * @param lastModified
+	 * @param length
+	 * @return
+	 */
+	private static long[] getRange(HttpRequest request, String eTag, String lastModified, long length)
+	{
+		Header rangeHeader = request.getFirstHeader(HEADER_RANGE);
+		if (rangeHeader == null)
+		{
+			return null;
+		}
+		Header ifRange = request.getFirstHeader(HEADER_IF_RANGE);
+		if (ifRange != null && !eTag.equals(ifRange.getValue()) && !lastModified.equals(ifRange.getValue()))
+		{
+			return null;
+		}
+		String value = rangeHeader.getValue().trim();
+		if (!value.startsWith(BYTES_UNIT + '=') || value.indexOf(',') != -1)
+		{
+			// multiple ranges aren't supported, the whole file is sent instead
+			return null;
+		}
+		value = value.substring(BYTES_UNIT.length() + 1).trim();
+		int dash = value.indexOf('-');
+		if (dash == -1)
+		{
+			return null;
+		}
+		long start;
+		long end;
+		try
+		{
+			if (dash == 0)
+			{
+				long suffix = Long.parseLong(value.substring(1).trim());
+				if (suffix <= 0)
+				{
+					return UNSATISFIABLE_RANGE;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			}
+			else
+			{
+				start = Long.parseLong(value.substring(0, dash).trim());
+				String last = value.substring(dash + 1).trim();
+				end = (last.length() == 0) ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		if (start >= length || start > end)
+		{
+			return UNSATISFIABLE_RANGE;
+		}
+		return new long[] { start, end };
+	}
+
+	private static boolean acceptsGzip(HttpRequest request)
+	{
+		Header acceptEncoding = request.getFirstHeader(HEADER_ACCEPT_ENCODING);
+		if (acceptEncoding == null)
+		{
+			return false;
+		}
+		for (String coding : acceptEncoding.getValue().split(",")) //$NON-NLS-1$
+		{
+			String[] parts = coding.split(";"); //$NON-NLS-1$
+			if (GZIP_ENCODING.equalsIgnoreCase(parts[0].trim()))
+			{
+				for (int i = 1; i < parts.length; ++i)
+				{
+					String param = parts[i].replace(" ", "").toLowerCase(Locale.ENGLISH); //$NON-NLS-1$ //$NON-NLS-2$
+					if (param.matches("q=0(\\.0*)?")) //$NON-NLS-1$
+					{
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String formatDate(long time)
+	{
+		return createDateFormat().format(new Date(time));
+	}
+
+	private static long parseDate(String value)
+	{
+		try
+		{
+			return createDateFormat().parse(value).getTime();
+		}
+		catch (ParseException e)
+		{
+			return -1;
+		}
+	}
+
+	private static DateFormat createDateFormat()
+	{
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format;
+	}
+
 	private static HttpEntity createTextEntity(String text) throws UnsupportedEncodingException
 	{
 		NStringEntity entity = new NStringEntity(MessageFormat.format("<html><body><h1>{0}</h1></body></html>", text), //$NON-NLS-1$
@@ -1,10 +1,13 @@
 package com.aptana.core.build;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -20,6 +23,7 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.hamcrest.Matchers;
 import org.jmock.Expectations;
@@ -270,6 +274,324 @@ public class UnifiedBuilderTest extends TestCase
 		// PROBLEM/TASK types?
 	}
 
+	public void testParallelFullBuild() throws Exception
+	{
+		final int fileCount = 40;
+		for (int i = 0; i < fileCount; i++)
+		{
+			project.getFile("file" + i + ".txt").create(new ByteArrayInputStream(("file " + i).getBytes()), true,
+					new NullProgressMonitor());
+		}
+
+		final Set<String> builtFiles = Collections.synchronizedSet(new HashSet<String>());
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		participant = new RequiredBuildParticipant()
+		{
+			@Override
+			public boolean isThreadSafe()
+			{
+				return true;
+			}
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				assertTrue("File built twice: " + context.getName(), builtFiles.add(context.getName()));
+				threads.add(Thread.currentThread());
+
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), context.getName(), IMarker.PRIORITY_HIGH, 1, 0,
+						1));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+			}
+		};
+		builder = new UnifiedBuilder()
+		{
+			@Override
+			protected IProject getProjectHandle()
+			{
+				return project;
+			}
+
+			@Override
+			protected IBuildParticipantManager getBuildParticipantManager()
+			{
+				return manager;
+			}
+
+			@Override
+			protected int getParallelism()
+			{
+				return 4;
+			}
+		};
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		// every file, plus the .project file, is built once on a worker thread
+		assertEquals(fileCount + 1, builtFiles.size());
+		assertFalse(threads.contains(Thread.currentThread()));
+
+		// and gets its own task marker
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			IMarker[] markers = file.findMarkers(IMarkerConstants.TASK_MARKER, true, IResource.DEPTH_ZERO);
+			assertEquals(1, markers.length);
+			assertEquals(file.getName(), markers[0].getAttribute(IMarker.MESSAGE));
+		}
+	}
+
+	public void testParticipantsThatArentThreadSafeBuildOnBuildThread() throws Exception
+	{
+		final int fileCount = 40;
+		for (int i = 0; i < fileCount; i++)
+		{
+			project.getFile("file" + i + ".txt").create(new ByteArrayInputStream(("file " + i).getBytes()), true,
+					new NullProgressMonitor());
+		}
+
+		final Set<String> builtFiles = Collections.synchronizedSet(new HashSet<String>());
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		participant = new RequiredBuildParticipant()
+		{
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				assertTrue("File built twice: " + context.getName(), builtFiles.add(context.getName()));
+				threads.add(Thread.currentThread());
+			}
+		};
+		builder = new UnifiedBuilder()
+		{
+			@Override
+			protected IProject getProjectHandle()
+			{
+				return project;
+			}
+
+			@Override
+			protected IBuildParticipantManager getBuildParticipantManager()
+			{
+				return manager;
+			}
+
+			@Override
+			protected int getParallelism()
+			{
+				return 4;
+			}
+		};
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		// every file, plus the .project file, is built once on this thread
+		assertEquals(fileCount + 1, builtFiles.size());
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+	}
+
+	public void testThreadSafeParticipantsBuildOnWorkersBeforeTheOthers() throws Exception
+	{
+		final int fileCount = 40;
+		for (int i = 0; i < fileCount; i++)
+		{
+			project.getFile("file" + i + ".txt").create(new ByteArrayInputStream(("file " + i).getBytes()), true,
+					new NullProgressMonitor());
+		}
+
+		final Thread buildThread = Thread.currentThread();
+		final Set<String> concurrentlyBuiltFiles = Collections.synchronizedSet(new HashSet<String>());
+		final Set<Thread> concurrentThreads = Collections.synchronizedSet(new HashSet<Thread>());
+		final IBuildParticipant concurrentParticipant = new RequiredBuildParticipant()
+		{
+			@Override
+			public boolean isThreadSafe()
+			{
+				return true;
+			}
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				concurrentThreads.add(Thread.currentThread());
+				concurrentlyBuiltFiles.add(context.getName());
+			}
+		};
+		final Set<String> seriallyBuiltFiles = new HashSet<String>();
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		participant = new RequiredBuildParticipant()
+		{
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				if (Thread.currentThread() != buildThread)
+				{
+					failures.add(new AssertionError("Built " + context.getName() + " on " + Thread.currentThread()));
+				}
+				if (!concurrentlyBuiltFiles.contains(context.getName()))
+				{
+					failures.add(new AssertionError("Built " + context.getName() + " before the worker"));
+				}
+				seriallyBuiltFiles.add(context.getName());
+
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), context.getName(), IMarker.PRIORITY_HIGH, 1, 0,
+						1));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+			}
+		};
+		manager = new BuildParticipantManager()
+		{
+			public List<IBuildParticipant> getBuildParticipants(String contentTypeId)
+			{
+				return filterParticipants(getAllBuildParticipants(), contentTypeId);
+			}
+
+			public List<IBuildParticipant> getAllBuildParticipants()
+			{
+				return CollectionsUtil.newList(concurrentParticipant, participant);
+			}
+		};
+		builder = new UnifiedBuilder()
+		{
+			@Override
+			protected IProject getProjectHandle()
+			{
+				return project;
+			}
+
+			@Override
+			protected IBuildParticipantManager getBuildParticipantManager()
+			{
+				return manager;
+			}
+
+			@Override
+			protected int getParallelism()
+			{
+				return 4;
+			}
+		};
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		// every file, plus the .project file, is built by both participants
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(fileCount + 1, concurrentlyBuiltFiles.size());
+		assertEquals(concurrentlyBuiltFiles, seriallyBuiltFiles);
+		assertFalse(concurrentThreads.contains(buildThread));
+
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			IMarker[] markers = file.findMarkers(IMarkerConstants.TASK_MARKER, true, IResource.DEPTH_ZERO);
+			assertEquals(1, markers.length);
+		}
+	}
+
+	public void testCanceledParallelBuildKeepsMarkersOfBuiltFiles() throws Exception
+	{
+		final int fileCount = 40;
+		for (int i = 0; i < fileCount; i++)
+		{
+			project.getFile("file" + i + ".txt").create(new ByteArrayInputStream(("file " + i).getBytes()), true,
+					new NullProgressMonitor());
+		}
+
+		final IProgressMonitor monitor = new NullProgressMonitor();
+		final IBuildParticipant concurrentParticipant = new RequiredBuildParticipant()
+		{
+			@Override
+			public boolean isThreadSafe()
+			{
+				return true;
+			}
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+		};
+		participant = new RequiredBuildParticipant()
+		{
+			private int built;
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor m)
+			{
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), context.getName(), IMarker.PRIORITY_HIGH, 1, 0,
+						1));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+
+				if (++built == 5)
+				{
+					monitor.setCanceled(true);
+				}
+			}
+		};
+		manager = new BuildParticipantManager()
+		{
+			public List<IBuildParticipant> getBuildParticipants(String contentTypeId)
+			{
+				return filterParticipants(getAllBuildParticipants(), contentTypeId);
+			}
+
+			public List<IBuildParticipant> getAllBuildParticipants()
+			{
+				return CollectionsUtil.newList(concurrentParticipant, participant);
+			}
+		};
+		builder = new UnifiedBuilder()
+		{
+			@Override
+			protected IProject getProjectHandle()
+			{
+				return project;
+			}
+
+			@Override
+			protected IBuildParticipantManager getBuildParticipantManager()
+			{
+				return manager;
+			}
+
+			@Override
+			protected int getParallelism()
+			{
+				return 4;
+			}
+		};
+		try
+		{
+			builder.build(IncrementalProjectBuilder.FULL_BUILD, null, monitor);
+			fail("Build wasn't canceled");
+		}
+		catch (CoreException e)
+		{
+			assertEquals(IStatus.CANCEL, e.getStatus().getSeverity());
+		}
+
+		// the files built before the cancellation keep their markers
+		IMarker[] markers = project.findMarkers(IMarkerConstants.TASK_MARKER, true, IResource.DEPTH_INFINITE);
+		assertEquals(5, markers.length);
+	}
+
 	public void testIncrementalBuildWithNoDeltaDoesFullBuild() throws Exception
 	{
 		context.checking(new Expectations()
@@ -113,6 +113,128 @@ public class IndexBuildParticipantTest extends TestCase
 		context.assertIsSatisfied();
 	}
 
+	public void testIndexParticipantsResolvedOncePerContentType() throws Exception
+	{
+		final Index index = context.mock(Index.class);
+		final IndexManager indexManager = context.mock(IndexManager.class);
+		final IFileStoreIndexingParticipant indexer = context.mock(IFileStoreIndexingParticipant.class);
+		final BuildContext first = context.mock(BuildContext.class, "first");
+		final BuildContext second = context.mock(BuildContext.class, "second");
+		IndexBuildParticipant p = new IndexBuildParticipant()
+		{
+			@Override
+			protected Index getIndex(IProject project)
+			{
+				return index;
+			}
+
+			@Override
+			protected IndexManager getIndexManager()
+			{
+				return indexManager;
+			}
+		};
+		context.checking(new Expectations()
+		{
+			{
+				allowing(first).getContentType();
+				will(returnValue("com.aptana.contenttype.js"));
+				allowing(first).getName();
+				will(returnValue("first.js"));
+				allowing(second).getContentType();
+				will(returnValue("com.aptana.contenttype.js"));
+				allowing(second).getName();
+				will(returnValue("second.js"));
+				// the registry is only walked for the first file of the content type
+				oneOf(indexManager).getIndexParticipants("first.js");
+				will(returnValue(CollectionsUtil.newList(indexer)));
+				allowing(first).getURI();
+				will(returnValue(URI.create("file:/first.js")));
+				allowing(second).getURI();
+				will(returnValue(URI.create("file:/second.js")));
+				oneOf(index).remove(URI.create("file:/first.js"));
+				oneOf(index).remove(URI.create("file:/second.js"));
+				oneOf(indexer).index(with(first), with(index), with(any(IProgressMonitor.class)));
+				oneOf(indexer).index(with(second), with(index), with(any(IProgressMonitor.class)));
+				oneOf(index).save();
+			}
+		});
+
+		p.buildStarting(null, IncrementalProjectBuilder.FULL_BUILD, new NullProgressMonitor());
+		p.buildFile(first, new NullProgressMonitor());
+		p.buildFile(second, new NullProgressMonitor());
+		p.buildEnding(new NullProgressMonitor());
+		context.assertIsSatisfied();
+	}
+
+	public void testIndexParticipantsAreNotSharedBetweenThreads() throws Exception
+	{
+		final Index index = context.mock(Index.class);
+		final IndexManager indexManager = context.mock(IndexManager.class);
+		final IFileStoreIndexingParticipant firstIndexer = context.mock(IFileStoreIndexingParticipant.class,
+				"firstIndexer");
+		final IFileStoreIndexingParticipant secondIndexer = context.mock(IFileStoreIndexingParticipant.class,
+				"secondIndexer");
+		final BuildContext first = context.mock(BuildContext.class, "first");
+		final BuildContext second = context.mock(BuildContext.class, "second");
+		final IndexBuildParticipant p = new IndexBuildParticipant()
+		{
+			@Override
+			protected Index getIndex(IProject project)
+			{
+				return index;
+			}
+
+			@Override
+			protected IndexManager getIndexManager()
+			{
+				return indexManager;
+			}
+		};
+		context.checking(new Expectations()
+		{
+			{
+				allowing(first).getContentType();
+				will(returnValue("com.aptana.contenttype.js"));
+				allowing(first).getName();
+				will(returnValue("first.js"));
+				allowing(second).getContentType();
+				will(returnValue("com.aptana.contenttype.js"));
+				allowing(second).getName();
+				will(returnValue("second.js"));
+				// each thread creates its own indexing participants
+				oneOf(indexManager).getIndexParticipants("first.js");
+				will(returnValue(CollectionsUtil.newList(firstIndexer)));
+				oneOf(indexManager).getIndexParticipants("second.js");
+				will(returnValue(CollectionsUtil.newList(secondIndexer)));
+				allowing(first).getURI();
+				will(returnValue(URI.create("file:/first.js")));
+				allowing(second).getURI();
+				will(returnValue(URI.create("file:/second.js")));
+				oneOf(index).remove(URI.create("file:/first.js"));
+				oneOf(index).remove(URI.create("file:/second.js"));
+				oneOf(firstIndexer).index(with(first), with(index), with(any(IProgressMonitor.class)));
+				oneOf(secondIndexer).index(with(second), with(index), with(any(IProgressMonitor.class)));
+				oneOf(index).save();
+			}
+		});
+
+		assertTrue(p.isThreadSafe());
+		p.buildStarting(null, IncrementalProjectBuilder.FULL_BUILD, new NullProgressMonitor());
+		p.buildFile(first, new NullProgressMonitor());
+		Thread worker = new Thread()
+		{
+			public void run()
+			{
+				p.buildFile(second, new NullProgressMonitor());
+			}
+		};
+		worker.start();
+		worker.join();
+		p.buildEnding(new NullProgressMonitor());
+		context.assertIsSatisfied();
+	}
+
 	public void testCleanBuild() throws Exception
 	{
 		File file = File.createTempFile("index_bp", ".js");
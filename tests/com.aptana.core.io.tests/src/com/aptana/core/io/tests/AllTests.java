@@ -30,6 +30,9 @@ public class AllTests
 		suite.addTestSuite(WorkspaceFileSystemTest.class);
 		suite.addTestSuite(WorkspaceConnectionPointTest.class);
 		suite.addTestSuite(ConnectionPointManagerTest.class);
+		suite.addTestSuite(BaseConnectionFileManagerTest.class);
+		suite.addTestSuite(FileTreeWalkerTest.class);
+		suite.addTestSuite(CloakingUtilsTest.class);
 		// $JUnit-END$
 		return suite;
 	}
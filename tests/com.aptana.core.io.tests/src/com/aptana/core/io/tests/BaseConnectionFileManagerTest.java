@@ -0,0 +1,325 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.tests;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
+import com.aptana.core.io.vfs.ExtendedFileInfo;
+import com.aptana.core.io.vfs.IExtendedFileInfo;
+
+@SuppressWarnings("nls")
+public class BaseConnectionFileManagerTest extends TestCase
+{
+
+	private static final long TIMEOUT = 10;
+
+	private CountDownLatch release;
+	private AtomicInteger running;
+	private AtomicInteger maxRunning;
+	private AtomicInteger fetchCount;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		release = new CountDownLatch(1);
+		running = new AtomicInteger();
+		maxRunning = new AtomicInteger();
+		fetchCount = new AtomicInteger();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		release.countDown();
+		super.tearDown();
+	}
+
+	public void testSingleSessionSerializesOperations() throws Exception
+	{
+		TestConnectionFileManager manager = new TestConnectionFileManager(false);
+		manager.setMaxSessions(4);
+		List<Thread> threads = listInParallel(manager, 3);
+		Thread.sleep(200);
+		assertEquals(1, running.get());
+		release.countDown();
+		join(threads);
+		assertEquals(1, maxRunning.get());
+	}
+
+	public void testSessionsRunInParallel() throws Exception
+	{
+		TestConnectionFileManager manager = new TestConnectionFileManager(true);
+		manager.setMaxSessions(3);
+		List<Thread> threads = listInParallel(manager, 4);
+		waitForRunning(3);
+		Thread.sleep(200);
+		assertEquals("the limit of sessions is exceeded", 3, running.get());
+		release.countDown();
+		join(threads);
+		assertEquals(3, maxRunning.get());
+		assertEquals(2, manager.sessionsCreated.get());
+	}
+
+	public void testSessionsShareCache() throws Exception
+	{
+		TestConnectionFileManager manager = new TestConnectionFileManager(true);
+		manager.setMaxSessions(2);
+		release.countDown();
+		manager.childInfos(Path.ROOT, EFS.NONE, new NullProgressMonitor());
+
+		// keeps the manager busy so that the next operation is dispatched to another session
+		release = new CountDownLatch(1);
+		List<Thread> threads = listInParallel(manager, 1);
+		waitForRunning(1);
+		int fetched = fetchCount.get();
+		IExtendedFileInfo fileInfo = manager.fetchInfo(Path.ROOT.append("file0"), EFS.NONE,
+				new NullProgressMonitor());
+		assertTrue(fileInfo.exists());
+		assertEquals(1, manager.sessionsCreated.get());
+		assertEquals("the cached file info was not used", fetched, fetchCount.get());
+		release.countDown();
+		join(threads);
+	}
+
+	private List<Thread> listInParallel(final BaseConnectionFileManager manager, int count)
+	{
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < count; ++i)
+		{
+			final IPath path = Path.ROOT.append("dir" + i);
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						manager.childInfos(path, EFS.NONE, new NullProgressMonitor());
+					}
+					catch (CoreException e)
+					{
+						fail(e.getMessage());
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		return threads;
+	}
+
+	private void waitForRunning(int count) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+		while (running.get() < count && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(count, running.get());
+	}
+
+	private static void join(List<Thread> threads) throws InterruptedException
+	{
+		for (Thread thread : threads)
+		{
+			thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+			assertFalse(thread.isAlive());
+		}
+	}
+
+	private class TestConnectionFileManager extends BaseConnectionFileManager
+	{
+
+		private final boolean pooled;
+		private final AtomicInteger sessionsCreated;
+		private boolean connected;
+
+		private TestConnectionFileManager(boolean pooled)
+		{
+			this(pooled, new AtomicInteger());
+		}
+
+		private TestConnectionFileManager(boolean pooled, AtomicInteger sessionsCreated)
+		{
+			this.pooled = pooled;
+			this.sessionsCreated = sessionsCreated;
+			basePath = Path.ROOT;
+			setCaching(true);
+		}
+
+		@Override
+		protected BaseConnectionFileManager newSession()
+		{
+			if (!pooled)
+			{
+				return null;
+			}
+			sessionsCreated.incrementAndGet();
+			return new TestConnectionFileManager(true, sessionsCreated);
+		}
+
+		public void connect(IProgressMonitor monitor) throws CoreException
+		{
+			connected = true;
+		}
+
+		public boolean isConnected()
+		{
+			return connected;
+		}
+
+		public void disconnect(IProgressMonitor monitor) throws CoreException
+		{
+			closeSessions(monitor);
+			connected = false;
+		}
+
+		public URI getCanonicalURI(IPath path)
+		{
+			return URI.create("test://" + path.toPortableString());
+		}
+
+		@Override
+		protected void testConnection(boolean force)
+		{
+		}
+
+		@Override
+		protected boolean canUseTemporaryFile(IPath path, ExtendedFileInfo fileInfo, IProgressMonitor monitor)
+		{
+			return false;
+		}
+
+		@Override
+		protected void changeCurrentDir(IPath path)
+		{
+		}
+
+		@Override
+		protected ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor)
+		{
+			fetchCount.incrementAndGet();
+			ExtendedFileInfo fileInfo = new ExtendedFileInfo(path.lastSegment());
+			fileInfo.setExists(true);
+			return fileInfo;
+		}
+
+		@Override
+		protected ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor)
+		{
+			fetchCount.incrementAndGet();
+			int current = running.incrementAndGet();
+			synchronized (maxRunning)
+			{
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+			try
+			{
+				release.await(TIMEOUT, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				running.decrementAndGet();
+			}
+			ExtendedFileInfo[] fileInfos = new ExtendedFileInfo[2];
+			for (int i = 0; i < fileInfos.length; ++i)
+			{
+				fileInfos[i] = new ExtendedFileInfo("file" + i);
+				fileInfos[i].setExists(true);
+			}
+			return fileInfos;
+		}
+
+		@Override
+		protected String[] listDirectory(IPath path, IProgressMonitor monitor)
+		{
+			return new String[0];
+		}
+
+		@Override
+		protected InputStream readFile(IPath path, IProgressMonitor monitor) throws FileNotFoundException
+		{
+			throw new FileNotFoundException(path.toPortableString());
+		}
+
+		@Override
+		protected OutputStream writeFile(IPath path, boolean useTemporary, long permissions,
+				IProgressMonitor monitor) throws FileNotFoundException
+		{
+			throw new FileNotFoundException(path.toPortableString());
+		}
+
+		@Override
+		protected void createFile(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void createDirectory(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void renameFile(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void renameDirectory(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void deleteFile(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void deleteDirectory(IPath path, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void setModificationTime(IPath path, long modificationTime, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void changeFilePermissions(IPath path, long permissions, IProgressMonitor monitor)
+		{
+		}
+
+		@Override
+		protected void changeFileGroup(IPath path, String group, IProgressMonitor monitor)
+		{
+		}
+	}
+}
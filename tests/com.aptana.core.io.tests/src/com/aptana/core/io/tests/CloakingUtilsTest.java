@@ -0,0 +1,93 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.Path;
+
+import com.aptana.ide.core.io.preferences.CloakingUtils;
+
+@SuppressWarnings("nls")
+public class CloakingUtilsTest extends TestCase
+{
+
+	private String[] originalFileTypes;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		originalFileTypes = CloakingUtils.getCloakedFileTypes();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			CloakingUtils.setCloakedFileTypes(originalFileTypes);
+		}
+		finally
+		{
+			originalFileTypes = null;
+			super.tearDown();
+		}
+	}
+
+	public void testNamesAndExtensions()
+	{
+		CloakingUtils.setCloakedFileTypes(new String[] { "CVS", "*.tmp", "*~" });
+		assertTrue(isCloaked("CVS"));
+		assertTrue(isCloaked("cvs"));
+		assertTrue(isCloaked("dir/file.TMP"));
+		assertTrue(isCloaked("dir/file.txt~"));
+		assertFalse(isCloaked("CVS2"));
+		assertFalse(isCloaked("dir/file.tmp2"));
+		assertFalse(isCloaked("dir/file-tmp"));
+	}
+
+	public void testWildcardsAndRegularExpressions()
+	{
+		CloakingUtils.setCloakedFileTypes(new String[] { "a*b", "/.*\\.ba[kx]/", "ab." });
+		assertTrue(isCloaked("aXYZb"));
+		assertTrue(isCloaked("dir/file.bak"));
+		assertTrue(isCloaked("file.bax"));
+		assertTrue(isCloaked("abc"));
+		assertFalse(isCloaked("aXYZc"));
+		assertFalse(isCloaked("dir/file.bat"));
+	}
+
+	public void testInvalidExpressionIsIgnored()
+	{
+		CloakingUtils.setCloakedFileTypes(new String[] { "/(/", "*.tmp" });
+		assertTrue(isCloaked("file.tmp"));
+		assertFalse(isCloaked("("));
+	}
+
+	public void testChangesApplyImmediately()
+	{
+		CloakingUtils.setCloakedFileTypes(new String[] { "*.tmp" });
+		assertTrue(isCloaked("file.tmp"));
+		assertFalse(isCloaked("file.log"));
+
+		CloakingUtils.addCloakFileType("*.log");
+		assertTrue(isCloaked("file.log"));
+
+		CloakingUtils.removeCloakFileType("*.tmp");
+		assertFalse(isCloaked("file.tmp"));
+	}
+
+	private static boolean isCloaked(String path)
+	{
+		IFileStore fileStore = EFS.getLocalFileSystem().getStore(Path.fromPortableString(path));
+		return CloakingUtils.isFileCloaked(fileStore);
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.aptana.core.io.efs.EFSUtils;
+import com.aptana.core.io.efs.FileTreeWalker;
+
+@SuppressWarnings("nls")
+public class FileTreeWalkerTest extends TestCase
+{
+
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		root = File.createTempFile(getClass().getSimpleName(), "temp");
+		assertTrue(root.delete());
+		assertTrue(root.mkdir());
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			delete(root);
+		}
+		finally
+		{
+			root = null;
+			super.tearDown();
+		}
+	}
+
+	public void testVisitsAllFiles() throws Exception
+	{
+		createTree(root, 3);
+		IFileStore rootStore = EFS.getLocalFileSystem().fromLocalFile(root);
+
+		final Set<IFileStore> visited = Collections.synchronizedSet(new HashSet<IFileStore>());
+		FileTreeWalker walker = new FileTreeWalker(rootStore, true, 3);
+		walker.start(new FileTreeWalker.IVisitor()
+		{
+			public void visit(IFileStore file)
+			{
+				assertTrue("visited twice: " + file, visited.add(file));
+			}
+		}, new NullProgressMonitor());
+		walker.join(new NullProgressMonitor());
+
+		assertTrue(walker.isDone());
+		assertEquals(new HashSet<IFileStore>(Arrays.asList(EFSUtils.getFiles(rootStore, true, true))), visited);
+	}
+
+	public void testEmptyDirectory() throws Exception
+	{
+		FileTreeWalker walker = new FileTreeWalker(EFS.getLocalFileSystem().fromLocalFile(root), true, 3);
+		walker.start(new FileTreeWalker.IVisitor()
+		{
+			public void visit(IFileStore file)
+			{
+				fail("unexpected file " + file);
+			}
+		}, new NullProgressMonitor());
+		walker.join(new NullProgressMonitor());
+		assertTrue(walker.isDone());
+	}
+
+	public void testCancel() throws Exception
+	{
+		createTree(root, 3);
+		final FileTreeWalker walker = new FileTreeWalker(EFS.getLocalFileSystem().fromLocalFile(root), true, 1);
+		walker.start(new FileTreeWalker.IVisitor()
+		{
+			public void visit(IFileStore file)
+			{
+				walker.cancel();
+			}
+		}, new NullProgressMonitor());
+		try
+		{
+			walker.join(new NullProgressMonitor());
+			fail("the walk was not canceled");
+		}
+		catch (OperationCanceledException e)
+		{
+			assertTrue(walker.isDone());
+		}
+	}
+
+	private static void createTree(File directory, int depth) throws IOException
+	{
+		for (int i = 0; i < 3; ++i)
+		{
+			FileWriter writer = new FileWriter(new File(directory, "file" + i + ".txt"));
+			writer.write("file " + i);
+			writer.close();
+		}
+		if (depth > 0)
+		{
+			for (int i = 0; i < 3; ++i)
+			{
+				File child = new File(directory, "dir" + i);
+				assertTrue(child.mkdir());
+				createTree(child, depth - 1);
+			}
+		}
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
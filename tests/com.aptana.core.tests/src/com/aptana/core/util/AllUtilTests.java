@@ -29,6 +29,7 @@ public class AllUtilTests
 		suite.addTestSuite(IOUtilTest.class);
 		suite.addTestSuite(ObjectUtilTest.class);
 		suite.addTestSuite(OutputStreamThreadTest.class);
+		suite.addTestSuite(PathMatcherTest.class);
 		suite.addTestSuite(PlatformUtilTest.class);
 		suite.addTestSuite(ProcessStatusTest.class);
 		suite.addTestSuite(ProcessUtilTest.class);
@@ -0,0 +1,104 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.util;
+
+import org.eclipse.test.performance.PerformanceTestCase;
+
+/**
+ * Measures matching 100k paths against a typical set of cloaking globs, compiled into a {@link PathMatcher} and, for
+ * comparison, as one regular expression per glob.
+ */
+@SuppressWarnings("nls")
+public class PathMatcherPerformanceTest extends PerformanceTestCase
+{
+	private static final String[] GLOBS = new String[] { ".svn", "CVS", ".git", ".DS_Store", ".settings", "*.tmp",
+			"*.bak", "*.swp", "*.log", "*.class", "*~", "Thumbs.db", "*/node_modules/*", "*.min.*" };
+	private static final String[] EXTENSIONS = new String[] { ".js", ".css", ".html", ".php", ".rb", ".tmp", ".png",
+			".log", ".min.js", "" };
+	private static final int PATHS = 100000;
+
+	private String[] paths;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		paths = new String[PATHS];
+		for (int i = 0; i < PATHS; i++)
+		{
+			String folder = (i % 50 == 0) ? "node_modules" : "folder" + (i % 20);
+			paths[i] = "/Users/someone/workspace/project" + (i % 5) + "/" + folder + "/sub" + (i % 7) + "/file" + i
+					+ EXTENSIONS[i % EXTENSIONS.length];
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		paths = null;
+
+		super.tearDown();
+	}
+
+	public void testPathMatcher() throws Exception
+	{
+		PathMatcher matcher = new PathMatcher(true);
+		for (String glob : GLOBS)
+		{
+			matcher.addGlob(glob);
+		}
+
+		for (int i = 0; i < 10; i++)
+		{
+			startMeasuring();
+			int count = 0;
+			for (String path : paths)
+			{
+				if (matcher.matches(path))
+				{
+					count++;
+				}
+			}
+			stopMeasuring();
+			assertTrue(count > 0);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testRegexPerGlob() throws Exception
+	{
+		String[] regexes = new String[GLOBS.length];
+		for (int i = 0; i < GLOBS.length; i++)
+		{
+			regexes[i] = "(?i)" + GLOBS[i].replace(".", "\\.").replace("*", ".*");
+		}
+
+		for (int i = 0; i < 10; i++)
+		{
+			startMeasuring();
+			int count = 0;
+			for (String path : paths)
+			{
+				for (String regex : regexes)
+				{
+					if (path.matches(regex))
+					{
+						count++;
+						break;
+					}
+				}
+			}
+			stopMeasuring();
+			assertTrue(count > 0);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.util;
+
+import java.util.regex.PatternSyntaxException;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class PathMatcherTest extends TestCase
+{
+
+	public void testEmpty()
+	{
+		PathMatcher matcher = new PathMatcher(false);
+		assertTrue(matcher.isEmpty());
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches("/a/b"));
+		assertFalse(matcher.matches(null));
+	}
+
+	public void testLiteral()
+	{
+		PathMatcher matcher = new PathMatcher(false).addLiteral("/a/b");
+		assertFalse(matcher.isEmpty());
+		assertTrue(matcher.matches("/a/b"));
+		assertFalse(matcher.matches("/a/b/c"));
+		assertFalse(matcher.matches("/a/B"));
+	}
+
+	public void testPrefixesAndSuffixes()
+	{
+		PathMatcher matcher = new PathMatcher(false).addPrefix("/a/").addPrefix("/bc/").addSuffix(".js")
+				.addSuffix(".html");
+		assertTrue(matcher.matches("/a/"));
+		assertTrue(matcher.matches("/a/b"));
+		assertTrue(matcher.matches("/bc/d"));
+		assertTrue(matcher.matches("x.js"));
+		assertTrue(matcher.matches("/c/index.html"));
+		assertFalse(matcher.matches("/a"));
+		assertFalse(matcher.matches("/b/c"));
+		assertFalse(matcher.matches("x.jsx"));
+		assertFalse(matcher.matches("js"));
+	}
+
+	public void testIgnoreCase()
+	{
+		PathMatcher matcher = new PathMatcher(true).addLiteral("CVS").addSuffix(".Tmp").addPrefix("/Root/");
+		assertTrue(matcher.matches("cvs"));
+		assertTrue(matcher.matches("a.TMP"));
+		assertTrue(matcher.matches("/ROOT/a"));
+		assertFalse(matcher.matches("cvs2"));
+	}
+
+	public void testGlobs()
+	{
+		PathMatcher matcher = new PathMatcher(true).addGlob("*.bak").addGlob("/tmp/*").addGlob("Makefile")
+				.addGlob("*/node_modules/*").addGlob("file?.txt");
+		assertTrue(matcher.matches("a.BAK"));
+		assertTrue(matcher.matches("/tmp/x"));
+		assertTrue(matcher.matches("makefile"));
+		assertTrue(matcher.matches("/p/node_modules/x.js"));
+		assertTrue(matcher.matches("File1.txt"));
+		assertFalse(matcher.matches("file12.txt"));
+		assertFalse(matcher.matches("/p/node_modules"));
+		assertFalse(matcher.matches("a.b.c"));
+		// regular expression characters of globs are literal
+		assertFalse(new PathMatcher(false).addGlob("a.*(b)").matches("ax(b)"));
+		assertTrue(new PathMatcher(false).addGlob("a.*(b)").matches("a.x(b)"));
+	}
+
+	public void testRegexesMatchWholePath()
+	{
+		PathMatcher matcher = new PathMatcher(false).addRegex("a+").addRegex("b|c");
+		assertTrue(matcher.matches("aaa"));
+		assertTrue(matcher.matches("b"));
+		assertTrue(matcher.matches("c"));
+		assertFalse(matcher.matches("aab"));
+		assertFalse(matcher.matches("bc"));
+	}
+
+	public void testRegexFlagsDoNotLeak()
+	{
+		PathMatcher matcher = new PathMatcher(false).addRegex("(?i)abc").addRegex("def");
+		assertTrue(matcher.matches("ABC"));
+		assertTrue(matcher.matches("def"));
+		assertFalse(matcher.matches("DEF"));
+	}
+
+	public void testBackReferences()
+	{
+		PathMatcher matcher = new PathMatcher(false).addRegex("(x)y").addRegex("(a)\\1");
+		assertTrue(matcher.matches("aa"));
+		assertTrue(matcher.matches("xy"));
+		assertFalse(matcher.matches("ax"));
+	}
+
+	public void testInvalidRegex()
+	{
+		PathMatcher matcher = new PathMatcher(false);
+		try
+		{
+			matcher.addRegex("(a");
+			fail("invalid expression accepted");
+		}
+		catch (PatternSyntaxException e)
+		{
+			assertTrue(matcher.isEmpty());
+		}
+	}
+}
@@ -13,6 +13,8 @@ import java.net.URL;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.source.ICharacterPairMatcher;
@@ -65,4 +67,48 @@ public class CharacterPairMatcherPerfTest extends PerformanceTestCase
 		commitMeasurements();
 		assertPerformance();
 	}
+
+	public void testPairMatchingInLargeDocument() throws Exception
+	{
+		matcher.dispose();
+		matcher = new CharacterPairMatcher(pairs)
+		{
+			@Override
+			protected String getScopeAtOffset(IDocument doc, int charOffset) throws BadLocationException
+			{
+				return "source.js";
+			}
+		};
+		IDocument document = createLargeDocument();
+		int middle = document.getLength() / 2;
+		for (int i = 0; i < 500; i++)
+		{
+			startMeasuring();
+			// match the braces of the function spanning the whole document, then type and match a paren in the middle
+			IRegion match = matcher.match(document, 14);
+			matcher.match(document, match.getOffset() + match.getLength());
+			document.replace(middle, 0, "(");
+			matcher.match(document, middle + 1);
+			document.replace(middle, 1, "");
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * Creates a document of a little over 1 MB holding a single function
+	 * 
+	 * @return
+	 */
+	private IDocument createLargeDocument()
+	{
+		StringBuilder builder = new StringBuilder("function f() {\n");
+		while (builder.length() < 1024 * 1024)
+		{
+			builder.append("\tvar x = a(b[c], {d: (e)}, 'f', \"g\");\n");
+		}
+		builder.append("}\n");
+		return new Document(builder.toString());
+	}
 }
@@ -0,0 +1,208 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.internal.peer;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TypedRegion;
+
+@SuppressWarnings("nls")
+public class PairIndexTest extends TestCase
+{
+	private static final char[] PAIRS = new char[] { '(', ')', '{', '}', '"', '"' };
+
+	private static final PairIndex.IPartitionSource DOCUMENT_PARTITIONS = new PairIndex.IPartitionSource()
+	{
+		public ITypedRegion[] computePartitioning(IDocument document, int offset, int length)
+				throws BadLocationException
+		{
+			return document.computePartitioning(offset, length);
+		}
+	};
+
+	private PairIndex index;
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		if (index != null)
+		{
+			index.dispose();
+		}
+		index = null;
+		super.tearDown();
+	}
+
+	private void createIndex(IDocument document)
+	{
+		index = new PairIndex(document, PAIRS, DOCUMENT_PARTITIONS);
+	}
+
+	private int searchForward(String text, int from, char open, char close)
+	{
+		int depth = 0;
+		for (int i = Math.max(0, from); i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == close)
+			{
+				if (depth == 0)
+				{
+					return i;
+				}
+				depth--;
+			}
+			else if (c == open)
+			{
+				depth++;
+			}
+		}
+		return -1;
+	}
+
+	private int searchBackward(String text, int from, char open, char close)
+	{
+		int depth = 0;
+		for (int i = Math.min(from, text.length() - 1); i >= 0; i--)
+		{
+			char c = text.charAt(i);
+			if (c == close)
+			{
+				if (depth == 0)
+				{
+					return i;
+				}
+				depth--;
+			}
+			else if (c == open)
+			{
+				depth++;
+			}
+		}
+		return -1;
+	}
+
+	public void testSearchForward() throws Exception
+	{
+		createIndex(new Document("f(a, (b), {c: (d)}) + (e)"));
+
+		assertEquals(18, index.searchForward(2, '(', ')', PairIndex.ALL_TYPES));
+		assertEquals(7, index.searchForward(6, '(', ')', PairIndex.ALL_TYPES));
+		assertEquals(17, index.searchForward(11, '{', '}', PairIndex.ALL_TYPES));
+		assertEquals(-1, index.searchForward(19, '(', ')', PairIndex.ALL_TYPES));
+		assertEquals(-1, index.searchForward(26, '(', ')', PairIndex.ALL_TYPES));
+	}
+
+	public void testSearchBackward() throws Exception
+	{
+		createIndex(new Document("f(a, (b), {c: (d)}) + (e)"));
+
+		assertEquals(1, index.searchBackward(17, ')', '(', PairIndex.ALL_TYPES));
+		assertEquals(10, index.searchBackward(16, '}', '{', PairIndex.ALL_TYPES));
+		assertEquals(-1, index.searchBackward(0, ')', '(', PairIndex.ALL_TYPES));
+		assertEquals(-1, index.searchBackward(-1, ')', '(', PairIndex.ALL_TYPES));
+	}
+
+	public void testCount() throws Exception
+	{
+		createIndex(new Document("\"a\" + \"b"));
+
+		assertEquals(3, index.count('"', 0, 8));
+		assertEquals(2, index.count('"', 0, 6));
+		assertEquals(1, index.count('"', 3, 8));
+		assertEquals(0, index.count('(', 0, 8));
+	}
+
+	public void testIncludeCharacters() throws Exception
+	{
+		createIndex(new Document("[a[b]]"));
+
+		assertEquals(-1, index.searchForward(1, '[', ']', PairIndex.ALL_TYPES));
+		index.include('[', ']');
+		assertEquals(5, index.searchForward(1, '[', ']', PairIndex.ALL_TYPES));
+	}
+
+	public void testFollowsDocumentChanges() throws Exception
+	{
+		IDocument document = new Document("f(a, b)");
+		createIndex(document);
+
+		document.replace(4, 0, "(c)");
+		assertEquals(9, index.searchForward(2, '(', ')', PairIndex.ALL_TYPES));
+
+		document.replace(0, 2, "");
+		assertEquals(-1, index.searchBackward(8, ')', '(', PairIndex.ALL_TYPES));
+		assertEquals(2, index.searchBackward(3, ')', '(', PairIndex.ALL_TYPES));
+	}
+
+	public void testSkipsOtherPartitionTypes() throws Exception
+	{
+		IDocument document = new Document("(a /* ) */ b)");
+		index = new PairIndex(document, PAIRS, new PairIndex.IPartitionSource()
+		{
+			public ITypedRegion[] computePartitioning(IDocument doc, int offset, int length)
+					throws BadLocationException
+			{
+				return new ITypedRegion[] { new TypedRegion(0, 3, "code"), new TypedRegion(3, 7, "comment"),
+						new TypedRegion(10, 3, "code") };
+			}
+		});
+		PairIndex.ITypeFilter code = new PairIndex.ITypeFilter()
+		{
+			public boolean accept(String type)
+			{
+				return "code".equals(type);
+			}
+		};
+
+		assertEquals(12, index.searchForward(1, '(', ')', code));
+		assertEquals(6, index.searchForward(1, '(', ')', PairIndex.ALL_TYPES));
+	}
+
+	public void testRandomEditsOfLargeDocument() throws Exception
+	{
+		Random random = new Random(42);
+		String pieces = "(){}\" ab\n";
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 20000; i++)
+		{
+			builder.append(pieces.charAt(random.nextInt(pieces.length())));
+		}
+
+		IDocument document = new Document(builder.toString());
+		createIndex(document);
+
+		for (int i = 0; i < 300; i++)
+		{
+			int offset = random.nextInt(document.getLength() + 1);
+			int removedLength = random.nextInt(Math.min(20, document.getLength() - offset) + 1);
+			StringBuilder inserted = new StringBuilder();
+
+			for (int j = random.nextInt(6); j > 0; j--)
+			{
+				inserted.append(pieces.charAt(random.nextInt(pieces.length())));
+			}
+
+			document.replace(offset, removedLength, inserted.toString());
+
+			String text = document.get();
+			int from = random.nextInt(text.length() + 1);
+
+			assertEquals(searchForward(text, from, '(', ')'), index.searchForward(from, '(', ')', PairIndex.ALL_TYPES));
+			assertEquals(searchBackward(text, from, '}', '{'),
+					index.searchBackward(from, '}', '{', PairIndex.ALL_TYPES));
+		}
+	}
+}
@@ -19,22 +19,35 @@ public class PeerCharacterCloserPerfTest extends PerformanceTestCase
 
 	public void testCheckUnpairedClose() throws Exception
 	{
-		PeerCharacterCloser closer = new PeerCharacterCloser(null)
+		PeerCharacterCloser closer = createCloser();
+		int numPairs = 25000;
+
+		IDocument document = createDocumentWithPairs(numPairs);
+		for (int i = 0; i < 10; i++)
 		{
-			protected List<Character> getPairs(String scope)
+			startMeasuring();
+			if (closer.unpairedClose('(', ')', document, 0))
 			{
-				List<Character> pairs = new ArrayList<Character>();
-				pairs.add('(');
-				pairs.add(')');
-				pairs.add('"');
-				pairs.add('"');
-				return pairs;
+				fail("bad!");
 			}
-		};
-		int numPairs = 25000;
+			if (closer.unpairedClose('(', ')', document, numPairs * 2))
+			{
+				fail("bad!");
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testCheckUnpairedCloseInLargeDocument() throws Exception
+	{
+		PeerCharacterCloser closer = createCloser();
+		// 1 MB of pairs
+		int numPairs = 512 * 1024;
 
 		IDocument document = createDocumentWithPairs(numPairs);
-		for (int i = 0; i < 10; i++)
+		for (int i = 0; i < 500; i++)
 		{
 			startMeasuring();
 			if (closer.unpairedClose('(', ')', document, 0))
@@ -45,12 +58,35 @@ public class PeerCharacterCloserPerfTest extends PerformanceTestCase
 			{
 				fail("bad!");
 			}
+			// typing a pair in the middle of the document
+			document.replace(numPairs, 0, "()");
+			if (closer.unpairedClose('(', ')', document, numPairs + 1))
+			{
+				fail("bad!");
+			}
+			document.replace(numPairs, 2, "");
 			stopMeasuring();
 		}
 		commitMeasurements();
 		assertPerformance();
 	}
 
+	private PeerCharacterCloser createCloser()
+	{
+		return new PeerCharacterCloser(null)
+		{
+			protected List<Character> getPairs(String scope)
+			{
+				List<Character> pairs = new ArrayList<Character>();
+				pairs.add('(');
+				pairs.add(')');
+				pairs.add('"');
+				pairs.add('"');
+				return pairs;
+			}
+		};
+	}
+
 	private IDocument createDocumentWithPairs(int numPairs)
 	{
 		StringBuilder builder = new StringBuilder();
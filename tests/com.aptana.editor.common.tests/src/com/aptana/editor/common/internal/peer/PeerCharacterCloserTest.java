@@ -73,6 +73,10 @@ public class PeerCharacterCloserTest extends TestCase
 	@Override
 	protected void tearDown() throws Exception
 	{
+		if (closer != null)
+		{
+			closer.uninstall();
+		}
 		viewer = null;
 		closer = null;
 		document = null;
@@ -23,6 +23,7 @@ public class PeerTests
 //		suite.addTestSuite(PeerCharacterCloserPerfTest.class);
 		suite.addTestSuite(CharacterPairMatcherTest.class);
 		suite.addTestSuite(ExitPolicyTest.class);
+		suite.addTestSuite(PairIndexTest.class);
 		// $JUnit-END$
 		return suite;
 	}
@@ -18,6 +18,7 @@ import com.aptana.editor.common.CommonEditorPlugin;
 import com.aptana.editor.common.internal.peer.CharacterPairMatcherPerfTest;
 import com.aptana.editor.common.internal.peer.PeerCharacterCloserPerfTest;
 import com.aptana.editor.common.internal.scripting.DocumentScopeManagerPerformanceTest;
+import com.aptana.editor.common.text.reconciler.RubyRegexpFolderIncrementalPerformanceTest;
 import com.aptana.editor.common.text.reconciler.RubyRegexpFolderPerformanceTest;
 import com.aptana.editor.common.text.rules.ThemeingDamagerRepairerPerfTest;
 
@@ -41,6 +42,7 @@ public class PerformanceTests
 		suite.addTestSuite(CharacterPairMatcherPerfTest.class);
 		suite.addTestSuite(DocumentScopeManagerPerformanceTest.class);
 		suite.addTestSuite(PeerCharacterCloserPerfTest.class);
+		suite.addTestSuite(RubyRegexpFolderIncrementalPerformanceTest.class);
 		suite.addTestSuite(RubyRegexpFolderPerformanceTest.class);
 		suite.addTestSuite(ThemeingDamagerRepairerPerfTest.class);
 		// $JUnit-END$
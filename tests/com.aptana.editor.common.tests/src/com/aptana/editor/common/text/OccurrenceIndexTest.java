@@ -0,0 +1,130 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class OccurrenceIndexTest extends TestCase
+{
+	private static final String SOURCE = "var foo = 1;\nfunction bar(foo) {\n  return foo + food + _foo;\n}\nbar(foo);\n";
+
+	private void assertOffsets(OccurrenceIndex index, String word, int... expected)
+	{
+		assertEquals(Arrays.toString(expected), Arrays.toString(index.getOffsets(word)));
+	}
+
+	/**
+	 * Apply an edit to the text and the index. The index must match one built from the edited text
+	 */
+	private String edit(OccurrenceIndex index, String text, int offset, int removedLength, String inserted)
+	{
+		String edited = text.substring(0, offset) + inserted + text.substring(offset + removedLength);
+		index.update(edited, offset, removedLength, inserted.length());
+
+		OccurrenceIndex expected = new OccurrenceIndex(edited);
+		assertEquals(expected.getWordCount(), index.getWordCount());
+
+		for (String word : edited.split("[^\\p{L}\\p{N}_]+"))
+		{
+			if (word.length() > 0)
+			{
+				assertEquals(word, Arrays.toString(expected.getOffsets(word)), Arrays.toString(index.getOffsets(word)));
+			}
+		}
+
+		return edited;
+	}
+
+	public void testIsWord()
+	{
+		assertTrue(OccurrenceIndex.isWord("foo"));
+		assertTrue(OccurrenceIndex.isWord("_foo1"));
+		assertFalse(OccurrenceIndex.isWord("foo.bar"));
+		assertFalse(OccurrenceIndex.isWord("+="));
+		assertFalse(OccurrenceIndex.isWord(""));
+		assertFalse(OccurrenceIndex.isWord(null));
+	}
+
+	public void testWholeWords()
+	{
+		OccurrenceIndex index = new OccurrenceIndex(SOURCE);
+
+		assertOffsets(index, "foo", 4, 26, 42, 67);
+		assertOffsets(index, "food", 48);
+		assertOffsets(index, "_foo", 55);
+		assertOffsets(index, "fo");
+		assertOffsets(index, "missing");
+	}
+
+	public void testInsertIntoWord()
+	{
+		OccurrenceIndex index = new OccurrenceIndex(SOURCE);
+		String text = edit(index, SOURCE, 26, 0, "x");
+
+		assertOffsets(index, "xfoo", 26);
+		assertOffsets(index, "foo", 4, 43, 68);
+
+		edit(index, text, 26, 1, "");
+		assertOffsets(index, "foo", 4, 26, 42, 67);
+	}
+
+	public void testJoinAndSplitWords()
+	{
+		OccurrenceIndex index = new OccurrenceIndex("foo bar");
+		String text = edit(index, "foo bar", 3, 1, "");
+
+		assertOffsets(index, "foobar", 0);
+		assertOffsets(index, "foo");
+
+		edit(index, text, 3, 0, " ");
+		assertOffsets(index, "foo", 0);
+		assertOffsets(index, "bar", 4);
+	}
+
+	public void testReplaceEverything()
+	{
+		OccurrenceIndex index = new OccurrenceIndex(SOURCE);
+		edit(index, SOURCE, 0, SOURCE.length(), "foo foo");
+
+		assertOffsets(index, "foo", 0, 4);
+		assertOffsets(index, "bar");
+	}
+
+	public void testRandomEditsOfLargeText()
+	{
+		Random random = new Random(42);
+		String[] pieces = { "foo", "bar", "baz", " ", ".", "(", ")", "\n", "x1", "_" };
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 5000; i++)
+		{
+			builder.append(pieces[random.nextInt(pieces.length)]);
+		}
+
+		String text = builder.toString();
+		OccurrenceIndex index = new OccurrenceIndex(text);
+
+		for (int i = 0; i < 300; i++)
+		{
+			int offset = random.nextInt(text.length() + 1);
+			int removedLength = random.nextInt(Math.min(20, text.length() - offset) + 1);
+			StringBuilder inserted = new StringBuilder();
+
+			for (int j = random.nextInt(4); j > 0; j--)
+			{
+				inserted.append(pieces[random.nextInt(pieces.length)]);
+			}
+
+			text = edit(index, text, offset, removedLength, inserted.toString());
+		}
+	}
+}
@@ -11,6 +11,7 @@ public class TextTests extends TestCase
 	{
 		TestSuite suite = new TestSuite(TextTests.class.getName());
 		//$JUnit-BEGIN$
+		suite.addTestSuite(OccurrenceIndexTest.class);
 		suite.addTestSuite(RubyRegexpAutoIndentStrategyTest.class);
 		suite.addTestSuite(SingleTokenScannerTest.class);
 		//$JUnit-END$
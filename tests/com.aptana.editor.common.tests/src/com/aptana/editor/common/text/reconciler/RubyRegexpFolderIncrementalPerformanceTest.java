@@ -0,0 +1,133 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text.reconciler;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.test.performance.PerformanceTestCase;
+import org.jruby.Ruby;
+import org.jruby.RubyRegexp;
+import org.jruby.util.RegexpOptions;
+
+/**
+ * Measures folding a large CSS file after each keystroke typed into its middle
+ */
+public class RubyRegexpFolderIncrementalPerformanceTest extends PerformanceTestCase
+{
+	private static final int MIN_LINES = 10000;
+	private static final String TYPED_TEXT = "border: 1px solid red;";
+
+	private IDocument fDocument;
+	private RubyRegexpFolder fFolder;
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		String css = RubyRegexpFolderPerformanceTest.readFile("yui.css");
+		int copies = MIN_LINES / new Document(css).getNumberOfLines() + 1;
+		StringBuilder src = new StringBuilder();
+		for (int i = 0; i < copies; i++)
+		{
+			src.append(css).append('\n');
+		}
+		fDocument = new Document(src.toString());
+
+		Ruby runtime = Ruby.newInstance();
+		final RubyRegexp endFolding = RubyRegexp.newRegexp(runtime, "(?<!\\*)\\*\\*\\/|^\\s*\\}",
+				RegexpOptions.NULL_OPTIONS);
+		final RubyRegexp startFolding = RubyRegexp.newRegexp(runtime,
+				"\\/\\*\\*(?!\\*)|\\{\\s*($|\\/\\*(?!.*?\\*\\/.*\\S))", RegexpOptions.NULL_OPTIONS);
+
+		fFolder = new RubyRegexpFolder(null, fDocument)
+		{
+			@Override
+			protected RubyRegexp getEndFoldRegexp(String scope)
+			{
+				return endFolding;
+			}
+
+			@Override
+			protected RubyRegexp getStartFoldRegexp(String scope)
+			{
+				return startFolding;
+			}
+
+			@Override
+			protected String getScopeAtOffset(int offset) throws BadLocationException
+			{
+				return "source.css";
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception
+	{
+		fFolder = null;
+		fDocument = null;
+		super.tearDown();
+	}
+
+	/**
+	 * Type into the start of the middle line, folding after each keystroke
+	 * 
+	 * @param initialReconcile
+	 *            whether each fold starts over instead of reusing the previous one
+	 * @throws Exception
+	 */
+	private void timeTyping(boolean initialReconcile) throws Exception
+	{
+		fFolder.emitFoldingRegions(true, new NullProgressMonitor());
+
+		int offset = fDocument.getLineOffset(fDocument.getNumberOfLines() / 2);
+
+		for (char c : TYPED_TEXT.toCharArray())
+		{
+			fDocument.replace(offset++, 0, String.valueOf(c));
+
+			startMeasuring();
+			fFolder.emitFoldingRegions(initialReconcile, new NullProgressMonitor());
+			stopMeasuring();
+		}
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * testFullFoldingKeystrokes
+	 * 
+	 * @throws Exception
+	 */
+	public void testFullFoldingKeystrokes() throws Exception
+	{
+		timeTyping(true);
+	}
+
+	/**
+	 * testIncrementalFoldingKeystrokes
+	 * 
+	 * @throws Exception
+	 */
+	public void testIncrementalFoldingKeystrokes() throws Exception
+	{
+		timeTyping(false);
+	}
+}
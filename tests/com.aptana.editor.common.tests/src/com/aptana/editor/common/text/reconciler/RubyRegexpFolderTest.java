@@ -8,6 +8,7 @@
 package com.aptana.editor.common.text.reconciler;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
 
 import junit.framework.TestCase;
@@ -172,4 +173,116 @@ public class RubyRegexpFolderTest extends TestCase
 		assertEquals(1, positions.size());
 		assertTrue(positions.contains(new Position(0, src.length()))); // eats whole line at end
 	}
+
+	public void testIncrementalFoldingMatchesFullFolding() throws Exception
+	{
+		String src = "body {\n" + "	color: red;\n" + "}\n" + "\n" + "div p {\n" + "	background-color: green;\n" + "}\n"
+				+ "\n" + "/**\n" + " * comment\n" + " **/\n" + "#id { \n" + "	font-family: monospace;\n" + "}";
+		IDocument document = new Document(src);
+		RubyRegexpFolder folder = createCSSFolder(document, false);
+		folder.emitFoldingRegions(true, new NullProgressMonitor());
+
+		// open a new rule
+		document.replace(src.indexOf("div p"), 0, "a {\n");
+		assertSameFolding(document, folder, false);
+
+		// close it
+		document.replace(document.get().indexOf("div p"), 0, "}\n");
+		assertSameFolding(document, folder, false);
+
+		// edit inside a rule
+		document.replace(document.get().indexOf("green"), 5, "blue");
+		assertSameFolding(document, folder, false);
+
+		// remove the end of a rule
+		int end = document.get().indexOf("}\n\n/**");
+		document.replace(end, 2, "");
+		assertSameFolding(document, folder, false);
+
+		// remove the start of the comment
+		document.replace(document.get().indexOf("/**"), 4, "");
+		assertSameFolding(document, folder, false);
+
+		// and add it back
+		document.replace(document.get().indexOf(" * comment"), 0, "/**\n");
+		assertSameFolding(document, folder, false);
+	}
+
+	public void testIncrementalFoldingFollowsScopeChanges() throws Exception
+	{
+		String src = "body {\n" + "	color: red;\n" + "}\n" + "\n" + "div p {\n" + "	background-color: green;\n" + "}\n"
+				+ "\n" + "/**\n" + " * comment\n" + " **/\n" + "#id { \n" + "	font-family: monospace;\n" + "}";
+		IDocument document = new Document(src);
+		RubyRegexpFolder folder = createCSSFolder(document, true);
+		folder.emitFoldingRegions(true, new NullProgressMonitor());
+
+		// open a comment, which turns the unchanged lines up to the end of the existing comment into comment lines
+		document.replace(src.indexOf("div p"), 0, "/*\n");
+		assertSameFolding(document, folder, true);
+		assertEquals(3, folder.emitFoldingRegions(false, new NullProgressMonitor()).size());
+
+		// and remove it again
+		document.replace(document.get().indexOf("/*\ndiv p"), 3, "");
+		assertSameFolding(document, folder, true);
+		assertEquals(4, folder.emitFoldingRegions(false, new NullProgressMonitor()).size());
+	}
+
+	/**
+	 * Creates a folder for CSS. When tracking comments, lines that start inside a block comment only fold on doc
+	 * comments, so an edit that opens or closes a comment changes the regexps of the unchanged lines after it.
+	 */
+	private RubyRegexpFolder createCSSFolder(final IDocument document, final boolean trackComments)
+	{
+		final RubyRegexp endFolding = RubyRegexp.newRegexp(runtime, "(?<!\\*)\\*\\*\\/|^\\s*\\}",
+				RegexpOptions.NULL_OPTIONS);
+		final RubyRegexp startFolding = RubyRegexp.newRegexp(runtime,
+				"\\/\\*\\*(?!\\*)|\\{\\s*($|\\/\\*(?!.*?\\*\\/.*\\S))", RegexpOptions.NULL_OPTIONS);
+		final RubyRegexp commentStartFolding = RubyRegexp.newRegexp(runtime, "\\/\\*\\*(?!\\*)",
+				RegexpOptions.NULL_OPTIONS);
+
+		return new RubyRegexpFolder(null, document)
+		{
+			@Override
+			protected RubyRegexp getEndFoldRegexp(String scope)
+			{
+				return endFolding;
+			}
+
+			@Override
+			protected RubyRegexp getStartFoldRegexp(String scope)
+			{
+				return scope.endsWith("comment.block.css") ? commentStartFolding : startFolding;
+			}
+
+			@Override
+			protected String getScopeAtOffset(int offset) throws BadLocationException
+			{
+				if (trackComments)
+				{
+					String text = document.get();
+					int commentStart = text.lastIndexOf("/*", offset - 1);
+					if (commentStart != -1)
+					{
+						int commentEnd = text.indexOf("*/", commentStart + 2);
+						if (commentEnd == -1 || offset < commentEnd + 2)
+						{
+							return "source.css comment.block.css";
+						}
+					}
+				}
+				return "source.css";
+			}
+		};
+	}
+
+	private void assertSameFolding(IDocument document, RubyRegexpFolder folder, boolean trackComments)
+			throws BadLocationException
+	{
+		Collection<Position> expected = createCSSFolder(document, trackComments)
+				.emitFoldingRegions(true, new NullProgressMonitor()).values();
+		Collection<Position> actual = folder.emitFoldingRegions(false, new NullProgressMonitor()).values();
+
+		assertEquals(new HashSet<Position>(expected), new HashSet<Position>(actual));
+		assertEquals(expected.size(), actual.size());
+	}
 }
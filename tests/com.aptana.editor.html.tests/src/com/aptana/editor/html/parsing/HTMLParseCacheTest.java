@@ -0,0 +1,101 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.html.parsing;
+
+import junit.framework.TestCase;
+
+import com.aptana.editor.html.IHTMLConstants;
+import com.aptana.parsing.ParserPoolFactory;
+import com.aptana.parsing.ast.IParseRootNode;
+
+@SuppressWarnings("nls")
+public class HTMLParseCacheTest extends TestCase
+{
+	private static final String SOURCE = "<html><head><style>body { color: red; }</style>"
+			+ "<script>var a = function() { return 1; };</script></head>"
+			+ "<body><p onclick=\"a();\">Text</p></body></html>";
+
+	private ParserPoolFactory factory;
+	private int cacheSize;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		factory = ParserPoolFactory.getInstance();
+		cacheSize = factory.getParseCacheSize();
+		factory.flushParseCache();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		factory.setParseCacheSize(cacheSize);
+		factory.flushParseCache();
+		factory = null;
+		super.tearDown();
+	}
+
+	private IParseRootNode parse(String source) throws Exception
+	{
+		// reconciling hands the parser a fresh copy of the document contents each time
+		return ParserPoolFactory.parse(IHTMLConstants.CONTENT_TYPE_HTML, new String(source));
+	}
+
+	public void testReparseOfUnchangedSourceDoesNotParse() throws Exception
+	{
+		IParseRootNode ast = parse(SOURCE);
+		assertNotNull(ast);
+
+		// the HTML document and its CSS and JS parts
+		long misses = factory.getParseCacheMisses();
+		assertTrue(misses >= 3);
+		assertEquals(0, factory.getParseCacheHits());
+
+		IParseRootNode reparsed = parse(SOURCE);
+
+		assertSame(ast, reparsed);
+		assertEquals(misses, factory.getParseCacheMisses());
+		assertEquals(1, factory.getParseCacheHits());
+	}
+
+	public void testChangedSourceIsParsed() throws Exception
+	{
+		IParseRootNode ast = parse(SOURCE);
+		long misses = factory.getParseCacheMisses();
+
+		IParseRootNode reparsed = parse(SOURCE.replace("Text", "Other"));
+
+		assertNotSame(ast, reparsed);
+		assertTrue(factory.getParseCacheMisses() > misses);
+	}
+
+	public void testChangedOffsetIsParsed() throws Exception
+	{
+		IParseRootNode ast = parse(SOURCE);
+		long misses = factory.getParseCacheMisses();
+
+		IParseRootNode reparsed = ParserPoolFactory.parse(IHTMLConstants.CONTENT_TYPE_HTML, SOURCE, 10);
+
+		assertNotSame(ast, reparsed);
+		assertTrue(factory.getParseCacheMisses() > misses);
+	}
+
+	public void testShrinkingCacheEvictsASTs() throws Exception
+	{
+		parse(SOURCE);
+		assertEquals(0, factory.getParseCacheEvictions());
+
+		factory.setParseCacheSize(1);
+		assertTrue(factory.getParseCacheEvictions() >= 3);
+
+		long misses = factory.getParseCacheMisses();
+		parse(SOURCE);
+		assertTrue(factory.getParseCacheMisses() > misses);
+	}
+}
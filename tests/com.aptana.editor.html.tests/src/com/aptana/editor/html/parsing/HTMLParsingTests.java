@@ -18,6 +18,7 @@ public class HTMLParsingTests extends TestCase
 	{
 		TestSuite suite = new TestSuite(HTMLParsingTests.class.getName());
 		// $JUnit-BEGIN$
+		suite.addTestSuite(HTMLParseCacheTest.class);
 		suite.addTestSuite(HTMLUtilsTest.class);
 		// $JUnit-END$
 		return suite;
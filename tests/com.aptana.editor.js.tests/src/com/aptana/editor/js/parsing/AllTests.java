@@ -17,6 +17,7 @@ public class AllTests
 	{
 		TestSuite suite = new TestSuite("Tests for com.aptana.editor.js");
 		// $JUnit-BEGIN$
+		suite.addTestSuite(JSIncrementalParserTest.class);
 		suite.addTestSuite(JSParserTest.class);
 		// $JUnit-END$
 		return suite;
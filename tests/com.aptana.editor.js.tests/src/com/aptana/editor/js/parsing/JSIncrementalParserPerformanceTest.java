@@ -0,0 +1,197 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.js.parsing;
+
+import java.io.InputStream;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.editor.js.JSPlugin;
+import com.aptana.editor.js.parsing.ast.JSFunctionNode;
+import com.aptana.parsing.ast.IParseNode;
+
+/**
+ * Measures the time from a keystroke to an updated AST when typing into a function body of a large file, with and
+ * without incremental parsing
+ */
+public class JSIncrementalParserPerformanceTest extends PerformanceTestCase
+{
+	private static final String TYPED_TEXT = "the quick brown fox jumps over the lazy dog"; //$NON-NLS-1$
+	private static final String STATEMENT_START = "var s = \""; //$NON-NLS-1$
+	private static final String STATEMENT_END = "\";\n"; //$NON-NLS-1$
+
+	private JSParser fParser;
+	private String fSource;
+	private int fOffset;
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		fParser = new JSParser();
+
+		InputStream stream = FileLocator.openStream(Platform.getBundle(JSPlugin.PLUGIN_ID), new Path(
+				ITestFiles.DOJO_FILES[0]), false);
+		String source = IOUtil.read(stream);
+
+		// add an empty string to the function body closest to the middle of the file. Keystrokes are typed into it
+		JSFunctionNode function = findFunction(parse(source).getParseResult(), source.length() / 2, null);
+		assertNotNull(function);
+
+		int bodyStart = function.getBody().getStartingOffset() + 1;
+
+		fSource = source.substring(0, bodyStart) + STATEMENT_START + STATEMENT_END + source.substring(bodyStart);
+		fOffset = bodyStart + STATEMENT_START.length();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception
+	{
+		fParser = null;
+		fSource = null;
+		super.tearDown();
+	}
+
+	/**
+	 * Find the function whose body starts closest to the given offset
+	 *
+	 * @param node
+	 * @param offset
+	 * @param closest
+	 * @return
+	 */
+	private JSFunctionNode findFunction(IParseNode node, int offset, JSFunctionNode closest)
+	{
+		JSFunctionNode result = closest;
+
+		if (node instanceof JSFunctionNode)
+		{
+			JSFunctionNode function = (JSFunctionNode) node;
+
+			if (result == null
+					|| Math.abs(function.getBody().getStartingOffset() - offset) < Math.abs(result.getBody()
+							.getStartingOffset() - offset))
+			{
+				result = function;
+			}
+		}
+
+		for (IParseNode child : node)
+		{
+			result = findFunction(child, offset, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * parse
+	 *
+	 * @param source
+	 * @return
+	 * @throws Exception
+	 */
+	private JSParseState parse(String source) throws Exception
+	{
+		JSParseState parseState = createParseState();
+		parseState.setEditState(source);
+		fParser.parse(parseState);
+
+		return parseState;
+	}
+
+	/**
+	 * createParseState
+	 *
+	 * @return
+	 */
+	private JSParseState createParseState()
+	{
+		JSParseState parseState = new JSParseState();
+		parseState.setAttachComments(false);
+		parseState.setCollectComments(false);
+
+		return parseState;
+	}
+
+	/**
+	 * Type each character of the text, parsing the source after each keystroke
+	 *
+	 * @param incremental
+	 * @throws Exception
+	 */
+	private void timeTyping(boolean incremental) throws Exception
+	{
+		JSParseState previousState = parse(fSource);
+		String source = fSource;
+		int offset = fOffset;
+
+		for (char c : TYPED_TEXT.toCharArray())
+		{
+			source = source.substring(0, offset) + c + source.substring(offset);
+
+			JSParseState parseState = createParseState();
+
+			if (incremental)
+			{
+				parseState.setEditState(source, 0, previousState, offset, 0, 1);
+			}
+			else
+			{
+				parseState.setEditState(source);
+			}
+
+			startMeasuring();
+			fParser.parse(parseState);
+			stopMeasuring();
+
+			if (incremental)
+			{
+				assertSame(previousState.getParseResult(), parseState.getParseResult());
+			}
+
+			offset++;
+			previousState = parseState;
+		}
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * testFullParseKeystrokes
+	 *
+	 * @throws Exception
+	 */
+	public void testFullParseKeystrokes() throws Exception
+	{
+		timeTyping(false);
+	}
+
+	/**
+	 * testIncrementalParseKeystrokes
+	 *
+	 * @throws Exception
+	 */
+	public void testIncrementalParseKeystrokes() throws Exception
+	{
+		timeTyping(true);
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.js.parsing;
+
+import junit.framework.TestCase;
+
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseRootNode;
+
+@SuppressWarnings("nls")
+public class JSIncrementalParserTest extends TestCase
+{
+	private static final String SOURCE = "var a = 1;\n" //
+			+ "function outer(x) {\n" //
+			+ "  var b = x + a; // add\n" //
+			+ "  function inner() {\n" //
+			+ "    return b * 2;\n" //
+			+ "  }\n" //
+			+ "  return inner();\n" //
+			+ "}\n" //
+			+ "/* trailing */\n" //
+			+ "var c = outer(a);\n";
+
+	private JSParser fParser;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		fParser = new JSParser();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		fParser = null;
+		super.tearDown();
+	}
+
+	private JSParseState parse(String source, int startingOffset) throws Exception
+	{
+		JSParseState parseState = new JSParseState();
+		parseState.setEditState(source, startingOffset);
+		fParser.parse(parseState);
+		return parseState;
+	}
+
+	/**
+	 * Apply an edit to the source of the previous parse and parse it incrementally. The result must match a full parse
+	 * of the edited source
+	 */
+	private JSParseState reparse(JSParseState previousState, String source, int offset, int removedLength,
+			String text) throws Exception
+	{
+		String edited = source.substring(0, offset) + text + source.substring(offset + removedLength);
+		JSParseState expected = parse(edited, previousState.getStartingOffset());
+
+		JSParseState parseState = new JSParseState();
+		parseState.setEditState(edited, previousState.getStartingOffset(), previousState, offset, removedLength,
+				text.length());
+		fParser.parse(parseState);
+
+		assertSameTree(expected.getParseResult(), parseState.getParseResult());
+		assertSameComments(expected.getParseResult(), parseState.getParseResult());
+		assertEquals(expected.getErrors().size(), parseState.getErrors().size());
+
+		return parseState;
+	}
+
+	private void assertSameTree(IParseNode expected, IParseNode actual)
+	{
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getNodeType(), actual.getNodeType());
+		assertEquals(expected.getStartingOffset(), actual.getStartingOffset());
+		assertEquals(expected.getEndingOffset(), actual.getEndingOffset());
+		assertEquals(expected.getChildCount(), actual.getChildCount());
+
+		for (int i = 0; i < expected.getChildCount(); i++)
+		{
+			assertSameTree(expected.getChild(i), actual.getChild(i));
+		}
+	}
+
+	private void assertSameComments(IParseRootNode expected, IParseRootNode actual)
+	{
+		IParseNode[] expectedComments = ((ParseRootNode) expected).getCommentNodes();
+		IParseNode[] actualComments = ((ParseRootNode) actual).getCommentNodes();
+
+		assertEquals(expectedComments.length, actualComments.length);
+
+		for (int i = 0; i < expectedComments.length; i++)
+		{
+			assertEquals(expectedComments[i].getNodeType(), actualComments[i].getNodeType());
+			assertEquals(expectedComments[i].getStartingOffset(), actualComments[i].getStartingOffset());
+			assertEquals(expectedComments[i].getEndingOffset(), actualComments[i].getEndingOffset());
+		}
+	}
+
+	private void assertIncremental(IParseState previousState, IParseState parseState)
+	{
+		assertSame(previousState.getParseResult(), parseState.getParseResult());
+	}
+
+	private void assertNotIncremental(IParseRootNode previousResult, IParseState parseState)
+	{
+		assertNotSame(previousResult, parseState.getParseResult());
+	}
+
+	public void testInsertIntoFunctionBody() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		int offset = SOURCE.indexOf("return inner();");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 0, "b++;\n  ");
+
+		assertIncremental(previousState, parseState);
+	}
+
+	public void testRemoveFromFunctionBody() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		int offset = SOURCE.indexOf(" + a");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 4, "");
+
+		assertIncremental(previousState, parseState);
+	}
+
+	public void testReplaceInNestedFunctionBody() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		int offset = SOURCE.indexOf("b * 2");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 5, "(b - 1) * 3");
+
+		assertIncremental(previousState, parseState);
+	}
+
+	public void testEditWithStartingOffset() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 100);
+		int offset = SOURCE.indexOf("return b");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 0, "b = b + 1;\n    ");
+
+		assertIncremental(previousState, parseState);
+	}
+
+	public void testSuccessiveEdits() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		String source = SOURCE;
+		int offset = SOURCE.indexOf("return inner();");
+		String text = "var s = \"\";\n  ";
+
+		previousState = reparse(previousState, source, offset, 0, text);
+		source = source.substring(0, offset) + text + source.substring(offset);
+		offset += "var s = \"".length();
+
+		for (char c : "typing".toCharArray())
+		{
+			IParseRootNode previousResult = previousState.getParseResult();
+			JSParseState parseState = reparse(previousState, source, offset, 0, String.valueOf(c));
+
+			assertSame(previousResult, parseState.getParseResult());
+
+			source = source.substring(0, offset) + c + source.substring(offset);
+			offset++;
+			previousState = parseState;
+		}
+	}
+
+	public void testEditOutsideOfFunctionIsParsedInFull() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		IParseRootNode previousResult = previousState.getParseResult();
+		int offset = SOURCE.indexOf("var c");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 0, "a++;\n");
+
+		assertNotIncremental(previousResult, parseState);
+	}
+
+	public void testSyntaxErrorInFunctionBodyIsParsedInFull() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		IParseRootNode previousResult = previousState.getParseResult();
+		int offset = SOURCE.indexOf("return inner();");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 0, "var = ;\n  ");
+
+		assertNotIncremental(previousResult, parseState);
+		assertFalse(parseState.getErrors().isEmpty());
+	}
+
+	public void testRemovingClosingBraceIsParsedInFull() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		IParseRootNode previousResult = previousState.getParseResult();
+		int offset = SOURCE.indexOf("  }\n");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 4, "");
+
+		assertNotIncremental(previousResult, parseState);
+	}
+
+	public void testUnterminatedCommentIsParsedInFull() throws Exception
+	{
+		JSParseState previousState = parse(SOURCE, 0);
+		IParseRootNode previousResult = previousState.getParseResult();
+		int offset = SOURCE.indexOf("return inner();");
+
+		JSParseState parseState = reparse(previousState, SOURCE, offset, 0, "/* ");
+
+		assertNotIncremental(previousResult, parseState);
+	}
+}
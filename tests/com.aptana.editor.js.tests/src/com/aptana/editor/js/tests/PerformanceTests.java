@@ -18,9 +18,11 @@ import com.aptana.editor.js.JSCodeScannerPerformanceTest;
 import com.aptana.editor.js.JSPlugin;
 import com.aptana.editor.js.contentassist.JSBuildPerformanceTest;
 import com.aptana.editor.js.contentassist.JSIndexingPerformanceTest;
+import com.aptana.editor.js.parsing.JSIncrementalParserPerformanceTest;
 import com.aptana.editor.js.parsing.JSParserPerformanceTest;
 import com.aptana.editor.js.parsing.JSScannerPerformanceTest;
 import com.aptana.editor.js.sdoc.parsing.SDocParserPerformanceTest;
+import com.aptana.editor.js.validator.JSLintValidatorPerformanceTest;
 
 public class PerformanceTests
 {
@@ -41,7 +43,9 @@ public class PerformanceTests
 		// $JUnit-BEGIN$
 		suite.addTestSuite(JSBuildPerformanceTest.class);
 		suite.addTestSuite(JSCodeScannerPerformanceTest.class);
+		suite.addTestSuite(JSIncrementalParserPerformanceTest.class);
 		suite.addTestSuite(JSIndexingPerformanceTest.class);
+		suite.addTestSuite(JSLintValidatorPerformanceTest.class);
 		suite.addTestSuite(JSParserPerformanceTest.class);
 		suite.addTestSuite(JSScannerPerformanceTest.class);
 		suite.addTestSuite(SDocParserPerformanceTest.class);
@@ -0,0 +1,148 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.js.validator;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.editor.js.JSPlugin;
+
+public class JSLintValidatorPerformanceTest extends PerformanceTestCase
+{
+	private JSLintValidator validator;
+	private List<String> sources;
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		validator = new JSLintValidator();
+		sources = new ArrayList<String>();
+
+		URL url = FileLocator.find(Platform.getBundle(JSPlugin.PLUGIN_ID), new Path("performance/jaxer"), null);
+		File root = new File(FileLocator.toFileURL(url).getPath());
+		File[] files = root.listFiles(new FileFilter()
+		{
+			public boolean accept(File pathname)
+			{
+				return pathname.isFile() && pathname.getName().toLowerCase().endsWith(".js");
+			}
+		});
+		for (File file : files)
+		{
+			FileInputStream stream = new FileInputStream(file);
+			try
+			{
+				sources.add(IOUtil.read(stream));
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+
+		// warm up the lint scope of this thread, so the runs measure linting only
+		validator.lint("var x = 1;", "warmup.js");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception
+	{
+		validator = null;
+		sources = null;
+		super.tearDown();
+	}
+
+	public void testLintCorpus() throws Exception
+	{
+		final int numRuns = 3;
+		for (int i = 0; i < numRuns; i++)
+		{
+			long start = System.nanoTime();
+			startMeasuring();
+			for (String source : sources)
+			{
+				validator.lint(source, "corpus.js");
+			}
+			stopMeasuring();
+			printThroughput("sequential", start);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testLintCorpusConcurrently() throws Exception
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			final int numRuns = 3;
+			for (int i = 0; i < numRuns; i++)
+			{
+				List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+				for (final String source : sources)
+				{
+					tasks.add(new Callable<Object>()
+					{
+						public Object call() throws Exception
+						{
+							return validator.lint(source, "corpus.js");
+						}
+					});
+				}
+
+				long start = System.nanoTime();
+				startMeasuring();
+				for (Future<Object> future : executor.invokeAll(tasks))
+				{
+					future.get();
+				}
+				stopMeasuring();
+				printThroughput(MessageFormat.format("{0} threads", threads), start);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	private void printThroughput(String run, long start)
+	{
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		System.out.println(MessageFormat.format("JSLint {0}: {1} files in {2} s, {3} files/s", run, sources.size(),
+				seconds, sources.size() / seconds));
+	}
+}
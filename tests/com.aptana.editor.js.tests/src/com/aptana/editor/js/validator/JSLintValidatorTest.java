@@ -7,17 +7,26 @@
  */
 package com.aptana.editor.js.validator;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
 
 import com.aptana.core.build.AbstractBuildParticipant;
 import com.aptana.core.build.IProblem;
+import com.aptana.editor.common.tests.util.TestProject;
 import com.aptana.editor.common.validation.AbstractValidatorTestCase;
 import com.aptana.editor.js.IJSConstants;
 import com.aptana.editor.js.JSPlugin;
 import com.aptana.editor.js.parsing.JSParseState;
+import com.aptana.index.core.build.BuildContext;
 
 public class JSLintValidatorTest extends AbstractValidatorTestCase
 {
@@ -65,4 +74,55 @@ public class JSLintValidatorTest extends AbstractValidatorTestCase
 		assertEquals(IMarker.SEVERITY_WARNING, item.getSeverity());
 		assertEquals(24, item.getOffset());
 	}
+
+	public void testConcurrentLinting() throws Exception
+	{
+		assertTrue(fValidator.isThreadSafe());
+
+		final int fileCount = 16;
+		TestProject project = new TestProject("Test", new String[] { "com.aptana.projects.webnature" });
+		try
+		{
+			List<BuildContext> contexts = new ArrayList<BuildContext>();
+			for (int i = 0; i < fileCount; i++)
+			{
+				IFile file = project.createFile("concurrent" + i + ".js", "var foo = function() {\nhello" + i
+						+ "();\n};");
+				contexts.add(new BuildContext(file));
+			}
+
+			// lint all the files on a pool of threads, the way the builder does
+			ExecutorService workers = Executors.newFixedThreadPool(4);
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (final BuildContext context : contexts)
+			{
+				results.add(workers.submit(new Runnable()
+				{
+					public void run()
+					{
+						fValidator.buildFile(context, new NullProgressMonitor());
+					}
+				}));
+			}
+			for (Future<?> result : results)
+			{
+				result.get();
+			}
+			workers.shutdown();
+
+			// each file only gets its own problem
+			for (int i = 0; i < fileCount; i++)
+			{
+				Collection<IProblem> problems = contexts.get(i).getProblems()
+						.get(IJSConstants.JSLINT_PROBLEM_MARKER_TYPE);
+				assertNotNull(problems);
+				assertEquals(1, problems.size());
+				assertEquals("'hello" + i + "' is not defined.", problems.iterator().next().getMessage());
+			}
+		}
+		finally
+		{
+			project.delete();
+		}
+	}
 }
@@ -3,6 +3,8 @@ package com.aptana.filesystem.s3.tests;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import com.aptana.ide.filesystem.s3.S3StreamsTest;
+
 public class AllTests
 {
 
@@ -11,6 +13,7 @@ public class AllTests
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		//$JUnit-BEGIN$
 		suite.addTestSuite(S3ConnectionPointTest.class);
+		suite.addTestSuite(S3StreamsTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,321 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.filesystem.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazon.s3.AWSAuthConnection;
+import com.amazon.s3.CallingFormat;
+
+/**
+ * A minimal in-memory stand-in for S3, serving the object, multipart upload and range requests over plain HTTP on a
+ * local port. Each request is answered on its own connection.
+ */
+@SuppressWarnings("nls")
+class LocalS3Server implements Runnable
+{
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+	private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>([^<]*)</ETag>");
+
+	final Map<String, byte[]> objects = new HashMap<String, byte[]>();
+	final Map<String, SortedMap<Integer, byte[]>> uploads = new HashMap<String, SortedMap<Integer, byte[]>>();
+	final AtomicInteger putCount = new AtomicInteger();
+	final AtomicInteger partCount = new AtomicInteger();
+	final AtomicInteger rangeCount = new AtomicInteger();
+	final AtomicInteger abortCount = new AtomicInteger();
+	final AtomicInteger concurrentRequests = new AtomicInteger();
+	final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	volatile int failingPart = -1;
+
+	private final ServerSocket serverSocket;
+	private int nextUploadId;
+
+	LocalS3Server() throws IOException
+	{
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread thread = new Thread(this, "Local S3");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	AWSAuthConnection createConnection()
+	{
+		return new AWSAuthConnection("accessKey", "secretAccessKey", false, "127.0.0.1", serverSocket.getLocalPort(),
+				CallingFormat.getPathCallingFormat());
+	}
+
+	void stop() throws IOException
+	{
+		serverSocket.close();
+	}
+
+	public void run()
+	{
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				final Socket socket = serverSocket.accept();
+				Thread thread = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						serve(socket);
+					}
+				});
+				thread.setDaemon(true);
+				thread.start();
+			}
+			catch (IOException e)
+			{
+				// closed
+			}
+		}
+	}
+
+	private void serve(Socket socket)
+	{
+		int concurrent = concurrentRequests.incrementAndGet();
+		int max;
+		while (concurrent > (max = maxConcurrentRequests.get()))
+		{
+			if (maxConcurrentRequests.compareAndSet(max, concurrent))
+			{
+				break;
+			}
+		}
+		try
+		{
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			String[] requestLine = readLine(in).split(" ");
+			Map<String, String> headers = new HashMap<String, String>();
+			String line;
+			while ((line = readLine(in)).length() > 0)
+			{
+				int colon = line.indexOf(':');
+				headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+			}
+			byte[] body = new byte[headers.containsKey("content-length") ? Integer.parseInt(headers
+					.get("content-length")) : 0];
+			in.readFully(body);
+			handle(requestLine[0], requestLine[1], headers, body, socket.getOutputStream());
+		}
+		catch (IOException e)
+		{
+			// client went away
+		}
+		finally
+		{
+			concurrentRequests.decrementAndGet();
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	private void handle(String method, String target, Map<String, String> headers, byte[] body, OutputStream out)
+			throws IOException
+	{
+		if (headers.get("authorization") == null || !headers.get("authorization").startsWith("AWS "))
+		{
+			respond(out, 403, "Forbidden", null, new byte[0]);
+			return;
+		}
+		int question = target.indexOf('?');
+		String key = (question == -1) ? target : target.substring(0, question);
+		Map<String, String> query = new HashMap<String, String>();
+		if (question != -1)
+		{
+			for (String arg : target.substring(question + 1).split("&"))
+			{
+				int equals = arg.indexOf('=');
+				query.put((equals == -1) ? arg : arg.substring(0, equals), (equals == -1) ? null : arg
+						.substring(equals + 1));
+			}
+		}
+
+		if ("POST".equals(method) && query.containsKey("uploads"))
+		{
+			String uploadId;
+			synchronized (this)
+			{
+				uploadId = "upload" + (++nextUploadId);
+				uploads.put(uploadId, new TreeMap<Integer, byte[]>());
+			}
+			respond(out, 200, "OK", null, ("<InitiateMultipartUploadResult><Bucket>b</Bucket><Key>k</Key><UploadId>"
+					+ uploadId + "</UploadId></InitiateMultipartUploadResult>").getBytes("UTF-8"));
+		}
+		else if ("PUT".equals(method) && query.containsKey("uploadId"))
+		{
+			int partNumber = Integer.parseInt(query.get("partNumber"));
+			if (partNumber == failingPart)
+			{
+				respond(out, 500, "Internal Server Error", null, "<Error><Message>failed</Message></Error>"
+						.getBytes("UTF-8"));
+				return;
+			}
+			synchronized (this)
+			{
+				SortedMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+				if (parts == null)
+				{
+					respond(out, 404, "Not Found", null, new byte[0]);
+					return;
+				}
+				parts.put(partNumber, body);
+			}
+			partCount.incrementAndGet();
+			respond(out, 200, "OK", "ETag: \"part" + partNumber + "\"", new byte[0]);
+		}
+		else if ("POST".equals(method) && query.containsKey("uploadId"))
+		{
+			SortedMap<Integer, byte[]> parts;
+			synchronized (this)
+			{
+				parts = uploads.remove(query.get("uploadId"));
+			}
+			ByteArrayOutputStream object = new ByteArrayOutputStream();
+			Matcher matcher = PART.matcher(new String(body, "UTF-8"));
+			int expected = 1;
+			while (matcher.find())
+			{
+				int partNumber = Integer.parseInt(matcher.group(1));
+				if (parts == null || partNumber != expected++ || !parts.containsKey(partNumber)
+						|| !("\"part" + partNumber + "\"").equals(matcher.group(2)))
+				{
+					respond(out, 400, "Bad Request", null, "<Error><Message>InvalidPart</Message></Error>"
+							.getBytes("UTF-8"));
+					return;
+				}
+				object.write(parts.get(partNumber));
+			}
+			synchronized (this)
+			{
+				objects.put(key, object.toByteArray());
+			}
+			respond(out, 200, "OK", null, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>"
+					.getBytes("UTF-8"));
+		}
+		else if ("DELETE".equals(method) && query.containsKey("uploadId"))
+		{
+			synchronized (this)
+			{
+				uploads.remove(query.get("uploadId"));
+			}
+			abortCount.incrementAndGet();
+			respond(out, 204, "No Content", null, new byte[0]);
+		}
+		else if ("PUT".equals(method))
+		{
+			synchronized (this)
+			{
+				objects.put(key, body);
+			}
+			putCount.incrementAndGet();
+			respond(out, 200, "OK", "ETag: \"object\"", new byte[0]);
+		}
+		else if ("GET".equals(method))
+		{
+			byte[] object;
+			synchronized (this)
+			{
+				object = objects.get(key);
+			}
+			if (object == null)
+			{
+				respond(out, 404, "Not Found", null, "<Error><Message>NoSuchKey</Message></Error>".getBytes("UTF-8"));
+				return;
+			}
+			String eTag = "\"" + object.length + "\"";
+			String ifMatch = headers.get("if-match");
+			if (ifMatch != null && !ifMatch.equals(eTag))
+			{
+				respond(out, 412, "Precondition Failed", null, new byte[0]);
+				return;
+			}
+			String range = headers.get("range");
+			if (range == null)
+			{
+				respond(out, 200, "OK", "ETag: " + eTag, object);
+				return;
+			}
+			Matcher matcher = RANGE.matcher(range);
+			if (!matcher.matches())
+			{
+				respond(out, 400, "Bad Request", null, new byte[0]);
+				return;
+			}
+			int first = Integer.parseInt(matcher.group(1));
+			int last = Math.min(Integer.parseInt(matcher.group(2)), object.length - 1);
+			if (first >= object.length)
+			{
+				respond(out, 416, "Requested Range Not Satisfiable", null, new byte[0]);
+				return;
+			}
+			rangeCount.incrementAndGet();
+			byte[] data = new byte[last - first + 1];
+			System.arraycopy(object, first, data, 0, data.length);
+			respond(out, 206, "Partial Content", "ETag: " + eTag + "\r\nContent-Range: bytes " + first + "-" + last
+					+ "/" + object.length, data);
+		}
+		else
+		{
+			respond(out, 405, "Method Not Allowed", null, new byte[0]);
+		}
+	}
+
+	private static void respond(OutputStream out, int status, String reason, String headers, byte[] body)
+			throws IOException
+	{
+		StringBuilder response = new StringBuilder();
+		response.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+		if (headers != null)
+		{
+			response.append(headers).append("\r\n");
+		}
+		response.append("Content-Length: ").append(body.length).append("\r\n");
+		response.append("Connection: close\r\n\r\n");
+		out.write(response.toString().getBytes("ISO-8859-1"));
+		out.write(body);
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n')
+		{
+			if (c != '\r')
+			{
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+}
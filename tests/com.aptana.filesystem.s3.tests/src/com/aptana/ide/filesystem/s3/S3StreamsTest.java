@@ -0,0 +1,175 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.filesystem.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.amazon.s3.AWSAuthConnection;
+
+@SuppressWarnings("nls")
+public class S3StreamsTest extends TestCase
+{
+
+	private static final int PART_SIZE = 64 * 1024;
+
+	private LocalS3Server server;
+	private AWSAuthConnection connection;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		server = new LocalS3Server();
+		connection = server.createConnection();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			server.stop();
+		}
+		finally
+		{
+			server = null;
+			connection = null;
+			super.tearDown();
+		}
+	}
+
+	private static byte[] createData(int length)
+	{
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	private void upload(byte[] data) throws IOException
+	{
+		OutputStream out = new S3MultipartOutputStream(connection, "bucket", "file.bin", PART_SIZE);
+		Random random = new Random(42);
+		int offset = 0;
+		while (offset < data.length)
+		{
+			int n = Math.min(data.length - offset, 1 + random.nextInt(PART_SIZE / 3));
+			out.write(data, offset, n);
+			offset += n;
+		}
+		out.close();
+	}
+
+	private InputStream download(String key) throws IOException
+	{
+		HttpURLConnection firstRange = connection.getRange("bucket", key, 0, PART_SIZE - 1, null);
+		assertEquals(HttpURLConnection.HTTP_PARTIAL, firstRange.getResponseCode());
+		return S3RangedInputStream.open(connection, "bucket", key, firstRange);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[5000];
+		int n;
+		while ((n = in.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	public void testSmallObjectIsPutOnce() throws Exception
+	{
+		byte[] data = createData(PART_SIZE);
+		upload(data);
+
+		assertTrue(Arrays.equals(data, server.objects.get("/bucket/file.bin")));
+		assertEquals(1, server.putCount.get());
+		assertEquals(0, server.partCount.get());
+	}
+
+	public void testEmptyObject() throws Exception
+	{
+		upload(new byte[0]);
+
+		assertEquals(0, server.objects.get("/bucket/file.bin").length);
+		assertEquals(1, server.putCount.get());
+	}
+
+	public void testLargeObjectIsUploadedInParts() throws Exception
+	{
+		byte[] data = createData(PART_SIZE * 20 + 123);
+		upload(data);
+
+		assertTrue(Arrays.equals(data, server.objects.get("/bucket/file.bin")));
+		assertEquals(0, server.putCount.get());
+		assertEquals(21, server.partCount.get());
+		assertTrue(server.uploads.isEmpty());
+	}
+
+	public void testFailedPartAbortsUpload() throws Exception
+	{
+		server.failingPart = 3;
+		try
+		{
+			upload(createData(PART_SIZE * 8));
+			fail("Upload should have failed");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		assertNull(server.objects.get("/bucket/file.bin"));
+		assertEquals(1, server.abortCount.get());
+		assertTrue(server.uploads.isEmpty());
+	}
+
+	public void testSmallObjectIsReadOnce() throws Exception
+	{
+		byte[] data = createData(PART_SIZE / 2);
+		server.objects.put("/bucket/small.bin", data);
+
+		assertTrue(Arrays.equals(data, readAll(download("small.bin"))));
+		assertEquals(1, server.rangeCount.get());
+	}
+
+	public void testLargeObjectIsReadInRanges() throws Exception
+	{
+		byte[] data = createData(PART_SIZE * 12 + 77);
+		server.objects.put("/bucket/large.bin", data);
+
+		assertTrue(Arrays.equals(data, readAll(download("large.bin"))));
+		assertEquals(13, server.rangeCount.get());
+		assertTrue(server.maxConcurrentRequests.get() > 1);
+	}
+
+	public void testReadFailsWhenObjectChanges() throws Exception
+	{
+		server.objects.put("/bucket/large.bin", createData(PART_SIZE * 12));
+		InputStream in = download("large.bin");
+		server.objects.put("/bucket/large.bin", createData(PART_SIZE * 13));
+		try
+		{
+			readAll(in);
+			fail("Reading a changed object should fail");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+}
@@ -17,7 +17,9 @@ public class CoreModelTests
 	{
 		TestSuite suite = new TestSuite(CoreModelTests.class.getName());
 		// $JUnit-BEGIN$
+		suite.addTestSuite(GitBatchProcessTest.class);
 		suite.addTestSuite(GitExecutableTest.class);
+		suite.addTestSuite(GitIndexFileTest.class);
 		suite.addTestSuite(GitIndexTest.class);
 		suite.addTestSuite(GitRefTest.class);
 		suite.addTestSuite(GitRevSpecifierTest.class);
@@ -0,0 +1,115 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+
+@SuppressWarnings("nls")
+public class GitBatchProcessTest extends GitTestCase
+{
+
+	private GitBatchProcess process;
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			if (process != null)
+			{
+				process.dispose();
+			}
+		}
+		finally
+		{
+			process = null;
+			super.tearDown();
+		}
+	}
+
+	public void testLookupObjects() throws Exception
+	{
+		commitFile("file.txt", "Hello World!\n");
+		process = new GitBatchProcess(GitExecutable.instance(), getRepo().workingDirectory(), false);
+		assertFalse(process.isRunning());
+
+		List<GitBatchProcess.ObjectInfo> objects = process.lookup(Arrays.asList("HEAD", "HEAD:file.txt",
+				"HEAD:missing.txt", "no-such-branch"));
+		assertTrue(process.isRunning());
+		assertEquals(4, objects.size());
+		assertEquals("commit", objects.get(0).type);
+		assertEquals(40, objects.get(0).sha.length());
+		assertEquals("blob", objects.get(1).type);
+		assertEquals(13, objects.get(1).size);
+		assertNull(objects.get(1).contents);
+		assertNull(objects.get(2));
+		assertNull(objects.get(3));
+
+		// the same process answers the next request
+		objects = process.lookup("HEAD");
+		assertEquals("commit", objects.get(0).type);
+		assertTrue(process.isRunning());
+	}
+
+	public void testReadContents() throws Exception
+	{
+		commitFile("file.txt", "first\nsecond\n");
+		process = new GitBatchProcess(GitExecutable.instance(), getRepo().workingDirectory(), true);
+
+		List<GitBatchProcess.ObjectInfo> objects = process.lookup(Arrays.asList("HEAD:file.txt", "HEAD:file.txt"));
+		assertEquals("first\nsecond\n", new String(objects.get(0).contents, "UTF-8"));
+		assertEquals("first\nsecond\n", new String(objects.get(1).contents, "UTF-8"));
+	}
+
+	public void testInvalidNamesFail() throws Exception
+	{
+		commitFile("file.txt", "Hello World!\n");
+		process = new GitBatchProcess(GitExecutable.instance(), getRepo().workingDirectory(), false);
+
+		assertNull(process.lookup("HEAD\nHEAD"));
+		assertNull(process.lookup(" HEAD"));
+		assertNull(process.lookup(""));
+		assertNotNull(process.lookup("HEAD"));
+	}
+
+	public void testStopsWhenIdleAndDisposed() throws Exception
+	{
+		commitFile("file.txt", "Hello World!\n");
+		process = new GitBatchProcess(GitExecutable.instance(), getRepo().workingDirectory(), false,
+				GitBatchProcess.REQUEST_TIMEOUT, 100);
+
+		assertNotNull(process.lookup("HEAD"));
+		assertTrue(process.isRunning());
+		Thread.sleep(1000);
+		assertFalse(process.isRunning());
+
+		// restarted on demand
+		assertNotNull(process.lookup("HEAD"));
+		assertTrue(process.isRunning());
+
+		process.dispose();
+		assertFalse(process.isRunning());
+		assertNull(process.lookup("HEAD"));
+	}
+
+	private void commitFile(String name, String contents) throws Exception
+	{
+		GitRepository repo = getRepo();
+		FileWriter writer = new FileWriter(new File(repo.workingDirectory().toFile(), name));
+		writer.write(contents);
+		writer.close();
+
+		GitIndex index = repo.index();
+		assertRefresh(index);
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Add " + name);
+	}
+}
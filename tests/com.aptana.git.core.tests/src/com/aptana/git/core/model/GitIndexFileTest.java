@@ -0,0 +1,128 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IStatus;
+
+@SuppressWarnings("nls")
+public class GitIndexFileTest extends GitTestCase
+{
+
+	public void testReadEntries() throws Exception
+	{
+		GitRepository repo = getRepo();
+		writeFile("file.txt", "Hello World!");
+		writeFile("dir/nested.txt", "Nested");
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+
+		GitIndexFile indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+		assertEquals(2, indexFile.size());
+		assertNull(indexFile.getEntry("missing.txt"));
+
+		GitIndexFile.Entry entry = indexFile.getEntry("dir/nested.txt");
+		assertEquals("dir/nested.txt", entry.path);
+		assertEquals("100644", entry.getModeString());
+		assertEquals(6, entry.size);
+		assertEquals(0, entry.stage);
+		assertTrue(entry.isRegularFile());
+
+		IStatus status = repo.execute(GitRepository.ReadWrite.READ, "hash-object", "file.txt");
+		assertEquals(status.getMessage().trim(), indexFile.getEntry("file.txt").sha);
+	}
+
+	public void testReadsEveryVersion() throws Exception
+	{
+		GitRepository repo = getRepo();
+		writeFile("a/b/c.txt", "c");
+		writeFile("a/b/d.txt", "d");
+		writeFile("a/e.txt", "e");
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+
+		for (String version : new String[] { "2", "3", "4" })
+		{
+			assertTrue(repo.execute(GitRepository.ReadWrite.WRITE, "update-index", "--index-version", version)
+					.isOK());
+			GitIndexFile indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+			assertEquals(3, indexFile.size());
+			assertNotNull(version, indexFile.getEntry("a/b/c.txt"));
+			assertNotNull(version, indexFile.getEntry("a/b/d.txt"));
+			assertNotNull(version, indexFile.getEntry("a/e.txt"));
+		}
+	}
+
+	public void testWorkingTreeState() throws Exception
+	{
+		GitRepository repo = getRepo();
+		long longAgo = System.currentTimeMillis() - 10000;
+		for (String name : new String[] { "same.txt", "modified.txt", "deleted.txt" })
+		{
+			writeFile(name, "Hello World!");
+			assertTrue(file(name).setLastModified(longAgo));
+		}
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		writeFile("modified.txt", "Hello World, again!");
+		assertTrue(file("deleted.txt").delete());
+
+		GitIndexFile indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+		assertEquals(GitIndexFile.WorkingTreeState.UNCHANGED, state(indexFile, "same.txt"));
+		assertEquals(GitIndexFile.WorkingTreeState.MODIFIED, state(indexFile, "modified.txt"));
+		assertEquals(GitIndexFile.WorkingTreeState.DELETED, state(indexFile, "deleted.txt"));
+
+		// a file modified as late as the index was written may have changed again without its size changing
+		writeFile("racy.txt", "Racy");
+		assertTrue(file("racy.txt").setLastModified(System.currentTimeMillis() + 10000));
+		assertRefresh(repo.index());
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		indexFile = GitIndexFile.read(repo.gitFile(GitRepository.INDEX));
+		assertEquals(GitIndexFile.WorkingTreeState.UNKNOWN, state(indexFile, "racy.txt"));
+	}
+
+	public void testCorruptIndexIsRejected() throws Exception
+	{
+		GitRepository repo = getRepo();
+		writeFile("file.txt", "Hello World!");
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+
+		File index = repo.gitFile(GitRepository.INDEX);
+		FileWriter writer = new FileWriter(index, true);
+		writer.write("garbage");
+		writer.close();
+		try
+		{
+			GitIndexFile.read(index);
+			fail("Read a corrupt index");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	private GitIndexFile.WorkingTreeState state(GitIndexFile indexFile, String path) throws Exception
+	{
+		return indexFile.getWorkingTreeState(indexFile.getEntry(path), file(path));
+	}
+
+	private File file(String path) throws Exception
+	{
+		return getRepo().workingDirectory().append(path).toFile();
+	}
+
+	private void writeFile(String path, String contents) throws Exception
+	{
+		File file = file(path);
+		file.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+	}
+}
@@ -332,6 +332,38 @@ public class GitIndexTest extends GitTestCase
 		assertContains(files, "file6.txt", Status.NEW, false, true);
 	}
 
+	public void testRefreshTrackedFilesFromIndexFile() throws Exception
+	{
+		GitRepository repo = createRepo();
+		long longAgo = System.currentTimeMillis() - 10000;
+		for (String name : new String[] { "file1.txt", "file2.txt", "file3.txt" })
+		{
+			FileWriter writer = new FileWriter(repo.workingDirectory().append(name).toOSString());
+			writer.write("Hello World!");
+			writer.close();
+			// not modified in the same second as the index, so their size and modification time can be trusted
+			assertTrue(repo.workingDirectory().append(name).toFile().setLastModified(longAgo));
+		}
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		assertCommit(repo.index(), "initial");
+
+		FileWriter writer = new FileWriter(repo.workingDirectory().append("file2.txt").toOSString(), true);
+		writer.write("\nAdded line");
+		writer.close();
+		assertTrue(repo.workingDirectory().append("file3.txt").toFile().delete());
+
+		int avoided = GitExecutable.getAvoidedProcessCount();
+		Set<IPath> filePaths = CollectionsUtil.newSet(Path.fromPortableString("file1.txt"),
+				Path.fromPortableString("file2.txt"), Path.fromPortableString("file3.txt"));
+		repo.index().refresh(false, filePaths, null);
+		assertTrue(GitExecutable.getAvoidedProcessCount() >= avoided + 3);
+
+		List<ChangedFile> files = repo.index().changedFiles();
+		assertEquals(2, files.size());
+		assertContains(files, "file2.txt", Status.MODIFIED, false, true);
+		assertContains(files, "file3.txt", Status.DELETED, false, true);
+	}
+
 	private void assertContains(List<ChangedFile> files, final String path, final Status status,
 			final boolean hasStaged, final boolean hasUnstaged)
 	{
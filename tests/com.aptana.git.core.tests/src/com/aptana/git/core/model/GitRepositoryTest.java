@@ -579,6 +579,29 @@ public class GitRepositoryTest extends GitTestCase
 		}
 	}
 
+	public void testRevParseAndReadObject() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+		FileWriter writer = new FileWriter(fileToAdd());
+		writer.write("Hello World!");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+
+		int avoided = GitExecutable.getAvoidedProcessCount();
+		IStatus status = repo.revParse(GitRepository.HEAD);
+		assertTrue(status.isOK());
+		assertEquals(40, status.getMessage().length());
+		assertFalse(repo.revParse("no-such-branch").isOK());
+
+		status = repo.readObject("HEAD:file.txt");
+		assertTrue(status.isOK());
+		assertEquals("Hello World!", status.getMessage());
+		assertTrue(GitExecutable.getAvoidedProcessCount() > avoided);
+	}
+
 	protected String fileToAdd() throws Exception
 	{
 		return getRepo().workingDirectory() + File.separator + "file.txt";
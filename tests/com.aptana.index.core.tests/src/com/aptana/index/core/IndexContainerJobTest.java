@@ -2,11 +2,15 @@ package com.aptana.index.core;
 
 import java.io.File;
 import java.net.URI;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -110,6 +114,8 @@ public class IndexContainerJobTest extends TestCase
 				oneOf(index).remove(URI.create(dir1.toURI().toString() + File.separator + "fileY"));
 				oneOf(index).remove(URI.create(dir1.toURI().toString() + File.separator + "fileZ"));
 
+				oneOf(index).getManifest();
+				will(returnValue(new IndexManifest(indexFile)));
 				oneOf(index).getIndexFile();
 				will(returnValue(indexFile));
 
@@ -129,4 +135,90 @@ public class IndexContainerJobTest extends TestCase
 		job.run(new NullProgressMonitor());
 		context.assertIsSatisfied();
 	}
+
+	@SuppressWarnings("deprecation")
+	public void testParallelIndexingMatchesSerialIndexing() throws Exception
+	{
+		Set<IFileStore> files = new HashSet<IFileStore>();
+		for (int i = 0; i < 50; i++)
+		{
+			File file = new File(tmpDir, "file" + i + ".txt");
+			file.createNewFile();
+			files.add(EFS.getLocalFileSystem().fromLocalFile(file));
+		}
+
+		Index serial = createIndex("serial_index");
+		Index parallel = createIndex("parallel_index");
+		try
+		{
+			// stale entries of a file must be replaced
+			parallel.addEntry("category", "stale", files.iterator().next().toURI());
+
+			createIndexingJob(1).indexFileStores(serial, files, new NullProgressMonitor());
+			createIndexingJob(4).indexFileStores(parallel, files, new NullProgressMonitor());
+
+			assertEquals(serial.queryDocumentNames(null), parallel.queryDocumentNames(null));
+			List<QueryResult> expected = serial.query(new String[] { "category" }, "word", SearchPattern.PREFIX_MATCH
+					| SearchPattern.CASE_SENSITIVE);
+			List<QueryResult> actual = parallel.query(new String[] { "category" }, "word", SearchPattern.PREFIX_MATCH
+					| SearchPattern.CASE_SENSITIVE);
+			assertEquals(51, expected.size());
+			assertEquals(expected.size(), actual.size());
+			for (QueryResult result : expected)
+			{
+				List<QueryResult> match = parallel.query(new String[] { "category" }, result.getWord(),
+						SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE);
+				assertEquals(1, match.size());
+				assertEquals(result.getDocuments(), match.get(0).getDocuments());
+			}
+			List<QueryResult> stale = parallel.query(new String[] { "category" }, "stale", SearchPattern.EXACT_MATCH
+					| SearchPattern.CASE_SENSITIVE);
+			assertTrue(stale == null || stale.isEmpty());
+		}
+		finally
+		{
+			IndexManager.getInstance().removeIndex(serial.getRoot());
+			IndexManager.getInstance().removeIndex(parallel.getRoot());
+		}
+	}
+
+	private Index createIndex(String name)
+	{
+		File dir = new File(tmpDir, name);
+		dir.mkdirs();
+		return IndexManager.getInstance().getIndex(dir.toURI());
+	}
+
+	private IndexContainerJob createIndexingJob(final int parallelism)
+	{
+		final IFileStoreIndexingParticipant participant = new IFileStoreIndexingParticipant()
+		{
+			public void index(BuildContext context, Index index, IProgressMonitor monitor) throws CoreException
+			{
+				String name = context.getName();
+				index.addEntry("category", "word" + name, context.getURI());
+				index.addEntry("category", "word_shared", context.getURI());
+			}
+
+			public int getPriority()
+			{
+				return DEFAULT_PRIORITY;
+			}
+		};
+
+		return new IndexContainerJob(tmpDir.toURI())
+		{
+			@Override
+			protected int getParallelism()
+			{
+				return parallelism;
+			}
+
+			@Override
+			protected List<IFileStoreIndexingParticipant> getIndexParticipants(IFileStore file)
+			{
+				return CollectionsUtil.newList(participant);
+			}
+		};
+	}
 }
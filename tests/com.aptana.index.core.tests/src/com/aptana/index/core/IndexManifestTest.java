@@ -0,0 +1,188 @@
+package com.aptana.index.core;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+
+import com.aptana.core.util.FileUtil;
+
+@SuppressWarnings("nls")
+public class IndexManifestTest extends TestCase
+{
+	private File tmpDir;
+	private File indexFile;
+	private long lastModified;
+
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		tmpDir = new File(System.getProperty("java.io.tmpdir"), "index_manifest");
+		tmpDir.mkdirs();
+		indexFile = new File(tmpDir, "test.index");
+		// old enough that the manifest trusts unchanged timestamps
+		lastModified = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		FileUtil.deleteRecursively(tmpDir);
+		super.tearDown();
+	}
+
+	private IFileStore createFile(String name, String contents) throws IOException
+	{
+		File file = new File(tmpDir, name);
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+		file.setLastModified(lastModified);
+		return EFS.getLocalFileSystem().fromLocalFile(file);
+	}
+
+	private void indexed(IndexManifest manifest, IFileStore file)
+	{
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+		manifest.recordIndexed(file);
+	}
+
+	private IndexManifest saveAndReload(IndexManifest manifest) throws IOException
+	{
+		manifest.save();
+		IndexManifest reloaded = IndexManifest.load(indexFile);
+		assertNotNull(reloaded);
+		return reloaded;
+	}
+
+	public void testMissingManifest() throws Exception
+	{
+		assertNull(IndexManifest.load(indexFile));
+	}
+
+	public void testNewFilesAreChanged() throws Exception
+	{
+		IFileStore file = createFile("new.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+		assertEquals(0, manifest.size());
+
+		manifest.recordIndexed(file);
+		assertEquals(1, manifest.size());
+	}
+
+	public void testUnchangedFile() throws Exception
+	{
+		IFileStore file = createFile("same.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+
+		manifest = saveAndReload(manifest);
+		assertFalse(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testTouchedFileWithSameContentsIsNotChanged() throws Exception
+	{
+		IFileStore file = createFile("touched.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+		manifest = saveAndReload(manifest);
+
+		file.toLocalFile(EFS.NONE, null).setLastModified(lastModified + 5000);
+		assertFalse(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testFileRestoredWithOlderTimestampIsChanged() throws Exception
+	{
+		IFileStore file = createFile("checkout.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+		manifest = saveAndReload(manifest);
+
+		// a checkout restores an older revision along with its older timestamp
+		lastModified -= 10000;
+		file = createFile("checkout.js", "var b;");
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+		manifest.recordIndexed(file);
+
+		manifest = saveAndReload(manifest);
+		assertFalse(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testFilesWithoutHashAreChangedOnceTouched() throws Exception
+	{
+		IFileStore file = createFile("recorded.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		manifest.record(file, file.fetchInfo());
+		manifest = saveAndReload(manifest);
+		assertFalse(manifest.isChanged(file, file.fetchInfo()));
+
+		file.toLocalFile(EFS.NONE, null).setLastModified(lastModified + 5000);
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testFileThatFailedToIndexIsChangedAgain() throws Exception
+	{
+		IFileStore file = createFile("failed.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+		manifest = saveAndReload(manifest);
+
+		lastModified += 5000;
+		file = createFile("failed.js", "var b;");
+		// not recorded, as if the indexing participants failed
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+		manifest = saveAndReload(manifest);
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testForgottenFileIsChanged() throws Exception
+	{
+		IFileStore file = createFile("forgotten.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+		manifest = saveAndReload(manifest);
+		assertFalse(manifest.isChanged(file, file.fetchInfo()));
+
+		manifest.forget(file);
+		manifest = saveAndReload(manifest);
+		assertEquals(0, manifest.size());
+		assertTrue(manifest.isChanged(file, file.fetchInfo()));
+	}
+
+	public void testRetainAll() throws Exception
+	{
+		IFileStore kept = createFile("kept.js", "var a;");
+		IFileStore deleted = createFile("deleted.js", "var b;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, kept);
+		indexed(manifest, deleted);
+
+		Set<IFileStore> files = new HashSet<IFileStore>();
+		files.add(kept);
+		manifest.retainAll(files);
+		assertEquals(1, manifest.size());
+
+		manifest = saveAndReload(manifest);
+		assertEquals(1, manifest.size());
+		assertTrue(manifest.isChanged(deleted, deleted.fetchInfo()));
+	}
+
+	public void testDelete() throws Exception
+	{
+		IFileStore file = createFile("file.js", "var a;");
+		IndexManifest manifest = new IndexManifest(indexFile);
+		indexed(manifest, file);
+		manifest.save();
+
+		IndexManifest.delete(indexFile);
+		assertNull(IndexManifest.load(indexFile));
+	}
+}
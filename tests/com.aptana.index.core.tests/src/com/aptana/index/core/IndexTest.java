@@ -9,6 +9,9 @@ import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+
 @SuppressWarnings({ "nls", "deprecation" })
 public class IndexTest extends TestCase
 {
@@ -204,6 +207,28 @@ public class IndexTest extends TestCase
 		assertTrue(result.isEmpty());
 	}
 
+	public void testRemoveForgetsManifestEntry() throws Exception
+	{
+		createIndex("remove_manifest");
+		File file = File.createTempFile("indexed", ".js");
+		file.deleteOnExit();
+		IFileStore store = EFS.getLocalFileSystem().fromLocalFile(file);
+
+		// recorded by a container job
+		IndexManifest manifest = index.getManifest();
+		assertTrue(manifest.isChanged(store, store.fetchInfo()));
+		index.addEntry("category", "key", store.toURI());
+		manifest.recordIndexed(store);
+		index.save();
+		assertEquals(1, IndexManifest.load(index.getIndexFile()).size());
+
+		// reindexed by someone else, so restoring the recorded contents must not skip the file
+		index.remove(store.toURI());
+		index.save();
+		assertEquals(0, manifest.size());
+		assertEquals(0, IndexManifest.load(index.getIndexFile()).size());
+	}
+
 	public void testRemoveCategories() throws Exception
 	{
 		createIndex("remove_categories");
@@ -267,4 +292,36 @@ public class IndexTest extends TestCase
 		assertEntryAdded();
 	}
 
+	public void testBackgroundMerge() throws Exception
+	{
+		createIndex("background_merge");
+		for (int i = 0; i < 150; i++)
+		{
+			index.addEntry("category", "key" + i, new URI("file" + i + ".rb"));
+		}
+
+		// enough changes to schedule a merge, but the query is answered right away
+		List<QueryResult> result = index.query(new String[] { "category" }, "key", SearchPattern.PREFIX_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertEquals(150, result.size());
+
+		// changes made while the merge runs must not be lost
+		index.remove(new URI("file0.rb"));
+		index.addEntry("category", "newkey", new URI("new.rb"));
+
+		index.getMergeJob().join();
+		assertEquals(1, index.getMergeJob().getMergeCount());
+		assertTrue(index.getMergeJob().getLastIndexFileSize() > 0);
+
+		result = index.query(new String[] { "category" }, "key", SearchPattern.PREFIX_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertEquals(149, result.size());
+		result = index.query(new String[] { "category" }, "newkey", SearchPattern.EXACT_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertEquals(1, result.size());
+
+		index.save();
+		assertEquals(150, index.queryDocumentNames(null).size());
+	}
+
 }
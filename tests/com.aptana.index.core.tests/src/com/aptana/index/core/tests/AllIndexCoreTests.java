@@ -6,6 +6,7 @@ import junit.framework.TestSuite;
 
 import com.aptana.index.core.IndexCoreTests;
 import com.aptana.internal.index.core.DiskIndexTest;
+import com.aptana.internal.index.core.QueryPrefixesTest;
 
 public class AllIndexCoreTests extends TestCase
 {
@@ -15,6 +16,7 @@ public class AllIndexCoreTests extends TestCase
 		TestSuite suite = new TestSuite(AllIndexCoreTests.class.getName());
 		// $JUnit-BEGIN$
 		suite.addTestSuite(DiskIndexTest.class);
+		suite.addTestSuite(QueryPrefixesTest.class);
 		suite.addTest(IndexCoreTests.suite());
 		// $JUnit-END$
 		return suite;
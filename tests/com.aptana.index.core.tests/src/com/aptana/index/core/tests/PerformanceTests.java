@@ -0,0 +1,41 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core.tests;
+
+import java.text.MessageFormat;
+
+import junit.framework.Test;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.index.core.IndexPlugin;
+import com.aptana.internal.index.core.DiskIndexQueryPerformanceTest;
+
+public class PerformanceTests
+{
+
+	public static Test suite()
+	{
+		TestSuite suite = new TestSuite(PerformanceTests.class.getName())
+		{
+			@Override
+			public void runTest(Test test, TestResult result)
+			{
+				String msg = MessageFormat.format("Running test: {0}", test.toString());
+				IdeLog.logError(IndexPlugin.getDefault(), msg);
+				System.out.println(msg);
+				super.runTest(test, result);
+			}
+		};
+		// $JUnit-BEGIN$
+		suite.addTestSuite(DiskIndexQueryPerformanceTest.class);
+		// $JUnit-END$
+		return suite;
+	}
+}
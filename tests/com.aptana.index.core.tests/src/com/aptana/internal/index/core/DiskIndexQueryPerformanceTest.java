@@ -0,0 +1,107 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.io.File;
+
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import com.aptana.index.core.SearchPattern;
+
+/**
+ * Measures per-query latency against a single category holding 100k terms.
+ */
+@SuppressWarnings("nls")
+public class DiskIndexQueryPerformanceTest extends PerformanceTestCase
+{
+	private static final String CATEGORY = "members";
+	private static final String[] CATEGORIES = new String[] { CATEGORY };
+	private static final String[] TYPES = new String[] { "Array", "Boolean", "Date", "Function", "Math", "Number",
+			"Object", "RegExp", "String", "Window" };
+	private static final int TERMS = 100000;
+	private static final int QUERIES = 100;
+
+	private File file;
+	private DiskIndex index;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		file = File.createTempFile("query_perf", ".index");
+		file.deleteOnExit();
+
+		DiskIndex empty = new DiskIndex(file.getAbsolutePath());
+		empty.initialize(false);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		for (int i = 0; i < TERMS; i++)
+		{
+			memoryIndex.addEntry(CATEGORY, TYPES[i % TYPES.length] + ".member" + i, "file" + (i % 2000) + ".js");
+		}
+		empty.mergeWith(memoryIndex);
+
+		index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		index = null;
+		if (file != null)
+		{
+			file.delete();
+			file = null;
+		}
+
+		super.tearDown();
+	}
+
+	private void assertQueryPerformance(String key, int matchRule) throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			startMeasuring();
+			for (int j = 0; j < QUERIES; j++)
+			{
+				index.addQueryResults(CATEGORIES, key, matchRule);
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testExactQuery() throws Exception
+	{
+		assertQueryPerformance("Object.member6", SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE);
+	}
+
+	public void testPrefixQuery() throws Exception
+	{
+		assertQueryPerformance("Object.member66", SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE);
+	}
+
+	public void testCaseInsensitivePrefixQuery() throws Exception
+	{
+		assertQueryPerformance("object.member66", SearchPattern.PREFIX_MATCH);
+	}
+
+	public void testAnchoredRegexQuery() throws Exception
+	{
+		assertQueryPerformance("^(Array|Object)\\.member1\\d", SearchPattern.REGEX_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+	}
+
+	public void testUnanchoredRegexQuery() throws Exception
+	{
+		assertQueryPerformance("member1\\d$", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE);
+	}
+}
@@ -10,6 +10,8 @@ package com.aptana.internal.index.core;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -18,6 +20,8 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 
 import com.aptana.core.util.ResourceUtil;
+import com.aptana.index.core.QueryResult;
+import com.aptana.index.core.SearchPattern;
 
 @SuppressWarnings("nls")
 public class DiskIndexTest extends TestCase
@@ -44,4 +48,130 @@ public class DiskIndexTest extends TestCase
 			fail("Expected an IOException, so that we'd catch it up the stack and clean up the index. Instead we got a NegativeArraySizeException!");
 		}
 	}
+
+	public void testMappedBlocksRoundTrip() throws Exception
+	{
+		File file = File.createTempFile("disk_index", ".index");
+		file.deleteOnExit();
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		// enough words to span several blocks and enough documents to span several chunks
+		MemoryIndex memoryIndex = new MemoryIndex();
+		for (int i = 0; i < 500; i++)
+		{
+			memoryIndex.addEntry("category", "word" + i, "doc" + (i % 150) + ".js");
+		}
+		index = index.mergeWith(memoryIndex);
+
+		DiskIndex reopened = new DiskIndex(file.getAbsolutePath());
+		reopened.initialize(true);
+
+		Map<String, QueryResult> results = reopened.addQueryResults(new String[] { "category" }, "word321",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE);
+		assertEquals(1, results.size());
+		Set<String> documents = results.get("word321").getDocuments();
+		assertEquals(1, documents.size());
+		assertTrue(documents.contains("doc21.js"));
+
+		results = reopened.addQueryResults(new String[] { "category" }, "word49",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE);
+		assertEquals(11, results.size());
+
+		assertNull(reopened.addQueryResults(new String[] { "category" }, "missing",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertEquals(150, reopened.getDocuments().size());
+	}
+
+	public void testFailedCommitKeepsOldIndex() throws Exception
+	{
+		File file = createIndexFile();
+
+		// the merged file can't be moved in place
+		DiskIndex index = new DiskIndex(file.getAbsolutePath())
+		{
+			@Override
+			protected boolean renameFile(File source, File target)
+			{
+				return !source.getName().endsWith(".tmp") && super.renameFile(source, target);
+			}
+		};
+		index.initialize(true);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("category", "added", "added.js");
+		try
+		{
+			index.mergeWith(memoryIndex);
+			fail("Expected an IOException!");
+		}
+		catch (IOException e)
+		{
+			assertTrue(true);
+		}
+
+		// the old entries are still there
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "category" }, "word",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE);
+		assertEquals(1, results.size());
+		assertNull(index.addQueryResults(new String[] { "category" }, "added",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertTrue(file.exists());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		assertFalse(new File(file.getPath() + ".bak").exists());
+	}
+
+	public void testFailedRestoreLeavesEmptyIndex() throws Exception
+	{
+		File file = createIndexFile();
+
+		// neither the merged file nor the backup can be moved in place
+		DiskIndex index = new DiskIndex(file.getAbsolutePath())
+		{
+			@Override
+			protected boolean renameFile(File source, File target)
+			{
+				return !source.getName().endsWith(".tmp") && !source.getName().endsWith(".bak")
+						&& super.renameFile(source, target);
+			}
+		};
+		index.initialize(true);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("category", "added", "added.js");
+		try
+		{
+			index.mergeWith(memoryIndex);
+			fail("Expected an IOException!");
+		}
+		catch (IOException e)
+		{
+			assertTrue(true);
+		}
+
+		// queries still work, against an empty index
+		assertNull(index.addQueryResults(new String[] { "category" }, "word",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertTrue(index.getCategories().isEmpty());
+		assertTrue(index.getDocuments().isEmpty());
+		assertTrue(file.exists());
+
+		new File(file.getPath() + ".bak").delete();
+	}
+
+	private File createIndexFile() throws IOException
+	{
+		File file = File.createTempFile("disk_index", ".index");
+		file.deleteOnExit();
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("category", "word", "doc.js");
+		index.mergeWith(memoryIndex);
+
+		return file;
+	}
 }
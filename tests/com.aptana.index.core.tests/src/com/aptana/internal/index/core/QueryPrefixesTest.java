@@ -0,0 +1,66 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.aptana.index.core.SearchPattern;
+
+@SuppressWarnings("nls")
+public class QueryPrefixesTest extends TestCase
+{
+
+	public void testCaseSensitivePrefix()
+	{
+		assertEquals(Arrays.asList("Array"),
+				QueryPrefixes.compute("Array", SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE));
+	}
+
+	public void testCaseInsensitivePrefix()
+	{
+		assertEquals(Arrays.asList("AB", "Ab", "aB", "ab"), QueryPrefixes.compute("ab", SearchPattern.PREFIX_MATCH));
+	}
+
+	public void testAnchoredAlternationRegex()
+	{
+		assertEquals(Arrays.asList("Array.", "Object."),
+				QueryPrefixes.compute("^(Array|Object)\\.", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+	}
+
+	public void testOptionalAtomEndsRegexPrefix()
+	{
+		assertEquals(Arrays.asList("Arra"),
+				QueryPrefixes.compute("^Array?\\.", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertEquals(Arrays.asList("Array"),
+				QueryPrefixes.compute("^Array+\\.", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+	}
+
+	public void testUnanchoredRegexHasNoPrefix()
+	{
+		assertNull(QueryPrefixes.compute("Array\\.", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertNull(QueryPrefixes.compute("^Array|Object", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertNull(QueryPrefixes.compute("^(?i)Array", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+		assertNull(QueryPrefixes.compute("^\\w+", SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE));
+	}
+
+	public void testPatternHasNoPrefix()
+	{
+		assertNull(QueryPrefixes.compute("Arr*", SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE));
+	}
+
+	public void testCaseInsensitiveVariantsAreBounded()
+	{
+		List<String> prefixes = QueryPrefixes.compute("abcdefgh", SearchPattern.PREFIX_MATCH);
+
+		assertEquals(16, prefixes.size());
+		assertEquals("ABCD", prefixes.get(0));
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import junit.framework.TestCase;
+
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.IParser;
+import com.aptana.parsing.ast.IParseRootNode;
+
+public class ParserPoolTest extends TestCase
+{
+	private static class TestParser implements IParser
+	{
+		public IParseRootNode parse(IParseState parseState) throws Exception
+		{
+			return null;
+		}
+	}
+
+	private static class TestParserPool extends ParserPool
+	{
+		TestParserPool(int minSize, int maxSize)
+		{
+			super(null, minSize, maxSize);
+		}
+
+		@Override
+		public IParser create()
+		{
+			return new TestParser();
+		}
+	}
+
+	private ParserPool pool;
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		if (pool != null)
+		{
+			pool.dispose();
+			pool = null;
+		}
+		super.tearDown();
+	}
+
+	public void testReusesParserOnSameThread() throws Exception
+	{
+		pool = new TestParserPool(1, 4);
+
+		IParser parser = pool.checkOut();
+		pool.checkIn(parser);
+
+		assertSame(parser, pool.checkOut());
+		assertEquals(1, pool.getCreationCount());
+		assertEquals(2, pool.getCheckOutCount());
+	}
+
+	public void testNestedCheckOutsGetDistinctParsers() throws Exception
+	{
+		pool = new TestParserPool(1, 4);
+
+		Set<IParser> parsers = new HashSet<IParser>();
+
+		for (int i = 0; i < 3; i++)
+		{
+			assertTrue(parsers.add(pool.checkOut()));
+		}
+
+		assertEquals(3, pool.getCreationCount());
+
+		for (IParser parser : parsers)
+		{
+			pool.checkIn(parser);
+		}
+
+		// including the one kept for the next check out on this thread
+		assertEquals(3, pool.getIdleCount());
+
+		for (int i = 0; i < 3; i++)
+		{
+			assertTrue(parsers.contains(pool.checkOut()));
+		}
+
+		assertEquals(3, pool.getCreationCount());
+	}
+
+	public void testIdleParsersAreBounded() throws Exception
+	{
+		pool = new TestParserPool(1, 2);
+
+		List<IParser> parsers = new ArrayList<IParser>();
+
+		for (int i = 0; i < 5; i++)
+		{
+			parsers.add(pool.checkOut());
+		}
+
+		for (IParser parser : parsers)
+		{
+			pool.checkIn(parser);
+		}
+
+		assertEquals(2, pool.getIdleCount());
+	}
+
+	public void testParsersOfEndedThreadsAreReleased() throws Exception
+	{
+		pool = new TestParserPool(0, 1);
+
+		Thread thread = new Thread()
+		{
+			public void run()
+			{
+				pool.checkIn(pool.checkOut());
+			}
+		};
+		thread.start();
+		thread.join();
+
+		// the ended thread still keeps its parser
+		assertEquals(1, pool.getIdleCount());
+
+		IParser parser = pool.checkOut();
+		pool.checkIn(parser);
+
+		// which made room for the parser of this thread
+		assertEquals(1, pool.getIdleCount());
+		assertSame(parser, pool.checkOut());
+	}
+
+	public void testParallelCheckOuts() throws Exception
+	{
+		pool = new TestParserPool(1, 4);
+
+		final int threadCount = 8;
+		final int iterations = 1000;
+		final ConcurrentMap<IParser, Thread> inUse = new ConcurrentHashMap<IParser, Thread>();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < threadCount; i++)
+		{
+			Thread thread = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						for (int j = 0; j < iterations; j++)
+						{
+							IParser parser = pool.checkOut();
+
+							assertNull("Parser is used by two threads at once", inUse.putIfAbsent(parser, this));
+							Thread.yield();
+							inUse.remove(parser);
+
+							pool.checkIn(parser);
+						}
+					}
+					catch (Throwable t)
+					{
+						synchronized (failures)
+						{
+							failures.add(t);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(threadCount * iterations, pool.getCheckOutCount());
+		assertTrue(pool.getCreationCount() <= threadCount);
+		assertTrue(pool.getTotalWaitTime() >= pool.getMaxWaitTime());
+	}
+}
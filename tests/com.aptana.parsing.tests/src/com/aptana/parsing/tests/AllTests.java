@@ -27,6 +27,7 @@ public class AllTests
 			}
 		};
 		// $JUnit-BEGIN$
+		suite.addTestSuite(com.aptana.internal.parsing.ParserPoolTest.class);
 		suite.addTest(com.aptana.json.AllTests.suite());
 		suite.addTest(com.aptana.parsing.ast.AllTests.suite());
 		suite.addTest(com.aptana.parsing.lexer.LexerTests.suite());
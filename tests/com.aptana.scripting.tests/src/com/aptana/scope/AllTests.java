@@ -21,6 +21,8 @@ public class AllTests
 		suite.addTestSuite(NameSelectorTests.class);
 		suite.addTestSuite(OrSelectorTests.class);
 		suite.addTestSuite(NegativeLookaheadTests.class);
+		suite.addTestSuite(ScopeSelectorTableTests.class);
+		suite.addTestSuite(ScopeSelectorTrieTests.class);
 		// $JUnit-END$
 		return suite;
 	}
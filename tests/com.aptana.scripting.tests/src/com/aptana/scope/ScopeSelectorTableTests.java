@@ -0,0 +1,79 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class ScopeSelectorTableTests extends TestCase
+{
+	private ScopeSelectorTable<String> createTable(String... selectorsAndValues)
+	{
+		Map<IScopeSelector, String> values = new HashMap<IScopeSelector, String>();
+
+		for (int i = 0; i < selectorsAndValues.length; i += 2)
+		{
+			values.put(new ScopeSelector(selectorsAndValues[i]), selectorsAndValues[i + 1]);
+		}
+
+		return new ScopeSelectorTable<String>(values);
+	}
+
+	public void testEmptyTable()
+	{
+		ScopeSelectorTable<String> table = createTable();
+
+		assertTrue(table.isEmpty());
+		assertNull(table.get("source.js"));
+	}
+
+	public void testNullScope()
+	{
+		ScopeSelectorTable<String> table = createTable("source", "source");
+
+		assertNull(table.get(null));
+	}
+
+	public void testNoMatch()
+	{
+		ScopeSelectorTable<String> table = createTable("source.ruby", "ruby");
+
+		assertNull(table.get("source.js"));
+		// the miss is remembered
+		assertNull(table.get("source.js"));
+	}
+
+	public void testBestMatch()
+	{
+		ScopeSelectorTable<String> table = createTable("source", "source", "source.js", "js", "source.js string",
+				"js string");
+
+		assertEquals("source", table.get("source.css"));
+		assertEquals("js", table.get("source.js"));
+		assertEquals("js string", table.get("source.js string.quoted.double.js"));
+	}
+
+	public void testRepeatedLookupsMatchBestMatch()
+	{
+		ScopeSelectorTable<String> table = createTable("text.html", "html", "text.html source.js", "embedded js",
+				"source.js", "js");
+		String[] scopes = new String[] { "text.html.basic", "text.html.basic source.js.embedded.html",
+				"source.js", "text.html.basic source.js.embedded.html string.quoted.js" };
+
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals("html", table.get(scopes[0]));
+			assertEquals("embedded js", table.get(scopes[1]));
+			assertEquals("js", table.get(scopes[2]));
+			assertEquals("embedded js", table.get(scopes[3]));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class ScopeSelectorTrieTests extends TestCase
+{
+	private List<IScopeSelector> createSelectors(String... selectors)
+	{
+		List<IScopeSelector> result = new ArrayList<IScopeSelector>();
+
+		for (String selector : selectors)
+		{
+			result.add(new ScopeSelector(selector));
+		}
+
+		return result;
+	}
+
+	private void assertCandidates(ScopeSelectorTrie trie, String scope, String... expected)
+	{
+		List<String> actual = new ArrayList<String>();
+
+		for (IScopeSelector selector : trie.getCandidates(scope))
+		{
+			actual.add(selector.toString());
+		}
+
+		assertEquals(Arrays.asList(expected), actual);
+	}
+
+	public void testEmptyTrie()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(new ArrayList<IScopeSelector>());
+
+		assertEquals(0, trie.size());
+		assertTrue(trie.getCandidates("source.js").isEmpty());
+	}
+
+	public void testNullScope()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("source"));
+
+		assertTrue(trie.getCandidates(null).isEmpty());
+	}
+
+	public void testNamePrefixes()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("string", "string.quoted", "string.quote",
+				"string.quoted.double.js", "constant"));
+
+		assertCandidates(trie, "source.js string.quoted.double.js", "string", "string.quoted",
+				"string.quoted.double.js");
+		assertCandidates(trie, "source.js stringy");
+		assertCandidates(trie, "source.js");
+	}
+
+	public void testCandidatesKeepSelectorOrder()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("string.quoted", "source", "string"));
+
+		assertCandidates(trie, "source.js string.quoted", "string.quoted", "source", "string");
+	}
+
+	public void testDescendantSelector()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("source.js string", "text.html string"));
+
+		// only the last name is indexed, the selector still has to be matched
+		assertCandidates(trie, "source.css string", "source.js string", "text.html string");
+		assertCandidates(trie, "source.js comment");
+	}
+
+	public void testOrSelector()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("entity.name.tag.css, meta.property-name.css"));
+
+		assertCandidates(trie, "source.css entity.name.tag.css", "entity.name.tag.css, meta.property-name.css");
+		assertCandidates(trie, "source.css meta.property-name.css", "entity.name.tag.css, meta.property-name.css");
+		assertCandidates(trie, "source.css meta");
+	}
+
+	public void testNegativeLookaheadSelector()
+	{
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(createSelectors("source - string"));
+
+		assertCandidates(trie, "source.js string", "source - string");
+		assertCandidates(trie, "text.html");
+	}
+
+	public void testUnindexedSelectorsAreAlwaysCandidates()
+	{
+		List<IScopeSelector> selectors = createSelectors("string");
+		selectors.add(new MatchAnyScopeSelector());
+		selectors.add(null);
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(selectors);
+
+		assertEquals(1, trie.getCandidates("source.js").size());
+		assertTrue(trie.getCandidates("source.js").get(0) instanceof MatchAnyScopeSelector);
+		assertEquals(3, trie.size());
+	}
+
+	public void testBestMatchOfCandidates()
+	{
+		List<IScopeSelector> selectors = createSelectors("source", "source.js", "string", "source.js string",
+				"text.html string", "string.quoted - source.css", "comment, string.quoted");
+		ScopeSelectorTrie trie = new ScopeSelectorTrie(selectors);
+		String[] scopes = { "source.js", "source.js string.quoted.double.js", "source.css string.quoted",
+				"text.html.basic source.js.embedded.html string", "text.html.basic comment.block", "text.plain" };
+
+		for (String scope : scopes)
+		{
+			assertEquals(scope, ScopeSelector.bestMatch(selectors, scope),
+					ScopeSelector.bestMatch(trie.getCandidates(scope), scope));
+		}
+	}
+}
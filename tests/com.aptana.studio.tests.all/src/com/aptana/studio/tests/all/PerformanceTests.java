@@ -41,6 +41,8 @@ public class PerformanceTests
 		suite.addTest(com.aptana.editor.js.tests.PerformanceTests.suite());
 		suite.addTest(com.aptana.editor.json.tests.PerformanceTests.suite());
 		suite.addTest(com.aptana.git.core.tests.PerformanceTests.suite());
+		suite.addTest(com.aptana.core.tests.PerformanceTests.suite());
+		suite.addTest(com.aptana.index.core.tests.PerformanceTests.suite());
 		// $JUnit-END$
 		return suite;
 	}
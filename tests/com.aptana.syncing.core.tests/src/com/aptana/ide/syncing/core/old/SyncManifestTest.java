@@ -0,0 +1,145 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.provider.FileInfo;
+
+@SuppressWarnings("nls")
+public class SyncManifestTest extends TestCase
+{
+
+	private static final String KEY = "file:/client\nftp://server/";
+	private static final long TOLERANCE = 1000;
+	private static final long MODIFIED = 1000000;
+
+	private File manifestFile;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		manifestFile = File.createTempFile(getClass().getSimpleName(), ".manifest");
+		assertTrue(manifestFile.delete());
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			manifestFile.delete();
+		}
+		finally
+		{
+			manifestFile = null;
+			super.tearDown();
+		}
+	}
+
+	public void testSaveAndLoad() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		assertTrue(manifest.isEmpty());
+		manifest.put("dir", createInfo(true, 0, 0), createInfo(true, 0, 0), SyncManifest.NO_CHECKSUM);
+		manifest.put("dir/a.txt", createInfo(false, 10, MODIFIED), createInfo(false, 10, MODIFIED + 500), 1234);
+		manifest.save();
+
+		manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		assertEquals(2, manifest.getPaths().size());
+		SyncManifest.Entry entry = manifest.get("dir/a.txt");
+		assertTrue(entry.isClientUnchanged(createInfo(false, 10, MODIFIED)));
+		assertTrue(entry.isServerUnchanged(createInfo(false, 10, MODIFIED + 500)));
+		assertTrue(entry.hasChecksum());
+		assertEquals(1234, entry.getChecksum());
+		assertFalse(manifest.get("dir").hasChecksum());
+	}
+
+	public void testChangedFiles() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		manifest.put("a.txt", createInfo(false, 10, MODIFIED), createInfo(false, 10, MODIFIED), 1234);
+		manifest.put("dir", createInfo(true, 0, MODIFIED), createInfo(true, 0, MODIFIED), SyncManifest.NO_CHECKSUM);
+
+		SyncManifest.Entry entry = manifest.get("a.txt");
+		assertFalse(entry.isClientUnchanged(createInfo(false, 11, MODIFIED)));
+		assertFalse(entry.isClientUnchanged(createInfo(false, 10, MODIFIED + 1)));
+		assertFalse(entry.isClientUnchanged(createInfo(true, 10, MODIFIED)));
+		assertFalse(entry.isServerUnchanged(createInfo(false, 10, MODIFIED - 1)));
+		assertFalse(entry.isServerUnchanged(new FileInfo("a.txt")));
+
+		// the contents of a directory change its modification time, not the directory itself
+		entry = manifest.get("dir");
+		assertTrue(entry.isClientUnchanged(createInfo(true, 0, MODIFIED + 5000)));
+		assertTrue(entry.isServerUnchanged(createInfo(true, 0, MODIFIED + 5000)));
+	}
+
+	public void testRecentlyModifiedClientFileIsNotTrusted() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		long now = System.currentTimeMillis();
+		manifest.put("a.txt", createInfo(false, 10, now), createInfo(false, 10, now), SyncManifest.NO_CHECKSUM);
+		assertFalse(manifest.get("a.txt").isClientUnchanged(createInfo(false, 10, now)));
+	}
+
+	public void testOtherToleranceOrRootsStartEmpty() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		manifest.put("a.txt", createInfo(false, 10, MODIFIED), createInfo(false, 10, MODIFIED), 1234);
+		manifest.save();
+
+		assertTrue(SyncManifest.load(manifestFile, KEY, TOLERANCE * 2).isEmpty());
+		assertTrue(SyncManifest.load(manifestFile, "file:/other\nftp://server/", TOLERANCE).isEmpty());
+		assertFalse(SyncManifest.load(manifestFile, KEY, TOLERANCE).isEmpty());
+	}
+
+	public void testRemoveForgetsContents() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		IFileInfo directory = createInfo(true, 0, 0);
+		IFileInfo file = createInfo(false, 10, MODIFIED);
+		manifest.put("dir", directory, directory, SyncManifest.NO_CHECKSUM);
+		manifest.put("dir/sub", directory, directory, SyncManifest.NO_CHECKSUM);
+		manifest.put("dir/sub/a.txt", file, file, SyncManifest.NO_CHECKSUM);
+		manifest.put("dir2", directory, directory, SyncManifest.NO_CHECKSUM);
+
+		manifest.remove("dir");
+		assertEquals("[dir2]", manifest.getPaths().toString());
+	}
+
+	public void testRetainRecorded() throws Exception
+	{
+		SyncManifest manifest = SyncManifest.load(manifestFile, KEY, TOLERANCE);
+		IFileInfo file = createInfo(false, 10, MODIFIED);
+		manifest.put("a.txt", file, file, SyncManifest.NO_CHECKSUM);
+		manifest.put("b.txt", file, file, SyncManifest.NO_CHECKSUM);
+
+		manifest.startRecording();
+		manifest.put("b.txt", file, file, SyncManifest.NO_CHECKSUM);
+		manifest.put("c.txt", file, file, SyncManifest.NO_CHECKSUM);
+		manifest.retainRecorded();
+
+		assertNull(manifest.get("a.txt"));
+		assertNotNull(manifest.get("b.txt"));
+		assertNotNull(manifest.get("c.txt"));
+	}
+
+	private static IFileInfo createInfo(boolean directory, long length, long lastModified)
+	{
+		FileInfo info = new FileInfo("file");
+		info.setExists(true);
+		info.setDirectory(directory);
+		info.setLength(length);
+		info.setLastModified(lastModified);
+		return info;
+	}
+}
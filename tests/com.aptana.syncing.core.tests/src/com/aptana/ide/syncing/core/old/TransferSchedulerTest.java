@@ -0,0 +1,238 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+@SuppressWarnings("nls")
+public class TransferSchedulerTest extends TestCase
+{
+
+	private static final long TRANSFER_TIME = 50;
+
+	private List<String> events;
+	private AtomicInteger running;
+	private AtomicInteger maxRunning;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		events = Collections.synchronizedList(new ArrayList<String>());
+		running = new AtomicInteger();
+		maxRunning = new AtomicInteger();
+	}
+
+	public void testSingleLaneTransfersInOrder() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("a", "b", "c");
+		assertTrue(new TransferScheduler(1).run(items, new TestTransfer(), convert(items)));
+		assertEquals(1, maxRunning.get());
+		assertEquals("[start a, end a, start b, end b, start c, end c]", events.toString());
+	}
+
+	public void testLanesTransferConcurrently() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("a", "b", "c", "d", "e", "f");
+		assertTrue(new TransferScheduler(3).run(items, new TestTransfer(), convert(items)));
+		assertEquals(3, maxRunning.get());
+		assertEquals(items.length * 2, events.size());
+	}
+
+	public void testChildrenWaitForTheirDirectory() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("dir", "dir/a", "dir/b", "dir/sub", "dir/sub/c", "other");
+		assertTrue(new TransferScheduler(4).run(items, new TestTransfer(), convert(items)));
+		assertBefore("end dir", "start dir/a");
+		assertBefore("end dir", "start dir/b");
+		assertBefore("end dir/sub", "start dir/sub/c");
+		assertEquals(items.length * 2, events.size());
+	}
+
+	public void testDirectoryWaitsForItsChildren() throws Exception
+	{
+		// the order used for deletions
+		VirtualFileSyncPair[] items = createItems("dir/sub/c", "dir/b", "dir/a", "dir/sub", "dir");
+		assertTrue(new TransferScheduler(4).run(items, new TestTransfer(), convert(items)));
+		assertBefore("end dir/sub/c", "start dir/sub");
+		assertBefore("end dir/a", "start dir");
+		assertBefore("end dir/b", "start dir");
+		assertBefore("end dir/sub", "start dir");
+	}
+
+	public void testStopsWhenTransferFails() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("a", "b", "c", "d", "e", "f");
+		assertTrue(new TransferScheduler(2).run(items, new TestTransfer()
+		{
+			@Override
+			public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+			{
+				return super.transfer(item, index, monitor) && index != 0;
+			}
+		}, convert(items)));
+		assertTrue(events.contains("end a"));
+		assertFalse(events.contains("start f"));
+	}
+
+	public void testRethrowsTransferExceptions() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("a", "b", "c", "d", "e", "f");
+		try
+		{
+			new TransferScheduler(2).run(items, new TestTransfer()
+			{
+				@Override
+				public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+				{
+					super.transfer(item, index, monitor);
+					if (index == 0)
+					{
+						throw new IllegalStateException("failed " + item.getRelativePath());
+					}
+					return true;
+				}
+			}, convert(items));
+			fail("the exception of the failed transfer should be thrown");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("failed a", e.getMessage());
+		}
+		assertFalse(events.contains("start f"));
+	}
+
+	public void testStopsWhenCanceled() throws Exception
+	{
+		VirtualFileSyncPair[] items = createItems("a", "b", "c", "d", "e", "f");
+		assertTrue(new TransferScheduler(2).run(items, new TestTransfer()
+		{
+			@Override
+			public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+			{
+				if (index == 0)
+				{
+					monitor.setCanceled(true);
+				}
+				return super.transfer(item, index, monitor);
+			}
+		}, convert(items)));
+		assertFalse(events.contains("start f"));
+	}
+
+	public void testLanesReportSubTasksAndProgress() throws Exception
+	{
+		final List<String> subTasks = new ArrayList<String>();
+		final double[] work = new double[2];
+		IProgressMonitor root = new NullProgressMonitor()
+		{
+			@Override
+			public void beginTask(String name, int totalWork)
+			{
+				work[0] = totalWork;
+			}
+
+			@Override
+			public void subTask(String name)
+			{
+				subTasks.add(name);
+			}
+
+			@Override
+			public void worked(int worked)
+			{
+				work[1] += worked;
+			}
+
+			@Override
+			public void internalWorked(double worked)
+			{
+				work[1] += worked;
+			}
+		};
+		VirtualFileSyncPair[] items = createItems("a", "b", "c", "d", "e", "f");
+		assertTrue(new TransferScheduler(3).run(items, new TestTransfer()
+		{
+			@Override
+			public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+			{
+				monitor.beginTask(item.getRelativePath(), 10);
+				monitor.subTask(item.getRelativePath());
+				monitor.worked(5);
+				return super.transfer(item, index, monitor);
+			}
+		}, SubMonitor.convert(root, items.length)));
+
+		Collections.sort(subTasks);
+		assertEquals("[a, b, c, d, e, f]", subTasks.toString());
+		assertEquals(work[0], work[1], 0.5);
+	}
+
+	private void assertBefore(String first, String second)
+	{
+		int firstIndex = events.indexOf(first);
+		int secondIndex = events.indexOf(second);
+		assertTrue(first + " missing", firstIndex >= 0);
+		assertTrue(second + " missing", secondIndex >= 0);
+		assertTrue(first + " after " + second + ": " + events, firstIndex < secondIndex);
+	}
+
+	private static VirtualFileSyncPair[] createItems(String... paths)
+	{
+		VirtualFileSyncPair[] items = new VirtualFileSyncPair[paths.length];
+		for (int i = 0; i < paths.length; ++i)
+		{
+			items[i] = new VirtualFileSyncPair(null, null, paths[i], SyncState.ClientItemOnly);
+		}
+		return items;
+	}
+
+	private static SubMonitor convert(VirtualFileSyncPair[] items)
+	{
+		return SubMonitor.convert(new NullProgressMonitor(), items.length);
+	}
+
+	private class TestTransfer implements TransferScheduler.ITransfer
+	{
+
+		public String getTaskName(VirtualFileSyncPair item)
+		{
+			return item.getRelativePath();
+		}
+
+		public boolean transfer(VirtualFileSyncPair item, int index, IProgressMonitor monitor)
+		{
+			events.add("start " + item.getRelativePath());
+			int current = running.incrementAndGet();
+			synchronized (maxRunning)
+			{
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+			try
+			{
+				Thread.sleep(TRANSFER_TIME);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			events.add("end " + item.getRelativePath());
+			return true;
+		}
+	}
+}
@@ -12,6 +12,9 @@ import org.kohsuke.junit.ParallelTestSuite;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import com.aptana.ide.syncing.core.old.SyncManifestTest;
+import com.aptana.ide.syncing.core.old.TransferSchedulerTest;
+
 public class AllTests
 {
 
@@ -27,6 +30,8 @@ public class AllTests
 		suite.addTestSuite(SFTPSyncingTestsWithSpaces.class);
 		suite.addTestSuite(LocalLargeSampleSyncingTests.class);
 		suite.addTestSuite(FTPLargeSampleSyncingTests.class);
+		suite.addTestSuite(TransferSchedulerTest.class);
+		suite.addTestSuite(SyncManifestTest.class);
 
 		// $JUnit-END$
 		return suite;
@@ -289,4 +289,58 @@ public class ThemeTest extends TestCase
 		ThemeRule rule = theme.winningRule(scope);
 		assertEquals("CSS: Tag", rule.getName());
 	}
+
+	public void testTextAttributeCacheCountsHitsAndMisses()
+	{
+		long hits = theme.getCacheHitCount();
+		long misses = theme.getCacheMissCount();
+
+		TextAttribute first = theme.getTextAttribute("source.js constant.language.js");
+		TextAttribute second = theme.getTextAttribute("source.js constant.language.js");
+
+		assertSame(first, second);
+		assertEquals(misses + 1, theme.getCacheMissCount());
+		assertEquals(hits + 1, theme.getCacheHitCount());
+		assertTrue(theme.getCachedScopes().contains("source.js constant.language.js"));
+		assertTrue(theme.getCacheHitRate() > 0);
+	}
+
+	public void testChangingRulesWipesCachedTextAttributes()
+	{
+		String scope = "source.js constant.numeric.js";
+		assertEquals(new RGB(0, 255, 0), theme.getForegroundAsRGB(scope));
+
+		theme.addNewRule(2, "numbers", new ScopeSelector("constant.numeric"), new DelayedTextAttribute(new RGBa(0, 0,
+				255)));
+		assertEquals(new RGB(0, 0, 255), theme.getForegroundAsRGB(scope));
+
+		// the last rule wins when selectors are equal
+		theme.addNewRule(3, "more numbers", new ScopeSelector("constant.numeric"), new DelayedTextAttribute(
+				new RGBa(0, 0, 128)));
+		assertEquals(new RGB(0, 0, 128), theme.getForegroundAsRGB(scope));
+
+		theme.reorderRule(3, 2);
+		assertEquals(new RGB(0, 0, 255), theme.getForegroundAsRGB(scope));
+	}
+
+	public void testRebuildCache() throws Exception
+	{
+		String[] scopes = { "source.js constant.language.js", "source.js constant.numeric.js", "text.plain" };
+		RGB[] expected = new RGB[scopes.length];
+		for (int i = 0; i < scopes.length; i++)
+		{
+			expected[i] = theme.getForegroundAsRGB(scopes[i]);
+		}
+
+		// a copy of the theme starts with an empty cache
+		Theme copy = theme.copy("copy");
+		assertTrue(copy.getCachedScopes().isEmpty());
+
+		copy.rebuildCache(theme.getCachedScopes()).join();
+
+		for (int i = 0; i < scopes.length; i++)
+		{
+			assertEquals(expected[i], copy.getForegroundAsRGB(scopes[i]));
+		}
+	}
 }
@@ -0,0 +1,186 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+// $codepro.audit.disable assignmentInCondition
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.debug.core.ILaunchManager;
+
+/**
+ * Load harness for the built-in server: concurrent clients repeatedly fetch the same set of assets the way preview
+ * reloads do, and the requests per second and p99 latency are reported. Not part of the AllTests suite, run it
+ * explicitly.
+ */
+@SuppressWarnings("nls")
+public class LocalWebServerLoadTest extends TestCase
+{
+
+	private static final int ASSET_COUNT = 300;
+	private static final int CLIENT_COUNT = 8;
+	private static final int ROUNDS = 10;
+
+	private File documentRoot;
+	private LocalWebServer webServer;
+	private String[] lastModified;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		documentRoot = File.createTempFile(getClass().getSimpleName(), "temp");
+		assertTrue(documentRoot.delete());
+		assertTrue(documentRoot.mkdir());
+		for (int i = 0; i < ASSET_COUNT; ++i)
+		{
+			StringBuilder contents = new StringBuilder();
+			for (int j = 0; j < 100 + (i % 10) * 50; ++j)
+			{
+				contents.append("function asset").append(i).append('_').append(j).append("() { return ").append(j)
+						.append("; }\n");
+			}
+			OutputStreamWriter w = new OutputStreamWriter(new FileOutputStream(new File(documentRoot, "asset" + i
+					+ ".js")));
+			w.write(contents.toString());
+			w.close();
+		}
+		webServer = new LocalWebServer(EFS.getLocalFileSystem().fromLocalFile(documentRoot).toURI());
+		assertTrue(webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor()).isOK());
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			webServer.stop(true, new NullProgressMonitor());
+			for (File file : documentRoot.listFiles())
+			{
+				file.delete();
+			}
+			documentRoot.delete();
+		}
+		finally
+		{
+			lastModified = null;
+			webServer = null;
+			documentRoot = null;
+			super.tearDown();
+		}
+	}
+
+	public void testFullReloads() throws Exception
+	{
+		run("full reloads", false);
+	}
+
+	public void testRevalidatingReloads() throws Exception
+	{
+		run("revalidating reloads", true);
+	}
+
+	private void run(String name, final boolean revalidate) throws Exception
+	{
+		// warm up the server and the cache
+		lastModified = new String[ASSET_COUNT];
+		fetchAll(false, new long[ASSET_COUNT], 0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(CLIENT_COUNT);
+		try
+		{
+			List<Callable<long[]>> clients = new ArrayList<Callable<long[]>>();
+			for (int i = 0; i < CLIENT_COUNT; ++i)
+			{
+				clients.add(new Callable<long[]>()
+				{
+					public long[] call() throws Exception
+					{
+						long[] latencies = new long[ROUNDS * ASSET_COUNT];
+						for (int round = 0; round < ROUNDS; ++round)
+						{
+							fetchAll(revalidate, latencies, round * ASSET_COUNT);
+						}
+						return latencies;
+					}
+				});
+			}
+
+			long start = System.nanoTime();
+			long[] latencies = new long[CLIENT_COUNT * ROUNDS * ASSET_COUNT];
+			int index = 0;
+			for (Future<long[]> future : executor.invokeAll(clients))
+			{
+				long[] clientLatencies = future.get();
+				System.arraycopy(clientLatencies, 0, latencies, index, clientLatencies.length);
+				index += clientLatencies.length;
+			}
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+			Arrays.sort(latencies);
+			double p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1000000.0;
+			System.out.println(MessageFormat.format(
+					"LocalWebServer {0}: {1} requests in {2} s, {3} requests/s, p99 {4} ms", name, latencies.length, seconds, latencies.length / seconds, p99));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private void fetchAll(boolean revalidate, long[] latencies, int offset) throws IOException
+	{
+		byte[] buffer = new byte[8192];
+		for (int i = 0; i < ASSET_COUNT; ++i)
+		{
+			long start = System.nanoTime();
+			HttpURLConnection connection = (HttpURLConnection) new URL(webServer.getBaseURL(), "asset" + i + ".js")
+					.openConnection();
+			connection.setUseCaches(false);
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+			if (revalidate)
+			{
+				connection.setRequestProperty("If-Modified-Since", lastModified[i]);
+			}
+			int status = connection.getResponseCode();
+			assertEquals(revalidate ? HttpURLConnection.HTTP_NOT_MODIFIED : HttpURLConnection.HTTP_OK, status);
+			if (!revalidate)
+			{
+				lastModified[i] = connection.getHeaderField("Last-Modified");
+			}
+			if (status == HttpURLConnection.HTTP_OK)
+			{
+				InputStream in = connection.getInputStream();
+				while (in.read(buffer) != -1)
+				{
+					// drain the response so the connection is reused
+				}
+				in.close();
+			}
+			latencies[offset + i] = System.nanoTime() - start;
+		}
+	}
+}
@@ -11,6 +11,7 @@
 
 package com.aptana.webserver.internal.core.builtin;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -19,12 +20,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.debug.core.ILaunchManager;
 
 /**
  * @author Max Stepanov
@@ -73,4 +76,153 @@ public class LocalWebServerTest extends TestCase
 			}
 		}
 	}
+
+	public void testConditionalGet() throws IOException, CoreException
+	{
+		LocalWebServer webServer = startServer(createDocumentRoot());
+		try
+		{
+			URL url = new URL(webServer.getBaseURL(), "index.html"); //$NON-NLS-1$
+			HttpURLConnection connection = openConnection(url);
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			String eTag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+			String lastModified = connection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+			assertNotNull(eTag);
+			assertNotNull(lastModified);
+			assertEquals(PAGE_CONTENTS, new String(read(connection.getInputStream())));
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-None-Match", eTag); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-Modified-Since", lastModified); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-None-Match", "\"outdated\""); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals(PAGE_CONTENTS, new String(read(connection.getInputStream())));
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	public void testGzipEncoding() throws IOException, CoreException
+	{
+		File dir = createDocumentRoot();
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < 100; ++i)
+		{
+			script.append("var variable").append(i).append(" = ").append(i).append(";\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		writeFile(new File(dir, "script.js"), script.toString()); //$NON-NLS-1$
+
+		LocalWebServer webServer = startServer(dir);
+		try
+		{
+			HttpURLConnection connection = openConnection(new URL(webServer.getBaseURL(), "script.js")); //$NON-NLS-1$
+			connection.setRequestProperty("Accept-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals("gzip", connection.getContentEncoding()); //$NON-NLS-1$
+			assertTrue(connection.getContentLength() < script.length());
+			assertEquals(script.toString(), new String(read(new GZIPInputStream(connection.getInputStream()))));
+			String gzipETag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+
+			connection = openConnection(new URL(webServer.getBaseURL(), "script.js")); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertNull(connection.getContentEncoding());
+			assertEquals(script.toString(), new String(read(connection.getInputStream())));
+			String eTag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+
+			// the two representations have distinct strong entity tags, and both validate
+			assertNotNull(gzipETag);
+			assertNotNull(eTag);
+			assertFalse(eTag.equals(gzipETag));
+
+			connection = openConnection(new URL(webServer.getBaseURL(), "script.js")); //$NON-NLS-1$
+			connection.setRequestProperty("Accept-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+			connection.setRequestProperty("If-None-Match", gzipETag); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+			assertEquals(gzipETag, connection.getHeaderField("ETag")); //$NON-NLS-1$
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	public void testRange() throws IOException, CoreException
+	{
+		LocalWebServer webServer = startServer(createDocumentRoot());
+		try
+		{
+			URL url = new URL(webServer.getBaseURL(), "index.html"); //$NON-NLS-1$
+			HttpURLConnection connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=6-11"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+			assertEquals("bytes 6-11/" + PAGE_CONTENTS.length(), connection.getHeaderField("Content-Range")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(PAGE_CONTENTS.substring(6, 12), new String(read(connection.getInputStream())));
+
+			connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=-7"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+			assertEquals(PAGE_CONTENTS.substring(PAGE_CONTENTS.length() - 7), new String(read(connection
+					.getInputStream())));
+
+			connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=" + PAGE_CONTENTS.length() + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertEquals(416, connection.getResponseCode());
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	private File createDocumentRoot() throws IOException
+	{
+		File dir = File.createTempFile(getClass().getSimpleName(), "temp"); //$NON-NLS-1$
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		writeFile(new File(dir, "index.html"), PAGE_CONTENTS); //$NON-NLS-1$
+		return dir;
+	}
+
+	private static void writeFile(File file, String contents) throws IOException
+	{
+		OutputStreamWriter w = new OutputStreamWriter(new FileOutputStream(file));
+		w.write(contents);
+		w.close();
+	}
+
+	private static LocalWebServer startServer(File documentRoot)
+	{
+		LocalWebServer webServer = new LocalWebServer(EFS.getLocalFileSystem().fromLocalFile(documentRoot).toURI());
+		assertTrue(webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor()).isOK());
+		return webServer;
+	}
+
+	private static HttpURLConnection openConnection(URL url) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setAllowUserInteraction(false);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private static byte[] read(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+		{
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
 }